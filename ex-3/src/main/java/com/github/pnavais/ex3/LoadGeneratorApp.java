@@ -0,0 +1,164 @@
+/*
+ *
+ * Copyright 2020 Pablo Navais
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+
+package com.github.pnavais.ex3;
+
+import com.github.pnavais.common.cli.ShortErrorMessageHandler;
+import com.github.pnavais.common.output.Colorize;
+import com.github.pnavais.ex3.loadgen.DocumentLoadGenerator;
+import com.github.pnavais.ex3.loadgen.ZipfVocabulary;
+import picocli.CommandLine;
+import picocli.CommandLine.Command;
+import picocli.CommandLine.Option;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Objects;
+import java.util.Random;
+import java.util.Timer;
+import java.util.TimerTask;
+import java.util.concurrent.Callable;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A command line interface to generate synthetic documents
+ * into the directory watched by the TF/IDF server.
+ */
+@Command(name = "LoadGenerator", version = "0.1.0", mixinStandardHelpOptions = true, sortOptions = false,
+        headerHeading = "Usage:%n%n",
+        synopsisHeading = "%n",
+        descriptionHeading = "%nDescription:%n%n",
+        parameterListHeading = "%nParameters:%n",
+        optionListHeading = "%nOptions:%n",
+        header = "Generate documents for the TF/IDF server.",
+        description = "Writes synthetic documents into a directory at a controlled rate, with words following " +
+                "a Zipf distribution, variable sizes and optional bursts.",
+        footer = "Copyright(c) 2020")
+public class LoadGeneratorApp implements Callable<Integer> {
+
+    /** The period of the progress report in seconds */
+    private static final int REPORT_PERIOD = 10;
+
+    @Option(names = {"-d", "--directory"}, paramLabel = "DIRECTORY", description = "the directory receiving " +
+            "the documents")
+    private Path directory;
+
+    @Option(names = {"-r", "--rate"}, paramLabel = "double", description = "number of documents written per " +
+            "second. Defaults to 10")
+    private double rate = 10;
+
+    @Option(names = {"--duration"}, paramLabel = "int", description = "duration of the generation in seconds " +
+            "(0 for no limit). Defaults to 0")
+    private long duration;
+
+    @Option(names = {"--vocabulary"}, paramLabel = "int", description = "number of different words. " +
+            "Defaults to 10000")
+    private int vocabularySize = 10000;
+
+    @Option(names = {"--zipf"}, paramLabel = "double", description = "exponent of the Zipf distribution of " +
+            "the words. Defaults to 1.0")
+    private double exponent = 1.0;
+
+    @Option(names = {"--min-words"}, paramLabel = "int", description = "minimum number of words of each " +
+            "document. Defaults to 50")
+    private int minWords = 50;
+
+    @Option(names = {"--max-words"}, paramLabel = "int", description = "maximum number of words of each " +
+            "document. Defaults to 5000")
+    private int maxWords = 5000;
+
+    @Option(names = {"--burst-size"}, paramLabel = "int", description = "number of documents written at once " +
+            "in each burst (0 for no bursts). Defaults to 0")
+    private int burstSize;
+
+    @Option(names = {"--burst-period"}, paramLabel = "int", description = "period between bursts in seconds. " +
+            "Defaults to 60")
+    private long burstPeriod = 60;
+
+    @Option(names = {"--seed"}, paramLabel = "long", description = "seed of the random generator. Defaults " +
+            "to a random seed")
+    private Long seed;
+
+    @Override
+    public Integer call() {
+        if (Objects.isNull(directory)) {
+            System.err.println(Colorize.fail("No output directory supplied"));
+            return 1;
+        } else if (!Files.isDirectory(directory)) {
+            System.err.println(Colorize.fail("Cannot access \"" + directory + "\" directory"));
+            return 1;
+        } else if ((rate <= 0) || (vocabularySize <= 0) || (minWords <= 0) || (maxWords < minWords)) {
+            System.err.println(Colorize.fail("The rate, the vocabulary and the number of words must be positive"));
+            return 1;
+        }
+
+        System.setProperty("APP_LOG_LEVEL", System.getProperty("APP_LOG_LEVEL", "INFO"));
+        TfIdfServerLiteApp.defineLogLevels();
+
+        DocumentLoadGenerator generator = new DocumentLoadGenerator(directory,
+                new ZipfVocabulary(vocabularySize, exponent), Objects.isNull(seed) ? new Random() : new Random(seed));
+        generator.setRate(rate);
+        generator.setDurationMs(TimeUnit.SECONDS.toMillis(duration));
+        generator.setMinWords(minWords);
+        generator.setMaxWords(maxWords);
+        generator.setBurstSize(burstSize);
+        generator.setBurstPeriodMs(TimeUnit.SECONDS.toMillis(burstPeriod));
+
+        long start = System.nanoTime();
+        Timer timer = new Timer(true);
+        timer.scheduleAtFixedRate(new TimerTask() {
+            @Override
+            public void run() {
+                report(generator, start);
+            }
+        }, TimeUnit.SECONDS.toMillis(REPORT_PERIOD), TimeUnit.SECONDS.toMillis(REPORT_PERIOD));
+        Runtime.getRuntime().addShutdownHook(new Thread(generator::stop));
+
+        System.out.printf("Writing %s documents per second into \"%s\"%n", Colorize.info(String.valueOf(rate)),
+                generator.getDirectory());
+        generator.run();
+        timer.cancel();
+        report(generator, start);
+
+        return 0;
+    }
+
+    /**
+     * Displays the number of documents written so far.
+     *
+     * @param generator the generator
+     * @param start the start time in nanoseconds
+     */
+    private static void report(DocumentLoadGenerator generator, long start) {
+        double seconds = Math.max(1, System.nanoTime() - start) / 1e9;
+        System.out.printf("%d documents written (%.1f docs/s, %.1f MB)%n", generator.getDocuments(),
+                generator.getDocuments() / seconds, generator.getBytes() / (1024.0 * 1024.0));
+    }
+
+    /**
+     * Entry point of the command line interface.
+     *
+     * @param args the arguments.
+     */
+    public static void main(String[] args) {
+        int exitCode = new CommandLine(new LoadGeneratorApp())
+                .setParameterExceptionHandler(new ShortErrorMessageHandler())
+                .execute(args);
+        System.exit(exitCode);
+    }
+}
@@ -63,15 +63,21 @@ public class TfIdfServerApp implements CommandLineRunner {
      * Main entry point of the applications, process
      * the arguments and store the configuration statically.
      * If the configuration is valid, launch the Spring
-     * application which eventually will start the server.
+     * application which eventually will start the server
+     * (or the lite application if requested).
      *
      * @param args the command line arguments
      */
     public static void main(String[] args) {
         int exitCode = new CommandLine(new TfIdfServerConfig(cfg -> {
             TfIdfServerApp.config = cfg;
-            SpringApplication.run(TfIdfServerApp.class, args);
+            if (cfg.isLite()) {
+                TfIdfServerLiteApp.run(cfg);
+            } else {
+                SpringApplication.run(TfIdfServerApp.class, args);
+            }
         })).setParameterExceptionHandler(new ShortErrorMessageHandler())
+                .setCaseInsensitiveEnumValuesAllowed(true)
                 .execute(args);
         System.exit(exitCode);
     }
@@ -0,0 +1,107 @@
+/*
+ *
+ * Copyright 2020 Pablo Navais
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+
+package com.github.pnavais.ex3;
+
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.Logger;
+import ch.qos.logback.classic.LoggerContext;
+import com.github.pnavais.common.output.Colorize;
+import com.github.pnavais.ex3.api.index.IndexManager;
+import com.github.pnavais.ex3.config.TfIdfServerConfig;
+import com.github.pnavais.ex3.index.SimpleIndexManager;
+import com.github.pnavais.ex3.ranking.TfIdfRankingManager;
+import com.github.pnavais.ex3.server.TfIdfServer;
+import com.github.pnavais.ex3.watcher.SimpleDirectoryWatcher;
+import lombok.AccessLevel;
+import lombok.NoArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.util.Optional;
+
+/**
+ * Launches the TF/IDF server wiring its components directly,
+ * without booting the Spring context (no component scanning,
+ * banner or Spring logging system), to reduce the startup time.
+ * <p>
+ * The log levels are set as the Spring application does from
+ * the ROOT_LOG_LEVEL environment variable and the APP_LOG_LEVEL
+ * property defined by the verbosity of the configuration.
+ */
+@Slf4j
+@NoArgsConstructor(access = AccessLevel.PRIVATE)
+public class TfIdfServerLiteApp {
+
+    /** The package of the application loggers */
+    private static final String APP_PACKAGE = "com.github.pnavais";
+
+    /** The default root log level */
+    private static final String DEFAULT_ROOT_LEVEL = "WARN";
+
+    /** The default application log level */
+    private static final String DEFAULT_APP_LEVEL = "DEBUG";
+
+    /**
+     * Wires the server components and starts the server
+     * with the given configuration, stopping it when the
+     * virtual machine shuts down.
+     *
+     * @param config the server configuration
+     */
+    public static void run(TfIdfServerConfig config) {
+        run(config, new SimpleIndexManager());
+    }
+
+    /**
+     * Wires the server components around the given index
+     * manager (e.g. to monitor the index in-process) and
+     * starts the server with the given configuration.
+     *
+     * @param config the server configuration
+     * @param indexManager the index manager
+     */
+    public static void run(TfIdfServerConfig config, IndexManager indexManager) {
+        defineLogLevels();
+        try {
+            TfIdfServer server = new TfIdfServer(new SimpleDirectoryWatcher(), indexManager,
+                    new TfIdfRankingManager());
+            Runtime.getRuntime().addShutdownHook(new Thread(server::stop));
+            server.start(config);
+        } catch (IOException e) {
+            log.error("Error creating the directory watcher", e);
+            System.err.println(Colorize.fail("Cannot watch directories : " + e.getMessage()));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Defines the levels of the root and the application loggers.
+     */
+    static void defineLogLevels() {
+        if (LoggerFactory.getILoggerFactory() instanceof LoggerContext) {
+            LoggerContext context = (LoggerContext) LoggerFactory.getILoggerFactory();
+            String rootLevel = Optional.ofNullable(System.getenv("ROOT_LOG_LEVEL")).orElse(DEFAULT_ROOT_LEVEL);
+            String appLevel = System.getProperty("APP_LOG_LEVEL", DEFAULT_APP_LEVEL);
+            context.getLogger(Logger.ROOT_LOGGER_NAME).setLevel(Level.toLevel(rootLevel, Level.WARN));
+            context.getLogger(APP_PACKAGE).setLevel(Level.toLevel(appLevel, Level.DEBUG));
+        }
+    }
+}
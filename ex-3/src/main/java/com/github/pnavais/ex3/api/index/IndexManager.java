@@ -19,6 +19,9 @@
 package com.github.pnavais.ex3.api.index;
 
 import com.github.pnavais.ex3.index.DocTerm;
+import com.github.pnavais.ex3.index.IndexSnapshot;
+
+import com.github.pnavais.ex3.sketch.DocumentFrequencySketch;
 
 import java.nio.file.Path;
 import java.util.List;
@@ -46,6 +49,43 @@ public interface IndexManager {
      */
     void setTerms(Set<String> terms);
 
+    /**
+     * Establishes the factory of the segments
+     * storing the statistics of the documents.
+     *
+     * @param segmentFactory the segment factory
+     */
+    void setSegmentFactory(SegmentFactory segmentFactory);
+
+    /**
+     * Establishes the executor reading the
+     * documents to index.
+     * @param indexingExecutor the indexing executor
+     */
+    void setIndexingExecutor(IndexingExecutor indexingExecutor);
+
+    /**
+     * Establishes the maximum number of documents being
+     * indexed concurrently, making the callers wait
+     * once reached.
+     * @param maxIndexing the maximum number of documents being indexed
+     */
+    void setMaxIndexing(int maxIndexing);
+
+    /**
+     * Establishes the maximum number of small documents
+     * indexed together in a single task and segment.
+     * @param batchSize the maximum number of documents per batch (1 disables batching)
+     */
+    void setBatchSize(int batchSize);
+
+    /**
+     * Establishes the policy deciding the segments
+     * merged in the background.
+     * @param mergePolicy the merge policy ({@link MergePolicy#NONE} disables merging)
+     */
+    void setMergePolicy(MergePolicy mergePolicy);
+
     /**
      * Retrieve the set of terms
      * in the index.
@@ -68,6 +108,15 @@ public interface IndexManager {
      */
     void loadFrom(Path directory);
 
+    /**
+     * Retrieves the current snapshot of the index. The snapshot is
+     * an immutable and consistent view of the index which is not
+     * affected by the documents indexed afterwards.
+     *
+     * @return the index snapshot
+     */
+    IndexSnapshot snapshot();
+
     /**
      * Retrieve the TF/IDF for a given term
      * and document in the index.
@@ -87,6 +136,43 @@ public interface IndexManager {
      */
     List<DocTerm> getDocTermsFor(String term);
 
+    /**
+     * Retrieves the document statistics for arbitrary terms,
+     * not necessarily indexed, reading again the documents
+     * of the index which may contain them.
+     *
+     * @param terms the terms
+     * @return the statistics of the documents containing any of the terms
+     */
+    List<DocTerm> queryTerms(Set<String> terms);
+
+    /**
+     * Establishes the sketch estimating the document frequency of every
+     * word indexed, enabling the approximate idf of arbitrary terms. The words
+     * are only collected by the readers when the terms are not normalized
+     * (see {@link com.github.pnavais.ex3.reader.DocumentReaderFactory#setCollectingWords(boolean)}).
+     * @param frequencySketch the sketch or null to disable the estimation
+     */
+    void setFrequencySketch(DocumentFrequencySketch frequencySketch);
+
+    /**
+     * Estimates the number of documents containing an arbitrary term,
+     * not necessarily indexed, never underestimating it.
+     *
+     * @param term the term
+     * @return the estimated document frequency or -1 if not estimated
+     */
+    long estimateDocumentFrequency(String term);
+
+    /**
+     * Computes the idf of an arbitrary term from its estimated
+     * document frequency i.e. log10(D/d).
+     *
+     * @param term the term
+     * @return the approximate idf of the term (0 if not found or not estimated)
+     */
+    double getApproximateIdf(String term);
+
     /**
      * Compute the average TF/IDF statistic for
      * all the terms in the given document in the index.
@@ -0,0 +1,242 @@
+/*
+ *
+ * Copyright 2020 Pablo Navais
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+
+package com.github.pnavais.ex3.api.index;
+
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Defines the methods allowing to read an immutable part of the index
+ * containing the statistics of a set of documents. Segments are built
+ * once their documents are fully read and never modified afterwards,
+ * so they can be shared between several snapshots of the index.
+ * <p>
+ * Documents are identified by their id in the document dictionary
+ * of the index (see {@link com.github.pnavais.ex3.index.DocumentDictionary}).
+ * Only the documents containing a term are kept in the postings of the term,
+ * although all the documents of the segment account for the size of the index.
+ */
+public interface IndexSegment {
+
+    /**
+     * Retrieves the number of documents in the segment.
+     *
+     * @return the number of documents
+     */
+    int size();
+
+    /**
+     * Retrieves the ids of the documents in the segment.
+     *
+     * @return the document ids in ascending order
+     */
+    int[] getDocuments();
+
+    /**
+     * Retrieves the id of the document at the given position of the
+     * segment (see {@link PostingCursor#docIndex()}).
+     *
+     * @param docIndex the position of the document
+     * @return the document id
+     */
+    int getDocument(int docIndex);
+
+    /**
+     * Checks whether the segment contains the given document.
+     *
+     * @param docId the document id
+     * @return true if contained, false otherwise
+     */
+    boolean contains(int docId);
+
+    /**
+     * Retrieves the terms found in the segment.
+     *
+     * @return the terms
+     */
+    Set<String> getTerms();
+
+    /**
+     * Retrieves the number of documents of the segment containing the term.
+     *
+     * @param term the term
+     * @return the document frequency of the term
+     */
+    int documentFrequency(String term);
+
+    /**
+     * Retrieves the number of words of the given document.
+     *
+     * @param docId the document id
+     * @return the number of words or 0 if not in the segment
+     */
+    long getWordCount(int docId);
+
+    /**
+     * Retrieves the number of words of all the documents in the segment.
+     *
+     * @return the total number of words
+     */
+    long getTotalWordCount();
+
+    /**
+     * Retrieves the occurrences of the term in the given document.
+     *
+     * @param term the term
+     * @param docId the document id
+     * @return the occurrences or 0 if the document does not contain the term
+     */
+    long getOccurrences(String term, int docId);
+
+    /**
+     * Visits the postings of the term, i.e. the
+     * documents containing it in ascending id order.
+     *
+     * @param term the term
+     * @param visitor the visitor of the postings
+     */
+    void forEachPosting(String term, PostingVisitor visitor);
+
+    /**
+     * Opens a cursor over the postings of the term, i.e. the documents
+     * containing it in ascending id order, allowing to skip documents.
+     *
+     * @param term the term
+     * @return the cursor on the first posting, already exhausted if no document contains the term
+     */
+    PostingCursor postings(String term);
+
+    /**
+     * Visits all the documents of the segment with the
+     * occurrences of the given terms in each one.
+     *
+     * @param terms the terms
+     * @param visitor the visitor of the documents
+     */
+    void forEachDocument(List<String> terms, DocumentVisitor visitor);
+
+    /**
+     * Creates a copy of the segment without the given documents,
+     * reusing the segment itself if it contains none of them.
+     *
+     * @param docIds the ids of the documents to remove in ascending order
+     * @return the resulting segment
+     */
+    IndexSegment without(int[] docIds);
+
+    /**
+     * Merges the segment with the given ones into a new segment
+     * of the same storage. Segments must not share documents.
+     *
+     * @param segments the segments to merge with this one
+     * @return the merged segment
+     */
+    IndexSegment merge(List<IndexSegment> segments);
+
+    /**
+     * Visits the documents of a segment
+     */
+    @FunctionalInterface
+    interface DocumentVisitor {
+
+        /**
+         * Visits a document.
+         *
+         * @param docId the document id
+         * @param wordCount the number of words in the document
+         * @param occurrences the occurrences of each term in the document
+         */
+        void visit(int docId, long wordCount, long[] occurrences);
+    }
+
+    /**
+     * A cursor over the postings of a term, positioned on one
+     * of the documents containing the term.
+     */
+    interface PostingCursor {
+
+        /** The document id of an exhausted cursor */
+        int NO_MORE_DOCS = Integer.MAX_VALUE;
+
+        /**
+         * Retrieves the id of the current document.
+         *
+         * @return the document id or {@link #NO_MORE_DOCS} if exhausted
+         */
+        int docId();
+
+        /**
+         * Retrieves the position of the current document in the segment,
+         * i.e. the order in which the segment visits it.
+         *
+         * @return the position of the document
+         */
+        int docIndex();
+
+        /**
+         * Retrieves the occurrences of the term in the current document.
+         *
+         * @return the occurrences
+         */
+        long occurrences();
+
+        /**
+         * Retrieves the positions of the term in the current document (the index of the
+         * words where it is found, or where the phrase starts), if the segment keeps them.
+         * Defaults to none.
+         *
+         * @return the positions in ascending order or null if not kept
+         */
+        default int[] positions() {
+            return null;
+        }
+
+        /**
+         * Moves to the next document containing the term.
+         *
+         * @return the id of the next document or {@link #NO_MORE_DOCS} if exhausted
+         */
+        int next();
+
+        /**
+         * Moves to the first document containing the term whose id is equal
+         * or greater than the given one, never moving backwards.
+         *
+         * @param target the document id
+         * @return the id of the document or {@link #NO_MORE_DOCS} if exhausted
+         */
+        int advance(int target);
+    }
+
+    /**
+     * Visits the postings of a term
+     */
+    @FunctionalInterface
+    interface PostingVisitor {
+
+        /**
+         * Visits a document containing the term.
+         *
+         * @param docId the document id
+         * @param wordCount the number of words in the document
+         * @param occurrences the occurrences of the term in the document
+         */
+        void visit(int docId, long wordCount, long occurrences);
+    }
+}
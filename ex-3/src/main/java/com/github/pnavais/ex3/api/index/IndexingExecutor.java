@@ -0,0 +1,60 @@
+/*
+ *
+ * Copyright 2020 Pablo Navais
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+
+package com.github.pnavais.ex3.api.index;
+
+import com.github.pnavais.ex3.api.reader.DocumentReader;
+import com.github.pnavais.ex3.index.DocTerm;
+
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Runs the reading of the documents to index, deciding
+ * the threads where their I/O and tokenization take place.
+ * Small documents can be read in batches, sharing a single
+ * task, reader and buffer.
+ */
+public interface IndexingExecutor {
+
+    /**
+     * Reads asynchronously the statistics of the given document. The future
+     * completes exceptionally with the {@link com.github.pnavais.ex3.api.exception.FileParsingException}
+     * (wrapped in a {@link java.util.concurrent.CompletionException}) if the document cannot be read.
+     *
+     * @param doc the document
+     * @param reader the reader of the document
+     * @param terms the terms to look for
+     * @return the future statistics for the terms in the document
+     */
+    CompletableFuture<List<DocTerm>> submit(Path doc, DocumentReader reader, Set<String> terms);
+
+    /**
+     * Reads asynchronously the statistics of the given batch of documents, one after
+     * the other with the same reader. Documents that cannot be read are indexed without
+     * terms instead of failing the whole batch. Archives cannot be read in batches.
+     *
+     * @param docs the documents
+     * @param reader the reader of the documents
+     * @param terms the terms to look for
+     * @return the future statistics for the terms in all the documents
+     */
+    CompletableFuture<List<DocTerm>> submitBatch(List<Path> docs, DocumentReader reader, Set<String> terms);
+}
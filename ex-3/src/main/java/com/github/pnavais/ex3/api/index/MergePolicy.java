@@ -0,0 +1,43 @@
+/*
+ *
+ * Copyright 2020 Pablo Navais
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+
+package com.github.pnavais.ex3.api.index;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Decides which segments of the index are merged in the background,
+ * so the number of segments stays low while documents keep being
+ * added in small segments.
+ */
+@FunctionalInterface
+public interface MergePolicy {
+
+    /** A policy never merging segments */
+    MergePolicy NONE = segments -> Collections.emptyList();
+
+    /**
+     * Finds the groups of segments to merge, each group producing
+     * a single segment. Groups must not share segments.
+     *
+     * @param segments the segments of the index, oldest first
+     * @return the groups of segments to merge (empty if none)
+     */
+    List<List<IndexSegment>> findMerges(List<IndexSegment> segments);
+}
@@ -0,0 +1,44 @@
+/*
+ *
+ * Copyright 2020 Pablo Navais
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+
+package com.github.pnavais.ex3.api.index;
+
+import com.github.pnavais.ex3.index.DocTerm;
+import com.github.pnavais.ex3.index.DocumentDictionary;
+
+import java.nio.file.Path;
+import java.util.Collection;
+
+/**
+ * Builds the {@link IndexSegment}s storing the statistics
+ * of the documents indexed.
+ */
+@FunctionalInterface
+public interface SegmentFactory {
+
+    /**
+     * Builds the segment for the given documents and their statistics,
+     * identifying the documents by their id in the given dictionary.
+     *
+     * @param dictionary the document dictionary
+     * @param documents the documents
+     * @param docTerms the statistics of the terms in the documents
+     * @return the segment
+     */
+    IndexSegment build(DocumentDictionary dictionary, Collection<Path> documents, Collection<DocTerm> docTerms);
+}
@@ -19,6 +19,8 @@
 package com.github.pnavais.ex3.api.ranking;
 
 import com.github.pnavais.ex3.api.index.IndexManager;
+import com.github.pnavais.ex3.ranking.Proximity;
+import com.github.pnavais.ex3.ranking.RankingMode;
 
 import java.io.PrintStream;
 
@@ -71,4 +73,36 @@ public interface RankingManager {
      * @param pw the print stream
      */
     void displayTopResults(int n, IndexManager manager, PrintStream pw);
+
+    /**
+     * Establishes the scoring function
+     * ranking the documents.
+     *
+     * @param scorer the scorer
+     */
+    void setScorer(Scorer scorer);
+
+    /**
+     * Establishes the algorithm retrieving
+     * the top documents.
+     *
+     * @param rankingMode the ranking mode
+     */
+    void setRankingMode(RankingMode rankingMode);
+
+    /**
+     * Establishes the number of threads
+     * ranking the documents in parallel.
+     *
+     * @param parallelism the number of threads
+     */
+    void setParallelism(int parallelism);
+
+    /**
+     * Establishes the proximity of the terms boosting
+     * the scores of the documents, if any.
+     *
+     * @param proximity the proximity or null to disable it
+     */
+    void setProximity(Proximity proximity);
 }
@@ -0,0 +1,114 @@
+/*
+ *
+ * Copyright 2020 Pablo Navais
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+
+package com.github.pnavais.ex3.api.ranking;
+
+import com.github.pnavais.ex3.ranking.CollectionStatistics;
+import com.github.pnavais.ex3.ranking.ScoringStatistic;
+
+import java.util.Set;
+
+/**
+ * Defines a scoring function ranking the documents of the index for a set of terms.
+ * <p>
+ * Scores are split in the parts depending on each statistic, so they can be
+ * precomputed once per snapshot of the index instead of once per ranking :
+ * - The weight of each term, depending on its document frequency (i.e. the idf).
+ * - The norm of each document, depending on its length (and the average length).
+ * - The score of a term in a document, combining its occurrences with the
+ *   norm of the document and the precomputed weight of the term.
+ * Each implementation declares the statistics it relies on, so the ones
+ * not used are neither computed nor stored.
+ * <p>
+ * The score of a term must not decrease with its occurrences nor increase with the
+ * length of the document, so the highest score of a term among several documents is
+ * found without scoring the documents outnumbered in occurrences by shorter ones.
+ */
+public interface Scorer {
+
+    /**
+     * Retrieves the name of the scoring function.
+     *
+     * @return the name
+     */
+    String getName();
+
+    /**
+     * Retrieves the statistics the scoring function relies on.
+     *
+     * @return the statistics to precompute
+     */
+    Set<ScoringStatistic> getStatistics();
+
+    /**
+     * Computes the weight of a term in the collection. Only called
+     * if {@link ScoringStatistic#INVERSE_DOCUMENT_FREQUENCY} is declared,
+     * otherwise all the terms weigh 1. Terms weighing 0 do not
+     * contribute to the score of any document.
+     *
+     * @param documentFrequency the number of documents containing the term
+     * @param collection the statistics of the collection
+     * @return the weight of the term
+     */
+    double termWeight(int documentFrequency, CollectionStatistics collection);
+
+    /**
+     * Computes the norm of a document. Only called if {@link ScoringStatistic#DOCUMENT_LENGTH}
+     * is declared, otherwise the norm of all the documents is 1.
+     *
+     * @param wordCount the number of words of the document
+     * @param collection the statistics of the collection
+     * @return the norm of the document
+     */
+    double documentNorm(long wordCount, CollectionStatistics collection);
+
+    /**
+     * Computes the score of a term found in a document.
+     *
+     * @param occurrences the occurrences of the term in the document (always positive)
+     * @param documentNorm the norm of the document
+     * @param termWeight the weight of the term
+     * @return the score of the term in the document
+     */
+    double score(long occurrences, double documentNorm, double termWeight);
+
+    /**
+     * Tells whether the score of a term is proportional to its weight, i.e.
+     * {@code score(occurrences, norm, weight) == score(occurrences, norm, 1) * weight}.
+     * The scores of such functions can be precomputed once per document and term
+     * regardless of the weights (see {@link com.github.pnavais.ex3.ranking.RankingMode#COLUMNAR}).
+     * Defaults to false.
+     *
+     * @return true if the score is proportional to the weight of the term, false otherwise
+     */
+    default boolean isProportionalToWeight() {
+        return false;
+    }
+
+    /**
+     * Combines the sum of the scores of all the terms in a document
+     * into the final score of the document. Defaults to the sum itself.
+     *
+     * @param sum the sum of the scores of the terms
+     * @param termCount the number of terms ranked
+     * @return the score of the document
+     */
+    default double combine(double sum, int termCount) {
+        return sum;
+    }
+}
@@ -22,6 +22,7 @@ import com.github.pnavais.ex3.api.exception.FileParsingException;
 import com.github.pnavais.ex3.index.DocTerm;
 
 import java.nio.file.Path;
+import java.util.Arrays;
 import java.util.List;
 import java.util.Optional;
 import java.util.Set;
@@ -63,4 +64,46 @@ public interface DocumentReader {
      * @return the statistics for the terms in the document
      */
     List<DocTerm> processDocTerms(Path doc, Set<String> terms) throws FileParsingException;
+
+    /**
+     * Reads the given contents of a document, already loaded in memory,
+     * storing the statistics for the given set of terms. Readers not
+     * able to process the contents read the document again.
+     * @param doc the document the contents belong to
+     * @param contents the raw contents of the document
+     * @param terms the list of terms
+     * @return the statistics for the terms in the document
+     */
+    default List<DocTerm> processDocTerms(Path doc, byte[] contents, Set<String> terms) throws FileParsingException {
+        return processDocTerms(doc, terms);
+    }
+
+    /**
+     * Reads the given region of a buffer holding the contents of a document,
+     * storing the statistics for the given set of terms. Allows reusing the
+     * same buffer for several documents.
+     *
+     * @param doc the document the contents belong to
+     * @param contents the buffer holding the raw contents of the document
+     * @param offset the offset of the contents in the buffer
+     * @param length the length of the contents
+     * @param terms the list of terms
+     * @return the statistics for the terms in the document
+     */
+    default List<DocTerm> processDocTerms(Path doc, byte[] contents, int offset, int length, Set<String> terms)
+            throws FileParsingException {
+        return processDocTerms(doc, ((offset == 0) && (length == contents.length)) ? contents
+                : Arrays.copyOfRange(contents, offset, offset + length), terms);
+    }
+
+    /**
+     * Checks whether the documents read are containers (i.e. archives)
+     * of other documents. In that case, the statistics retrieved
+     * refer to the contained documents instead of the container itself.
+     *
+     * @return true if the documents read contain other documents, false otherwise
+     */
+    default boolean isContainer() {
+        return false;
+    }
 }
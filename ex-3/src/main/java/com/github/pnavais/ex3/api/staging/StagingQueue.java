@@ -0,0 +1,71 @@
+/*
+ *
+ * Copyright 2020 Pablo Navais
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+
+package com.github.pnavais.ex3.api.staging;
+
+import com.github.pnavais.ex3.staging.StagingMetrics;
+
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Defines the methods of a bounded queue staging the files detected
+ * by the watcher until the indexer is ready to index them. When the queue
+ * is full, the files offered are handled by its overflow policy (see
+ * {@link com.github.pnavais.ex3.staging.OverflowPolicy}).
+ */
+public interface StagingQueue {
+
+    /**
+     * Adds a new file to the queue, applying the
+     * overflow policy if the queue is full.
+     * @param file the file
+     * @throws InterruptedException if interrupted while waiting for room in the queue
+     */
+    void offer(Path file) throws InterruptedException;
+
+    /**
+     * Retrieves and removes the next files of the queue,
+     * waiting for them if the queue is empty.
+     * @param maxFiles the maximum number of files to retrieve
+     * @param timeout the maximum time to wait
+     * @param unit the unit of the timeout
+     * @return the files or an empty list if none arrived before the timeout
+     * @throws InterruptedException if interrupted while waiting
+     */
+    List<Path> poll(int maxFiles, long timeout, TimeUnit unit) throws InterruptedException;
+
+    /**
+     * Requests a reconciliation scan of the watched directories,
+     * i.e. when files have been discarded by the queue or by the watcher.
+     */
+    void requestReconciliation();
+
+    /**
+     * Checks and clears the pending reconciliation request.
+     * @return true if a reconciliation scan was requested, false otherwise
+     */
+    boolean pollReconciliation();
+
+    /**
+     * Retrieves the current metrics of the queue.
+     * @return the metrics
+     */
+    StagingMetrics getMetrics();
+}
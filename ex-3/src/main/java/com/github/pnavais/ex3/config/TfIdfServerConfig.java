@@ -19,19 +19,35 @@
 package com.github.pnavais.ex3.config;
 
 import com.github.pnavais.common.output.Colorize;
+import com.github.pnavais.ex3.distributed.DistributedProtocol;
+import com.github.pnavais.ex3.index.IndexStorage;
+import com.github.pnavais.ex3.index.IndexingMode;
+import com.github.pnavais.ex3.index.SimpleIndexManager;
+import com.github.pnavais.ex3.index.SizeTieredMergePolicy;
+import com.github.pnavais.ex3.matcher.CompiledTermSet;
+import com.github.pnavais.ex3.normalizer.NormalizationStep;
+import com.github.pnavais.ex3.ranking.Proximity;
+import com.github.pnavais.ex3.ranking.RankingMode;
+import com.github.pnavais.ex3.ranking.ScoringFunction;
+import com.github.pnavais.ex3.reader.ReaderType;
+import com.github.pnavais.ex3.staging.BoundedStagingQueue;
+import com.github.pnavais.ex3.staging.OverflowPolicy;
 import lombok.Getter;
 import picocli.CommandLine.Option;
 import picocli.CommandLine.Command;
 
+import java.net.InetSocketAddress;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.util.ArrayList;
 import java.util.LinkedHashSet;
+import java.util.List;
 import java.util.Objects;
 import java.util.Set;
 import java.util.concurrent.Callable;
 import java.util.function.Consumer;
-import java.util.stream.Collectors;
-import java.util.stream.Stream;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 
 @Command(name = "TfIdfServer", version = "0.1.0", mixinStandardHelpOptions = true, sortOptions = false,
         headerHeading = "Usage:%n%n",
@@ -49,12 +65,17 @@ public class TfIdfServerConfig implements Callable<Integer> {
 
     private static final int DEFAULT_MAX_RESULTS = 5;
     private static final int DEFAULT_PERIOD = 30;
+    private static final int DEFAULT_MAX_INDEXING = 1024;
+
+    /** Matches either a quoted phrase or a single word */
+    private static final Pattern TERM_PATTERN = Pattern.compile("\"([^\"]*)\"?|([^\\s\"]+)");
 
     @Option(names = {"-d", "--directory"}, paramLabel = "DIRECTORY", description = "the input directory " +
             "where documents are stored")
     private Path input;
 
-    @Option(names = {"-t", "--terms"}, paramLabel = "TERMS", description = "the terms to look for")
+    @Option(names = {"-t", "--terms"}, paramLabel = "TERMS", description = "the terms to look for separated by " +
+            "spaces. Phrases of several words are enclosed in double quotes (i.e. \"error budget\")")
     private String termsSimple;
 
     private Set<String> terms;
@@ -65,6 +86,93 @@ public class TfIdfServerConfig implements Callable<Integer> {
     @Option(names = {"-p", "--period"}, paramLabel = "int", description = "period of time in seconds to display the report. Defaults to 30s")
     private Integer period = DEFAULT_PERIOD;
 
+    @Option(names = {"-r", "--reader"}, paramLabel = "TYPE", description = "the document reader to use " +
+            "[${COMPLETION-CANDIDATES}]. Defaults to BUFFERED")
+    private ReaderType readerType = ReaderType.BUFFERED;
+
+    @Option(names = {"--scorer"}, paramLabel = "FUNCTION", description = "the scoring function ranking the " +
+            "documents [${COMPLETION-CANDIDATES}]. Defaults to TFIDF")
+    private ScoringFunction scoringFunction = ScoringFunction.TFIDF;
+
+    @Option(names = {"--ranking"}, paramLabel = "MODE", description = "the algorithm retrieving the top " +
+            "documents [${COMPLETION-CANDIDATES}]. Defaults to MAXSCORE")
+    private RankingMode rankingMode = RankingMode.MAXSCORE;
+
+    @Option(names = {"--ranking-threads"}, paramLabel = "int", description = "number of threads ranking " +
+            "partitions of the documents in parallel (1 ranks them in the timer thread). Defaults to the " +
+            "number of processors")
+    private Integer rankingThreads = Runtime.getRuntime().availableProcessors();
+
+    @Option(names = {"--positions"}, description = "records the positions of the terms in the documents, " +
+            "delta encoded in the postings of the HEAP storage")
+    private boolean positions;
+
+    @Option(names = {"--proximity"}, paramLabel = "int", description = "boosts the documents where all the " +
+            "terms are found within the given number of words (records the positions of the terms)")
+    private Integer proximityWindow;
+
+    @Option(names = {"--phrase"}, description = "boosts the documents where all the terms are found in " +
+            "consecutive words, in the given order (records the positions of the terms)")
+    private boolean phrase;
+
+    @Option(names = {"--pooled-readers"}, description = "every indexing thread reuses its readers, with their " +
+            "buffers, for all the documents instead of creating a reader per document")
+    private boolean pooledReaders;
+
+    @Option(names = {"-s", "--storage"}, paramLabel = "TYPE", description = "the storage of the index " +
+            "[${COMPLETION-CANDIDATES}]. Defaults to HEAP")
+    private IndexStorage storage = IndexStorage.HEAP;
+
+    @Option(names = {"--indexing"}, paramLabel = "MODE", description = "the threads reading the documents " +
+            "[${COMPLETION-CANDIDATES}]. VIRTUAL requires Java 21+. Defaults to POOLED")
+    private IndexingMode indexingMode = IndexingMode.POOLED;
+
+    @Option(names = {"--max-open-files"}, paramLabel = "int", description = "maximum number of documents " +
+            "read concurrently in VIRTUAL indexing mode. Defaults to 256")
+    private Integer maxOpenFiles = IndexingMode.DEFAULT_MAX_OPEN_FILES;
+
+    @Option(names = {"--queue-capacity"}, paramLabel = "int", description = "maximum number of new files " +
+            "staged in memory before applying the overflow policy. Defaults to 10000")
+    private Integer queueCapacity = BoundedStagingQueue.DEFAULT_CAPACITY;
+
+    @Option(names = {"--overflow"}, paramLabel = "POLICY", description = "the policy applied to new files when " +
+            "the staging queue is full [${COMPLETION-CANDIDATES}]. Defaults to BLOCK")
+    private OverflowPolicy overflowPolicy = OverflowPolicy.BLOCK;
+
+    @Option(names = {"--max-indexing"}, paramLabel = "int", description = "maximum number of documents " +
+            "indexed concurrently. Defaults to 1024")
+    private Integer maxIndexing = DEFAULT_MAX_INDEXING;
+
+    @Option(names = {"--batch-size"}, paramLabel = "int", description = "maximum number of small documents " +
+            "indexed together in a single task (1 disables batching). Defaults to 64")
+    private Integer batchSize = SimpleIndexManager.DEFAULT_BATCH_SIZE;
+
+    @Option(names = {"--merge-factor"}, paramLabel = "int", description = "number of segments of similar size " +
+            "merged in the background into a larger one (1 disables merging). Defaults to 10")
+    private Integer mergeFactor = SizeTieredMergePolicy.DEFAULT_MERGE_FACTOR;
+
+    @Option(names = {"--worker-port"}, paramLabel = "int", description = "serves the index to a coordinator " +
+            "on the given port as a worker node of a distributed collection. Disabled by default")
+    private Integer workerPort;
+
+    @Option(names = {"--coordinate"}, paramLabel = "HOST:PORT", split = ",", description = "the comma separated " +
+            "addresses of the worker nodes whose merged ranking is displayed, instead of indexing a directory")
+    private List<String> workerAddresses = new ArrayList<>();
+
+    private List<InetSocketAddress> workers = new ArrayList<>();
+
+    @Option(names = {"--normalize"}, paramLabel = "STEP", split = ",", description = "the comma separated " +
+            "normalization steps applied to terms and documents [${COMPLETION-CANDIDATES}]. Defaults to none")
+    private List<NormalizationStep> normalization = new ArrayList<>();
+
+    @Option(names = {"--lite"}, description = "starts the server wiring its components directly, without " +
+            "the Spring context")
+    private boolean lite;
+
+    @Option(names = {"--startup-only"}, description = "exits once the server has started and displayed the " +
+            "ranking once (e.g. to measure the startup time or to train a class data sharing archive)")
+    private boolean startupOnly;
+
     @Option(names = "-v", description = { "Specify multiple -v options to increase verbosity.",
             "For example, `-v -v -v` or `-vvv`"})
     boolean[] verbosity;
@@ -77,8 +185,8 @@ public class TfIdfServerConfig implements Callable<Integer> {
     }
 
     /**
-     * Checks parameters and launch the Spring application if
-     * all data is valid.
+     * Checks parameters and launch the application (either
+     * the Spring or the lite one) if all data is valid.
      *
      * @return the exit code, 1 in case of failures, 0 otherwise
      */
@@ -104,22 +212,94 @@ public class TfIdfServerConfig implements Callable<Integer> {
     private boolean validateParams() {
         boolean valid = false;
 
-        if (Objects.isNull(input)) {
+        // Coordinators rank the documents of the worker nodes, no directory is indexed
+        String workersError = parseWorkers();
+        if (workersError != null) {
+            System.err.println(Colorize.fail(workersError));
+        } else if (workers.isEmpty() && Objects.isNull(input)) {
             System.err.println(Colorize.fail("No input directory supplied"));
-        } else if (!Files.exists(input)) {
+        } else if (workers.isEmpty() && !Files.exists(input)) {
             System.err.println(Colorize.fail("Cannot access \""+input+"\" directory"));
         } else if (Objects.isNull(termsSimple)) {
             System.err.println(Colorize.fail("No terms supplied"));
+        } else if ((proximityWindow != null) && (proximityWindow <= 0)) {
+            System.err.println(Colorize.fail("Invalid proximity window " + proximityWindow));
         } else {
-            this.terms = Stream.of(termsSimple.split(" ")).collect(Collectors.toCollection(LinkedHashSet::new));
+            this.terms = parseTerms(termsSimple);
             this.period = (this.period<=0) ? DEFAULT_PERIOD : this.period;
             this.maxResults = (this.maxResults<=0) ? DEFAULT_MAX_RESULTS : this.maxResults;
+            this.maxOpenFiles = (this.maxOpenFiles<=0) ? IndexingMode.DEFAULT_MAX_OPEN_FILES : this.maxOpenFiles;
+            this.queueCapacity = (this.queueCapacity<=0) ? BoundedStagingQueue.DEFAULT_CAPACITY : this.queueCapacity;
+            this.maxIndexing = (this.maxIndexing<=0) ? DEFAULT_MAX_INDEXING : this.maxIndexing;
+            this.batchSize = (this.batchSize<=0) ? SimpleIndexManager.DEFAULT_BATCH_SIZE : this.batchSize;
+            this.mergeFactor = (this.mergeFactor<=0) ? SizeTieredMergePolicy.DEFAULT_MERGE_FACTOR : this.mergeFactor;
+            this.rankingThreads = (this.rankingThreads<=0) ? Runtime.getRuntime().availableProcessors() : this.rankingThreads;
             valid = true;
         }
 
         return valid;
     }
 
+    /**
+     * Retrieves the proximity of the terms boosting the scores
+     * of the documents, the phrase prevailing over a window.
+     *
+     * @return the proximity or null if disabled
+     */
+    public Proximity getProximity() {
+        if (phrase) {
+            return Proximity.phrase();
+        }
+        return (proximityWindow != null) ? Proximity.within(proximityWindow) : null;
+    }
+
+    /**
+     * Checks whether the readers record the positions of the terms,
+     * either requested or needed by the proximity of the terms.
+     *
+     * @return true if recorded, false otherwise
+     */
+    public boolean isRecordingPositions() {
+        return positions || (getProximity() != null);
+    }
+
+    /**
+     * Parses the addresses of the worker nodes to coordinate.
+     *
+     * @return the error message if any address is not valid, null otherwise
+     */
+    private String parseWorkers() {
+        String error = null;
+        workers = new ArrayList<>();
+        try {
+            workerAddresses.forEach(address -> workers.add(DistributedProtocol.parseAddress(address.trim())));
+        } catch (IllegalArgumentException e) {
+            error = e.getMessage();
+        }
+        return error;
+    }
+
+    /**
+     * Parses the terms separated by spaces. Terms enclosed in double
+     * quotes are phrases and may contain several words, which are
+     * separated by a single space in the resulting term.
+     *
+     * @param termsSimple the terms
+     * @return the set of terms
+     */
+    static Set<String> parseTerms(String termsSimple) {
+        Set<String> parsedTerms = new LinkedHashSet<>();
+        Matcher matcher = TERM_PATTERN.matcher(termsSimple);
+        while (matcher.find()) {
+            String term = (matcher.group(1) != null) ? String.join(" ", CompiledTermSet.words(matcher.group(1)))
+                    : matcher.group(2);
+            if (!term.isEmpty()) {
+                parsedTerms.add(term);
+            }
+        }
+        return parsedTerms;
+    }
+
     /**
      * Define the log level depending on the verbosity
      */
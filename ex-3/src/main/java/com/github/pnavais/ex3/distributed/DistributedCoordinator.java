@@ -0,0 +1,245 @@
+/*
+ *
+ * Copyright 2020 Pablo Navais
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+
+package com.github.pnavais.ex3.distributed;
+
+import com.github.pnavais.ex3.ranking.CollectionStatistics;
+import com.github.pnavais.ex3.ranking.ScoringFunction;
+import lombok.Getter;
+import lombok.NonNull;
+import lombok.Setter;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.net.InetSocketAddress;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Ranks the documents of a collection partitioned among several worker nodes
+ * (see {@link IndexWorker}), each one indexing a part of the documents.
+ * <p>
+ * The scores of the documents depend on the statistics of the whole collection
+ * (number of documents, average length and number of documents containing each
+ * term), so the ranking takes two round trips to the nodes, in parallel :
+ * - The statistics of every node are retrieved and summed.
+ * - Every node ranks its documents with the statistics of the collection and
+ *   replies its local top n results.
+ * A document in the global top n is necessarily in the top n of its node, and its
+ * score is the one it would have in a single index of the whole collection, so
+ * merging the local top results gives the exact global top n. Documents with the
+ * same score are ordered by the position of their node in the list of nodes.
+ */
+@Slf4j
+public class DistributedCoordinator implements Closeable {
+
+    /** The default timeout of the connections and the replies */
+    public static final int DEFAULT_TIMEOUT_MS = 10_000;
+
+    /** The addresses of the worker nodes */
+    @Getter
+    private final List<InetSocketAddress> nodes;
+
+    /** The executor sending the requests to the nodes in parallel */
+    private final ExecutorService executor;
+
+    /** The timeout of the connections and the replies in milliseconds */
+    @Setter
+    private int timeoutMs = DEFAULT_TIMEOUT_MS;
+
+    /**
+     * Creates the coordinator of the given worker nodes.
+     *
+     * @param nodes the addresses of the nodes
+     */
+    public DistributedCoordinator(@NonNull List<InetSocketAddress> nodes) {
+        if (nodes.isEmpty()) {
+            throw new IllegalArgumentException("No worker nodes supplied");
+        }
+        this.nodes = Collections.unmodifiableList(new ArrayList<>(nodes));
+        AtomicInteger count = new AtomicInteger();
+        this.executor = Executors.newFixedThreadPool(nodes.size(), task -> {
+            Thread thread = new Thread(task, "coordinator-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Ranks the documents of all the nodes, retrieving the top n results.
+     *
+     * @param n the maximum number of results
+     * @param function the scoring function
+     * @param terms the terms to rank, which must be ranked by every node
+     * @return the top results, best first
+     * @throws IOException if any node cannot be queried
+     */
+    public List<RankedDocument> topResults(int n, @NonNull ScoringFunction function, @NonNull List<String> terms)
+            throws IOException {
+        List<WorkerClient> clients = new ArrayList<>(nodes.size());
+        try {
+            for (InetSocketAddress node : nodes) {
+                clients.add(WorkerClient.connect(node, timeoutMs));
+            }
+
+            // Sum the statistics of the nodes
+            List<NodeStatistics> statistics = invokeAll(clients, client -> client.statistics(terms));
+            long documentCount = 0;
+            long totalWordCount = 0;
+            int[] frequencies = new int[terms.size()];
+            for (NodeStatistics node : statistics) {
+                documentCount += node.getDocumentCount();
+                totalWordCount += node.getTotalWordCount();
+                for (int i = 0; i < frequencies.length; i++) {
+                    frequencies[i] += node.getDocumentFrequencies()[i];
+                }
+            }
+            CollectionStatistics collection = CollectionStatistics.of(Math.toIntExact(documentCount),
+                    (documentCount > 0) ? (totalWordCount * 1.0) / documentCount : 0);
+            log.debug("Collection of {} nodes : {}", nodes.size(), collection);
+
+            // Merge the top results of the nodes ranked with the statistics of the collection
+            return merge(invokeAll(clients, client -> client.topScores(n, function, collection, terms, frequencies)),
+                    n);
+        } finally {
+            for (WorkerClient client : clients) {
+                client.close();
+            }
+        }
+    }
+
+    /**
+     * Displays the top n results of all the nodes with
+     * the same format as the rankings of a single index.
+     *
+     * @param n the maximum number of results
+     * @param function the scoring function
+     * @param terms the terms to rank
+     * @param pw the print stream
+     * @throws IOException if any node cannot be queried
+     */
+    public void displayTopResults(int n, @NonNull ScoringFunction function, @NonNull List<String> terms,
+                                  @NonNull PrintStream pw) throws IOException {
+        List<RankedDocument> results = topResults(n, function, terms);
+        String header = String.format("Top %d %s results [%s] (%d nodes)", n,
+                function.getScorerSupplier().get().getName(), LocalDateTime.now(), nodes.size());
+        String ruler = String.join("", Collections.nCopies(header.length(), "-"));
+        pw.printf("%n%s%n%s%n", header, ruler);
+        results.forEach(result -> pw.printf("[%s] %.4f\n", result.getFileName(), result.getScore()));
+    }
+
+    /**
+     * Stops the threads querying the nodes.
+     */
+    @Override
+    public void close() {
+        executor.shutdownNow();
+    }
+
+    /**
+     * Sends a request to every node in parallel, waiting for all the replies.
+     *
+     * @param clients the connections to the nodes
+     * @param request the request
+     * @param <T> the type of the replies
+     * @return the replies in the order of the nodes
+     * @throws IOException if any request fails
+     */
+    private <T> List<T> invokeAll(List<WorkerClient> clients, NodeRequest<T> request) throws IOException {
+        List<Future<T>> futures = new ArrayList<>(clients.size());
+        for (WorkerClient client : clients) {
+            futures.add(executor.submit((Callable<T>) () -> request.send(client)));
+        }
+        List<T> replies = new ArrayList<>(clients.size());
+        try {
+            for (Future<T> future : futures) {
+                replies.add(future.get());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while waiting for the nodes", e);
+        } catch (ExecutionException e) {
+            throw (e.getCause() instanceof IOException) ? (IOException) e.getCause()
+                    : new IOException("Error querying the nodes", e.getCause());
+        } finally {
+            futures.forEach(future -> future.cancel(true));
+        }
+        return replies;
+    }
+
+    /**
+     * Merges the top results of every node, sorted by descending score,
+     * into the top n results of the collection.
+     *
+     * @param tops the top results of each node
+     * @param n the maximum number of results
+     * @return the merged top results
+     */
+    static List<RankedDocument> merge(List<List<RankedDocument>> tops, int n) {
+        // Cursors over the results of each node : { node, position }
+        PriorityQueue<int[]> queue = new PriorityQueue<>(Math.max(1, tops.size()), (a, b) -> {
+            int byScore = Double.compare(tops.get(b[0]).get(b[1]).getScore(), tops.get(a[0]).get(a[1]).getScore());
+            return (byScore != 0) ? byScore : Integer.compare(a[0], b[0]);
+        });
+        for (int node = 0; node < tops.size(); node++) {
+            if (!tops.get(node).isEmpty()) {
+                queue.add(new int[] { node, 0 });
+            }
+        }
+
+        List<RankedDocument> merged = new ArrayList<>();
+        while ((merged.size() < n) && !queue.isEmpty()) {
+            int[] cursor = queue.poll();
+            List<RankedDocument> top = tops.get(cursor[0]);
+            merged.add(top.get(cursor[1]++));
+            if (cursor[1] < top.size()) {
+                queue.add(cursor);
+            }
+        }
+        return merged;
+    }
+
+    /**
+     * A request sent to a node
+     *
+     * @param <T> the type of the reply
+     */
+    @FunctionalInterface
+    private interface NodeRequest<T> {
+
+        /**
+         * Sends the request to the node.
+         *
+         * @param client the connection to the node
+         * @return the reply
+         * @throws IOException if the request fails
+         */
+        T send(WorkerClient client) throws IOException;
+    }
+}
@@ -0,0 +1,125 @@
+/*
+ *
+ * Copyright 2020 Pablo Navais
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+
+package com.github.pnavais.ex3.distributed;
+
+import lombok.AccessLevel;
+import lombok.NoArgsConstructor;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.StringJoiner;
+
+/**
+ * The line protocol spoken between the coordinator and the worker nodes.
+ * Requests and replies are UTF-8 lines whose fields are separated by tabs,
+ * several requests being sent over the same connection :
+ * <pre>
+ * STATS &lt;term&gt;...
+ *   OK &lt;documents&gt; &lt;words&gt; &lt;df&gt;...
+ * TOP &lt;n&gt; &lt;scoring function&gt; &lt;documents&gt; &lt;average length&gt; (&lt;term&gt; &lt;df&gt;)...
+ *   OK &lt;results&gt;
+ *   &lt;score&gt; &lt;document&gt;   (one line per result, best first)
+ * </pre>
+ * The {@code STATS} request retrieves the number of documents and words of the node
+ * and the number of documents containing each term. The {@code TOP} request ranks the
+ * documents of the node with the statistics of the whole collection, and uses the
+ * same snapshot of the index as the last {@code STATS} request of the connection.
+ * Failed requests are replied with {@code ERROR <message>}.
+ */
+@NoArgsConstructor(access = AccessLevel.PRIVATE)
+public class DistributedProtocol {
+
+    /** The charset of the lines */
+    public static final Charset CHARSET = StandardCharsets.UTF_8;
+
+    /** The separator of the fields */
+    public static final String SEPARATOR = "\t";
+
+    /** The request of the statistics of a node */
+    public static final String STATS = "STATS";
+
+    /** The request of the top results of a node */
+    public static final String TOP = "TOP";
+
+    /** The reply of a successful request */
+    public static final String OK = "OK";
+
+    /** The reply of a failed request */
+    public static final String ERROR = "ERROR";
+
+    /**
+     * Joins the given fields in a single line.
+     *
+     * @param fields the fields
+     * @return the line
+     */
+    static String line(Object... fields) {
+        StringJoiner joiner = new StringJoiner(SEPARATOR);
+        for (Object field : fields) {
+            joiner.add(String.valueOf(field));
+        }
+        return joiner.toString();
+    }
+
+    /**
+     * Splits the given line in its fields.
+     *
+     * @param line the line
+     * @return the fields
+     */
+    static String[] fields(String line) {
+        return line.split(SEPARATOR, -1);
+    }
+
+    /**
+     * Writes the given line and flushes it.
+     *
+     * @param writer the writer
+     * @param line the line
+     * @throws IOException if the line cannot be written
+     */
+    static void send(BufferedWriter writer, String line) throws IOException {
+        writer.write(line);
+        writer.write('\n');
+        writer.flush();
+    }
+
+    /**
+     * Parses the address of a node in the form host:port.
+     *
+     * @param address the address
+     * @return the socket address (unresolved)
+     * @throws IllegalArgumentException if the address is not valid
+     */
+    public static InetSocketAddress parseAddress(String address) {
+        int separator = address.lastIndexOf(':');
+        if ((separator <= 0) || (separator == address.length() - 1)) {
+            throw new IllegalArgumentException("Invalid node address \"" + address + "\" (host:port expected)");
+        }
+        try {
+            return InetSocketAddress.createUnresolved(address.substring(0, separator),
+                    Integer.parseInt(address.substring(separator + 1)));
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Invalid node address \"" + address + "\" (host:port expected)", e);
+        }
+    }
+}
@@ -0,0 +1,237 @@
+/*
+ *
+ * Copyright 2020 Pablo Navais
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+
+package com.github.pnavais.ex3.distributed;
+
+import com.github.pnavais.ex3.api.index.IndexManager;
+import com.github.pnavais.ex3.index.IndexSnapshot;
+import com.github.pnavais.ex3.ranking.CollectionStatistics;
+import com.github.pnavais.ex3.ranking.ScoringFunction;
+import lombok.NonNull;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Serves the index of a worker node to a coordinator following the
+ * {@link DistributedProtocol} : the statistics of the documents of the
+ * node and its top results ranked with the statistics of the collection.
+ * <p>
+ * Each connection is served by its own daemon thread, which keeps the
+ * snapshot of the index seen by the last {@code STATS} request so the
+ * following {@code TOP} request ranks the same documents the coordinator
+ * combined the statistics of, even if new documents are indexed meanwhile.
+ */
+@Slf4j
+public class IndexWorker implements Closeable {
+
+    /** The index manager */
+    private final IndexManager indexManager;
+
+    /** The server socket */
+    private final ServerSocket serverSocket;
+
+    /** The thread accepting the connections */
+    private final Thread acceptThread;
+
+    /** The number of connections accepted */
+    private final AtomicInteger connections = new AtomicInteger();
+
+    /**
+     * Creates the worker listening on the given port of all the interfaces.
+     *
+     * @param indexManager the index manager
+     * @param port the port (0 for an ephemeral one)
+     * @throws IOException if the port cannot be bound
+     */
+    public IndexWorker(@NonNull IndexManager indexManager, int port) throws IOException {
+        this.indexManager = indexManager;
+        this.serverSocket = new ServerSocket();
+        this.serverSocket.setReuseAddress(true);
+        this.serverSocket.bind(new InetSocketAddress(port));
+        this.acceptThread = new Thread(this::acceptConnections, "index-worker");
+        this.acceptThread.setDaemon(true);
+    }
+
+    /**
+     * Starts accepting connections.
+     */
+    public void start() {
+        acceptThread.start();
+        log.info("Index worker listening on port {}", getPort());
+    }
+
+    /**
+     * Retrieves the port the worker listens on.
+     *
+     * @return the port
+     */
+    public int getPort() {
+        return serverSocket.getLocalPort();
+    }
+
+    /**
+     * Stops accepting connections.
+     */
+    @Override
+    public void close() throws IOException {
+        serverSocket.close();
+    }
+
+    /**
+     * Accepts connections until the server socket is closed,
+     * serving each one in its own thread.
+     */
+    private void acceptConnections() {
+        while (!serverSocket.isClosed()) {
+            try {
+                Socket socket = serverSocket.accept();
+                Thread thread = new Thread(() -> serve(socket), "index-worker-" + connections.incrementAndGet());
+                thread.setDaemon(true);
+                thread.start();
+            } catch (SocketException e) {
+                log.debug("Index worker stopped : {}", e.getMessage());
+            } catch (IOException e) {
+                log.error("Error accepting a connection", e);
+            }
+        }
+    }
+
+    /**
+     * Serves the requests of a connection until it is closed.
+     *
+     * @param socket the socket of the connection
+     */
+    private void serve(Socket socket) {
+        try (Socket client = socket;
+             BufferedReader reader = new BufferedReader(new InputStreamReader(client.getInputStream(),
+                     DistributedProtocol.CHARSET));
+             BufferedWriter writer = new BufferedWriter(new OutputStreamWriter(client.getOutputStream(),
+                     DistributedProtocol.CHARSET))) {
+            client.setTcpNoDelay(true);
+            IndexSnapshot snapshot = null;
+            String line;
+            while ((line = reader.readLine()) != null) {
+                String[] fields = DistributedProtocol.fields(line);
+                try {
+                    if (DistributedProtocol.STATS.equals(fields[0])) {
+                        snapshot = indexManager.snapshot();
+                        DistributedProtocol.send(writer, statistics(snapshot, fields));
+                    } else if (DistributedProtocol.TOP.equals(fields[0])) {
+                        IndexSnapshot ranked = (snapshot != null) ? snapshot : indexManager.snapshot();
+                        List<String> lines = topScores(ranked, fields);
+                        for (String result : lines) {
+                            writer.write(result);
+                            writer.write('\n');
+                        }
+                        writer.flush();
+                    } else {
+                        throw new IllegalArgumentException("Unknown request \"" + fields[0] + "\"");
+                    }
+                } catch (IllegalArgumentException e) {
+                    log.debug("Invalid request from {} : {}", client.getRemoteSocketAddress(), e.getMessage());
+                    DistributedProtocol.send(writer, DistributedProtocol.line(DistributedProtocol.ERROR,
+                            String.valueOf(e.getMessage()).replace('\n', ' ')));
+                }
+            }
+        } catch (IOException e) {
+            log.debug("Connection closed : {}", e.getMessage());
+        }
+    }
+
+    /**
+     * Replies a {@code STATS} request.
+     *
+     * @param snapshot the snapshot of the index
+     * @param fields the fields of the request
+     * @return the reply
+     */
+    private static String statistics(IndexSnapshot snapshot, String[] fields) {
+        List<String> terms = checkTerms(snapshot, Arrays.asList(fields).subList(1, fields.length));
+        List<Object> reply = new ArrayList<>(terms.size() + 3);
+        reply.add(DistributedProtocol.OK);
+        reply.add(snapshot.size());
+        reply.add(snapshot.getTotalWordCount());
+        terms.forEach(term -> reply.add(snapshot.documentFrequency(term)));
+        return DistributedProtocol.line(reply.toArray());
+    }
+
+    /**
+     * Replies a {@code TOP} request.
+     *
+     * @param snapshot the snapshot of the index
+     * @param fields the fields of the request
+     * @return the lines of the reply
+     */
+    private static List<String> topScores(IndexSnapshot snapshot, String[] fields) {
+        if ((fields.length < 5) || (fields.length % 2 == 0)) {
+            throw new IllegalArgumentException("Malformed TOP request");
+        }
+        int n = Integer.parseInt(fields[1]);
+        ScoringFunction function = ScoringFunction.valueOf(fields[2]);
+        CollectionStatistics collection = CollectionStatistics.of(Integer.parseInt(fields[3]),
+                Double.parseDouble(fields[4]));
+        List<String> terms = new ArrayList<>();
+        Map<String, Integer> frequencies = new HashMap<>();
+        for (int i = 5; i < fields.length; i += 2) {
+            terms.add(fields[i]);
+            frequencies.put(fields[i], Integer.parseInt(fields[i + 1]));
+        }
+        checkTerms(snapshot, terms);
+
+        List<String> results = new ArrayList<>();
+        snapshot.forEachTopScore(function.getScorerSupplier().get(), n, terms, collection,
+                term -> frequencies.getOrDefault(term, 0), (docId, score) ->
+                        results.add(DistributedProtocol.line(score, snapshot.getDocument(docId))));
+        results.add(0, DistributedProtocol.line(DistributedProtocol.OK, results.size()));
+        return results;
+    }
+
+    /**
+     * Checks the given terms are ranked by the index, as the
+     * occurrences of any other term are not counted.
+     *
+     * @param snapshot the snapshot of the index
+     * @param terms the terms
+     * @return the terms
+     * @throws IllegalArgumentException if any term is not ranked
+     */
+    private static List<String> checkTerms(IndexSnapshot snapshot, List<String> terms) {
+        for (String term : terms) {
+            if (!snapshot.getTerms().contains(term)) {
+                throw new IllegalArgumentException("Term \"" + term + "\" not indexed by the node");
+            }
+        }
+        return terms;
+    }
+}
@@ -0,0 +1,40 @@
+/*
+ *
+ * Copyright 2020 Pablo Navais
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+
+package com.github.pnavais.ex3.distributed;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+/**
+ * The statistics of the documents indexed by a worker node,
+ * combined by the coordinator into the ones of the collection.
+ */
+@Getter
+@AllArgsConstructor(staticName = "of")
+public class NodeStatistics {
+
+    /** The number of documents of the node */
+    private final int documentCount;
+
+    /** The total number of words of the documents of the node */
+    private final long totalWordCount;
+
+    /** The number of documents of the node containing each requested term */
+    private final int[] documentFrequencies;
+}
@@ -0,0 +1,51 @@
+/*
+ *
+ * Copyright 2020 Pablo Navais
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+
+package com.github.pnavais.ex3.distributed;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.ToString;
+
+/**
+ * A document ranked by a worker node with its score in the collection
+ */
+@Getter
+@ToString
+@AllArgsConstructor(staticName = "of")
+public class RankedDocument {
+
+    /** The address of the node indexing the document */
+    private final String node;
+
+    /** The path of the document in the node */
+    private final String document;
+
+    /** The score of the document */
+    private final double score;
+
+    /**
+     * Retrieves the file name of the document, whatever
+     * the separator of the paths in the node.
+     *
+     * @return the file name
+     */
+    public String getFileName() {
+        return document.substring(Math.max(document.lastIndexOf('/'), document.lastIndexOf('\\')) + 1);
+    }
+}
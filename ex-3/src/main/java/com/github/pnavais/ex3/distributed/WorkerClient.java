@@ -0,0 +1,191 @@
+/*
+ *
+ * Copyright 2020 Pablo Navais
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+
+package com.github.pnavais.ex3.distributed;
+
+import com.github.pnavais.ex3.ranking.CollectionStatistics;
+import com.github.pnavais.ex3.ranking.ScoringFunction;
+import lombok.Getter;
+import lombok.NonNull;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A connection of the coordinator to a worker node, sending the
+ * requests of the {@link DistributedProtocol} and parsing their replies.
+ */
+public class WorkerClient implements Closeable {
+
+    /** The address of the node */
+    @Getter
+    private final String node;
+
+    /** The socket of the connection */
+    private final Socket socket;
+
+    /** The reader of the replies */
+    private final BufferedReader reader;
+
+    /** The writer of the requests */
+    private final BufferedWriter writer;
+
+    /**
+     * Creates the client over a connected socket.
+     *
+     * @param node the address of the node
+     * @param socket the socket
+     * @throws IOException if the streams of the socket cannot be opened
+     */
+    private WorkerClient(String node, Socket socket) throws IOException {
+        this.node = node;
+        this.socket = socket;
+        this.reader = new BufferedReader(new InputStreamReader(socket.getInputStream(), DistributedProtocol.CHARSET));
+        this.writer = new BufferedWriter(new OutputStreamWriter(socket.getOutputStream(), DistributedProtocol.CHARSET));
+    }
+
+    /**
+     * Connects to the worker node at the given address, resolving its host.
+     *
+     * @param address the address of the node
+     * @param timeoutMs the timeout of the connection and the replies in milliseconds
+     * @return the client
+     * @throws IOException if the node cannot be reached
+     */
+    public static WorkerClient connect(@NonNull InetSocketAddress address, int timeoutMs) throws IOException {
+        Socket socket = new Socket();
+        try {
+            socket.setTcpNoDelay(true);
+            socket.setSoTimeout(timeoutMs);
+            socket.connect(new InetSocketAddress(address.getHostString(), address.getPort()), timeoutMs);
+            return new WorkerClient(address.getHostString() + ":" + address.getPort(), socket);
+        } catch (IOException e) {
+            socket.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Retrieves the statistics of the documents of the node.
+     *
+     * @param terms the terms
+     * @return the statistics of the node
+     * @throws IOException if the request fails
+     */
+    public NodeStatistics statistics(@NonNull List<String> terms) throws IOException {
+        List<Object> request = new ArrayList<>(terms.size() + 1);
+        request.add(DistributedProtocol.STATS);
+        request.addAll(terms);
+        String[] reply = request(DistributedProtocol.line(request.toArray()), terms.size() + 3);
+
+        int[] frequencies = new int[terms.size()];
+        for (int i = 0; i < frequencies.length; i++) {
+            frequencies[i] = Integer.parseInt(reply[i + 3]);
+        }
+        return NodeStatistics.of(Integer.parseInt(reply[1]), Long.parseLong(reply[2]), frequencies);
+    }
+
+    /**
+     * Retrieves the top results of the node ranked with the statistics of the collection.
+     * Documents are ranked in the same snapshot of the index as the last statistics retrieved.
+     *
+     * @param n the maximum number of results
+     * @param function the scoring function
+     * @param collection the statistics of the collection
+     * @param terms the terms
+     * @param documentFrequencies the number of documents of the collection containing each term
+     * @return the top results, best first
+     * @throws IOException if the request fails
+     */
+    public List<RankedDocument> topScores(int n, @NonNull ScoringFunction function,
+                                          @NonNull CollectionStatistics collection, @NonNull List<String> terms,
+                                          @NonNull int[] documentFrequencies) throws IOException {
+        List<Object> request = new ArrayList<>(2 * terms.size() + 5);
+        request.add(DistributedProtocol.TOP);
+        request.add(n);
+        request.add(function.name());
+        request.add(collection.getDocumentCount());
+        request.add(collection.getAverageDocumentLength());
+        for (int i = 0; i < terms.size(); i++) {
+            request.add(terms.get(i));
+            request.add(documentFrequencies[i]);
+        }
+        int count = Integer.parseInt(request(DistributedProtocol.line(request.toArray()), 2)[1]);
+
+        List<RankedDocument> results = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            String line = readLine();
+            int separator = line.indexOf(DistributedProtocol.SEPARATOR);
+            if (separator < 0) {
+                throw new IOException("Malformed result from node " + node + " : " + line);
+            }
+            results.add(RankedDocument.of(node, line.substring(separator + 1),
+                    Double.parseDouble(line.substring(0, separator))));
+        }
+        return results;
+    }
+
+    /**
+     * Closes the connection.
+     */
+    @Override
+    public void close() throws IOException {
+        socket.close();
+    }
+
+    /**
+     * Sends a request and reads its reply.
+     *
+     * @param line the request
+     * @param fields the number of fields of the reply
+     * @return the fields of the reply
+     * @throws IOException if the request fails or the node replies an error
+     */
+    private String[] request(String line, int fields) throws IOException {
+        DistributedProtocol.send(writer, line);
+        String[] reply = DistributedProtocol.fields(readLine());
+        if (DistributedProtocol.ERROR.equals(reply[0])) {
+            throw new IOException("Node " + node + " failed : " + ((reply.length > 1) ? reply[1] : "unknown error"));
+        } else if (!DistributedProtocol.OK.equals(reply[0]) || (reply.length != fields)) {
+            throw new IOException("Malformed reply from node " + node + " : " + String.join(" ", reply));
+        }
+        return reply;
+    }
+
+    /**
+     * Reads a line of the reply.
+     *
+     * @return the line
+     * @throws IOException if the connection was closed
+     */
+    private String readLine() throws IOException {
+        String line = reader.readLine();
+        if (line == null) {
+            throw new IOException("Connection to node " + node + " closed");
+        }
+        return line;
+    }
+}
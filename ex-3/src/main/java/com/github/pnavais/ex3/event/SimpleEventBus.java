@@ -20,6 +20,9 @@ package com.github.pnavais.ex3.event;
 
 import com.github.pnavais.ex3.api.event.BusEvent;
 import com.github.pnavais.ex3.api.event.BusEventListener;
+import com.github.pnavais.ex3.jfr.BusEventPublishEvent;
+import com.github.pnavais.ex3.jfr.FlightEvent;
+import com.github.pnavais.ex3.jfr.FlightRecording;
 import lombok.NonNull;
 
 import java.util.HashSet;
@@ -95,12 +98,20 @@ public class SimpleEventBus {
 	 */
 	public void publish(BusEvent e) {
 		if (e!=null) {
+			FlightEvent event = FlightRecording.isAvailable() ? new BusEventPublishEvent() : FlightEvent.NONE;
+			event.begin();
 			Set<BusEventListener> receivers = this.subscribers.get(e.getClass());
 			if (receivers!=null) {
 				for (BusEventListener subscriber : receivers) {
 					subscriber.onEvent(e);
 				}
 			}
+			if (event.shouldCommit()) {
+				BusEventPublishEvent publishEvent = (BusEventPublishEvent) event;
+				publishEvent.setEventType(e.getClass());
+				publishEvent.setSubscribers((receivers!=null) ? receivers.size() : 0);
+				publishEvent.commit();
+			}
 		}
 	}
 
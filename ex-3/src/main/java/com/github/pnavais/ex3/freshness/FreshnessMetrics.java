@@ -0,0 +1,87 @@
+/*
+ *
+ * Copyright 2020 Pablo Navais
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+
+package com.github.pnavais.ex3.freshness;
+
+import lombok.AllArgsConstructor;
+import lombok.NonNull;
+import org.HdrHistogram.Histogram;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * The freshness latencies recorded for each stage during
+ * an interval, in microseconds.
+ */
+@AllArgsConstructor
+public class FreshnessMetrics {
+
+    /** The latency histograms of each stage */
+    private final Map<FreshnessStage, Histogram> histograms;
+
+    /**
+     * Retrieves the number of documents recorded for the given stage.
+     *
+     * @param stage the stage
+     * @return the number of documents
+     */
+    public long getCount(@NonNull FreshnessStage stage) {
+        return histograms.get(stage).getTotalCount();
+    }
+
+    /**
+     * Retrieves the latency of the given stage at the given percentile.
+     *
+     * @param stage the stage
+     * @param percentile the percentile (e.g. 99.9)
+     * @return the latency in microseconds
+     */
+    public long getPercentile(@NonNull FreshnessStage stage, double percentile) {
+        return histograms.get(stage).getValueAtPercentile(percentile);
+    }
+
+    /**
+     * Retrieves the maximum latency of the given stage.
+     *
+     * @param stage the stage
+     * @return the latency in microseconds
+     */
+    public long getMax(@NonNull FreshnessStage stage) {
+        return histograms.get(stage).getMaxValue();
+    }
+
+    @Override
+    public String toString() {
+        return Stream.of(FreshnessStage.values()).map(stage -> String.format("%s p50=%s p99=%s p999=%s (%d)",
+                stage.getLabel(), millis(getPercentile(stage, 50)), millis(getPercentile(stage, 99)),
+                millis(getPercentile(stage, 99.9)), getCount(stage))).collect(Collectors.joining(", "));
+    }
+
+    /**
+     * Formats the given latency in milliseconds.
+     *
+     * @param micros the latency in microseconds
+     * @return the formatted latency
+     */
+    private static String millis(long micros) {
+        return String.format("%.1fms", micros / (double) TimeUnit.MILLISECONDS.toMicros(1));
+    }
+}
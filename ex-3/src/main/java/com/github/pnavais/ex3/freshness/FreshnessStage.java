@@ -0,0 +1,47 @@
+/*
+ *
+ * Copyright 2020 Pablo Navais
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+
+package com.github.pnavais.ex3.freshness;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+/**
+ * The stages of the freshness latency of a document, from the
+ * moment its file is seen by the watcher until the snapshot
+ * including it is ranked.
+ */
+@Getter
+@AllArgsConstructor
+public enum FreshnessStage {
+
+    /** From the watcher notification until the indexing starts (staging and backpressure) */
+    WAITING("waiting"),
+
+    /** From the start of the indexing until the segment is published */
+    INDEXING("indexing"),
+
+    /** From the publication of the segment until the ranking reads a snapshot including it */
+    VISIBILITY("visibility"),
+
+    /** From the watcher notification until the ranking reads a snapshot including it */
+    END_TO_END("end-to-end");
+
+    /** The label of the stage in the reports */
+    private final String label;
+}
@@ -0,0 +1,285 @@
+/*
+ *
+ * Copyright 2020 Pablo Navais
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+
+package com.github.pnavais.ex3.freshness;
+
+import lombok.NonNull;
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.Recorder;
+
+import java.nio.file.Path;
+import java.util.EnumMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Tracks how soon new documents become visible to the rankings.
+ * <p>
+ * Each file is stamped when the watcher notifies it, when its indexing
+ * starts and finishes (along with the generation of the snapshot that
+ * includes it) and when the ranking reads a snapshot of that generation
+ * or later. The latencies of each {@link FreshnessStage} are recorded in
+ * lock-free high dynamic range histograms, so the indexing threads never
+ * wait for the reports, which swap the histograms of the interval.
+ * <p>
+ * Only the files notified by the watcher are tracked (the initial load of
+ * the directory is not). Once {@link #MAX_TRACKED} files are tracked at once,
+ * the stamps older than {@link #MAX_AGE_NANOS} are evicted, so files never
+ * indexed (or never visible) cannot grow it unbounded nor stop the tracking.
+ */
+public class FreshnessTracker {
+
+    /** The maximum number of files tracked at once */
+    public static final int MAX_TRACKED = 100_000;
+
+    /** The age of the stamps evicted once the maximum number of files is tracked */
+    public static final long MAX_AGE_NANOS = TimeUnit.MINUTES.toNanos(10);
+
+    /** The significant digits of the histograms */
+    private static final int SIGNIFICANT_DIGITS = 3;
+
+    /** The stamps of the files waiting to be indexed */
+    private final Map<Path, Stamp> tracked;
+
+    /** The stamps of the files indexed, not yet visible */
+    private final Queue<Stamp> published;
+
+    /** The number of files indexed, not yet visible */
+    private final AtomicInteger publishedCount;
+
+    /** The recorders of each stage */
+    private final Map<FreshnessStage, Recorder> recorders;
+
+    /** The histograms of the last interval of each stage (recycled) */
+    private final Map<FreshnessStage, Histogram> intervals;
+
+    /** The age of the stamps evicted */
+    private final long maxAgeNanos;
+
+    /** The earliest time a stamp may become stale (the oldest stamp plus its maximum age) */
+    private volatile long nextEviction;
+
+    /**
+     * Creates an empty tracker, only used directly in tests.
+     */
+    FreshnessTracker() {
+        this(MAX_AGE_NANOS);
+    }
+
+    /**
+     * Creates an empty tracker evicting the stamps of the given age,
+     * only used directly in tests.
+     *
+     * @param maxAgeNanos the age of the stamps evicted in nanoseconds
+     */
+    FreshnessTracker(long maxAgeNanos) {
+        this.maxAgeNanos = maxAgeNanos;
+        this.nextEviction = System.nanoTime();
+        this.tracked = new ConcurrentHashMap<>();
+        this.published = new ConcurrentLinkedQueue<>();
+        this.publishedCount = new AtomicInteger();
+        this.recorders = new EnumMap<>(FreshnessStage.class);
+        this.intervals = new EnumMap<>(FreshnessStage.class);
+        for (FreshnessStage stage : FreshnessStage.values()) {
+            recorders.put(stage, new Recorder(SIGNIFICANT_DIGITS));
+        }
+    }
+
+    /**
+     * Gets the tracker instance.
+     *
+     * @return the tracker instance
+     */
+    public static FreshnessTracker getDefault() {
+        return TrackerHolder.instance;
+    }
+
+    /**
+     * Contains the tracker instance.
+     */
+    private static class TrackerHolder {
+        private static final FreshnessTracker instance = new FreshnessTracker();
+    }
+
+    /**
+     * Stamps the file as seen by the watcher. Files
+     * notified again keep their first stamp. The stale
+     * stamps are evicted first if too many files are tracked.
+     *
+     * @param file the file
+     */
+    public void watched(@NonNull Path file) {
+        long now = System.nanoTime();
+        if ((size() >= MAX_TRACKED) && (now - nextEviction >= 0)) {
+            evictStale(now);
+        }
+        if (size() < MAX_TRACKED) {
+            tracked.putIfAbsent(file, new Stamp(now));
+        }
+    }
+
+    /**
+     * Stamps the start of the indexing of the file.
+     *
+     * @param file the file
+     */
+    public void indexingStarted(@NonNull Path file) {
+        Stamp stamp = tracked.get(file);
+        if (stamp != null) {
+            stamp.started = System.nanoTime();
+        }
+    }
+
+    /**
+     * Stamps the end of the indexing of the file, once published
+     * in the snapshot of the given generation.
+     *
+     * @param file the file
+     * @param generation the generation of the snapshot including it
+     */
+    public void indexed(@NonNull Path file, long generation) {
+        Stamp stamp = tracked.remove(file);
+        if (stamp != null) {
+            stamp.finished = System.nanoTime();
+            stamp.generation = generation;
+            long started = (stamp.started != 0) ? stamp.started : stamp.watched;
+            record(FreshnessStage.WAITING, started - stamp.watched);
+            record(FreshnessStage.INDEXING, stamp.finished - started);
+            published.add(stamp);
+            publishedCount.incrementAndGet();
+        }
+    }
+
+    /**
+     * Stamps the files indexed up to the given generation
+     * as visible to the ranking.
+     *
+     * @param generation the generation of the snapshot being ranked
+     */
+    public void visible(long generation) {
+        long now = System.nanoTime();
+        for (Iterator<Stamp> it = published.iterator(); it.hasNext(); ) {
+            Stamp stamp = it.next();
+            if ((stamp.generation <= generation) && stamp.settled.compareAndSet(false, true)) {
+                record(FreshnessStage.VISIBILITY, now - stamp.finished);
+                record(FreshnessStage.END_TO_END, now - stamp.watched);
+                it.remove();
+                publishedCount.decrementAndGet();
+            }
+        }
+    }
+
+    /**
+     * Retrieves the latencies recorded since the previous call,
+     * starting a new interval.
+     *
+     * @return the freshness metrics of the interval
+     */
+    public synchronized FreshnessMetrics getMetrics() {
+        Map<FreshnessStage, Histogram> histograms = new EnumMap<>(FreshnessStage.class);
+        recorders.forEach((stage, recorder) -> {
+            Histogram interval = recorder.getIntervalHistogram(intervals.get(stage));
+            intervals.put(stage, interval);
+            histograms.put(stage, interval.copy());
+        });
+        return new FreshnessMetrics(histograms);
+    }
+
+    /**
+     * Retrieves the number of files tracked, either
+     * waiting to be indexed or not yet visible.
+     *
+     * @return the number of files
+     */
+    public int size() {
+        return tracked.size() + publishedCount.get();
+    }
+
+    /**
+     * Evicts the stamps of the files watched longer than the maximum age ago,
+     * whether waiting to be indexed or not yet visible, and computes when the
+     * oldest stamp left becomes stale.
+     *
+     * @param now the current time in nanoseconds
+     */
+    private synchronized void evictStale(long now) {
+        if (now - nextEviction < 0) {
+            return;
+        }
+        long oldest = now;
+        for (Iterator<Stamp> it = tracked.values().iterator(); it.hasNext(); ) {
+            Stamp stamp = it.next();
+            if (now - stamp.watched < maxAgeNanos) {
+                oldest = (stamp.watched - oldest < 0) ? stamp.watched : oldest;
+            } else {
+                it.remove();
+            }
+        }
+        for (Iterator<Stamp> it = published.iterator(); it.hasNext(); ) {
+            Stamp stamp = it.next();
+            if (now - stamp.watched < maxAgeNanos) {
+                oldest = (stamp.watched - oldest < 0) ? stamp.watched : oldest;
+            } else if (stamp.settled.compareAndSet(false, true)) {
+                it.remove();
+                publishedCount.decrementAndGet();
+            }
+        }
+        nextEviction = oldest + maxAgeNanos;
+    }
+
+    /**
+     * Records the latency of a stage.
+     *
+     * @param stage the stage
+     * @param nanos the latency in nanoseconds
+     */
+    private void record(FreshnessStage stage, long nanos) {
+        recorders.get(stage).recordValue(Math.max(0, TimeUnit.NANOSECONDS.toMicros(nanos)));
+    }
+
+    /**
+     * The stamps of a file in nanoseconds.
+     */
+    private static class Stamp {
+
+        /** When the watcher notified the file */
+        private final long watched;
+
+        /** When the indexing started */
+        private volatile long started;
+
+        /** When the indexing finished */
+        private volatile long finished;
+
+        /** The generation of the snapshot including the file */
+        private volatile long generation;
+
+        /** Whether the file was already visible or evicted */
+        private final AtomicBoolean settled = new AtomicBoolean();
+
+        Stamp(long watched) {
+            this.watched = watched;
+        }
+    }
+}
@@ -18,6 +18,8 @@
 
 package com.github.pnavais.ex3.index;
 
+import com.github.pnavais.ex3.matcher.TermPositions;
+import com.github.pnavais.ex3.matcher.WordFilter;
 import lombok.Getter;
 import lombok.NonNull;
 import lombok.Setter;
@@ -44,6 +46,15 @@ public class DocTerm {
     /** The number of words in the document */
     private long wordCount;
 
+    /** The filter of the words of the document, if built (shared by all its terms) */
+    private WordFilter wordFilter;
+
+    /** The hashes of the distinct words of the document, if collected (shared by all its terms) */
+    private long[] wordHashes;
+
+    /** The positions of the term in the document, delta encoded (see {@link TermPositions}), if recorded */
+    private byte[] positions;
+
     /**
      * Constructor with mandatory items
      * @param term the term
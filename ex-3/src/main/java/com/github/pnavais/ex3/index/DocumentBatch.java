@@ -0,0 +1,159 @@
+/*
+ *
+ * Copyright 2020 Pablo Navais
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+package com.github.pnavais.ex3.index;
+
+import com.github.pnavais.ex3.api.exception.FileParsingException;
+import com.github.pnavais.ex3.api.reader.DocumentReader;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * A batch of small documents loaded one after the other in a single
+ * buffer, so they are read and tokenized without allocating a buffer
+ * (nor a reader) per document.
+ * <p>
+ * Documents that cannot be read or parsed are indexed without terms,
+ * as when they are indexed on their own.
+ */
+@Slf4j
+final class DocumentBatch {
+
+    /** The initial capacity of the buffer */
+    private static final int INITIAL_CAPACITY = 64 * 1024;
+
+    /** The documents of the batch */
+    private final List<Path> docs;
+
+    /** The offset of the contents of each document in the buffer */
+    private final int[] offsets;
+
+    /** The length of the contents of each document or -1 if not readable */
+    private final int[] lengths;
+
+    /** The contents of the documents */
+    private byte[] contents = new byte[INITIAL_CAPACITY];
+
+    /** The number of bytes loaded */
+    private int length;
+
+    /**
+     * Creates an empty batch for the given documents.
+     *
+     * @param docs the documents
+     */
+    private DocumentBatch(List<Path> docs) {
+        this.docs = docs;
+        this.offsets = new int[docs.size()];
+        this.lengths = new int[docs.size()];
+    }
+
+    /**
+     * Loads the contents of the given documents.
+     *
+     * @param docs the documents
+     * @return the batch
+     */
+    static DocumentBatch load(List<Path> docs) {
+        DocumentBatch batch = new DocumentBatch(docs);
+        for (int i = 0; i < docs.size(); i++) {
+            batch.offsets[i] = batch.length;
+            try {
+                batch.lengths[i] = batch.append(docs.get(i));
+            } catch (IOException e) {
+                log.error("Error indexing file [{}]. Cause : {}", docs.get(i), e.getMessage());
+                batch.lengths[i] = -1;
+            }
+        }
+        return batch;
+    }
+
+    /**
+     * Tokenizes the documents of the batch with the given reader.
+     *
+     * @param reader the reader of the documents
+     * @param terms the terms to look for
+     * @return the statistics for the terms in all the documents
+     */
+    List<DocTerm> tokenize(DocumentReader reader, Set<String> terms) {
+        List<DocTerm> docTerms = new ArrayList<>(docs.size() * terms.size());
+        for (int i = 0; i < docs.size(); i++) {
+            if (lengths[i] != -1) {
+                try {
+                    docTerms.addAll(reader.processDocTerms(docs.get(i), contents, offsets[i], lengths[i], terms));
+                } catch (FileParsingException e) {
+                    log.error("Error indexing file [{}]. Cause : {}", docs.get(i), e.getMessage());
+                }
+            }
+        }
+        return docTerms;
+    }
+
+    /**
+     * Appends the contents of the given document to the buffer, as
+     * long as they were when opening it.
+     *
+     * @param doc the document
+     * @return the number of bytes appended
+     * @throws IOException on I/O errors
+     */
+    private int append(Path doc) throws IOException {
+        int start = length;
+        try (FileChannel channel = FileChannel.open(doc, StandardOpenOption.READ)) {
+            long size = channel.size();
+            ensureCapacity(size);
+            int end = start + (int) size;
+            while (length < end) {
+                int read = channel.read(ByteBuffer.wrap(contents, length, end - length));
+                if (read == -1) {
+                    break;
+                }
+                length += read;
+            }
+        } catch (IOException e) {
+            length = start;
+            throw e;
+        }
+        return length - start;
+    }
+
+    /**
+     * Grows the buffer to fit the given number of bytes after the contents loaded.
+     *
+     * @param extra the number of bytes to fit
+     * @throws IOException if the contents would exceed the maximum array size
+     */
+    private void ensureCapacity(long extra) throws IOException {
+        long required = length + extra;
+        if (required > Integer.MAX_VALUE - 8) {
+            throw new IOException("Documents too large to be loaded in memory");
+        }
+        if (required > contents.length) {
+            contents = Arrays.copyOf(contents, (int) Math.max(required, Math.min(Integer.MAX_VALUE - 8,
+                    2L * contents.length)));
+        }
+    }
+}
@@ -0,0 +1,435 @@
+/*
+ *
+ * Copyright 2020 Pablo Navais
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+
+package com.github.pnavais.ex3.index;
+
+import lombok.NonNull;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileSystem;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+/**
+ * A dictionary assigning a compact int id to every document path, so that the
+ * index keeps the ids instead of the paths themselves. Paths are resolved from
+ * their ids only when they need to be shown (i.e. when printing a ranking).
+ * <p>
+ * Paths are stored once, UTF-8 encoded and front coded : ids are grouped in blocks
+ * of {@link #BLOCK_SIZE} and, inside a block, each path only keeps the suffix not
+ * shared with the previous one (documents of the same directory share most of
+ * their path). Resolving an id decodes at most a block.
+ * <p>
+ * Ids are looked up by path through an open addressing hash table of the ids
+ * + 1, comparing the decoded path only when the hashes are equal. Ids are never
+ * reused, so they remain valid for every snapshot of the index. All the
+ * documents of the dictionary must belong to the same file system.
+ * <p>
+ * Paths are only appended, so every new id publishes an immutable {@link View} of the
+ * paths stored so far. Lookups and resolutions read the last view without locking, while
+ * only the documents not yet in the dictionary are appended under the dictionary lock.
+ */
+public class DocumentDictionary {
+
+    /** The value returned for paths not found */
+    public static final int NOT_FOUND = -1;
+
+    /** The number of paths in a block */
+    private static final int BLOCK_SIZE = 16;
+
+    /** Marks an empty slot of the hash table */
+    private static final int EMPTY_SLOT = 0;
+
+    /** The file system of the documents */
+    private volatile FileSystem fileSystem;
+
+    /** The paths stored up to the last id assigned */
+    private volatile View view;
+
+    /** The front coded paths */
+    private byte[] data;
+
+    /** The number of bytes used in the front coded paths */
+    private int dataSize;
+
+    /** The offset of the first path of each block */
+    private int[] blocks;
+
+    /** The hash of each path */
+    private int[] hashes;
+
+    /** The hash table of the ids + 1 */
+    private int[] table;
+
+    /** The number of ids assigned */
+    private int count;
+
+    /** The length of the longest path */
+    private int maxLength;
+
+    /** The last path added */
+    private byte[] previous;
+
+    /**
+     * Creates an empty dictionary.
+     */
+    public DocumentDictionary() {
+        this.data = new byte[1024];
+        this.blocks = new int[16];
+        this.hashes = new int[64];
+        this.table = new int[128];
+        this.previous = new byte[0];
+        this.view = new View(data, dataSize, blocks, hashes, table, count, maxLength);
+    }
+
+    /**
+     * Retrieves the id of the given document, assigning
+     * a new one if not yet in the dictionary.
+     *
+     * @param doc the document
+     * @return the document id
+     * @throws IllegalArgumentException if the document belongs to another file system
+     */
+    public int intern(@NonNull Path doc) {
+        byte[] path = encode(doc);
+        int hash = hashOf(path);
+        if (doc.getFileSystem() == fileSystem) {
+            int id = view.find(path, hash);
+            if (id != NOT_FOUND) {
+                return id;
+            }
+        }
+        return append(doc, path, hash);
+    }
+
+    /**
+     * Retrieves the id of the given document.
+     *
+     * @param doc the document
+     * @return the document id or {@link #NOT_FOUND} if not in the dictionary
+     */
+    public int find(@NonNull Path doc) {
+        if (doc.getFileSystem() != fileSystem) {
+            return NOT_FOUND;
+        }
+        byte[] path = encode(doc);
+        return view.find(path, hashOf(path));
+    }
+
+    /**
+     * Resolves the document with the given id.
+     *
+     * @param id the document id
+     * @return the document
+     * @throws IndexOutOfBoundsException if the id was not assigned
+     */
+    public Path resolve(int id) {
+        View current = view;
+        if ((id < 0) || (id >= current.count)) {
+            throw new IndexOutOfBoundsException("Unknown document id " + id);
+        }
+        byte[] path = new byte[current.maxLength];
+        int length = current.decode(id, path);
+        return fileSystem.getPath(new String(path, 0, length, StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Retrieves the number of documents in the dictionary.
+     *
+     * @return the number of documents
+     */
+    public int size() {
+        return view.count;
+    }
+
+    /**
+     * Retrieves the number of bytes used to store the paths.
+     *
+     * @return the size of the front coded paths
+     */
+    public int getStoredBytes() {
+        return view.dataSize;
+    }
+
+    /**
+     * Adds the given document to the dictionary unless already added
+     * meanwhile, front coding its path against the previous path of its
+     * block, and publishes the view of the paths including it.
+     *
+     * @param doc the document
+     * @param path the UTF-8 encoded path
+     * @param hash the hash of the path
+     * @return the document id
+     * @throws IllegalArgumentException if the document belongs to another file system
+     */
+    private synchronized int append(Path doc, byte[] path, int hash) {
+        if (fileSystem == null) {
+            fileSystem = doc.getFileSystem();
+        } else if (doc.getFileSystem() != fileSystem) {
+            throw new IllegalArgumentException("Document [" + doc + "] belongs to a different file system");
+        }
+        int id = view.find(path, hash);
+        if (id != NOT_FOUND) {
+            return id;
+        }
+
+        id = count;
+        int shared = 0;
+        if (id % BLOCK_SIZE == 0) {
+            blocks = ensureCapacity(blocks, id / BLOCK_SIZE + 1);
+            blocks[id / BLOCK_SIZE] = dataSize;
+        } else {
+            int limit = Math.min(previous.length, path.length);
+            while ((shared < limit) && (previous[shared] == path[shared])) {
+                shared++;
+            }
+            writeVarInt(shared);
+        }
+        writeVarInt(path.length - shared);
+        ensureDataCapacity(path.length - shared);
+        System.arraycopy(path, shared, data, dataSize, path.length - shared);
+        dataSize += path.length - shared;
+
+        hashes = ensureCapacity(hashes, id + 1);
+        hashes[id] = hash;
+        previous = path;
+        maxLength = Math.max(maxLength, path.length);
+        count++;
+
+        if (count * 2 > table.length) {
+            rehash(table.length * 2);
+        } else {
+            insert(id);
+        }
+        view = new View(data, dataSize, blocks, hashes, table, count, maxLength);
+        return id;
+    }
+
+    /**
+     * Inserts the given id in the hash table.
+     *
+     * @param id the document id
+     */
+    private void insert(int id) {
+        int mask = table.length - 1;
+        int slot = hashes[id] & mask;
+        while (table[slot] != EMPTY_SLOT) {
+            slot = (slot + 1) & mask;
+        }
+        table[slot] = id + 1;
+    }
+
+    /**
+     * Rebuilds the hash table with the given capacity.
+     *
+     * @param capacity the new capacity (a power of two)
+     */
+    private void rehash(int capacity) {
+        table = new int[capacity];
+        for (int id = 0; id < count; id++) {
+            insert(id);
+        }
+    }
+
+    /**
+     * Writes a variable length int (7 bits per byte).
+     *
+     * @param value the value
+     */
+    private void writeVarInt(int value) {
+        ensureDataCapacity(5);
+        while ((value & ~0x7F) != 0) {
+            data[dataSize++] = (byte) ((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        data[dataSize++] = (byte) value;
+    }
+
+    /**
+     * Ensures there is room for the given number of bytes in the front coded paths.
+     *
+     * @param length the number of bytes
+     */
+    private void ensureDataCapacity(int length) {
+        if (dataSize + length > data.length) {
+            data = Arrays.copyOf(data, Math.max(data.length * 2, dataSize + length));
+        }
+    }
+
+    /**
+     * Grows the given array if needed.
+     *
+     * @param array the array
+     * @param length the minimum length
+     * @return the array or a larger copy
+     */
+    private static int[] ensureCapacity(int[] array, int length) {
+        return (length > array.length) ? Arrays.copyOf(array, Math.max(array.length * 2, length)) : array;
+    }
+
+    /**
+     * Encodes the path of a document.
+     *
+     * @param doc the document
+     * @return the UTF-8 encoded path
+     */
+    private static byte[] encode(Path doc) {
+        return doc.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Computes the hash of a path.
+     *
+     * @param path the UTF-8 encoded path
+     * @return the hash
+     */
+    private static int hashOf(byte[] path) {
+        int h = Arrays.hashCode(path) * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+
+    /**
+     * Compares the first bytes of two paths.
+     *
+     * @param a the first path
+     * @param b the second path
+     * @param length the number of bytes to compare
+     * @return true if equal, false otherwise
+     */
+    private static boolean equals(byte[] a, byte[] b, int length) {
+        for (int i = 0; i < length; i++) {
+            if (a[i] != b[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * An immutable view of the paths stored up to a given id. The arrays are shared
+     * with the dictionary, which only writes past the paths of the view (or into
+     * copies of the arrays when growing them), so the view can be read without locking.
+     * The hash table is the only array written under the view, so the ids found in
+     * it beyond the ones of the view are skipped.
+     */
+    private static final class View {
+
+        /** The front coded paths */
+        private final byte[] data;
+
+        /** The number of bytes used in the front coded paths */
+        private final int dataSize;
+
+        /** The offset of the first path of each block */
+        private final int[] blocks;
+
+        /** The hash of each path */
+        private final int[] hashes;
+
+        /** The hash table of the ids + 1 */
+        private final int[] table;
+
+        /** The number of ids assigned */
+        private final int count;
+
+        /** The length of the longest path */
+        private final int maxLength;
+
+        /**
+         * Creates the view.
+         *
+         * @param data the front coded paths
+         * @param dataSize the number of bytes used in the front coded paths
+         * @param blocks the offset of the first path of each block
+         * @param hashes the hash of each path
+         * @param table the hash table of the ids + 1
+         * @param count the number of ids assigned
+         * @param maxLength the length of the longest path
+         */
+        private View(byte[] data, int dataSize, int[] blocks, int[] hashes, int[] table, int count, int maxLength) {
+            this.data = data;
+            this.dataSize = dataSize;
+            this.blocks = blocks;
+            this.hashes = hashes;
+            this.table = table;
+            this.count = count;
+            this.maxLength = maxLength;
+        }
+
+        /**
+         * Finds the id of the given path in the hash table.
+         *
+         * @param path the UTF-8 encoded path
+         * @param hash the hash of the path
+         * @return the document id or {@link #NOT_FOUND} if not in the view
+         */
+        private int find(byte[] path, int hash) {
+            int mask = table.length - 1;
+            byte[] candidate = null;
+            for (int slot = hash & mask; table[slot] != EMPTY_SLOT; slot = (slot + 1) & mask) {
+                int id = table[slot] - 1;
+                if ((id < count) && (hashes[id] == hash)) {
+                    candidate = (candidate != null) ? candidate : new byte[maxLength];
+                    int length = decode(id, candidate);
+                    if ((length == path.length) && DocumentDictionary.equals(candidate, path, length)) {
+                        return id;
+                    }
+                }
+            }
+            return NOT_FOUND;
+        }
+
+        /**
+         * Decodes the path with the given id.
+         *
+         * @param id the document id
+         * @param path the buffer receiving the path
+         * @return the length of the path
+         */
+        private int decode(int id, byte[] path) {
+            int[] offset = { blocks[id / BLOCK_SIZE] };
+            int length = 0;
+            for (int i = 0; i <= id % BLOCK_SIZE; i++) {
+                int shared = (i > 0) ? readVarInt(offset) : 0;
+                int suffix = readVarInt(offset);
+                System.arraycopy(data, offset[0], path, shared, suffix);
+                offset[0] += suffix;
+                length = shared + suffix;
+            }
+            return length;
+        }
+
+        /**
+         * Reads a variable length int, advancing the offset.
+         *
+         * @param offset the offset holder
+         * @return the value
+         */
+        private int readVarInt(int[] offset) {
+            int value = 0;
+            int shift = 0;
+            byte b;
+            do {
+                b = data[offset[0]++];
+                value |= (b & 0x7F) << shift;
+                shift += 7;
+            } while ((b & 0x80) != 0);
+            return value;
+        }
+    }
+}
@@ -0,0 +1,330 @@
+/*
+ *
+ * Copyright 2020 Pablo Navais
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+package com.github.pnavais.ex3.index;
+
+import com.github.pnavais.ex3.api.index.IndexSegment;
+import lombok.NonNull;
+
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * An implementation of the {@link IndexSegment} keeping the statistics
+ * of the documents in arrays on the Java heap : the document ids with
+ * their word counts, and for each term the ids of the documents
+ * containing it with the occurrences of the term.
+ */
+public class HeapIndexSegment implements IndexSegment {
+
+    /** The statistics of the segment */
+    private final SegmentData data;
+
+    /** The number of words of all the documents */
+    private final long totalWordCount;
+
+    /**
+     * Creates the segment with the given statistics.
+     *
+     * @param data the statistics
+     */
+    private HeapIndexSegment(SegmentData data) {
+        this.data = data;
+        this.totalWordCount = Arrays.stream(data.wordCounts).sum();
+    }
+
+    /**
+     * Builds the segment for the given documents and their statistics.
+     *
+     * @param dictionary the document dictionary
+     * @param documents the documents
+     * @param docTerms the statistics of the terms in the documents
+     * @return the segment
+     */
+    public static HeapIndexSegment of(@NonNull DocumentDictionary dictionary, @NonNull Collection<Path> documents,
+                                      @NonNull Collection<DocTerm> docTerms) {
+        return new HeapIndexSegment(SegmentData.of(dictionary, documents, docTerms));
+    }
+
+    /**
+     * Retrieves the number of documents in the segment.
+     *
+     * @return the number of documents
+     */
+    @Override
+    public int size() {
+        return data.docIds.length;
+    }
+
+    /**
+     * Retrieves the ids of the documents in the segment.
+     *
+     * @return the document ids in ascending order
+     */
+    @Override
+    public int[] getDocuments() {
+        return data.docIds.clone();
+    }
+
+    /**
+     * Retrieves the id of the document at the given position of the segment.
+     *
+     * @param docIndex the position of the document
+     * @return the document id
+     */
+    @Override
+    public int getDocument(int docIndex) {
+        return data.docIds[docIndex];
+    }
+
+    /**
+     * Checks whether the segment contains the given document.
+     *
+     * @param docId the document id
+     * @return true if contained, false otherwise
+     */
+    @Override
+    public boolean contains(int docId) {
+        return data.indexOf(docId) >= 0;
+    }
+
+    /**
+     * Retrieves the terms found in the segment.
+     *
+     * @return the terms
+     */
+    @Override
+    public Set<String> getTerms() {
+        return data.postings.keySet();
+    }
+
+    /**
+     * Retrieves the number of documents of the segment containing the term.
+     *
+     * @param term the term
+     * @return the document frequency of the term
+     */
+    @Override
+    public int documentFrequency(String term) {
+        SegmentData.Postings postings = data.postings.get(term);
+        return (postings != null) ? postings.size() : 0;
+    }
+
+    /**
+     * Retrieves the number of words of the given document.
+     *
+     * @param docId the document id
+     * @return the number of words or 0 if not in the segment
+     */
+    @Override
+    public long getWordCount(int docId) {
+        int index = data.indexOf(docId);
+        return (index >= 0) ? data.wordCounts[index] : 0;
+    }
+
+    /**
+     * Retrieves the number of words of all the documents in the segment.
+     *
+     * @return the total number of words
+     */
+    @Override
+    public long getTotalWordCount() {
+        return totalWordCount;
+    }
+
+    /**
+     * Retrieves the occurrences of the term in the given document.
+     *
+     * @param term the term
+     * @param docId the document id
+     * @return the occurrences or 0 if the document does not contain the term
+     */
+    @Override
+    public long getOccurrences(String term, int docId) {
+        SegmentData.Postings postings = data.postings.get(term);
+        return (postings != null) ? postings.occurrencesOf(docId) : 0;
+    }
+
+    /**
+     * Visits the postings of the term, i.e. the
+     * documents containing it in ascending id order.
+     *
+     * @param term the term
+     * @param visitor the visitor of the postings
+     */
+    @Override
+    public void forEachPosting(String term, PostingVisitor visitor) {
+        SegmentData.Postings postings = data.postings.get(term);
+        if (postings != null) {
+            for (int i = 0; i < postings.size(); i++) {
+                visitor.visit(postings.docIds[i], getWordCount(postings.docIds[i]), postings.occurrences[i]);
+            }
+        }
+    }
+
+    /**
+     * Opens a cursor over the postings of the term.
+     *
+     * @param term the term
+     * @return the cursor on the first posting
+     */
+    @Override
+    public PostingCursor postings(String term) {
+        return new HeapPostingCursor(data.postings.get(term));
+    }
+
+    /**
+     * Visits all the documents of the segment with the
+     * occurrences of the given terms in each one, merging
+     * the postings of the terms in document id order.
+     *
+     * @param terms the terms
+     * @param visitor the visitor of the documents
+     */
+    @Override
+    public void forEachDocument(List<String> terms, DocumentVisitor visitor) {
+        SegmentData.Postings[] postings = new SegmentData.Postings[terms.size()];
+        int[] cursors = new int[terms.size()];
+        for (int i = 0; i < postings.length; i++) {
+            postings[i] = data.postings.get(terms.get(i));
+        }
+
+        long[] occurrences = new long[terms.size()];
+        for (int d = 0; d < data.docIds.length; d++) {
+            int docId = data.docIds[d];
+            for (int i = 0; i < postings.length; i++) {
+                if ((postings[i] != null) && (cursors[i] < postings[i].size())
+                        && (postings[i].docIds[cursors[i]] == docId)) {
+                    occurrences[i] = postings[i].occurrences[cursors[i]++];
+                } else {
+                    occurrences[i] = 0;
+                }
+            }
+            visitor.visit(docId, data.wordCounts[d], occurrences);
+        }
+    }
+
+    /**
+     * Creates a copy of the segment without the given documents,
+     * reusing the segment itself if it contains none of them.
+     *
+     * @param docIds the ids of the documents to remove in ascending order
+     * @return the resulting segment
+     */
+    @Override
+    public IndexSegment without(@NonNull int[] docIds) {
+        return data.containsAny(docIds) ? new HeapIndexSegment(data.without(docIds)) : this;
+    }
+
+    /**
+     * Merges the segment with the given ones into a new
+     * heap segment. Segments must not share documents.
+     *
+     * @param segments the segments to merge with this one
+     * @return the merged segment
+     */
+    @Override
+    public IndexSegment merge(@NonNull List<IndexSegment> segments) {
+        return new HeapIndexSegment(SegmentData.merge(this, segments));
+    }
+
+    /**
+     * Retrieves the number of bytes taken by the encoded positions
+     * of the terms, if recorded while reading the documents.
+     *
+     * @return the number of bytes or 0 if not recorded
+     */
+    public long getPositionsSize() {
+        return data.postings.values().stream().mapToLong(SegmentData.Postings::positionsSize).sum();
+    }
+
+    /**
+     * Retrieves the statistics of the segment.
+     *
+     * @return the statistics
+     */
+    SegmentData getData() {
+        return data;
+    }
+
+    /**
+     * A cursor over postings stored in arrays
+     */
+    private class HeapPostingCursor implements PostingCursor {
+
+        /** The ids of the documents containing the term */
+        private final int[] docIds;
+
+        /** The occurrences of the term in each document */
+        private final long[] occurrences;
+
+        /** The postings or null if none */
+        private final SegmentData.Postings postings;
+
+        /** The current posting */
+        private int posting;
+
+        /**
+         * Creates the cursor on the first of the given postings.
+         *
+         * @param postings the postings or null if none
+         */
+        private HeapPostingCursor(SegmentData.Postings postings) {
+            this.docIds = (postings != null) ? postings.docIds : new int[0];
+            this.occurrences = (postings != null) ? postings.occurrences : new long[0];
+            this.postings = postings;
+        }
+
+        @Override
+        public int docId() {
+            return (posting < docIds.length) ? docIds[posting] : NO_MORE_DOCS;
+        }
+
+        @Override
+        public int docIndex() {
+            return data.indexOf(docIds[posting]);
+        }
+
+        @Override
+        public long occurrences() {
+            return occurrences[posting];
+        }
+
+        @Override
+        public int[] positions() {
+            return postings.positionsAt(posting);
+        }
+
+        @Override
+        public int next() {
+            posting++;
+            return docId();
+        }
+
+        @Override
+        public int advance(int target) {
+            if ((posting < docIds.length) && (docIds[posting] < target)) {
+                int index = Arrays.binarySearch(docIds, posting + 1, docIds.length, target);
+                posting = (index >= 0) ? index : -(index + 1);
+            }
+            return docId();
+        }
+    }
+}
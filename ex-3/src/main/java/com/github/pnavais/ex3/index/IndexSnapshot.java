@@ -0,0 +1,533 @@
+/*
+ *
+ * Copyright 2020 Pablo Navais
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+package com.github.pnavais.ex3.index;
+
+import com.github.pnavais.ex3.api.index.IndexSegment;
+import com.github.pnavais.ex3.api.ranking.Scorer;
+import com.github.pnavais.ex3.ranking.CollectionStatistics;
+import com.github.pnavais.ex3.ranking.Proximity;
+import com.github.pnavais.ex3.ranking.RankingMode;
+import com.github.pnavais.ex3.ranking.TfIdfScorer;
+import lombok.Getter;
+import lombok.NonNull;
+
+import java.nio.file.Path;
+import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.ToIntFunction;
+
+/**
+ * An immutable and consistent view of the index at a given point in time.
+ * <p>
+ * The snapshot is composed of a list of {@link IndexSegment}s. Adding documents
+ * to the index publishes a new snapshot sharing the segments of the previous
+ * one plus a new segment (copy-on-write at segment granularity), so readers
+ * holding a snapshot never see partial updates and never block the writers.
+ * The total number of documents and the document frequency of each term are
+ * computed once per snapshot, keeping the tf/idf statistics consistent
+ * with the postings of the snapshot.
+ * <p>
+ * Documents are identified by their id in the {@link DocumentDictionary} of the
+ * index, only resolving their paths when requested (i.e. to print a ranking).
+ * <p>
+ * Segments are merged in the background into larger ones, publishing new
+ * snapshots with the same documents in fewer segments.
+ * <p>
+ * Documents are ranked by a {@link Scorer}, whose statistics (term weights and
+ * document norms) are computed the first time the snapshot is ranked and reused
+ * by the following rankings until a new snapshot is published.
+ */
+public class IndexSnapshot {
+
+    /** The default scorer */
+    private static final Scorer TF_IDF = new TfIdfScorer();
+
+    /** The version of the snapshot, increased on every update */
+    @Getter
+    private final long generation;
+
+    /** The dictionary of the documents */
+    private final DocumentDictionary dictionary;
+
+    /** The segments of the index */
+    @Getter
+    private final List<IndexSegment> segments;
+
+    /** The terms to rank */
+    @Getter
+    private final Set<String> terms;
+
+    /** The number of documents containing each term */
+    private final Map<String, Integer> documentFrequencies;
+
+    /** The total number of documents */
+    private final int documentCount;
+
+    /** The total number of words of the documents */
+    @Getter
+    private final long totalWordCount;
+
+    /** The statistics precomputed for the last scorer */
+    private volatile ScoringContext scoringContext;
+
+    /**
+     * Creates the snapshot.
+     *
+     * @param generation the version of the snapshot
+     * @param dictionary the document dictionary
+     * @param segments the segments
+     * @param terms the terms to rank
+     * @param documentFrequencies the number of documents containing each term
+     */
+    private IndexSnapshot(long generation, DocumentDictionary dictionary, List<IndexSegment> segments,
+                          Set<String> terms, Map<String, Integer> documentFrequencies) {
+        this.generation = generation;
+        this.dictionary = dictionary;
+        this.segments = segments;
+        this.terms = terms;
+        this.documentFrequencies = documentFrequencies;
+        this.documentCount = segments.stream().mapToInt(IndexSegment::size).sum();
+        this.totalWordCount = segments.stream().mapToLong(IndexSegment::getTotalWordCount).sum();
+    }
+
+    /**
+     * Creates the snapshot of an empty index.
+     *
+     * @param dictionary the document dictionary of the index
+     * @return the snapshot
+     */
+    static IndexSnapshot empty(@NonNull DocumentDictionary dictionary) {
+        return new IndexSnapshot(0, dictionary, Collections.emptyList(), Collections.emptySet(),
+                Collections.emptyMap());
+    }
+
+    /**
+     * Creates the snapshot of the given segments built outside an index manager
+     * (i.e. to benchmark the rankings). Documents of later segments replace the
+     * ones of earlier segments.
+     *
+     * @param dictionary the document dictionary of the segments
+     * @param terms the terms to rank
+     * @param segments the segments, oldest first
+     * @return the snapshot
+     */
+    public static IndexSnapshot of(@NonNull DocumentDictionary dictionary, Set<String> terms,
+                                   @NonNull List<IndexSegment> segments) {
+        IndexSnapshot snapshot = empty(dictionary).withTerms(terms);
+        for (IndexSegment segment : segments) {
+            snapshot = snapshot.withSegment(segment);
+        }
+        return snapshot;
+    }
+
+    /**
+     * Creates a new snapshot adding the given segment. Documents of the segment
+     * already present in the snapshot are replaced by the new ones.
+     *
+     * @param segment the segment to add
+     * @return the new snapshot
+     */
+    IndexSnapshot withSegment(@NonNull IndexSegment segment) {
+        List<IndexSegment> updated = new ArrayList<>(segments.size() + 1);
+        int[] added = segment.getDocuments();
+        boolean replaced = false;
+        for (IndexSegment current : segments) {
+            IndexSegment kept = current.without(added);
+            replaced |= (kept != current);
+            if (kept.size() > 0) {
+                updated.add(kept);
+            }
+        }
+        updated.add(segment);
+
+        Map<String, Integer> frequencies;
+        if (replaced) {
+            frequencies = computeFrequencies(updated);
+        } else {
+            frequencies = new HashMap<>(documentFrequencies);
+            segment.getTerms().forEach(term -> frequencies.merge(term, segment.documentFrequency(term), Integer::sum));
+        }
+
+        return new IndexSnapshot(generation + 1, dictionary, Collections.unmodifiableList(updated), terms,
+                Collections.unmodifiableMap(frequencies));
+    }
+
+    /**
+     * Creates a new snapshot replacing the given segments by the segment
+     * merging them, placed at the position of the oldest one. The documents
+     * and their statistics are the same, only their segments change.
+     *
+     * @param sources the merged segments
+     * @param merged the segment merging them
+     * @return the new snapshot or null if any of the merged segments
+     * is no longer part of the snapshot
+     */
+    IndexSnapshot withMerged(@NonNull List<IndexSegment> sources, @NonNull IndexSegment merged) {
+        Set<IndexSegment> pending = Collections.newSetFromMap(new IdentityHashMap<>());
+        pending.addAll(sources);
+        List<IndexSegment> updated = new ArrayList<>(segments.size());
+        boolean placed = false;
+        for (IndexSegment segment : segments) {
+            if (!pending.remove(segment)) {
+                updated.add(segment);
+            } else if (!placed) {
+                updated.add(merged);
+                placed = true;
+            }
+        }
+        return pending.isEmpty() ? new IndexSnapshot(generation + 1, dictionary, Collections.unmodifiableList(updated),
+                terms, documentFrequencies) : null;
+    }
+
+    /**
+     * Creates a new snapshot sharing the segments of the
+     * current one with a different set of terms to rank.
+     *
+     * @param terms the terms to rank
+     * @return the new snapshot
+     */
+    IndexSnapshot withTerms(Set<String> terms) {
+        return new IndexSnapshot(generation + 1, dictionary, segments, (terms != null) ? terms : Collections.emptySet(),
+                documentFrequencies);
+    }
+
+    /**
+     * Creates a new empty snapshot keeping the terms to rank.
+     *
+     * @return the new snapshot
+     */
+    IndexSnapshot cleared() {
+        return new IndexSnapshot(generation + 1, dictionary, Collections.emptyList(), terms, Collections.emptyMap());
+    }
+
+    /**
+     * Retrieves the number of documents in the snapshot.
+     *
+     * @return the number of documents
+     */
+    public int size() {
+        return documentCount;
+    }
+
+    /**
+     * Retrieves the statistics of all the documents in the snapshot.
+     *
+     * @return the collection statistics
+     */
+    public CollectionStatistics getCollectionStatistics() {
+        return CollectionStatistics.of(documentCount, (documentCount > 0) ? (totalWordCount * 1.0) / documentCount : 0);
+    }
+
+    /**
+     * Retrieve the list of documents contained in the snapshot
+     *
+     * @return the list of documents.
+     */
+    public List<Path> getDocs() {
+        List<Path> docs = new ArrayList<>(documentCount);
+        segments.forEach(segment -> Arrays.stream(segment.getDocuments()).mapToObj(dictionary::resolve)
+                .forEach(docs::add));
+        return docs;
+    }
+
+    /**
+     * Checks whether the given document is indexed in the snapshot.
+     *
+     * @param doc the document
+     * @return true if indexed, false otherwise
+     */
+    public boolean contains(Path doc) {
+        return findSegment(dictionary.find(doc)) != null;
+    }
+
+    /**
+     * Resolves the document with the given id.
+     *
+     * @param docId the document id
+     * @return the document
+     */
+    public Path getDocument(int docId) {
+        return dictionary.resolve(docId);
+    }
+
+    /**
+     * Retrieves the number of documents containing the given term.
+     *
+     * @param term the term
+     * @return the document frequency
+     */
+    public int documentFrequency(String term) {
+        return documentFrequencies.getOrDefault(term, 0);
+    }
+
+    /**
+     * Retrieves the document statistics for
+     * the given term in the snapshot.
+     *
+     * @param term the term
+     * @return the list of document statistics
+     */
+    public List<DocTerm> getDocTermsFor(String term) {
+        List<DocTerm> docTerms = new ArrayList<>(documentFrequency(term));
+        segments.forEach(segment -> segment.forEachPosting(term, (docId, wordCount, occurrences) -> {
+            DocTerm docTerm = DocTerm.of(term, dictionary.resolve(docId));
+            docTerm.setOccurrences(occurrences);
+            docTerm.setWordCount(wordCount);
+            docTerms.add(docTerm);
+        }));
+        return docTerms;
+    }
+
+    /**
+     * Retrieve the TF/IDF for a given term
+     * and document in the snapshot.
+     *
+     * @param term the term
+     * @param doc the document
+     * @return the TF/IDF statistic of the term
+     */
+    public double getTermTfIdf(String term, Path doc) {
+        int docId = dictionary.find(doc);
+        IndexSegment segment = findSegment(docId);
+        return (segment != null) ? getTermTfIdf(segment, term, docId) : 0.0;
+    }
+
+    /**
+     * Compute the average TF/IDF statistic for
+     * all the terms in the given document.
+     *
+     * @param doc the document.
+     * @return the average TF/IDF for all terms in the document
+     */
+    public double getTermsTfIdfFor(Path doc) {
+        int docId = dictionary.find(doc);
+        IndexSegment segment = findSegment(docId);
+        return (segment != null) ? getTermsTfIdfFor(segment, docId) : 0.0;
+    }
+
+    /**
+     * Visits all the documents of the snapshot with the average
+     * TF/IDF statistic for all the terms in each document.
+     *
+     * @param consumer the consumer of the document ids and their statistic
+     */
+    public void forEachTfIdf(@NonNull DocumentStatConsumer consumer) {
+        forEachScore(TF_IDF, consumer);
+    }
+
+    /**
+     * Visits all the documents of the snapshot with their score for all the terms.
+     * The statistics the scorer relies on are only computed the first time the
+     * snapshot is ranked with the scorer.
+     *
+     * @param scorer the scorer
+     * @param consumer the consumer of the document ids and their score
+     */
+    public void forEachScore(@NonNull Scorer scorer, @NonNull DocumentStatConsumer consumer) {
+        scoringContext(scorer).forEachScore(segments, consumer);
+    }
+
+    /**
+     * Visits the top n documents of the snapshot in descending order of their score
+     * for all the terms, skipping the documents which cannot enter the top ones
+     * (see {@link ScoringContext}). Documents with the same score are visited
+     * in the same order as {@link #forEachScore(Scorer, DocumentStatConsumer)}.
+     *
+     * @param scorer the scorer
+     * @param n the maximum number of documents
+     * @param consumer the consumer of the document ids and their score
+     */
+    public void forEachTopScore(@NonNull Scorer scorer, int n, @NonNull DocumentStatConsumer consumer) {
+        if (n > 0) {
+            scoringContext(scorer).forEachTopScore(segments, n, consumer);
+        }
+    }
+
+    /**
+     * Visits the top n documents of the snapshot as {@link #forEachTopScore(Scorer, int,
+     * DocumentStatConsumer)} does, retrieving them with the given algorithm.
+     *
+     * @param scorer the scorer
+     * @param n the maximum number of documents
+     * @param mode the ranking algorithm
+     * @param consumer the consumer of the document ids and their score
+     */
+    public void forEachTopScore(@NonNull Scorer scorer, int n, @NonNull RankingMode mode,
+                                @NonNull DocumentStatConsumer consumer) {
+        forEachTopScore(scorer, n, mode, null, consumer);
+    }
+
+    /**
+     * Visits the top n documents of the snapshot as {@link #forEachTopScore(Scorer, int,
+     * RankingMode, DocumentStatConsumer)} does, ranking partitions of the segments in
+     * parallel in the given pool (when the snapshot is large enough to split it).
+     * The documents visited are the same as in a sequential ranking.
+     *
+     * @param scorer the scorer
+     * @param n the maximum number of documents
+     * @param mode the ranking algorithm
+     * @param pool the pool ranking the partitions or null to rank them in the calling thread
+     * @param consumer the consumer of the document ids and their score
+     */
+    public void forEachTopScore(@NonNull Scorer scorer, int n, @NonNull RankingMode mode, ForkJoinPool pool,
+                                @NonNull DocumentStatConsumer consumer) {
+        if (n > 0) {
+            scoringContext(scorer).forEachTopScore(segments, n, mode, pool, consumer);
+        }
+    }
+
+    /**
+     * Visits the top n documents of the snapshot as {@link #forEachTopScore(Scorer, int,
+     * DocumentStatConsumer)} does, boosting the scores of the documents where the terms
+     * are found close to each other, as long as their positions were recorded (see
+     * {@link Proximity}). All the documents are scored.
+     *
+     * @param scorer the scorer
+     * @param n the maximum number of documents
+     * @param proximity the proximity of the terms boosting the scores
+     * @param consumer the consumer of the document ids and their score
+     */
+    public void forEachTopScore(@NonNull Scorer scorer, int n, @NonNull Proximity proximity,
+                                @NonNull DocumentStatConsumer consumer) {
+        if (n > 0) {
+            scoringContext(scorer).forEachTopScore(segments, n, proximity, consumer);
+        }
+    }
+
+    /**
+     * Visits the top n documents of the snapshot for the given terms as
+     * {@link #forEachTopScore(Scorer, int, DocumentStatConsumer)} does, but weighting
+     * the terms and normalizing the documents with the statistics of a larger collection
+     * the snapshot is part of (e.g. a partition of the documents indexed by several nodes).
+     * The scores are then the ones the documents have in the whole collection. The
+     * statistics are computed on every call, as they change with the collection.
+     *
+     * @param scorer the scorer
+     * @param n the maximum number of documents
+     * @param terms the terms to rank, which must be among the terms of the snapshot
+     * @param collection the statistics of the collection
+     * @param documentFrequency the number of documents of the collection containing each term
+     * @param consumer the consumer of the document ids and their score
+     */
+    public void forEachTopScore(@NonNull Scorer scorer, int n, @NonNull List<String> terms,
+                                @NonNull CollectionStatistics collection,
+                                @NonNull ToIntFunction<String> documentFrequency,
+                                @NonNull DocumentStatConsumer consumer) {
+        if (n > 0) {
+            ScoringContext.of(scorer, segments, terms, collection, documentFrequency)
+                    .forEachTopScore(segments, n, consumer);
+        }
+    }
+
+    /**
+     * Retrieves the statistics precomputed for the given scorer,
+     * computing them if the snapshot was last ranked by another one.
+     *
+     * @param scorer the scorer
+     * @return the scoring context
+     */
+    private ScoringContext scoringContext(Scorer scorer) {
+        ScoringContext context = scoringContext;
+        if ((context == null) || (context.scorer != scorer)) {
+            context = ScoringContext.of(scorer, this, new ArrayList<>(terms));
+            scoringContext = context;
+        }
+        return context;
+    }
+
+    /**
+     * Compute the average TF/IDF statistic for all
+     * the terms in the given document of a segment.
+     *
+     * @param segment the segment containing the document
+     * @param docId the document id
+     * @return the average TF/IDF for all terms in the document
+     */
+    private double getTermsTfIdfFor(IndexSegment segment, int docId) {
+        return terms.stream().mapToDouble(term -> getTermTfIdf(segment, term, docId)).average().orElse(0.0);
+    }
+
+    /**
+     * Retrieve the TF/IDF for a given term and document of a segment.
+     * The idf is computed from the total number of documents in the
+     * snapshot and the number of documents containing the term.
+     *
+     * @param segment the segment containing the document
+     * @param term the term
+     * @param docId the document id
+     * @return the TF/IDF statistic of the term
+     */
+    private double getTermTfIdf(IndexSegment segment, String term, int docId) {
+        CollectionStatistics collection = getCollectionStatistics();
+        double idf = TF_IDF.termWeight(documentFrequency(term), collection);
+        if (idf != 0) {
+            // Retrieve tf when relevant
+            long occurrences = segment.getOccurrences(term, docId);
+            if (occurrences > 0) {
+                return TF_IDF.score(occurrences, TF_IDF.documentNorm(segment.getWordCount(docId), collection), idf);
+            }
+        }
+        return 0.0;
+    }
+
+    /**
+     * Finds the segment containing the given document.
+     *
+     * @param docId the document id
+     * @return the segment or null if not found
+     */
+    private IndexSegment findSegment(int docId) {
+        if (docId == DocumentDictionary.NOT_FOUND) {
+            return null;
+        }
+        for (IndexSegment segment : segments) {
+            if (segment.contains(docId)) {
+                return segment;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Computes the number of documents containing each term in the given segments.
+     *
+     * @param segments the segments
+     * @return the document frequency of each term
+     */
+    private static Map<String, Integer> computeFrequencies(List<IndexSegment> segments) {
+        Map<String, Integer> frequencies = new HashMap<>();
+        segments.forEach(segment -> segment.getTerms()
+                .forEach(term -> frequencies.merge(term, segment.documentFrequency(term), Integer::sum)));
+        return frequencies;
+    }
+
+    /**
+     * Consumes the statistic computed for a document
+     */
+    @FunctionalInterface
+    public interface DocumentStatConsumer {
+
+        /**
+         * Consumes the statistic of a document.
+         *
+         * @param docId the document id
+         * @param value the statistic
+         */
+        void accept(int docId, double value);
+    }
+}
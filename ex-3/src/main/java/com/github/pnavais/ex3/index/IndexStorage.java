@@ -0,0 +1,42 @@
+/*
+ *
+ * Copyright 2020 Pablo Navais
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+package com.github.pnavais.ex3.index;
+
+import com.github.pnavais.ex3.api.index.SegmentFactory;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+/**
+ * The types of storage available for the segments of the index
+ */
+@Getter
+@AllArgsConstructor
+public enum IndexStorage {
+
+    /** Keeps the statistics in maps on the Java heap */
+    HEAP(HeapIndexSegment::of),
+
+    /** Keeps the statistics in direct buffers outside of the Java heap */
+    OFF_HEAP(OffHeapIndexSegment.factory(OffHeapArena.direct())),
+
+    /** Keeps the statistics in buffers mapped to temporary files */
+    MAPPED(OffHeapIndexSegment.factory(OffHeapArena.mapped()));
+
+    /** The factory of the segments */
+    private final SegmentFactory segmentFactory;
+}
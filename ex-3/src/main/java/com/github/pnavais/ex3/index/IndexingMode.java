@@ -0,0 +1,93 @@
+/*
+ *
+ * Copyright 2020 Pablo Navais
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+
+package com.github.pnavais.ex3.index;
+
+import com.github.pnavais.ex3.api.index.IndexingExecutor;
+import lombok.extern.slf4j.Slf4j;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * The modes available to run the reading of the documents to index
+ */
+@Slf4j
+public enum IndexingMode {
+
+    /** Reads each document in a task of the common fork-join pool */
+    POOLED,
+
+    /**
+     * Reads each document in its own virtual thread (JDK 21+), tokenizing it in a
+     * pool of platform threads. Falls back to {@link #POOLED} on earlier JDKs.
+     */
+    VIRTUAL;
+
+    /** The default maximum number of files read concurrently */
+    public static final int DEFAULT_MAX_OPEN_FILES = 256;
+
+    /**
+     * Creates the executor of the mode.
+     *
+     * @param maxOpenFiles the maximum number of files read concurrently (virtual mode only)
+     * @return the indexing executor
+     */
+    public IndexingExecutor createExecutor(int maxOpenFiles) {
+        if (this == VIRTUAL) {
+            ExecutorService virtualExecutor = newVirtualThreadExecutor();
+            if (virtualExecutor != null) {
+                return new StagedIndexingExecutor(virtualExecutor, newCpuExecutor(), maxOpenFiles);
+            }
+            log.warn("Virtual threads are not available in Java {}, falling back to {} indexing",
+                    System.getProperty("java.version"), POOLED);
+        }
+        return new PooledIndexingExecutor();
+    }
+
+    /**
+     * Creates an executor starting a new virtual thread for each task. The
+     * executor is looked up reflectively, so the class still runs on Java 8.
+     *
+     * @return the executor or null if virtual threads are not available
+     */
+    private static ExecutorService newVirtualThreadExecutor() {
+        try {
+            Method factory = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return (ExecutorService) factory.invoke(null);
+        } catch (ReflectiveOperationException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Creates a pool of daemon platform threads, one per processor.
+     *
+     * @return the executor
+     */
+    private static ExecutorService newCpuExecutor() {
+        AtomicInteger count = new AtomicInteger();
+        return Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors(), task -> {
+            Thread thread = new Thread(task, "indexing-cpu-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+}
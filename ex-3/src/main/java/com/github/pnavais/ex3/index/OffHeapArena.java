@@ -0,0 +1,172 @@
+/*
+ *
+ * Copyright 2020 Pablo Navais
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+package com.github.pnavais.ex3.index;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NonNull;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.IntFunction;
+
+/**
+ * An allocator of memory regions outside of the Java heap, either in direct
+ * buffers or in buffers mapped to temporary files.
+ * <p>
+ * Regions are carved sequentially (bump allocation) from large chunks, so allocating
+ * is a pointer increment and the heap only keeps one buffer object per chunk. Regions
+ * larger than a quarter of the chunk size get a dedicated buffer.
+ * <p>
+ * Regions are never freed individually : the arena only keeps a reference to the
+ * chunk currently being filled, so a chunk is released (by the garbage collector
+ * cleaning its buffer) once none of the regions allocated from it are referenced.
+ */
+public class OffHeapArena {
+
+    /** The default size of the chunks */
+    public static final int DEFAULT_CHUNK_SIZE = 16 * 1024 * 1024;
+
+    /** The alignment of the regions */
+    private static final int ALIGNMENT = Long.BYTES;
+
+    /** The size of the chunks */
+    private final int chunkSize;
+
+    /** Allocates the buffers of the given size */
+    private final IntFunction<ByteBuffer> allocator;
+
+    /** The chunk currently being filled */
+    private ByteBuffer chunk;
+
+    /** The total number of bytes allocated */
+    private final AtomicLong allocated;
+
+    /**
+     * Creates the arena allocating chunks of the given size.
+     *
+     * @param chunkSize the size of the chunks
+     * @param allocator the allocator of the buffers
+     */
+    private OffHeapArena(int chunkSize, @NonNull IntFunction<ByteBuffer> allocator) {
+        this.chunkSize = chunkSize;
+        this.allocator = allocator;
+        this.allocated = new AtomicLong();
+    }
+
+    /**
+     * Creates an arena allocating direct buffers.
+     *
+     * @return the arena
+     */
+    public static OffHeapArena direct() {
+        return new OffHeapArena(DEFAULT_CHUNK_SIZE, ByteBuffer::allocateDirect);
+    }
+
+    /**
+     * Creates an arena allocating buffers mapped to temporary
+     * files in the system temporary directory.
+     *
+     * @return the arena
+     */
+    public static OffHeapArena mapped() {
+        return mapped(Paths.get(System.getProperty("java.io.tmpdir")));
+    }
+
+    /**
+     * Creates an arena allocating buffers mapped to temporary files
+     * in the given directory. Files are deleted as soon as they are mapped,
+     * the operating system keeping their contents while mapped.
+     *
+     * @param directory the directory of the temporary files
+     * @return the arena
+     */
+    public static OffHeapArena mapped(@NonNull Path directory) {
+        return new OffHeapArena(DEFAULT_CHUNK_SIZE, size -> {
+            try {
+                Path file = Files.createTempFile(directory, "index", ".seg");
+                try (RandomAccessFile raf = new RandomAccessFile(file.toFile(), "rw")) {
+                    raf.setLength(size);
+                    return raf.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, size);
+                } finally {
+                    if (!file.toFile().delete()) {
+                        file.toFile().deleteOnExit();
+                    }
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException("Error mapping index file", e);
+            }
+        });
+    }
+
+    /**
+     * Allocates a region of the given size.
+     *
+     * @param size the size in bytes
+     * @return the region allocated
+     */
+    public Region allocate(int size) {
+        int aligned = (size + ALIGNMENT - 1) & -ALIGNMENT;
+        allocated.addAndGet(aligned);
+        if (aligned > chunkSize / 4) {
+            return new Region(allocator.apply(aligned).order(ByteOrder.nativeOrder()), 0);
+        }
+
+        synchronized (this) {
+            if ((chunk == null) || (chunk.remaining() < aligned)) {
+                chunk = allocator.apply(chunkSize).order(ByteOrder.nativeOrder());
+            }
+            int offset = chunk.position();
+            chunk.position(offset + aligned);
+            return new Region(chunk, offset);
+        }
+    }
+
+    /**
+     * Retrieves the total number of bytes allocated by the arena,
+     * including the regions already released.
+     *
+     * @return the number of bytes allocated
+     */
+    public long getAllocated() {
+        return allocated.get();
+    }
+
+    /**
+     * A region of memory allocated in a buffer. Regions must be
+     * accessed with absolute operations relative to their offset.
+     */
+    @Getter
+    @AllArgsConstructor
+    public static class Region {
+
+        /** The buffer containing the region */
+        private final ByteBuffer buffer;
+
+        /** The start of the region in the buffer */
+        private final int offset;
+    }
+}
@@ -0,0 +1,634 @@
+/*
+ *
+ * Copyright 2020 Pablo Navais
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+package com.github.pnavais.ex3.index;
+
+import com.github.pnavais.ex3.api.index.IndexSegment;
+import com.github.pnavais.ex3.api.index.SegmentFactory;
+import lombok.NonNull;
+
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * An implementation of the {@link IndexSegment} keeping the statistics of the documents
+ * in a region of memory allocated by an {@link OffHeapArena}, outside of the Java heap.
+ * Only the handle of the region and a few offsets stay on the heap, so large indexes
+ * do not increase the work of the garbage collector.
+ * <p>
+ * The region is laid out as follows (ints and longs in native byte order) :
+ * - Word counts : the number of words of each document (longs).
+ * - Documents : the ids of the documents in ascending order (ints).
+ * - Terms : for each term found in ascending ordinal order, its ordinal in the term dictionary, the first posting
+ *   and the number of postings (ints).
+ * - Postings : for each term, the position of the document in the segment (int) and the occurrences (long),
+ *   sorted by document.
+ * <p>
+ * The terms are stored by their ordinal in a dictionary shared by all the segments of the factory,
+ * while the documents are stored by their id in the document dictionary of the index.
+ */
+public class OffHeapIndexSegment implements IndexSegment {
+
+    /** The size of a term entry */
+    private static final int TERM_ENTRY_SIZE = 3 * Integer.BYTES;
+
+    /** The size of a posting entry */
+    private static final int POSTING_ENTRY_SIZE = Integer.BYTES + Long.BYTES;
+
+    /** The factory of the segment */
+    private final Factory factory;
+
+    /** The buffer containing the region of the segment */
+    private final ByteBuffer buffer;
+
+    /** The start of the region (and of the word counts) */
+    private final int base;
+
+    /** The number of documents */
+    private final int docCount;
+
+    /** The start of the document ids */
+    private final int docsOffset;
+
+    /** The start of the terms */
+    private final int termsOffset;
+
+    /** The number of terms */
+    private final int termCount;
+
+    /** The start of the postings */
+    private final int postingsOffset;
+
+    /** The number of words of all the documents */
+    private final long totalWordCount;
+
+    /**
+     * Creates the segment storing the given statistics.
+     *
+     * @param factory the factory of the segment
+     * @param data the statistics
+     */
+    private OffHeapIndexSegment(Factory factory, SegmentData data) {
+        this.factory = factory;
+        this.docCount = data.docIds.length;
+
+        SortedMap<Integer, SegmentData.Postings> postings = new TreeMap<>();
+        data.postings.forEach((term, termPostings) -> postings.put(factory.ordinalOf(term), termPostings));
+        int postingCount = postings.values().stream().mapToInt(SegmentData.Postings::size).sum();
+
+        this.termCount = postings.size();
+        int docsStart = docCount * Long.BYTES;
+        int termsStart = docsStart + docCount * Integer.BYTES;
+        int postingsStart = termsStart + termCount * TERM_ENTRY_SIZE;
+
+        OffHeapArena.Region region = factory.arena.allocate(postingsStart + postingCount * POSTING_ENTRY_SIZE);
+        this.buffer = region.getBuffer();
+        this.base = region.getOffset();
+        this.docsOffset = base + docsStart;
+        this.termsOffset = base + termsStart;
+        this.postingsOffset = base + postingsStart;
+
+        // Documents
+        long words = 0;
+        for (int d = 0; d < docCount; d++) {
+            buffer.putLong(base + d * Long.BYTES, data.wordCounts[d]);
+            buffer.putInt(docsOffset + d * Integer.BYTES, data.docIds[d]);
+            words += data.wordCounts[d];
+        }
+        this.totalWordCount = words;
+
+        // Terms and postings
+        int term = 0;
+        int posting = 0;
+        for (Map.Entry<Integer, SegmentData.Postings> entry : postings.entrySet()) {
+            SegmentData.Postings termPostings = entry.getValue();
+            int termEntry = termsOffset + term * TERM_ENTRY_SIZE;
+            buffer.putInt(termEntry, entry.getKey());
+            buffer.putInt(termEntry + Integer.BYTES, posting);
+            buffer.putInt(termEntry + 2 * Integer.BYTES, termPostings.size());
+            for (int i = 0; i < termPostings.size(); i++) {
+                int postingEntry = postingsOffset + posting * POSTING_ENTRY_SIZE;
+                buffer.putInt(postingEntry, data.indexOf(termPostings.docIds[i]));
+                buffer.putLong(postingEntry + Integer.BYTES, termPostings.occurrences[i]);
+                posting++;
+            }
+            term++;
+        }
+    }
+
+    /**
+     * Creates a factory of segments allocated in the given arena.
+     *
+     * @param arena the arena
+     * @return the segment factory
+     */
+    public static SegmentFactory factory(@NonNull OffHeapArena arena) {
+        return new Factory(arena);
+    }
+
+    /**
+     * Retrieves the number of documents in the segment.
+     *
+     * @return the number of documents
+     */
+    @Override
+    public int size() {
+        return docCount;
+    }
+
+    /**
+     * Retrieves the ids of the documents in the segment.
+     *
+     * @return the document ids in ascending order
+     */
+    @Override
+    public int[] getDocuments() {
+        int[] docIds = new int[docCount];
+        for (int d = 0; d < docCount; d++) {
+            docIds[d] = docIdAt(d);
+        }
+        return docIds;
+    }
+
+    /**
+     * Retrieves the id of the document at the given position of the segment.
+     *
+     * @param docIndex the position of the document
+     * @return the document id
+     */
+    @Override
+    public int getDocument(int docIndex) {
+        return docIdAt(docIndex);
+    }
+
+    /**
+     * Checks whether the segment contains the given document.
+     *
+     * @param docId the document id
+     * @return true if contained, false otherwise
+     */
+    @Override
+    public boolean contains(int docId) {
+        return indexOf(docId) >= 0;
+    }
+
+    /**
+     * Retrieves the terms found in the segment.
+     *
+     * @return the terms
+     */
+    @Override
+    public Set<String> getTerms() {
+        Set<String> terms = new LinkedHashSet<>();
+        for (int term = 0; term < termCount; term++) {
+            terms.add(factory.termOf(buffer.getInt(termsOffset + term * TERM_ENTRY_SIZE)));
+        }
+        return terms;
+    }
+
+    /**
+     * Retrieves the number of documents of the segment containing the term.
+     *
+     * @param term the term
+     * @return the document frequency of the term
+     */
+    @Override
+    public int documentFrequency(String term) {
+        int termEntry = termEntryOf(term);
+        return (termEntry != -1) ? buffer.getInt(termEntry + 2 * Integer.BYTES) : 0;
+    }
+
+    /**
+     * Retrieves the number of words of the given document.
+     *
+     * @param docId the document id
+     * @return the number of words or 0 if not in the segment
+     */
+    @Override
+    public long getWordCount(int docId) {
+        int index = indexOf(docId);
+        return (index >= 0) ? wordCountAt(index) : 0;
+    }
+
+    /**
+     * Retrieves the number of words of all the documents in the segment.
+     *
+     * @return the total number of words
+     */
+    @Override
+    public long getTotalWordCount() {
+        return totalWordCount;
+    }
+
+    /**
+     * Retrieves the occurrences of the term in the given document.
+     *
+     * @param term the term
+     * @param docId the document id
+     * @return the occurrences or 0 if the document does not contain the term
+     */
+    @Override
+    public long getOccurrences(String term, int docId) {
+        int termEntry = termEntryOf(term);
+        int index = (termEntry != -1) ? indexOf(docId) : -1;
+        if (index >= 0) {
+            // Binary search of the document in the postings of the term
+            int low = buffer.getInt(termEntry + Integer.BYTES);
+            int high = low + buffer.getInt(termEntry + 2 * Integer.BYTES) - 1;
+            while (low <= high) {
+                int mid = (low + high) >>> 1;
+                int postingEntry = postingsOffset + mid * POSTING_ENTRY_SIZE;
+                int midIndex = buffer.getInt(postingEntry);
+                if (midIndex < index) {
+                    low = mid + 1;
+                } else if (midIndex > index) {
+                    high = mid - 1;
+                } else {
+                    return buffer.getLong(postingEntry + Integer.BYTES);
+                }
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * Visits the postings of the term, i.e. the
+     * documents containing it in ascending id order.
+     *
+     * @param term the term
+     * @param visitor the visitor of the postings
+     */
+    @Override
+    public void forEachPosting(String term, PostingVisitor visitor) {
+        int termEntry = termEntryOf(term);
+        if (termEntry != -1) {
+            int first = buffer.getInt(termEntry + Integer.BYTES);
+            int count = buffer.getInt(termEntry + 2 * Integer.BYTES);
+            for (int posting = first; posting < first + count; posting++) {
+                int postingEntry = postingsOffset + posting * POSTING_ENTRY_SIZE;
+                int index = buffer.getInt(postingEntry);
+                visitor.visit(docIdAt(index), wordCountAt(index), buffer.getLong(postingEntry + Integer.BYTES));
+            }
+        }
+    }
+
+    /**
+     * Opens a cursor over the postings of the term.
+     *
+     * @param term the term
+     * @return the cursor on the first posting
+     */
+    @Override
+    public PostingCursor postings(String term) {
+        int termEntry = termEntryOf(term);
+        if (termEntry == -1) {
+            return new OffHeapPostingCursor(0, 0);
+        }
+        int first = buffer.getInt(termEntry + Integer.BYTES);
+        return new OffHeapPostingCursor(first, first + buffer.getInt(termEntry + 2 * Integer.BYTES));
+    }
+
+    /**
+     * Visits all the documents of the segment with the
+     * occurrences of the given terms in each one, merging
+     * the postings of the terms in document order.
+     *
+     * @param terms the terms
+     * @param visitor the visitor of the documents
+     */
+    @Override
+    public void forEachDocument(List<String> terms, DocumentVisitor visitor) {
+        int[] cursors = new int[terms.size()];
+        int[] ends = new int[terms.size()];
+        for (int i = 0; i < cursors.length; i++) {
+            int termEntry = termEntryOf(terms.get(i));
+            if (termEntry != -1) {
+                cursors[i] = buffer.getInt(termEntry + Integer.BYTES);
+                ends[i] = cursors[i] + buffer.getInt(termEntry + 2 * Integer.BYTES);
+            }
+        }
+
+        long[] occurrences = new long[terms.size()];
+        for (int d = 0; d < docCount; d++) {
+            for (int i = 0; i < cursors.length; i++) {
+                int postingEntry = postingsOffset + cursors[i] * POSTING_ENTRY_SIZE;
+                if ((cursors[i] < ends[i]) && (buffer.getInt(postingEntry) == d)) {
+                    occurrences[i] = buffer.getLong(postingEntry + Integer.BYTES);
+                    cursors[i]++;
+                } else {
+                    occurrences[i] = 0;
+                }
+            }
+            visitor.visit(docIdAt(d), wordCountAt(d), occurrences);
+        }
+    }
+
+    /**
+     * Creates a copy of the segment without the given documents,
+     * reusing the segment itself if it contains none of them.
+     *
+     * @param docIds the ids of the documents to remove in ascending order
+     * @return the resulting segment
+     */
+    @Override
+    public IndexSegment without(@NonNull int[] docIds) {
+        // Only copied to the heap when some document must be removed
+        for (int docId : docIds) {
+            if (indexOf(docId) >= 0) {
+                return new OffHeapIndexSegment(factory, toData().without(docIds));
+            }
+        }
+        return this;
+    }
+
+    /**
+     * Merges the segment with the given ones into a new segment
+     * allocated by the same factory. Segments must not share documents.
+     *
+     * @param segments the segments to merge with this one
+     * @return the merged segment
+     */
+    @Override
+    public IndexSegment merge(@NonNull List<IndexSegment> segments) {
+        return new OffHeapIndexSegment(factory, SegmentData.merge(this, segments));
+    }
+
+    /**
+     * Copies the statistics of the segment to the heap.
+     *
+     * @return the statistics
+     */
+    SegmentData toData() {
+        long[] wordCounts = new long[docCount];
+        for (int d = 0; d < docCount; d++) {
+            wordCounts[d] = wordCountAt(d);
+        }
+        int[] docIds = getDocuments();
+
+        Map<String, SegmentData.Postings> postings = new LinkedHashMap<>();
+        for (int term = 0; term < termCount; term++) {
+            int termEntry = termsOffset + term * TERM_ENTRY_SIZE;
+            int first = buffer.getInt(termEntry + Integer.BYTES);
+            int[] postingIds = new int[buffer.getInt(termEntry + 2 * Integer.BYTES)];
+            long[] occurrences = new long[postingIds.length];
+            for (int i = 0; i < postingIds.length; i++) {
+                int postingEntry = postingsOffset + (first + i) * POSTING_ENTRY_SIZE;
+                postingIds[i] = docIds[buffer.getInt(postingEntry)];
+                occurrences[i] = buffer.getLong(postingEntry + Integer.BYTES);
+            }
+            postings.put(factory.termOf(buffer.getInt(termEntry)), new SegmentData.Postings(postingIds, occurrences));
+        }
+        return new SegmentData(docIds, wordCounts, postings);
+    }
+
+    /**
+     * Finds the entry of the given term, searching its ordinal
+     * in the term entries stored in ascending ordinal order.
+     *
+     * @param term the term
+     * @return the offset of the term entry or -1 if not found
+     */
+    private int termEntryOf(String term) {
+        int ordinal = factory.findOrdinal(term);
+        if (ordinal != -1) {
+            int low = 0;
+            int high = termCount - 1;
+            while (low <= high) {
+                int mid = (low + high) >>> 1;
+                int termEntry = termsOffset + mid * TERM_ENTRY_SIZE;
+                int midOrdinal = buffer.getInt(termEntry);
+                if (midOrdinal < ordinal) {
+                    low = mid + 1;
+                } else if (midOrdinal > ordinal) {
+                    high = mid - 1;
+                } else {
+                    return termEntry;
+                }
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Finds the position of the given document in the segment.
+     *
+     * @param docId the document id
+     * @return the position or -1 if not found
+     */
+    private int indexOf(int docId) {
+        int low = 0;
+        int high = docCount - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            int midId = docIdAt(mid);
+            if (midId < docId) {
+                low = mid + 1;
+            } else if (midId > docId) {
+                high = mid - 1;
+            } else {
+                return mid;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Retrieves the id of the document at the given position.
+     *
+     * @param index the position of the document
+     * @return the document id
+     */
+    private int docIdAt(int index) {
+        return buffer.getInt(docsOffset + index * Integer.BYTES);
+    }
+
+    /**
+     * Retrieves the word count of the document at the given position.
+     *
+     * @param index the position of the document
+     * @return the number of words
+     */
+    private long wordCountAt(int index) {
+        return buffer.getLong(base + index * Long.BYTES);
+    }
+
+    /**
+     * A cursor over the postings of a term stored in the buffer
+     */
+    private class OffHeapPostingCursor implements PostingCursor {
+
+        /** The end of the postings of the term (exclusive) */
+        private final int end;
+
+        /** The current posting */
+        private int posting;
+
+        /** The position of the current document */
+        private int index;
+
+        /**
+         * Creates the cursor on the first of the given postings.
+         *
+         * @param first the first posting of the term
+         * @param end the end of the postings of the term (exclusive)
+         */
+        private OffHeapPostingCursor(int first, int end) {
+            this.end = end;
+            this.posting = first;
+            this.index = (first < end) ? indexAt(first) : -1;
+        }
+
+        @Override
+        public int docId() {
+            return (posting < end) ? docIdAt(index) : NO_MORE_DOCS;
+        }
+
+        @Override
+        public int docIndex() {
+            return index;
+        }
+
+        @Override
+        public long occurrences() {
+            return buffer.getLong(postingsOffset + posting * POSTING_ENTRY_SIZE + Integer.BYTES);
+        }
+
+        @Override
+        public int next() {
+            if (++posting < end) {
+                index = indexAt(posting);
+            }
+            return docId();
+        }
+
+        @Override
+        public int advance(int target) {
+            if ((posting < end) && (docIdAt(index) < target)) {
+                // Documents are stored in ascending id order, so are the positions of the postings
+                int low = posting + 1;
+                int high = end - 1;
+                while (low <= high) {
+                    int mid = (low + high) >>> 1;
+                    if (docIdAt(indexAt(mid)) < target) {
+                        low = mid + 1;
+                    } else {
+                        high = mid - 1;
+                    }
+                }
+                posting = low;
+                if (posting < end) {
+                    index = indexAt(posting);
+                }
+            }
+            return docId();
+        }
+
+        /**
+         * Retrieves the position of the document of the given posting.
+         *
+         * @param posting the posting
+         * @return the position of the document
+         */
+        private int indexAt(int posting) {
+            return buffer.getInt(postingsOffset + posting * POSTING_ENTRY_SIZE);
+        }
+    }
+
+    /**
+     * Builds the segments in an arena sharing the dictionary of terms.
+     */
+    private static class Factory implements SegmentFactory {
+
+        /** The arena of the segments */
+        private final OffHeapArena arena;
+
+        /** The ordinals of the terms */
+        private final Map<String, Integer> ordinals;
+
+        /** The terms by ordinal */
+        private final List<String> terms;
+
+        /**
+         * Creates the factory for the given arena.
+         *
+         * @param arena the arena
+         */
+        private Factory(OffHeapArena arena) {
+            this.arena = arena;
+            this.ordinals = new ConcurrentHashMap<>();
+            this.terms = new ArrayList<>();
+        }
+
+        /**
+         * Builds the segment for the given documents and their statistics.
+         *
+         * @param dictionary the document dictionary
+         * @param documents the documents
+         * @param docTerms the statistics of the terms in the documents
+         * @return the segment
+         */
+        @Override
+        public IndexSegment build(@NonNull DocumentDictionary dictionary, @NonNull Collection<Path> documents,
+                                  @NonNull Collection<DocTerm> docTerms) {
+            return new OffHeapIndexSegment(this, SegmentData.of(dictionary, documents, docTerms));
+        }
+
+        /**
+         * Retrieves the ordinal of a term, adding it to the dictionary if needed.
+         *
+         * @param term the term
+         * @return the ordinal
+         */
+        private int ordinalOf(String term) {
+            Integer ordinal = ordinals.get(term);
+            if (ordinal == null) {
+                synchronized (this) {
+                    ordinal = ordinals.get(term);
+                    if (ordinal == null) {
+                        terms.add(term);
+                        ordinal = terms.size() - 1;
+                        ordinals.put(term, ordinal);
+                    }
+                }
+            }
+            return ordinal;
+        }
+
+        /**
+         * Finds the ordinal of a term.
+         *
+         * @param term the term
+         * @return the ordinal or -1 if not in the dictionary
+         */
+        private int findOrdinal(String term) {
+            Integer ordinal = ordinals.get(term);
+            return (ordinal != null) ? ordinal : -1;
+        }
+
+        /**
+         * Retrieves the term with the given ordinal.
+         *
+         * @param ordinal the ordinal
+         * @return the term
+         */
+        private synchronized String termOf(int ordinal) {
+            return terms.get(ordinal);
+        }
+    }
+}
@@ -0,0 +1,70 @@
+/*
+ *
+ * Copyright 2020 Pablo Navais
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+
+package com.github.pnavais.ex3.index;
+
+import com.github.pnavais.ex3.api.exception.FileParsingException;
+import com.github.pnavais.ex3.api.index.IndexingExecutor;
+import com.github.pnavais.ex3.api.reader.DocumentReader;
+
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
+/**
+ * An implementation of the {@link IndexingExecutor} reading each document
+ * in a single task of the common fork-join pool, so the number of documents
+ * read concurrently is bounded by the size of the pool.
+ */
+public class PooledIndexingExecutor implements IndexingExecutor {
+
+    /**
+     * Reads asynchronously the statistics of the given document.
+     *
+     * @param doc the document
+     * @param reader the reader of the document
+     * @param terms the terms to look for
+     * @return the future statistics for the terms in the document
+     */
+    @Override
+    public CompletableFuture<List<DocTerm>> submit(Path doc, DocumentReader reader, Set<String> terms) {
+        return CompletableFuture.supplyAsync(() -> {
+            try {
+                return reader.processDocTerms(doc, terms);
+            } catch (FileParsingException e) {
+                throw new CompletionException(e);
+            }
+        });
+    }
+
+    /**
+     * Reads asynchronously the statistics of the given batch of documents
+     * in a single task, loading all of them in the same buffer.
+     *
+     * @param docs the documents
+     * @param reader the reader of the documents
+     * @param terms the terms to look for
+     * @return the future statistics for the terms in all the documents
+     */
+    @Override
+    public CompletableFuture<List<DocTerm>> submitBatch(List<Path> docs, DocumentReader reader, Set<String> terms) {
+        return CompletableFuture.supplyAsync(() -> DocumentBatch.load(docs).tokenize(reader, terms));
+    }
+}
@@ -0,0 +1,805 @@
+/*
+ *
+ * Copyright 2020 Pablo Navais
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+
+package com.github.pnavais.ex3.index;
+
+import com.github.pnavais.ex3.api.index.IndexSegment;
+import com.github.pnavais.ex3.api.ranking.Scorer;
+import com.github.pnavais.ex3.matcher.CompiledTermSet;
+import com.github.pnavais.ex3.ranking.CollectionStatistics;
+import com.github.pnavais.ex3.ranking.Proximity;
+import com.github.pnavais.ex3.ranking.RankingMode;
+import com.github.pnavais.ex3.ranking.ScoringStatistic;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.atomic.DoubleAccumulator;
+import java.util.function.ToIntFunction;
+
+/**
+ * The statistics precomputed for a {@link Scorer} over the segments of a snapshot :
+ * the weight of each term and the statistics of each segment (see {@link SegmentStatistics}),
+ * from which the norms of the documents are computed when the scorer relies on them. Ranking
+ * the snapshot then reduces to accumulating the scores of the terms found in each document.
+ * As the statistics of each segment are shared by all the snapshots containing it, only the
+ * weights of the terms are computed from scratch for every new snapshot.
+ * <p>
+ * The top documents are retrieved with the MaxScore algorithm, skipping the documents
+ * which cannot enter the top results. The upper bound of the score of each term in each
+ * segment is computed the first time from the dominant postings of the term in the segment,
+ * then the terms of each segment are sorted by their upper bound :
+ * - Once the top results are full, the terms whose upper bounds summed (with the ones of the
+ *   terms below) do not exceed the lowest top score cannot make a document enter the top
+ *   results on their own (non-essential terms).
+ * - Only the documents containing an essential term are candidates, the postings of the
+ *   non-essential terms are just probed for the candidates, skipping the rest of documents.
+ * - The scoring of a candidate stops as soon as its score plus the upper bounds of the
+ *   terms not yet probed cannot exceed the lowest top score.
+ * - Segments whose upper bounds summed cannot exceed the lowest top score are skipped.
+ * <p>
+ * Alternatively, for scorers proportional to the weights of the terms, the scores of each term
+ * in each document are computed the first time without their weights and stored in a column
+ * per term and segment (indexed by the position of the documents in the segment). The top
+ * documents are then retrieved scoring all of them, accumulating the weighted columns in
+ * loops over contiguous arrays the JIT compiler unrolls and vectorizes (see
+ * {@link RankingMode#COLUMNAR}).
+ * <p>
+ * Either way, large snapshots can be ranked in parallel, splitting their segments in
+ * partitions whose top documents are retrieved by the threads of a fork/join pool and
+ * merged. The lowest score of the top documents of each partition is shared with the
+ * rest, so all of them skip the documents which cannot enter the global top.
+ */
+final class ScoringContext {
+
+    /** The maximum number of documents of the partitions ranked in parallel */
+    static final int PARTITION_SIZE = 16384;
+
+    /** The scorer */
+    final Scorer scorer;
+
+    /** The terms to rank */
+    private final List<String> terms;
+
+    /** The weight of each term */
+    private final double[] termWeights;
+
+    /** The statistics of each segment */
+    private final SegmentStatistics[] segmentStatistics;
+
+    /** The statistics of the collection the norms of the documents are computed with */
+    private final CollectionStatistics collection;
+
+    /** Whether the scorer relies on the norms of the documents */
+    private final boolean normalized;
+
+    /** The upper bound of the score of each term in each segment, computed on demand */
+    private volatile double[][] upperBounds;
+
+    /** The unweighted scores of each term in the documents of each segment, computed on demand */
+    private volatile float[][][] columns;
+
+    /**
+     * Creates the context with the given statistics.
+     *
+     * @param scorer the scorer
+     * @param terms the terms to rank
+     * @param termWeights the weight of each term
+     * @param segmentStatistics the statistics of each segment
+     * @param collection the statistics of the collection
+     */
+    private ScoringContext(Scorer scorer, List<String> terms, double[] termWeights,
+                           SegmentStatistics[] segmentStatistics, CollectionStatistics collection) {
+        this.scorer = scorer;
+        this.terms = terms;
+        this.termWeights = termWeights;
+        this.segmentStatistics = segmentStatistics;
+        this.collection = collection;
+        this.normalized = scorer.getStatistics().contains(ScoringStatistic.DOCUMENT_LENGTH);
+    }
+
+    /**
+     * Precomputes the statistics the scorer relies on for the given snapshot.
+     *
+     * @param scorer the scorer
+     * @param snapshot the snapshot
+     * @param terms the terms to rank
+     * @return the scoring context
+     */
+    static ScoringContext of(Scorer scorer, IndexSnapshot snapshot, List<String> terms) {
+        return of(scorer, snapshot.getSegments(), terms, snapshot.getCollectionStatistics(),
+                snapshot::documentFrequency);
+    }
+
+    /**
+     * Precomputes the statistics the scorer relies on for the given segments with
+     * statistics of a larger collection (e.g. the documents of several nodes), so
+     * the scores of their documents are the ones they would have in the collection.
+     *
+     * @param scorer the scorer
+     * @param segments the segments
+     * @param terms the terms to rank
+     * @param collection the statistics of the collection
+     * @param documentFrequency the number of documents of the collection containing each term
+     * @return the scoring context
+     */
+    static ScoringContext of(Scorer scorer, List<IndexSegment> segments, List<String> terms,
+                             CollectionStatistics collection, ToIntFunction<String> documentFrequency) {
+        Set<ScoringStatistic> statistics = scorer.getStatistics();
+
+        double[] termWeights = new double[terms.size()];
+        for (int i = 0; i < termWeights.length; i++) {
+            termWeights[i] = statistics.contains(ScoringStatistic.INVERSE_DOCUMENT_FREQUENCY)
+                    ? scorer.termWeight(documentFrequency.applyAsInt(terms.get(i)), collection) : 1.0;
+        }
+
+        SegmentStatistics[] segmentStatistics = new SegmentStatistics[segments.size()];
+        for (int s = 0; s < segmentStatistics.length; s++) {
+            segmentStatistics[s] = SegmentStatistics.of(segments.get(s));
+        }
+
+        return new ScoringContext(scorer, terms, termWeights, segmentStatistics, collection);
+    }
+
+    /**
+     * Computes the norm of a document of the given length.
+     *
+     * @param wordCount the number of words of the document
+     * @return the norm or 1 if the scorer does not rely on it
+     */
+    private double norm(long wordCount) {
+        return normalized ? scorer.documentNorm(wordCount, collection) : 1.0;
+    }
+
+    /**
+     * Visits all the documents of the given segments, which must be the ones
+     * the context was computed for, with their scores.
+     *
+     * @param segments the segments
+     * @param consumer the consumer of the document ids and their scores
+     */
+    void forEachScore(List<IndexSegment> segments, IndexSnapshot.DocumentStatConsumer consumer) {
+        int termCount = termWeights.length;
+        for (int s = 0; s < segments.size(); s++) {
+            segments.get(s).forEachDocument(terms, (docId, wordCount, occurrences) -> {
+                double norm = norm(wordCount);
+                double sum = 0.0;
+                for (int i = 0; i < termCount; i++) {
+                    if ((occurrences[i] > 0) && (termWeights[i] != 0)) {
+                        sum += scorer.score(occurrences[i], norm, termWeights[i]);
+                    }
+                }
+                consumer.accept(docId, scorer.combine(sum, termCount));
+            });
+        }
+    }
+
+    /**
+     * Visits the top documents of the given segments, which must be the ones the
+     * context was computed for, in descending order of their scores. Documents with
+     * the same score are visited in the order the segments visit them. If less
+     * documents contain the terms, the top is completed with documents scoring 0.
+     * Scores are expected not to be negative.
+     *
+     * @param segments the segments
+     * @param n the maximum number of documents
+     * @param consumer the consumer of the document ids and their scores
+     */
+    void forEachTopScore(List<IndexSegment> segments, int n, IndexSnapshot.DocumentStatConsumer consumer) {
+        forEachTopScore(segments, n, RankingMode.MAXSCORE, null, consumer);
+    }
+
+    /**
+     * Visits the top documents of the given segments as {@link #forEachTopScore(List, int,
+     * IndexSnapshot.DocumentStatConsumer)} does, retrieving them with the given algorithm.
+     * The columnar one scores all the documents in single precision from the columns of
+     * unweighted term scores, falling back to MaxScore if the scores are not proportional
+     * to the weights of the terms.
+     * <p>
+     * If a pool is given, the documents are split in partitions of consecutive documents
+     * of the same segment, whose top documents are retrieved in parallel and then merged.
+     * The partitions share the lowest score of their top results, so each one only keeps
+     * the documents which may enter the global top. The documents visited are the same
+     * as in a sequential ranking.
+     *
+     * @param segments the segments
+     * @param n the maximum number of documents
+     * @param mode the ranking algorithm
+     * @param pool the pool ranking the partitions or null to rank them in the calling thread
+     * @param consumer the consumer of the document ids and their scores
+     */
+    void forEachTopScore(List<IndexSegment> segments, int n, RankingMode mode, ForkJoinPool pool,
+                         IndexSnapshot.DocumentStatConsumer consumer) {
+        PartitionRanker ranker = ((mode == RankingMode.COLUMNAR) && scorer.isProportionalToWeight())
+                ? columnarRanker(segments) : maxScoreRanker(segments);
+        List<Candidate> results;
+        if ((pool != null) && (pool.getParallelism() > 1)
+                && (segments.stream().mapToInt(IndexSegment::size).sum() > PARTITION_SIZE)) {
+            List<Partition> partitions = partitions(segments, PARTITION_SIZE);
+            results = pool.invoke(new TopScoresTask(ranker, partitions, 0, partitions.size(), n,
+                    new DoubleAccumulator(Math::max, Double.NEGATIVE_INFINITY)));
+        } else {
+            TopCollector top = new TopCollector(n, null);
+            partitions(segments, Integer.MAX_VALUE).forEach(partition -> ranker.rank(partition, top));
+            results = top.results();
+        }
+
+        if (results.size() < n) {
+            fillWithUnscored(segments, n, results);
+        }
+        results.sort(Candidate.WORST_FIRST.reversed());
+        int termCount = termWeights.length;
+        results.forEach(result -> consumer.accept(result.docId, scorer.combine(result.sum, termCount)));
+    }
+
+    /**
+     * Visits the top documents of the given segments as {@link #forEachTopScore(List, int,
+     * IndexSnapshot.DocumentStatConsumer)} does, boosting the scores of the documents where
+     * the terms are found close to each other. All the documents are scored, reading the
+     * positions of the terms in the documents containing all of them. Documents of
+     * segments not keeping the positions of the terms are not boosted.
+     *
+     * @param segments the segments
+     * @param n the maximum number of documents
+     * @param proximity the proximity of the terms boosting the scores
+     * @param consumer the consumer of the document ids and their scores
+     */
+    void forEachTopScore(List<IndexSegment> segments, int n, Proximity proximity,
+                         IndexSnapshot.DocumentStatConsumer consumer) {
+        int termCount = termWeights.length;
+        int[] words = terms.stream().mapToInt(term -> Math.max(1, CompiledTermSet.words(term).size())).toArray();
+        PriorityQueue<Candidate> top = new PriorityQueue<>(n + 1, Candidate.WORST_FIRST);
+        long[] base = { 0 };
+        for (int s = 0; s < segments.size(); s++) {
+            IndexSegment.PostingCursor[] cursors = new IndexSegment.PostingCursor[termCount];
+            for (int i = 0; i < termCount; i++) {
+                cursors[i] = segments.get(s).postings(terms.get(i));
+            }
+            int[][] positions = new int[termCount][];
+            int[] position = { 0 };
+            segments.get(s).forEachDocument(terms, (docId, wordCount, occurrences) -> {
+                int docIndex = position[0]++;
+                double norm = norm(wordCount);
+                double sum = 0.0;
+                boolean all = true;
+                for (int i = 0; i < termCount; i++) {
+                    if ((occurrences[i] > 0) && (termWeights[i] != 0)) {
+                        sum += scorer.score(occurrences[i], norm, termWeights[i]);
+                    }
+                    all &= occurrences[i] > 0;
+                }
+                double score = scorer.combine(sum, termCount);
+                if (all && (sum > 0)) {
+                    for (int i = 0; i < termCount; i++) {
+                        cursors[i].advance(docId);
+                        positions[i] = cursors[i].positions();
+                    }
+                    score *= proximity.boost(positions, words);
+                }
+                if ((top.size() < n) || (score > top.peek().sum)) {
+                    top.add(new Candidate(docId, base[0] + docIndex, score));
+                    if (top.size() > n) {
+                        top.poll();
+                    }
+                }
+            });
+            base[0] += segments.get(s).size();
+        }
+
+        List<Candidate> results = new ArrayList<>(top);
+        results.sort(Candidate.WORST_FIRST.reversed());
+        results.forEach(result -> consumer.accept(result.docId, result.sum));
+    }
+
+    /**
+     * Creates the ranker of partitions walking the postings of
+     * the terms with the MaxScore algorithm.
+     *
+     * @param segments the segments
+     * @return the ranker
+     */
+    private PartitionRanker maxScoreRanker(List<IndexSegment> segments) {
+        double[][] bounds = upperBounds(segments);
+        return (partition, top) -> {
+            IndexSegment segment = segments.get(partition.segment);
+            int[] order = sortedTerms(bounds[partition.segment]);
+            int m = order.length;
+            double[] prefix = new double[m];
+            for (int k = 0; k < m; k++) {
+                prefix[k] = bounds[partition.segment][order[k]] + ((k > 0) ? prefix[k - 1] : 0);
+            }
+            double threshold = top.threshold();
+            if ((m == 0) || (prefix[m - 1] <= threshold)) {
+                return;
+            }
+
+            IndexSegment.PostingCursor[] cursors = new IndexSegment.PostingCursor[m];
+            for (int k = 0; k < m; k++) {
+                cursors[k] = segment.postings(terms.get(order[k]));
+                cursors[k].advance(partition.firstDocId);
+            }
+            int firstEssential = 0;
+            long[] wordCounts = segmentStatistics[partition.segment].wordCounts;
+
+            for (;;) {
+                while ((firstEssential < m) && (prefix[firstEssential] <= threshold)) {
+                    firstEssential++;
+                }
+                int candidate = IndexSegment.PostingCursor.NO_MORE_DOCS;
+                for (int k = firstEssential; k < m; k++) {
+                    candidate = Math.min(candidate, cursors[k].docId());
+                }
+                if (candidate >= partition.endDocId) {
+                    break;
+                }
+
+                // Score the essential terms, then probe the rest while the candidate can enter the top
+                int docIndex = -1;
+                double norm = 1.0;
+                double sum = 0.0;
+                for (int k = firstEssential; k < m; k++) {
+                    if (cursors[k].docId() == candidate) {
+                        if (docIndex == -1) {
+                            docIndex = cursors[k].docIndex();
+                            norm = norm(wordCounts[docIndex]);
+                        }
+                        sum += scorer.score(cursors[k].occurrences(), norm, termWeights[order[k]]);
+                        cursors[k].next();
+                    }
+                }
+                for (int k = firstEssential - 1; (k >= 0) && (sum + prefix[k] > threshold); k--) {
+                    if (cursors[k].advance(candidate) == candidate) {
+                        sum += scorer.score(cursors[k].occurrences(), norm, termWeights[order[k]]);
+                    }
+                }
+
+                if (sum > threshold) {
+                    top.add(new Candidate(candidate, partition.base + docIndex, sum));
+                }
+                threshold = top.threshold();
+            }
+        };
+    }
+
+    /**
+     * Creates the ranker of partitions scoring all their documents
+     * from the columns of unweighted term scores.
+     *
+     * @param segments the segments
+     * @return the ranker
+     */
+    private PartitionRanker columnarRanker(List<IndexSegment> segments) {
+        float[][][] termColumns = columns(segments);
+        float[] weights = new float[termWeights.length];
+        for (int i = 0; i < weights.length; i++) {
+            weights[i] = (float) termWeights[i];
+        }
+        return (partition, top) -> {
+            float[][] segmentColumns = termColumns[partition.segment];
+            int size = partition.to - partition.from;
+            float[] scores = top.scores(size);
+            boolean scored = false;
+            for (int i = 0; i < weights.length; i++) {
+                if (segmentColumns[i] != null) {
+                    accumulate(scores, segmentColumns[i], partition.from, weights[i], size);
+                    scored = true;
+                }
+            }
+
+            // Documents scoring 0 only complete the top results
+            double threshold = top.threshold();
+            if (scored || (threshold < 0)) {
+                IndexSegment segment = segments.get(partition.segment);
+                for (int d = 0; d < size; d++) {
+                    if (scores[d] > threshold) {
+                        int docIndex = partition.from + d;
+                        top.add(new Candidate(segment.getDocument(docIndex), partition.base + docIndex, scores[d]));
+                        threshold = top.threshold();
+                    }
+                }
+            }
+        };
+    }
+
+    /**
+     * Adds a weighted column of term scores to the scores of the documents. Kept as a
+     * simple counted loop over contiguous arrays so it is unrolled and vectorized.
+     *
+     * @param scores the scores of the documents
+     * @param column the unweighted scores of the term
+     * @param offset the position in the column of the first document
+     * @param weight the weight of the term
+     * @param size the number of documents
+     */
+    private static void accumulate(float[] scores, float[] column, int offset, float weight, int size) {
+        for (int d = 0; d < size; d++) {
+            scores[d] += weight * column[offset + d];
+        }
+    }
+
+    /**
+     * Splits the documents of the given segments in partitions of consecutive
+     * documents of the same segment, in the order the segments visit them.
+     *
+     * @param segments the segments
+     * @param maxSize the maximum number of documents of each partition
+     * @return the partitions
+     */
+    private static List<Partition> partitions(List<IndexSegment> segments, int maxSize) {
+        List<Partition> partitions = new ArrayList<>();
+        long base = 0;
+        for (int s = 0; s < segments.size(); s++) {
+            IndexSegment segment = segments.get(s);
+            int size = segment.size();
+            for (int from = 0; from < size; from += maxSize) {
+                int to = (int) Math.min(size, (long) from + maxSize);
+                partitions.add(new Partition(s, from, to, base, segment.getDocument(from),
+                        (to < size) ? segment.getDocument(to) : IndexSegment.PostingCursor.NO_MORE_DOCS));
+            }
+            base += size;
+        }
+        return partitions;
+    }
+    /**
+     * Completes the given results with the documents not scored,
+     * in the order the segments visit them.
+     *
+     * @param segments the segments
+     * @param n the maximum number of documents
+     * @param results the results
+     */
+    private static void fillWithUnscored(List<IndexSegment> segments, int n, List<Candidate> results) {
+        Set<Integer> scored = new HashSet<>();
+        results.forEach(result -> scored.add(result.docId));
+        long base = 0;
+        for (IndexSegment segment : segments) {
+            int[] docIds = segment.getDocuments();
+            for (int d = 0; (d < docIds.length) && (results.size() < n); d++) {
+                if (!scored.contains(docIds[d])) {
+                    results.add(new Candidate(docIds[d], base + d, 0.0));
+                }
+            }
+            if (results.size() == n) {
+                return;
+            }
+            base += docIds.length;
+        }
+    }
+
+    /**
+     * Retrieves the terms contributing to the scores of a segment,
+     * sorted by the upper bounds of their scores in ascending order.
+     *
+     * @param bounds the upper bounds of the scores of the terms in the segment
+     * @return the indexes of the terms
+     */
+    private static int[] sortedTerms(double[] bounds) {
+        List<Integer> order = new ArrayList<>(bounds.length);
+        for (int i = 0; i < bounds.length; i++) {
+            if (bounds[i] > 0) {
+                order.add(i);
+            }
+        }
+        order.sort(Comparator.comparingDouble(i -> bounds[i]));
+        return order.stream().mapToInt(Integer::intValue).toArray();
+    }
+
+    /**
+     * Retrieves the upper bound of the score of each term in each
+     * one of the given segments, computing them the first time.
+     *
+     * @param segments the segments
+     * @return the upper bounds by segment and term
+     */
+    private double[][] upperBounds(List<IndexSegment> segments) {
+        double[][] bounds = upperBounds;
+        if (bounds == null) {
+            bounds = new double[segments.size()][termWeights.length];
+            for (int s = 0; s < segments.size(); s++) {
+                for (int i = 0; i < termWeights.length; i++) {
+                    if (termWeights[i] != 0) {
+                        double bound = 0.0;
+                        SegmentStatistics.DominantPostings dominant =
+                                segmentStatistics[s].dominantPostings(segments.get(s), terms.get(i));
+                        for (int k = 0; k < dominant.size(); k++) {
+                            bound = Math.max(bound, scorer.score(dominant.occurrences[k],
+                                    norm(dominant.wordCounts[k]), termWeights[i]));
+                        }
+                        bounds[s][i] = bound;
+                    }
+                }
+            }
+            upperBounds = bounds;
+        }
+        return bounds;
+    }
+
+    /**
+     * Retrieves the unweighted scores of each term in the documents of each one of
+     * the given segments, computing them the first time. The columns of the terms
+     * not found in a segment (or weighing 0) are null.
+     *
+     * @param segments the segments
+     * @return the columns of scores by segment and term
+     */
+    private float[][][] columns(List<IndexSegment> segments) {
+        float[][][] termColumns = columns;
+        if (termColumns == null) {
+            termColumns = new float[segments.size()][termWeights.length][];
+            for (int s = 0; s < segments.size(); s++) {
+                long[] wordCounts = segmentStatistics[s].wordCounts;
+                for (int i = 0; i < termWeights.length; i++) {
+                    IndexSegment.PostingCursor cursor = segments.get(s).postings(terms.get(i));
+                    if ((termWeights[i] != 0) && (cursor.docId() != IndexSegment.PostingCursor.NO_MORE_DOCS)) {
+                        float[] column = new float[segments.get(s).size()];
+                        for (; cursor.docId() != IndexSegment.PostingCursor.NO_MORE_DOCS; cursor.next()) {
+                            double norm = norm(wordCounts[cursor.docIndex()]);
+                            column[cursor.docIndex()] = (float) scorer.score(cursor.occurrences(), norm, 1.0);
+                        }
+                        termColumns[s][i] = column;
+                    }
+                }
+            }
+            columns = termColumns;
+        }
+        return termColumns;
+    }
+
+    /**
+     * Retrieves the top documents of a partition
+     */
+    @FunctionalInterface
+    private interface PartitionRanker {
+
+        /**
+         * Adds the documents of the partition which may enter the top results to the collector.
+         *
+         * @param partition the partition
+         * @param top the collector of the top results
+         */
+        void rank(Partition partition, TopCollector top);
+    }
+
+    /**
+     * A range of consecutive documents of a segment
+     */
+    private static final class Partition {
+
+        /** The index of the segment */
+        final int segment;
+
+        /** The position of the first document in the segment */
+        final int from;
+
+        /** The position after the last document in the segment */
+        final int to;
+
+        /** The order in which the first document of the segment is visited */
+        final long base;
+
+        /** The id of the first document */
+        final int firstDocId;
+
+        /** The id of the document after the last one or {@link IndexSegment.PostingCursor#NO_MORE_DOCS} */
+        final int endDocId;
+
+        /**
+         * Creates the partition.
+         *
+         * @param segment the index of the segment
+         * @param from the position of the first document
+         * @param to the position after the last document
+         * @param base the order in which the first document of the segment is visited
+         * @param firstDocId the id of the first document
+         * @param endDocId the id of the document after the last one
+         */
+        Partition(int segment, int from, int to, long base, int firstDocId, int endDocId) {
+            this.segment = segment;
+            this.from = from;
+            this.to = to;
+            this.base = base;
+            this.firstDocId = firstDocId;
+            this.endDocId = endDocId;
+        }
+    }
+
+    /**
+     * Keeps the top candidates of one or several partitions ranked by the same thread
+     */
+    private static final class TopCollector {
+
+        /** The maximum number of candidates */
+        private final int n;
+
+        /** The candidates, the lowest score first */
+        private final PriorityQueue<Candidate> top;
+
+        /** The highest of the lowest top scores of the partitions ranked in parallel or null */
+        private final DoubleAccumulator shared;
+
+        /** The lowest score of the candidates once there are n of them */
+        private double threshold = Double.NEGATIVE_INFINITY;
+
+        /** The scores of the documents of a partition, reused for all the partitions */
+        private float[] scores = new float[0];
+
+        /**
+         * Creates the collector.
+         *
+         * @param n the maximum number of candidates
+         * @param shared the highest of the lowest top scores of the partitions ranked in parallel or null
+         */
+        TopCollector(int n, DoubleAccumulator shared) {
+            this.n = n;
+            this.top = new PriorityQueue<>(n + 1, Candidate.WORST_FIRST);
+            this.shared = shared;
+        }
+
+        /**
+         * Retrieves the score candidates must exceed to enter the top results. Documents
+         * of other partitions with the same score as their lowest top one may still be
+         * visited later, so candidates reaching it are kept.
+         *
+         * @return the score to exceed
+         */
+        double threshold() {
+            return (shared != null) ? Math.max(threshold, Math.nextDown(shared.get())) : threshold;
+        }
+
+        /**
+         * Adds a candidate, evicting the lowest one if there are more than n.
+         *
+         * @param candidate the candidate
+         */
+        void add(Candidate candidate) {
+            top.add(candidate);
+            if (top.size() > n) {
+                top.poll();
+            }
+            if (top.size() == n) {
+                threshold = top.peek().sum;
+                if (shared != null) {
+                    shared.accumulate(threshold);
+                }
+            }
+        }
+
+        /**
+         * Retrieves a buffer of zeroed scores for the documents of a partition.
+         *
+         * @param size the number of documents
+         * @return the scores
+         */
+        float[] scores(int size) {
+            if (scores.length < size) {
+                scores = new float[size];
+            } else {
+                Arrays.fill(scores, 0, size, 0.0f);
+            }
+            return scores;
+        }
+
+        /**
+         * Retrieves the candidates collected.
+         *
+         * @return the candidates in no particular order
+         */
+        List<Candidate> results() {
+            return new ArrayList<>(top);
+        }
+    }
+
+    /**
+     * Retrieves the top candidates of a range of partitions, splitting it in halves
+     * ranked in parallel until a single partition is left, then merging the halves.
+     */
+    private static final class TopScoresTask extends RecursiveTask<List<Candidate>> {
+
+        /** The ranker of the partitions */
+        private final PartitionRanker ranker;
+
+        /** The partitions */
+        private final List<Partition> partitions;
+
+        /** The index of the first partition of the range */
+        private final int from;
+
+        /** The index after the last partition of the range */
+        private final int to;
+
+        /** The maximum number of candidates */
+        private final int n;
+
+        /** The highest of the lowest top scores of the partitions */
+        private final DoubleAccumulator shared;
+
+        /**
+         * Creates the task.
+         *
+         * @param ranker the ranker of the partitions
+         * @param partitions the partitions
+         * @param from the index of the first partition of the range
+         * @param to the index after the last partition of the range
+         * @param n the maximum number of candidates
+         * @param shared the highest of the lowest top scores of the partitions
+         */
+        TopScoresTask(PartitionRanker ranker, List<Partition> partitions, int from, int to, int n,
+                      DoubleAccumulator shared) {
+            this.ranker = ranker;
+            this.partitions = partitions;
+            this.from = from;
+            this.to = to;
+            this.n = n;
+            this.shared = shared;
+        }
+
+        @Override
+        protected List<Candidate> compute() {
+            if (to - from == 1) {
+                TopCollector top = new TopCollector(n, shared);
+                ranker.rank(partitions.get(from), top);
+                return top.results();
+            }
+            int middle = (from + to) >>> 1;
+            TopScoresTask left = new TopScoresTask(ranker, partitions, from, middle, n, shared);
+            left.fork();
+            List<Candidate> results = new TopScoresTask(ranker, partitions, middle, to, n, shared).compute();
+            results.addAll(left.join());
+            results.sort(Candidate.WORST_FIRST.reversed());
+            return new ArrayList<>(results.subList(0, Math.min(n, results.size())));
+        }
+    }
+
+    /**
+     * A document candidate to the top results
+     */
+    private static final class Candidate {
+
+        /** Orders the candidates from the lowest score, the latest visited first on ties */
+        static final Comparator<Candidate> WORST_FIRST = Comparator.<Candidate>comparingDouble(c -> c.sum)
+                .thenComparing(Comparator.<Candidate>comparingLong(c -> c.ordinal).reversed());
+
+        /** The document id */
+        final int docId;
+
+        /** The order in which the document is visited */
+        final long ordinal;
+
+        /** The sum of the scores of the terms in the document */
+        final double sum;
+
+        /**
+         * Creates the candidate.
+         *
+         * @param docId the document id
+         * @param ordinal the order in which the document is visited
+         * @param sum the sum of the scores of the terms
+         */
+        Candidate(int docId, long ordinal, double sum) {
+            this.docId = docId;
+            this.ordinal = ordinal;
+            this.sum = sum;
+        }
+    }
+}
@@ -0,0 +1,398 @@
+/*
+ *
+ * Copyright 2020 Pablo Navais
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+
+package com.github.pnavais.ex3.index;
+
+import com.github.pnavais.ex3.api.index.IndexSegment;
+import com.github.pnavais.ex3.matcher.TermPositions;
+import lombok.AllArgsConstructor;
+
+import java.nio.file.Path;
+import java.util.*;
+
+/**
+ * The statistics of a segment keyed by document id : the ids of the documents
+ * in ascending order with their word counts, and the postings of each term
+ * (the documents containing the term, also in ascending id order, and
+ * the occurrences of the term in each one). If the positions of the terms
+ * were recorded while reading the documents, the postings also keep the
+ * encoded positions of the term in each document (see {@link TermPositions}).
+ */
+@AllArgsConstructor
+final class SegmentData {
+
+    /** The ids of the documents in ascending order */
+    final int[] docIds;
+
+    /** The number of words of each document */
+    final long[] wordCounts;
+
+    /** The postings of each term */
+    final Map<String, Postings> postings;
+
+    /**
+     * Builds the statistics for the given documents, assigning
+     * their ids in the dictionary. Statistics of documents
+     * not in the given collection are ignored.
+     *
+     * @param dictionary the document dictionary
+     * @param documents the documents
+     * @param docTerms the statistics of the terms in the documents
+     * @return the statistics
+     */
+    static SegmentData of(DocumentDictionary dictionary, Collection<Path> documents, Collection<DocTerm> docTerms) {
+        Map<Path, Integer> ids = new HashMap<>();
+        documents.forEach(doc -> ids.put(doc, dictionary.intern(doc)));
+        int[] docIds = ids.values().stream().mapToInt(Integer::intValue).sorted().toArray();
+        long[] wordCounts = new long[docIds.length];
+
+        Map<String, List<DocTerm>> termDocs = new LinkedHashMap<>();
+        for (DocTerm docTerm : docTerms) {
+            Integer id = ids.get(docTerm.getDocument());
+            if (id != null) {
+                wordCounts[Arrays.binarySearch(docIds, id)] = docTerm.getWordCount();
+                // Only store matching documents
+                if (docTerm.getOccurrences() > 0) {
+                    termDocs.computeIfAbsent(docTerm.getTerm(), t -> new ArrayList<>()).add(docTerm);
+                }
+            }
+        }
+
+        Map<String, Postings> postings = new LinkedHashMap<>();
+        termDocs.forEach((term, list) -> {
+            list.sort(Comparator.comparing(docTerm -> ids.get(docTerm.getDocument())));
+            int[] postingIds = new int[list.size()];
+            long[] occurrences = new long[list.size()];
+            for (int i = 0; i < postingIds.length; i++) {
+                postingIds[i] = ids.get(list.get(i).getDocument());
+                occurrences[i] = list.get(i).getOccurrences();
+            }
+            if (list.stream().anyMatch(docTerm -> docTerm.getPositions() != null)) {
+                int[] offsets = new int[list.size() + 1];
+                for (int i = 0; i < postingIds.length; i++) {
+                    byte[] encoded = list.get(i).getPositions();
+                    offsets[i + 1] = offsets[i] + ((encoded != null) ? encoded.length : 0);
+                }
+                byte[] positions = new byte[offsets[postingIds.length]];
+                for (int i = 0; i < postingIds.length; i++) {
+                    byte[] encoded = list.get(i).getPositions();
+                    if (encoded != null) {
+                        System.arraycopy(encoded, 0, positions, offsets[i], encoded.length);
+                    }
+                }
+                postings.put(term, new Postings(postingIds, occurrences, positions, offsets));
+            } else {
+                postings.put(term, new Postings(postingIds, occurrences));
+            }
+        });
+        return new SegmentData(docIds, wordCounts, postings);
+    }
+
+    /**
+     * Merges the statistics of several segments not sharing any
+     * document into a single one, keeping the order in which
+     * the terms were first found.
+     *
+     * @param parts the statistics to merge
+     * @return the merged statistics
+     */
+    static SegmentData merge(List<SegmentData> parts) {
+        int docCount = parts.stream().mapToInt(part -> part.docIds.length).sum();
+        int[] docIds = new int[docCount];
+        long[] wordCounts = new long[docCount];
+        long[] order = new long[docCount];
+        int n = 0;
+        for (SegmentData part : parts) {
+            for (int i = 0; i < part.docIds.length; i++, n++) {
+                docIds[n] = part.docIds[i];
+                wordCounts[n] = part.wordCounts[i];
+            }
+        }
+        sortById(docIds, wordCounts, order);
+
+        Map<String, List<Postings>> termParts = new LinkedHashMap<>();
+        parts.forEach(part -> part.postings.forEach((term, termPostings) ->
+                termParts.computeIfAbsent(term, t -> new ArrayList<>(parts.size())).add(termPostings)));
+        Map<String, Postings> postings = new LinkedHashMap<>();
+        termParts.forEach((term, list) -> postings.put(term, Postings.merge(list)));
+        return new SegmentData(docIds, wordCounts, postings);
+    }
+
+    /**
+     * Merges the statistics of the given segments.
+     *
+     * @param first the first segment
+     * @param others the rest of segments
+     * @return the merged statistics
+     */
+    static SegmentData merge(IndexSegment first, List<IndexSegment> others) {
+        List<SegmentData> parts = new ArrayList<>(others.size() + 1);
+        parts.add(of(first));
+        others.forEach(segment -> parts.add(of(segment)));
+        return merge(parts);
+    }
+
+    /**
+     * Retrieves the statistics of the given segment,
+     * copying them to the heap for off-heap segments.
+     *
+     * @param segment the segment
+     * @return the statistics
+     */
+    static SegmentData of(IndexSegment segment) {
+        if (segment instanceof HeapIndexSegment) {
+            return ((HeapIndexSegment) segment).getData();
+        } else if (segment instanceof OffHeapIndexSegment) {
+            return ((OffHeapIndexSegment) segment).toData();
+        }
+        throw new IllegalArgumentException("Unsupported segment type " + segment.getClass().getSimpleName());
+    }
+
+    /**
+     * Sorts the given ids in ascending order along with their values,
+     * packing each id with its position to sort them as primitives.
+     *
+     * @param ids the (unique) ids
+     * @param values the value of each id
+     * @param order a buffer of the same length
+     */
+    private static void sortById(int[] ids, long[] values, long[] order) {
+        for (int i = 0; i < ids.length; i++) {
+            order[i] = ((long) ids[i] << Integer.SIZE) | i;
+        }
+        Arrays.sort(order);
+        long[] sortedValues = new long[values.length];
+        for (int i = 0; i < order.length; i++) {
+            int position = (int) order[i];
+            ids[i] = (int) (order[i] >>> Integer.SIZE);
+            sortedValues[i] = values[position];
+        }
+        System.arraycopy(sortedValues, 0, values, 0, values.length);
+    }
+
+    /**
+     * Finds the position of the given document.
+     *
+     * @param docId the document id
+     * @return the position or a negative value if not found
+     */
+    int indexOf(int docId) {
+        return Arrays.binarySearch(docIds, docId);
+    }
+
+    /**
+     * Checks whether any of the given documents is present.
+     *
+     * @param removed the document ids in ascending order
+     * @return true if at least one is present, false otherwise
+     */
+    boolean containsAny(int[] removed) {
+        for (int i = 0, j = 0; (i < docIds.length) && (j < removed.length); ) {
+            if (docIds[i] == removed[j]) {
+                return true;
+            } else if (docIds[i] < removed[j]) {
+                i++;
+            } else {
+                j++;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Creates a copy of the statistics without the given documents.
+     *
+     * @param removed the document ids in ascending order
+     * @return the resulting statistics
+     */
+    SegmentData without(int[] removed) {
+        int kept = 0;
+        int[] keptIds = new int[docIds.length];
+        long[] keptCounts = new long[docIds.length];
+        for (int i = 0; i < docIds.length; i++) {
+            if (Arrays.binarySearch(removed, docIds[i]) < 0) {
+                keptIds[kept] = docIds[i];
+                keptCounts[kept++] = wordCounts[i];
+            }
+        }
+
+        Map<String, Postings> keptPostings = new LinkedHashMap<>();
+        postings.forEach((term, termPostings) -> {
+            Postings filtered = termPostings.without(removed);
+            if (filtered.size() > 0) {
+                keptPostings.put(term, filtered);
+            }
+        });
+        return new SegmentData(Arrays.copyOf(keptIds, kept), Arrays.copyOf(keptCounts, kept), keptPostings);
+    }
+
+    /**
+     * The documents containing a term
+     */
+    @AllArgsConstructor
+    static final class Postings {
+
+        /** The ids of the documents in ascending order */
+        final int[] docIds;
+
+        /** The occurrences of the term in each document */
+        final long[] occurrences;
+
+        /** The encoded positions of the term in all the documents or null if not recorded */
+        final byte[] positions;
+
+        /** The offset of the positions of each document (plus their end) or null if not recorded */
+        final int[] positionOffsets;
+
+        /**
+         * Creates the postings without positions.
+         *
+         * @param docIds the ids of the documents in ascending order
+         * @param occurrences the occurrences of the term in each document
+         */
+        Postings(int[] docIds, long[] occurrences) {
+            this(docIds, occurrences, null, null);
+        }
+
+        /**
+         * Retrieves the number of documents containing the term.
+         *
+         * @return the number of documents
+         */
+        int size() {
+            return docIds.length;
+        }
+
+        /**
+         * Retrieves the occurrences of the term in the given document.
+         *
+         * @param docId the document id
+         * @return the occurrences or 0 if not found
+         */
+        long occurrencesOf(int docId) {
+            int index = Arrays.binarySearch(docIds, docId);
+            return (index >= 0) ? occurrences[index] : 0;
+        }
+
+        /**
+         * Retrieves the positions of the term in the document of the given posting.
+         *
+         * @param posting the index of the posting
+         * @return the positions in ascending order or null if not recorded
+         */
+        int[] positionsAt(int posting) {
+            return (positions != null)
+                    ? TermPositions.decode(positions, positionOffsets[posting], positionOffsets[posting + 1]) : null;
+        }
+
+        /**
+         * Retrieves the number of bytes of the encoded positions.
+         *
+         * @return the number of bytes or 0 if not recorded
+         */
+        int positionsSize() {
+            return (positions != null) ? positions.length : 0;
+        }
+
+        /**
+         * Merges the postings of the same term from segments
+         * not sharing any document.
+         *
+         * @param parts the postings to merge
+         * @return the merged postings
+         */
+        static Postings merge(List<Postings> parts) {
+            if (parts.size() == 1) {
+                return parts.get(0);
+            }
+            int size = parts.stream().mapToInt(Postings::size).sum();
+            int[] docIds = new int[size];
+            long[] occurrences = new long[size];
+            Postings[] sources = new Postings[size];
+            int[] sourcePostings = new int[size];
+            int n = 0;
+            for (Postings part : parts) {
+                System.arraycopy(part.docIds, 0, docIds, n, part.size());
+                System.arraycopy(part.occurrences, 0, occurrences, n, part.size());
+                for (int i = 0; i < part.size(); i++, n++) {
+                    sources[n] = part;
+                    sourcePostings[n] = i;
+                }
+            }
+            long[] order = new long[size];
+            sortById(docIds, occurrences, order);
+            if (parts.stream().noneMatch(part -> part.positions != null)) {
+                return new Postings(docIds, occurrences);
+            }
+
+            // The positions follow the postings, packed along with their ids when sorted
+            int[] offsets = new int[size + 1];
+            for (int i = 0; i < size; i++) {
+                offsets[i + 1] = offsets[i] + sources[(int) order[i]].positionsLength(sourcePostings[(int) order[i]]);
+            }
+            byte[] positions = new byte[offsets[size]];
+            for (int i = 0; i < size; i++) {
+                Postings source = sources[(int) order[i]];
+                if (source.positions != null) {
+                    System.arraycopy(source.positions, source.positionOffsets[sourcePostings[(int) order[i]]],
+                            positions, offsets[i], offsets[i + 1] - offsets[i]);
+                }
+            }
+            return new Postings(docIds, occurrences, positions, offsets);
+        }
+
+        /**
+         * Creates a copy of the postings without the given documents.
+         *
+         * @param removed the document ids in ascending order
+         * @return the resulting postings
+         */
+        Postings without(int[] removed) {
+            int kept = 0;
+            int[] keptIds = new int[docIds.length];
+            long[] keptOccurrences = new long[docIds.length];
+            int[] keptOffsets = (positions != null) ? new int[docIds.length + 1] : null;
+            byte[] keptPositions = (positions != null) ? new byte[positions.length] : null;
+            for (int i = 0; i < docIds.length; i++) {
+                if (Arrays.binarySearch(removed, docIds[i]) < 0) {
+                    if (positions != null) {
+                        int length = positionsLength(i);
+                        System.arraycopy(positions, positionOffsets[i], keptPositions, keptOffsets[kept], length);
+                        keptOffsets[kept + 1] = keptOffsets[kept] + length;
+                    }
+                    keptIds[kept] = docIds[i];
+                    keptOccurrences[kept++] = occurrences[i];
+                }
+            }
+            return (positions != null)
+                    ? new Postings(Arrays.copyOf(keptIds, kept), Arrays.copyOf(keptOccurrences, kept),
+                            Arrays.copyOf(keptPositions, keptOffsets[kept]), Arrays.copyOf(keptOffsets, kept + 1))
+                    : new Postings(Arrays.copyOf(keptIds, kept), Arrays.copyOf(keptOccurrences, kept));
+        }
+
+        /**
+         * Retrieves the number of bytes of the encoded positions of the given posting.
+         *
+         * @param posting the index of the posting
+         * @return the number of bytes or 0 if not recorded
+         */
+        private int positionsLength(int posting) {
+            return (positions != null) ? positionOffsets[posting + 1] - positionOffsets[posting] : 0;
+        }
+    }
+}
@@ -0,0 +1,189 @@
+/*
+ *
+ * Copyright 2020 Pablo Navais
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+
+package com.github.pnavais.ex3.index;
+
+import com.github.pnavais.ex3.api.index.IndexSegment;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * The statistics of a segment the scoring of its documents relies on, which depend neither
+ * on the scorer nor on the rest of the collection. As segments are immutable and shared by
+ * several snapshots, they are computed once per segment and reused by the scoring contexts
+ * of all the snapshots containing it :
+ * - The number of words of each document, in the order the segment visits them.
+ * - The dominant postings of each term, i.e. the ones no other posting of the term outnumbers
+ *   in occurrences with as many words or less. As scores do not decrease with the occurrences
+ *   nor increase with the length of the documents, the highest score of a term in the segment
+ *   is always the one of a dominant posting.
+ * <p>
+ * The statistics are kept while the segment is reachable. Segments are compared by identity,
+ * as none of them overrides equals.
+ */
+final class SegmentStatistics {
+
+    /** The statistics of every segment ranked */
+    private static final Map<IndexSegment, SegmentStatistics> STATISTICS =
+            Collections.synchronizedMap(new WeakHashMap<>());
+
+    /** The number of words of each document of the segment */
+    final long[] wordCounts;
+
+    /** The dominant postings of each term, computed on demand */
+    private final Map<String, DominantPostings> dominantPostings;
+
+    /**
+     * Creates the statistics of the given segment.
+     *
+     * @param segment the segment
+     */
+    private SegmentStatistics(IndexSegment segment) {
+        this.wordCounts = new long[segment.size()];
+        this.dominantPostings = new ConcurrentHashMap<>();
+        int[] position = { 0 };
+        segment.forEachDocument(Collections.emptyList(), (docId, wordCount, occurrences) ->
+                wordCounts[position[0]++] = wordCount);
+    }
+
+    /**
+     * Retrieves the statistics of the given segment, computing them the first time.
+     * The statistics are computed out of the lock of the statistics of every segment,
+     * so threads ranking other segments are not kept waiting. Threads computing them
+     * at the same time for the same segment all retrieve the ones published first.
+     *
+     * @param segment the segment
+     * @return the statistics
+     */
+    static SegmentStatistics of(IndexSegment segment) {
+        SegmentStatistics statistics = STATISTICS.get(segment);
+        if (statistics == null) {
+            statistics = new SegmentStatistics(segment);
+            SegmentStatistics published = STATISTICS.putIfAbsent(segment, statistics);
+            if (published != null) {
+                statistics = published;
+            }
+        }
+        return statistics;
+    }
+
+    /**
+     * Retrieves the dominant postings of the term in the given segment,
+     * which must be the one the statistics were computed for.
+     *
+     * @param segment the segment
+     * @param term the term
+     * @return the dominant postings
+     */
+    DominantPostings dominantPostings(IndexSegment segment, String term) {
+        return dominantPostings.computeIfAbsent(term, t -> DominantPostings.of(segment.postings(t), wordCounts));
+    }
+
+    /**
+     * The postings of a term no other posting outnumbers in occurrences
+     * with as many words or less, in ascending order of words.
+     */
+    static final class DominantPostings {
+
+        /** The occurrences of the term in each posting, in ascending order */
+        final long[] occurrences;
+
+        /** The number of words of the document of each posting, in ascending order */
+        final long[] wordCounts;
+
+        /**
+         * Creates the dominant postings.
+         *
+         * @param occurrences the occurrences of the term in each posting
+         * @param wordCounts the number of words of the document of each posting
+         */
+        private DominantPostings(long[] occurrences, long[] wordCounts) {
+            this.occurrences = occurrences;
+            this.wordCounts = wordCounts;
+        }
+
+        /**
+         * Finds the dominant postings of a term, sweeping its postings from the shortest
+         * document to the longest one and keeping those with more occurrences than all
+         * the previous ones. The postings are sorted as primitive keys packing the words
+         * of the document (or their rank if too many to pack) with the index of the posting.
+         *
+         * @param cursor the cursor over the postings of the term
+         * @param docWordCounts the number of words of each document of the segment
+         * @return the dominant postings
+         */
+        private static DominantPostings of(IndexSegment.PostingCursor cursor, long[] docWordCounts) {
+            int size = 0;
+            long[] postingWordCounts = new long[16];
+            long[] postingOccurrences = new long[16];
+            long maxWordCount = 0;
+            for (; cursor.docId() != IndexSegment.PostingCursor.NO_MORE_DOCS; cursor.next()) {
+                if (size == postingWordCounts.length) {
+                    postingWordCounts = Arrays.copyOf(postingWordCounts, size * 2);
+                    postingOccurrences = Arrays.copyOf(postingOccurrences, size * 2);
+                }
+                postingWordCounts[size] = docWordCounts[cursor.docIndex()];
+                postingOccurrences[size] = cursor.occurrences();
+                maxWordCount = Math.max(maxWordCount, postingWordCounts[size]);
+                size++;
+            }
+
+            long[] ranks = null;
+            if (maxWordCount > Integer.MAX_VALUE) {
+                ranks = Arrays.copyOf(postingWordCounts, size);
+                Arrays.sort(ranks);
+            }
+            long[] order = new long[size];
+            for (int i = 0; i < size; i++) {
+                long key = (ranks != null) ? Arrays.binarySearch(ranks, postingWordCounts[i]) : postingWordCounts[i];
+                order[i] = (key << Integer.SIZE) | i;
+            }
+            Arrays.sort(order);
+
+            long[] occurrences = new long[size];
+            long[] wordCounts = new long[size];
+            int dominant = 0;
+            for (long key : order) {
+                int i = (int) key;
+                if ((dominant > 0) && (wordCounts[dominant - 1] == postingWordCounts[i])) {
+                    // As many words as the last dominant posting, keep the one with more occurrences
+                    occurrences[dominant - 1] = Math.max(occurrences[dominant - 1], postingOccurrences[i]);
+                } else if ((dominant == 0) || (postingOccurrences[i] > occurrences[dominant - 1])) {
+                    occurrences[dominant] = postingOccurrences[i];
+                    wordCounts[dominant] = postingWordCounts[i];
+                    dominant++;
+                }
+            }
+            return new DominantPostings(Arrays.copyOf(occurrences, dominant),
+                    Arrays.copyOf(wordCounts, dominant));
+        }
+
+        /**
+         * Retrieves the number of dominant postings.
+         *
+         * @return the number of postings
+         */
+        int size() {
+            return occurrences.length;
+        }
+    }
+}
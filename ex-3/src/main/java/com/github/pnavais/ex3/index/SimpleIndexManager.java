@@ -21,8 +21,23 @@ package com.github.pnavais.ex3.index;
 import com.github.pnavais.common.file.FileCommons;
 import com.github.pnavais.ex3.api.exception.FileParsingException;
 import com.github.pnavais.ex3.api.index.IndexManager;
+import com.github.pnavais.ex3.api.index.IndexSegment;
+import com.github.pnavais.ex3.api.index.IndexingExecutor;
+import com.github.pnavais.ex3.api.index.MergePolicy;
+import com.github.pnavais.ex3.api.index.SegmentFactory;
 import com.github.pnavais.ex3.api.reader.DocumentReader;
+import com.github.pnavais.ex3.freshness.FreshnessTracker;
+import com.github.pnavais.ex3.jfr.BatchIndexedEvent;
+import com.github.pnavais.ex3.jfr.DirectoryLoadEvent;
+import com.github.pnavais.ex3.jfr.DocumentIndexedEvent;
+import com.github.pnavais.ex3.jfr.FlightEvent;
+import com.github.pnavais.ex3.jfr.FlightRecording;
+import com.github.pnavais.ex3.jfr.IndexRefreshEvent;
+import com.github.pnavais.ex3.jfr.SegmentMergeEvent;
+import com.github.pnavais.ex3.matcher.CompiledTermSet;
+import com.github.pnavais.ex3.matcher.WordFilter;
 import com.github.pnavais.ex3.reader.DocumentReaderFactory;
+import com.github.pnavais.ex3.sketch.DocumentFrequencySketch;
 import lombok.Getter;
 import lombok.Setter;
 import lombok.extern.slf4j.Slf4j;
@@ -32,24 +47,58 @@ import org.springframework.stereotype.Component;
 import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
 import java.util.*;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 /**
  * A basic implementation of the {@link IndexManager} interface allowing to keep track
  * of new files and building an index for the terms provided.
  * The implementation of the index is as follows :
- * - A map will contain as keys the terms to index
- * - The value of each key in the map consists of a secondary map (avoiding duplicates) containing only the documents containing the term 
+ * - The index is published as an immutable {@link IndexSnapshot} composed of {@link IndexSegment}s.
+ * - Every indexed document (or archive) produces a new segment containing a map with the terms as keys
+ *   and, as values, a secondary map (avoiding duplicates) containing only the documents containing the term
  *   and its tf statistic i.e tf(term, doc) = number of occurrences / total word count of doc.
+ *   Segments are built by the configured {@link SegmentFactory}, keeping them either on the
+ *   Java heap or off-heap (see {@link IndexStorage}).
+ * - Documents are identified by a compact int id assigned by the {@link DocumentDictionary}, storing each
+ *   path only once. Segments, snapshots and the document set only keep the ids, which are resolved back
+ *   to paths when needed (i.e. to read the document or to print a ranking).
+ * - Documents are read by the configured {@link IndexingExecutor}, either in the common pool or in a
+ *   virtual thread per document (see {@link IndexingMode}).
+ * - Small documents pending to be indexed are grouped in batches read in a single task with the same
+ *   reader and buffer, publishing a single segment per batch.
+ * - Adding a segment publishes a new snapshot sharing the previous segments (copy-on-write), atomically
+ *   replacing the current one. Readers work on the snapshot they retrieved without any locking, while
+ *   writers never wait for them.
+ * - Small segments are merged in the background into larger ones as decided by the configured
+ *   {@link MergePolicy} (size tiered by default), publishing a snapshot with the same documents
+ *   in fewer segments so queries visit less of them. Merges whose segments changed meanwhile
+ *   (i.e. a document was re-indexed) are discarded and retried on the next publication.
+ * - Readers may build a Bloom filter of the words of each document (see {@link WordFilter}), kept apart
+ *   from the segments. Queries of arbitrary terms (not indexed) only read again the documents whose
+ *   filter may contain all the words of any of the terms.
+ * - Readers may also collect the distinct words of each document, accounted once in a
+ *   {@link DocumentFrequencySketch} when the document is first indexed. The sketch estimates the
+ *   document frequency, and thus the idf, of every word in fixed memory.
  * <p>
  * In order to compute the idf of a given term per document, it would simply suffice of :
- * - Looking for the term in the map (O(1) operation)
+ * - Looking for the term in the map of the segment containing the document (O(1) operation)
  * - Looking for the document in the secondary map (O(1) operation) and extracting its tf statistic from the recorded
  * value (DocTerm).
- * - Computing the logarithm in base 10 of dividing the total number of documents by the number of documents in the set 
- *   for this term. That is, only documents containing the term will be present in the map. 
+ * - Computing the logarithm in base 10 of dividing the total number of documents by the number of documents
+ *   containing the term, both precomputed in the snapshot.
  *     i.e. idf("term", D) = log(D/d) with D , total number of documents in the index and d the number of documents containing the term.
  *  
  *  To compute the tf/idf of the term we just multiply the tf of the term for the document by the idf previously found
@@ -62,37 +111,205 @@ import java.util.concurrent.ConcurrentHashMap;
 public class SimpleIndexManager implements IndexManager {
 
     /**
-     * The current set of documents with a flag
+     * The default maximum number of documents per batch
+     */
+    public static final int DEFAULT_BATCH_SIZE = 64;
+
+    /**
+     * The largest document indexed in a batch
+     */
+    public static final long MAX_BATCHED_SIZE = 64L * 1024;
+
+    /**
+     * The generation returned when a segment is discarded instead of published
+     */
+    private static final long DISCARDED = -1;
+
+    /**
+     * The dictionary of the documents
+     */
+    private final DocumentDictionary dictionary;
+
+    /**
+     * The current set of document ids with a flag
      * indicating if the file has been indexed or not
      */
-    private final Map<Path, Boolean> documents;
+    private final Map<Integer, Boolean> documents;
+
+    /**
+     * The ids of the documents currently being indexed
+     */
+    private final Set<Integer> indexing;
+
+    /**
+     * The number of times the index was cleared, discarding
+     * the results of the indexing started before
+     */
+    private final AtomicLong epoch;
+
+    /**
+     * The permits to index documents, bounding the
+     * number of documents being indexed concurrently
+     */
+    private Semaphore indexingPermits;
+
+    /**
+     * The maximum number of documents being indexed concurrently
+     */
+    private int maxIndexing;
+
+    /**
+     * The maximum number of documents per batch
+     */
+    private int batchSize;
+
+    /**
+     * The last published snapshot of the index
+     */
+    private final AtomicReference<IndexSnapshot> current;
+
+    /**
+     * The archives containing the documents indexed from an archive, by document id
+     */
+    private final Map<Integer, Path> archives;
+
+    /**
+     * The ids of the archives already indexed, marked as indexed in
+     * the document set although not accounted as documents themselves
+     */
+    private final Set<Integer> indexedArchives;
+
+    /**
+     * The filters of the words of the documents by document id
+     */
+    private final Map<Integer, WordFilter> wordFilters;
+
+    /**
+     * The ids of the documents whose words are already accounted in the sketch,
+     * so rewritten documents indexed again are not accounted twice
+     */
+    private final Set<Integer> sketchedDocuments;
+
+    /**
+     * The sketch of the document frequencies of all the words, null if disabled
+     */
+    private volatile DocumentFrequencySketch frequencySketch;
+
+    /**
+     * The set of terms to index
+     */
+    @Getter
+    private Set<String> terms;
+
+    /**
+     * The factory of the index segments
+     */
+    @Setter
+    private SegmentFactory segmentFactory = IndexStorage.HEAP.getSegmentFactory();
+
+    /**
+     * The executor reading the documents
+     */
+    @Setter
+    private IndexingExecutor indexingExecutor = new PooledIndexingExecutor();
+
+    /**
+     * The policy deciding the segments to merge
+     */
+    private MergePolicy mergePolicy = new SizeTieredMergePolicy();
+
+    /**
+     * The background thread merging the segments (created on first use)
+     */
+    private ExecutorService mergeExecutor;
 
     /**
-     * The actual index.
-     * It is implemented as a map as follows :
-     * - Key: the term
-     * - Value: A map composed of :
-     * - Key: Path to the document
-     * - Value: term statistics for the document
+     * Whether a merge is already scheduled, avoiding
+     * queueing one per published segment
      */
-    private final Map<String, Map<Path, DocTerm>> index;
+    private final AtomicBoolean mergeScheduled = new AtomicBoolean();
 
     /**
-     * Creates the instance initializing both
-     * the index map and the document set (D)
+     * Creates the instance initializing the document
+     * dictionary, the index snapshot and the document set (D)
      */
     @Autowired
     public SimpleIndexManager() {
+        this.dictionary = new DocumentDictionary();
         this.documents = new ConcurrentHashMap<>();
-        this.index = new ConcurrentHashMap<>();
+        this.indexing = ConcurrentHashMap.newKeySet();
+        this.epoch = new AtomicLong();
+        this.wordFilters = new ConcurrentHashMap<>();
+        this.archives = new ConcurrentHashMap<>();
+        this.indexedArchives = ConcurrentHashMap.newKeySet();
+        this.sketchedDocuments = ConcurrentHashMap.newKeySet();
+        this.maxIndexing = Integer.MAX_VALUE;
+        this.indexingPermits = new Semaphore(maxIndexing);
+        this.batchSize = DEFAULT_BATCH_SIZE;
+        this.current = new AtomicReference<>(IndexSnapshot.empty(dictionary));
     }
 
     /**
-     * The set of terms to index
+     * Establishes the terms to keep in the index, compiling
+     * them once for the readers of all the documents.
+     *
+     * @param terms the terms to keep
      */
-    @Setter
-    @Getter
-    private Set<String> terms;
+    @Override
+    public void setTerms(Set<String> terms) {
+        Set<String> compiled = (terms != null) ? CompiledTermSet.of(terms, DocumentReaderFactory.getNormalizer()) : null;
+        this.terms = compiled;
+        current.updateAndGet(snapshot -> snapshot.withTerms(compiled));
+    }
+
+    /**
+     * Establishes the maximum number of documents being indexed
+     * concurrently. Once reached, the callers of {@link #refresh()}
+     * and {@link #loadFrom(Path)} wait for the pending documents,
+     * propagating the backpressure to the producers of the files.
+     *
+     * @param maxIndexing the maximum number of documents being indexed
+     */
+    @Override
+    public void setMaxIndexing(int maxIndexing) {
+        this.maxIndexing = Math.max(1, maxIndexing);
+        this.indexingPermits = new Semaphore(this.maxIndexing);
+    }
+
+    /**
+     * Establishes the maximum number of small documents indexed together
+     * in a single task and segment, never exceeding the maximum number
+     * of documents being indexed concurrently.
+     *
+     * @param batchSize the maximum number of documents per batch (1 disables batching)
+     */
+    @Override
+    public void setBatchSize(int batchSize) {
+        this.batchSize = Math.max(1, batchSize);
+    }
+
+    /**
+     * Establishes the policy deciding the segments merged
+     * in the background.
+     *
+     * @param mergePolicy the merge policy ({@link MergePolicy#NONE} disables merging)
+     */
+    @Override
+    public void setMergePolicy(MergePolicy mergePolicy) {
+        this.mergePolicy = Objects.requireNonNull(mergePolicy, "The merge policy cannot be null");
+    }
+
+    /**
+     * Establishes the sketch estimating the document frequency of every
+     * word indexed. Documents are only accounted when indexed for the first
+     * time, so the sketch should be set before loading any document.
+     *
+     * @param frequencySketch the sketch or null to disable the estimation
+     */
+    @Override
+    public void setFrequencySketch(DocumentFrequencySketch frequencySketch) {
+        this.frequencySketch = frequencySketch;
+    }
 
     /**
      * Adds a new file to the index
@@ -113,7 +330,7 @@ public class SimpleIndexManager implements IndexManager {
      */
     private void addFile(Path file, boolean isIndexed) {
         log.debug("Adding file [{}] to the document set", file);
-        documents.put(file, isIndexed);
+        documents.put(dictionary.intern(file), isIndexed);
     }
 
     /**
@@ -125,11 +342,20 @@ public class SimpleIndexManager implements IndexManager {
     @Override
     public void loadFrom(Path directory) {
         if (FileCommons.isDirectory(directory)) {
-            try {
-                Files.list(directory).forEachOrdered(this::buildDocIndex);
+            FlightEvent event = FlightRecording.isAvailable() ? new DirectoryLoadEvent() : FlightEvent.NONE;
+            event.begin();
+            int knownFiles = dictionary.size();
+            try (Stream<Path> files = Files.list(directory)) {
+                buildDocIndex(files.map(dictionary::intern));
             } catch (IOException e) {
                 log.error("Error loading documents from \"{}\".{}", directory, e.getMessage());
             }
+            if (event.shouldCommit()) {
+                DirectoryLoadEvent loadEvent = (DirectoryLoadEvent) event;
+                loadEvent.setDirectory(directory.toString());
+                loadEvent.setNewFiles(dictionary.size() - knownFiles);
+                loadEvent.commit();
+            }
         }
     }
 
@@ -138,9 +364,27 @@ public class SimpleIndexManager implements IndexManager {
      */
     @Override
     public void refresh() {
+        FlightEvent event = FlightRecording.isAvailable() ? new IndexRefreshEvent() : FlightEvent.NONE;
+        event.begin();
         long newDocs = documents.values().stream().filter(Boolean.FALSE::equals).count();
         log.debug("Refreshing index with {} new document{}", newDocs, newDocs > 1 ? "s" : "");
-        documents.keySet().parallelStream().forEach(this::buildDocIndex);
+        buildDocIndex(documents.keySet().stream());
+        if (event.shouldCommit()) {
+            IndexRefreshEvent refreshEvent = (IndexRefreshEvent) event;
+            refreshEvent.setPendingDocuments(newDocs);
+            refreshEvent.setKnownDocuments(documents.size());
+            refreshEvent.commit();
+        }
+    }
+
+    /**
+     * Retrieves the current snapshot of the index.
+     *
+     * @return the index snapshot
+     */
+    @Override
+    public IndexSnapshot snapshot() {
+        return current.get();
     }
 
     /**
@@ -153,23 +397,7 @@ public class SimpleIndexManager implements IndexManager {
      */
     @Override
     public double getTermTfIdf(String term, Path doc) {
-        double tf = 0.0;
-        double idf = 0.0;
-
-        Map<Path, DocTerm> termMap = index.get(term);
-        // Compute idf
-        if ((termMap != null) && (termMap.size() > 0) && (documents.size() > 0)) {
-            idf = Math.log10((documents.size() * 1.0) / termMap.size());
-            if (idf != 0) {
-                // Retrieve tf when relevant
-                DocTerm docTerm = termMap.get(doc);
-                if (docTerm != null) {
-                    tf = docTerm.computeTf();
-                }
-            }
-        }
-
-        return tf * idf;
+        return snapshot().getTermTfIdf(term, doc);
     }
 
     /**
@@ -181,7 +409,7 @@ public class SimpleIndexManager implements IndexManager {
      */
     @Override
     public double getTermsTfIdfFor(Path doc) {
-        return terms.stream().mapToDouble(term -> getTermTfIdf(term, doc)).average().orElse(0.0);
+        return snapshot().getTermsTfIdfFor(doc);
     }
 
     /**
@@ -191,7 +419,7 @@ public class SimpleIndexManager implements IndexManager {
      */
     @Override
     public int size() {
-        return documents.size();
+        return documents.size() - indexedArchives.size();
     }
 
     /**
@@ -201,17 +429,29 @@ public class SimpleIndexManager implements IndexManager {
      */
     @Override
     public List<Path> getDocs() {
-        return new ArrayList<>(documents.keySet());
+        return snapshot().getDocs();
     }
 
     /**
-     * Removes the document set and the index values
+     * Removes the document set and the index values. The document
+     * dictionary is kept, so the ids remain valid for the snapshots
+     * still in use. The documents still being indexed are discarded
+     * once read, so they can be indexed again right away.
      */
     @Override
     public void clear() {
+        this.epoch.incrementAndGet();
+        this.indexing.clear();
         this.documents.clear();
-        this.index.values().forEach(Map::clear);
-        this.index.clear();
+        this.wordFilters.clear();
+        this.archives.clear();
+        this.indexedArchives.clear();
+        this.sketchedDocuments.clear();
+        DocumentFrequencySketch sketch = frequencySketch;
+        if (sketch != null) {
+            sketch.clear();
+        }
+        current.updateAndGet(IndexSnapshot::cleared);
     }
 
     /**
@@ -223,51 +463,473 @@ public class SimpleIndexManager implements IndexManager {
      */
     @Override
     public List<DocTerm> getDocTermsFor(String term) {
-        List<DocTerm> docTermList = Collections.emptyList();
-        Map<Path, DocTerm> termMap = index.get(term);
-        if (termMap != null) {
-            docTermList = new ArrayList<>(termMap.values());
+        return snapshot().getDocTermsFor(term);
+    }
+
+    /**
+     * Build the index for the documents with respect to the terms to search.
+     * Small documents read by the same type of reader are indexed in batches,
+     * while the rest are indexed on their own. Nothing is indexed until the
+     * terms are established.
+     *
+     * @param docIds the ids of the documents to index.
+     */
+    private void buildDocIndex(Stream<Integer> docIds) {
+        if (terms == null) {
+            log.debug("No terms to index");
+            return;
         }
+        int maxBatch = Math.min(batchSize, maxIndexing);
+        Map<Supplier<DocumentReader>, List<Integer>> batches = new HashMap<>();
+        docIds.forEachOrdered(docId -> {
+            if (!isPending(docId)) {
+                return;
+            }
+            Path doc = dictionary.resolve(docId);
+            if ((maxBatch > 1) && isBatchable(doc)) {
+                Supplier<DocumentReader> readerSupplier = DocumentReaderFactory.getSupplier(doc);
+                List<Integer> batch = batches.computeIfAbsent(readerSupplier, s -> new ArrayList<>(maxBatch));
+                if (indexing.add(docId)) {
+                    batch.add(docId);
+                    if (batch.size() >= maxBatch) {
+                        buildBatchIndex(batches.remove(readerSupplier), readerSupplier);
+                    }
+                }
+            } else if (indexing.add(docId)) {
+                buildDocIndex(docId, doc, DocumentReaderFactory.getReader(doc));
+            }
+        });
+        batches.forEach((readerSupplier, batch) -> buildBatchIndex(batch, readerSupplier));
+    }
+
+    /**
+     * Checks whether the given document is pending to be indexed.
+     *
+     * @param docId the document id
+     * @return true if pending, false otherwise
+     */
+    private boolean isPending(int docId) {
+        return Boolean.FALSE.equals(documents.getOrDefault(docId, false));
+    }
 
-        return docTermList;
+    /**
+     * Checks whether the given document is small enough to be indexed in a batch.
+     *
+     * @param doc the document
+     * @return true if it can be batched, false otherwise
+     */
+    private static boolean isBatchable(Path doc) {
+        try {
+            BasicFileAttributes attributes = Files.readAttributes(doc, BasicFileAttributes.class);
+            return attributes.isRegularFile() && (attributes.size() <= MAX_BATCHED_SIZE);
+        } catch (IOException e) {
+            return false;
+        }
     }
 
     /**
      * Build the index for the document with respect to the
-     * terms to search.
+     * terms to search. The document must have been already
+     * marked as being indexed.
      *
-     * @param doc the document to index.
+     * @param docId the id of the document to index.
+     * @param doc the document to index
+     * @param documentReader the reader of the document
      */
-    private void buildDocIndex(Path doc) {
-        if (Boolean.FALSE.equals(documents.getOrDefault(doc, false))) {
-            CompletableFuture.runAsync(() -> {
-                buildTermIndex(doc);
-                addFile(doc, true);
-            });
+    private void buildDocIndex(int docId, Path doc, DocumentReader documentReader) {
+        Semaphore permits = indexingPermits;
+        try {
+            permits.acquire();
+        } catch (InterruptedException e) {
+            indexing.remove(docId);
+            Thread.currentThread().interrupt();
+            return;
         }
+
+        log.debug("Building terms index for document [{}]", doc);
+        long indexingEpoch = epoch.get();
+        FreshnessTracker.getDefault().indexingStarted(doc);
+        FlightEvent event = FlightRecording.isAvailable() ? new DocumentIndexedEvent() : FlightEvent.NONE;
+        event.begin();
+        indexingExecutor.submit(doc, documentReader, terms).whenComplete((docTerms, error) -> {
+            try {
+                if (isCurrent(indexingEpoch, doc)) {
+                    buildTermIndex(indexingEpoch, docId, doc, documentReader, docTerms, error, event);
+                }
+            } finally {
+                if (epoch.get() == indexingEpoch) {
+                    indexing.remove(docId);
+                }
+                permits.release();
+            }
+        });
     }
 
     /**
-     * Build the terms index by reading the file and extracting
-     * the terms document statistics.
+     * Build the index for a batch of small documents with respect to the terms
+     * to search, reading all of them with the same reader. Archives cannot be
+     * batched, so they are indexed on their own. The documents must have been
+     * already marked as being indexed.
+     *
+     * @param docIds the ids of the documents to index
+     * @param readerSupplier the supplier of the reader of the documents
      */
-    private void buildTermIndex(Path doc) {
-        log.debug("Building terms index for document [{}]", doc);
-        DocumentReader documentReader = DocumentReaderFactory.getReader();
+    private void buildBatchIndex(List<Integer> docIds, Supplier<DocumentReader> readerSupplier) {
+        if (docIds.isEmpty()) {
+            return;
+        }
+        DocumentReader documentReader = readerSupplier.get();
+        if ((docIds.size() == 1) || documentReader.isContainer()) {
+            docIds.forEach(docId -> buildDocIndex(docId, dictionary.resolve(docId), readerSupplier.get()));
+            return;
+        }
+
+        Semaphore permits = indexingPermits;
         try {
-            documentReader.processDocTerms(doc, terms).forEach(docTerm -> {
-                index.putIfAbsent(docTerm.getTerm(), new LinkedHashMap<>());
-                index.computeIfPresent(docTerm.getTerm(), (key, map) -> {
-                    // Only store matching documents
-                    if (docTerm.getOccurrences()>0) {
-                        map.put(docTerm.getDocument(), docTerm);
+            permits.acquire(docIds.size());
+        } catch (InterruptedException e) {
+            indexing.removeAll(docIds);
+            Thread.currentThread().interrupt();
+            return;
+        }
+
+        List<Path> docs = docIds.stream().map(dictionary::resolve).collect(Collectors.toList());
+        log.debug("Building terms index for a batch of {} documents", docs.size());
+        long indexingEpoch = epoch.get();
+        docs.forEach(FreshnessTracker.getDefault()::indexingStarted);
+        FlightEvent event = FlightRecording.isAvailable() ? new BatchIndexedEvent() : FlightEvent.NONE;
+        event.begin();
+        indexingExecutor.submitBatch(docs, documentReader, terms).whenComplete((docTerms, error) -> {
+            try {
+                if (!isCurrent(indexingEpoch, docs.get(0))) {
+                    return;
+                }
+                if (error == null) {
+                    updateWordStatistics(docs, docTerms);
+                    long generation = publish(indexingEpoch, segmentFactory.build(dictionary, docs, docTerms));
+                    if (generation == DISCARDED) {
+                        return;
                     }
-                    return map;
+                    docIds.forEach(docId -> documents.put(docId, true));
+                    docs.forEach(doc -> FreshnessTracker.getDefault().indexed(doc, generation));
+                    if (event.shouldCommit()) {
+                        BatchIndexedEvent batchEvent = (BatchIndexedEvent) event;
+                        batchEvent.describe(docs, docTerms);
+                        batchEvent.commit();
+                    }
+                } else {
+                    Throwable cause = (error instanceof CompletionException) ? error.getCause() : error;
+                    log.error("Error indexing a batch of {} files", docs.size(), cause);
+                }
+            } finally {
+                if (epoch.get() == indexingEpoch) {
+                    indexing.removeAll(docIds);
+                }
+                permits.release(docIds.size());
+            }
+        });
+    }
+
+    /**
+     * Build the terms index from the terms document statistics
+     * extracted by the reader, publishing them in a new segment.
+     * Documents contained in archives are added to the document set, where the archive
+     * is kept as indexed (so it is not read again) without being accounted as a document.
+     * Documents that could not be parsed are indexed without terms, while documents
+     * failing for other reasons are kept pending for the next refresh.
+     *
+     * @param indexingEpoch the epoch of the index when the document was submitted
+     * @param docId the document id
+     * @param doc the document
+     * @param documentReader the reader of the document
+     * @param docTerms the statistics of the terms or null on failure
+     * @param error the failure reading the document or null if none
+     * @param event the flight recorder event of the indexing
+     */
+    private void buildTermIndex(long indexingEpoch, int docId, Path doc, DocumentReader documentReader, List<DocTerm> docTerms,
+                                Throwable error, FlightEvent event) {
+        Throwable cause = (error instanceof CompletionException) ? error.getCause() : error;
+        if (cause == null) {
+            if (documentReader.isContainer()) {
+                List<Path> entries = docTerms.stream().map(DocTerm::getDocument).distinct().collect(Collectors.toList());
+                updateWordStatistics(entries, docTerms);
+                long generation = publish(indexingEpoch, segmentFactory.build(dictionary, entries, docTerms));
+                if (generation == DISCARDED) {
+                    return;
+                }
+                entries.forEach(entry -> {
+                    addFile(entry, true);
+                    archives.put(dictionary.intern(entry), doc);
                 });
+                indexedArchives.add(docId);
+                documents.put(docId, true);
+                FreshnessTracker.getDefault().indexed(doc, generation);
+            } else {
+                updateWordStatistics(Collections.singletonList(doc), docTerms);
+                long generation = publish(indexingEpoch, segmentFactory.build(dictionary,
+                        Collections.singletonList(doc), docTerms));
+                if (generation == DISCARDED) {
+                    return;
+                }
+                addFile(doc, true);
+                FreshnessTracker.getDefault().indexed(doc, generation);
+            }
+            commitEvent(event, doc, docTerms, false);
+        } else if (cause instanceof FileParsingException) {
+            log.error("Error indexing file [{}]. Cause : {}", doc, cause.getMessage());
+            long generation = publish(indexingEpoch, segmentFactory.build(dictionary, Collections.singletonList(doc),
+                    Collections.emptyList()));
+            if (generation == DISCARDED) {
+                return;
+            }
+            addFile(doc, true);
+            FreshnessTracker.getDefault().indexed(doc, generation);
+            commitEvent(event, doc, Collections.emptyList(), true);
+        } else {
+            log.error("Error indexing file [{}]", doc, cause);
+        }
+    }
+
+    /**
+     * Replaces the filters of the words of the given documents by the ones
+     * built by the reader, if any, and accounts the words of the documents
+     * indexed for the first time in the document frequency sketch.
+     *
+     * @param docs the documents
+     * @param docTerms the statistics of the terms of the documents
+     */
+    private void updateWordStatistics(List<Path> docs, List<DocTerm> docTerms) {
+        docs.forEach(doc -> wordFilters.remove(dictionary.intern(doc)));
+        DocumentFrequencySketch sketch = frequencySketch;
+        Path last = null;
+        for (DocTerm docTerm : docTerms) {
+            if (!docTerm.getDocument().equals(last)) {
+                last = docTerm.getDocument();
+                int docId = dictionary.intern(last);
+                if (docTerm.getWordFilter() != null) {
+                    wordFilters.put(docId, docTerm.getWordFilter());
+                }
+                if ((sketch != null) && (docTerm.getWordHashes() != null) && sketchedDocuments.add(docId)) {
+                    sketch.addDocument(docTerm.getWordHashes());
+                }
+            }
+        }
+    }
+
+    /**
+     * Commits the flight recorder event of the indexing of
+     * a document, only describing it if it is recorded.
+     *
+     * @param event the event
+     * @param doc the document
+     * @param docTerms the statistics of the terms
+     * @param failed whether the document could not be parsed
+     */
+    private static void commitEvent(FlightEvent event, Path doc, List<DocTerm> docTerms, boolean failed) {
+        if (event.shouldCommit()) {
+            DocumentIndexedEvent indexedEvent = (DocumentIndexedEvent) event;
+            indexedEvent.describe(doc, docTerms);
+            indexedEvent.setFailed(failed);
+            indexedEvent.commit();
+        }
+    }
+
+    /**
+     * Retrieves the document statistics for arbitrary terms, not necessarily
+     * indexed, reading again the documents of the current snapshot. Documents
+     * whose word filter lacks at least a word of every term are skipped, while
+     * documents without filter are always read. Documents contained in archives
+     * are read through their archive.
+     *
+     * @param terms the terms
+     * @return the statistics of the documents containing any of the terms
+     */
+    @Override
+    public List<DocTerm> queryTerms(Set<String> terms) {
+        IndexSnapshot snapshot = current.get();
+        long[][] termHashes = terms.stream()
+                .map(term -> CompiledTermSet.words(term).stream().mapToLong(WordFilter::hash).toArray())
+                .toArray(long[][]::new);
+
+        Set<Path> candidates = new HashSet<>();
+        Set<Path> files = new LinkedHashSet<>();
+        for (IndexSegment segment : snapshot.getSegments()) {
+            for (int docId : segment.getDocuments()) {
+                WordFilter filter = wordFilters.get(docId);
+                if ((filter == null) || Arrays.stream(termHashes).anyMatch(filter::mightContainAll)) {
+                    Path doc = dictionary.resolve(docId);
+                    candidates.add(doc);
+                    files.add(archives.getOrDefault(docId, doc));
+                }
+            }
+        }
+        log.debug("Querying {} term{} in {} of {} documents", terms.size(), terms.size() > 1 ? "s" : "",
+                candidates.size(), snapshot.size());
+
+        CompiledTermSet compiled = CompiledTermSet.of(terms, DocumentReaderFactory.getNormalizer());
+        List<CompletableFuture<List<DocTerm>>> reads = files.stream()
+                .map(file -> indexingExecutor.submit(file, DocumentReaderFactory.getReader(file), compiled))
+                .collect(Collectors.toList());
+        List<DocTerm> found = new ArrayList<>();
+        for (CompletableFuture<List<DocTerm>> read : reads) {
+            try {
+                read.join().stream()
+                        .filter(docTerm -> (docTerm.getOccurrences() > 0) && candidates.contains(docTerm.getDocument()))
+                        .forEach(found::add);
+            } catch (CompletionException e) {
+                log.error("Error querying a document. Cause : {}", e.getCause().getMessage());
+            }
+        }
+        return found;
+    }
+
+    /**
+     * Estimates the number of documents containing an arbitrary term
+     * using the document frequency sketch, if enabled.
+     *
+     * @param term the term
+     * @return the estimated document frequency or -1 if not estimated
+     */
+    @Override
+    public long estimateDocumentFrequency(String term) {
+        DocumentFrequencySketch sketch = frequencySketch;
+        return (sketch != null) ? sketch.estimate(term) : -1;
+    }
+
+    /**
+     * Computes the idf of an arbitrary term from its estimated document
+     * frequency, bounded by the number of documents of the index.
+     *
+     * @param term the term
+     * @return the approximate idf of the term (0 if not found or not estimated)
+     */
+    @Override
+    public double getApproximateIdf(String term) {
+        long documentCount = snapshot().size();
+        long documentFrequency = Math.min(estimateDocumentFrequency(term), documentCount);
+        return ((documentFrequency > 0) && (documentCount > 0))
+                ? Math.log10((documentCount * 1.0) / documentFrequency) : 0.0;
+    }
+
+    /**
+     * Checks whether the index was not cleared since the given epoch,
+     * discarding the indexing of the given document otherwise.
+     *
+     * @param indexingEpoch the epoch of the index when the document was submitted
+     * @param doc the document (or the first one of the batch)
+     * @return true if the index was not cleared, false otherwise
+     */
+    private boolean isCurrent(long indexingEpoch, Path doc) {
+        if (epoch.get() != indexingEpoch) {
+            log.debug("Discarding document [{}] indexed before clearing the index", doc);
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Publishes a new snapshot of the index containing the given segment,
+     * unless the index was cleared since the segment started being built.
+     *
+     * @param indexingEpoch the epoch of the index when the segment started being built
+     * @param segment the segment to add
+     * @return the generation of the new snapshot or {@link #DISCARDED} if cleared meanwhile
+     */
+    private long publish(long indexingEpoch, IndexSegment segment) {
+        // Clearing the index moves the epoch before replacing the snapshot, so a segment
+        // checked against the previous epoch is either published before the clear or retried
+        IndexSnapshot snapshot = current.updateAndGet(s -> (epoch.get() == indexingEpoch) ? s.withSegment(segment) : s);
+        if (epoch.get() != indexingEpoch) {
+            return DISCARDED;
+        }
+        log.debug("Published index snapshot {} with {} document{}", snapshot.getGeneration(), snapshot.size(),
+                snapshot.size() > 1 ? "s" : "");
+        scheduleMerge();
+        return snapshot.getGeneration();
+    }
+
+    /**
+     * Schedules a merge of the segments in the background unless
+     * merging is disabled or a merge is already scheduled.
+     */
+    private void scheduleMerge() {
+        if ((mergePolicy != MergePolicy.NONE) && mergeScheduled.compareAndSet(false, true)) {
+            getMergeExecutor().execute(this::mergeSegments);
+        }
+    }
+
+    /**
+     * Retrieves the executor merging the segments, creating
+     * its daemon thread on first use.
+     *
+     * @return the merge executor
+     */
+    private synchronized ExecutorService getMergeExecutor() {
+        if (mergeExecutor == null) {
+            mergeExecutor = Executors.newSingleThreadExecutor(r -> {
+                Thread thread = new Thread(r, "segment-merger");
+                thread.setDaemon(true);
+                return thread;
             });
-        } catch (FileParsingException e) {
-            log.error("Error indexing file [{}]. Cause : {}", doc, e.getMessage());
         }
+        return mergeExecutor;
+    }
+
+    /**
+     * Merges the segments of the current snapshot as decided by the
+     * merge policy until no more merges are found or none of them
+     * could be published.
+     */
+    private void mergeSegments() {
+        mergeScheduled.set(false);
+        try {
+            boolean merged = true;
+            while (merged) {
+                merged = false;
+                for (List<IndexSegment> group : mergePolicy.findMerges(current.get().getSegments())) {
+                    merged |= merge(group);
+                }
+            }
+        } catch (RuntimeException e) {
+            log.error("Error merging the index segments", e);
+        }
+    }
+
+    /**
+     * Merges the given segments into a single one, publishing a new
+     * snapshot replacing them unless any of them is no longer part
+     * of the current snapshot.
+     *
+     * @param group the segments to merge, oldest first
+     * @return true if the merged segment was published, false otherwise
+     */
+    private boolean merge(List<IndexSegment> group) {
+        FlightEvent event = FlightRecording.isAvailable() ? new SegmentMergeEvent() : FlightEvent.NONE;
+        event.begin();
+        IndexSegment merged = group.get(0).merge(group.subList(1, group.size()));
+        IndexSnapshot snapshot;
+        IndexSnapshot updated;
+        do {
+            snapshot = current.get();
+            updated = snapshot.withMerged(group, merged);
+        } while ((updated != null) && !current.compareAndSet(snapshot, updated));
+
+        if (updated != null) {
+            log.debug("Merged {} segments into one of {} documents (snapshot {})", group.size(), merged.size(),
+                    updated.getGeneration());
+        } else {
+            log.debug("Discarded the merge of {} segments changed meanwhile", group.size());
+        }
+        event.end();
+        if (event.shouldCommit()) {
+            SegmentMergeEvent mergeEvent = (SegmentMergeEvent) event;
+            mergeEvent.setSegments(group.size());
+            mergeEvent.setDocuments(merged.size());
+            mergeEvent.setApplied(updated != null);
+            mergeEvent.setGeneration(updated != null ? updated.getGeneration() : snapshot.getGeneration());
+            mergeEvent.commit();
+        }
+        return updated != null;
     }
 
 }
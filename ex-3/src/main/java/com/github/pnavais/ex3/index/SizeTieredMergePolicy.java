@@ -0,0 +1,118 @@
+/*
+ *
+ * Copyright 2020 Pablo Navais
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+
+package com.github.pnavais.ex3.index;
+
+import com.github.pnavais.ex3.api.index.IndexSegment;
+import com.github.pnavais.ex3.api.index.MergePolicy;
+import lombok.Getter;
+import lombok.NonNull;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Merges segments of similar size (size-tiered compaction).
+ * <p>
+ * Segments are grouped in tiers by their number of documents, each tier
+ * covering sizes up to merge factor times larger than the previous one
+ * (i.e. 1-9, 10-99, 100-999 documents for a factor of 10). Once a tier
+ * holds merge factor segments, the oldest ones are merged into a single
+ * segment, which usually belongs to the next tier. Every document is
+ * therefore rewritten once per tier (logarithmic write amplification),
+ * while the number of segments stays below merge factor per tier.
+ * <p>
+ * Segments larger than the maximum merged size are never merged again.
+ */
+@Getter
+public class SizeTieredMergePolicy implements MergePolicy {
+
+    /** The default number of segments of a tier triggering a merge */
+    public static final int DEFAULT_MERGE_FACTOR = 10;
+
+    /** The default maximum number of documents of a merged segment */
+    public static final int DEFAULT_MAX_MERGED_SIZE = 1 << 20;
+
+    /** The number of segments of a tier triggering a merge */
+    private final int mergeFactor;
+
+    /** The maximum number of documents of a merged segment */
+    private final int maxMergedSize;
+
+    /**
+     * Creates the policy with the default merge factor and maximum size.
+     */
+    public SizeTieredMergePolicy() {
+        this(DEFAULT_MERGE_FACTOR, DEFAULT_MAX_MERGED_SIZE);
+    }
+
+    /**
+     * Creates the policy with the given merge factor and maximum size.
+     *
+     * @param mergeFactor the number of segments of a tier triggering a merge (at least 2)
+     * @param maxMergedSize the maximum number of documents of a merged segment
+     */
+    public SizeTieredMergePolicy(int mergeFactor, int maxMergedSize) {
+        if (mergeFactor < 2) {
+            throw new IllegalArgumentException("The merge factor must be at least 2");
+        }
+        this.mergeFactor = mergeFactor;
+        this.maxMergedSize = maxMergedSize;
+    }
+
+    /**
+     * Finds the oldest merge factor segments of each tier
+     * holding at least merge factor segments.
+     *
+     * @param segments the segments of the index, oldest first
+     * @return the groups of segments to merge
+     */
+    @Override
+    public List<List<IndexSegment>> findMerges(@NonNull List<IndexSegment> segments) {
+        Map<Integer, List<IndexSegment>> tiers = new TreeMap<>();
+        for (IndexSegment segment : segments) {
+            if (segment.size() < maxMergedSize) {
+                tiers.computeIfAbsent(tierOf(segment.size()), t -> new ArrayList<>()).add(segment);
+            }
+        }
+
+        List<List<IndexSegment>> merges = new ArrayList<>();
+        tiers.values().forEach(tier -> {
+            for (int from = 0; from + mergeFactor <= tier.size(); from += mergeFactor) {
+                merges.add(new ArrayList<>(tier.subList(from, from + mergeFactor)));
+            }
+        });
+        return merges;
+    }
+
+    /**
+     * Computes the tier of a segment with the given number of documents.
+     *
+     * @param size the number of documents
+     * @return the tier
+     */
+    private int tierOf(int size) {
+        int tier = 0;
+        for (long limit = mergeFactor; size >= limit; limit *= mergeFactor) {
+            tier++;
+        }
+        return tier;
+    }
+}
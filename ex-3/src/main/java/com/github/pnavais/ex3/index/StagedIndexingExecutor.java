@@ -0,0 +1,173 @@
+/*
+ *
+ * Copyright 2020 Pablo Navais
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+
+package com.github.pnavais.ex3.index;
+
+import com.github.pnavais.ex3.api.exception.FileParsingException;
+import com.github.pnavais.ex3.api.index.IndexingExecutor;
+import com.github.pnavais.ex3.api.reader.DocumentReader;
+import lombok.NonNull;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Semaphore;
+
+/**
+ * An implementation of the {@link IndexingExecutor} splitting the reading of
+ * each document in two stages, running in different executors :
+ * - I/O : the document is read at once in a thread of the I/O executor (i.e. a virtual
+ *   thread per document), holding one of a limited number of permits to open files.
+ * - Tokenization : the contents read are tokenized in the CPU executor (i.e. a small
+ *   pool of platform threads), so blocked reads never hold the threads tokenizing.
+ * <p>
+ * Archives and documents larger than {@link #MAX_LOADED_SIZE} are not loaded in memory,
+ * they are read and tokenized in the I/O stage instead. Batches of small documents are
+ * loaded one after the other holding a single permit, and tokenized in a single task.
+ */
+public class StagedIndexingExecutor implements IndexingExecutor {
+
+    /** The largest document loaded in memory before tokenizing it */
+    public static final long MAX_LOADED_SIZE = 16L * 1024 * 1024;
+
+    /** The executor of the I/O stage */
+    private final Executor ioExecutor;
+
+    /** The executor of the tokenization stage */
+    private final Executor cpuExecutor;
+
+    /** The permits to open files */
+    private final Semaphore openFiles;
+
+    /**
+     * Creates the executor with the given stages.
+     *
+     * @param ioExecutor the executor of the I/O stage
+     * @param cpuExecutor the executor of the tokenization stage
+     * @param maxOpenFiles the maximum number of files read concurrently
+     */
+    public StagedIndexingExecutor(@NonNull Executor ioExecutor, @NonNull Executor cpuExecutor, int maxOpenFiles) {
+        this.ioExecutor = ioExecutor;
+        this.cpuExecutor = cpuExecutor;
+        this.openFiles = new Semaphore(Math.max(1, maxOpenFiles));
+    }
+
+    /**
+     * Reads asynchronously the statistics of the given document.
+     *
+     * @param doc the document
+     * @param reader the reader of the document
+     * @param terms the terms to look for
+     * @return the future statistics for the terms in the document
+     */
+    @Override
+    public CompletableFuture<List<DocTerm>> submit(Path doc, DocumentReader reader, Set<String> terms) {
+        return CompletableFuture.supplyAsync(() -> read(doc, reader, terms), ioExecutor)
+                .thenCompose(tokenization -> tokenization);
+    }
+
+    /**
+     * Reads asynchronously the statistics of the given batch of documents.
+     *
+     * @param docs the documents
+     * @param reader the reader of the documents
+     * @param terms the terms to look for
+     * @return the future statistics for the terms in all the documents
+     */
+    @Override
+    public CompletableFuture<List<DocTerm>> submitBatch(List<Path> docs, DocumentReader reader, Set<String> terms) {
+        return CompletableFuture.supplyAsync(() -> load(docs), ioExecutor)
+                .thenApplyAsync(batch -> batch.tokenize(reader, terms), cpuExecutor);
+    }
+
+    /**
+     * Reads the document holding a permit to open files. Its contents are
+     * loaded in memory and tokenized in the CPU executor when possible,
+     * otherwise the whole document is read and tokenized here.
+     *
+     * @param doc the document
+     * @param reader the reader of the document
+     * @param terms the terms to look for
+     * @return the future statistics for the terms in the document
+     */
+    private CompletableFuture<List<DocTerm>> read(Path doc, DocumentReader reader, Set<String> terms) {
+        try {
+            openFiles.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new CompletionException(e);
+        }
+
+        try {
+            if (!reader.isContainer() && (Files.size(doc) <= MAX_LOADED_SIZE)) {
+                byte[] contents = Files.readAllBytes(doc);
+                return CompletableFuture.supplyAsync(() -> tokenize(doc, reader, contents, terms), cpuExecutor);
+            }
+            return CompletableFuture.completedFuture(reader.processDocTerms(doc, terms));
+        } catch (IOException e) {
+            throw new CompletionException(new FileParsingException("Error processing file "+doc, e));
+        } catch (FileParsingException e) {
+            throw new CompletionException(e);
+        } finally {
+            openFiles.release();
+        }
+    }
+
+    /**
+     * Loads the contents of the batch of documents holding a permit to open files.
+     *
+     * @param docs the documents
+     * @return the batch loaded
+     */
+    private DocumentBatch load(List<Path> docs) {
+        try {
+            openFiles.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new CompletionException(e);
+        }
+
+        try {
+            return DocumentBatch.load(docs);
+        } finally {
+            openFiles.release();
+        }
+    }
+
+    /**
+     * Tokenizes the contents of the document.
+     *
+     * @param doc the document
+     * @param reader the reader of the document
+     * @param contents the raw contents of the document
+     * @param terms the terms to look for
+     * @return the statistics for the terms in the document
+     */
+    private static List<DocTerm> tokenize(Path doc, DocumentReader reader, byte[] contents, Set<String> terms) {
+        try {
+            return reader.processDocTerms(doc, contents, terms);
+        } catch (FileParsingException e) {
+            throw new CompletionException(e);
+        }
+    }
+}
@@ -0,0 +1,80 @@
+/*
+ *
+ * Copyright 2020 Pablo Navais
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+
+package com.github.pnavais.ex3.jfr;
+
+import com.github.pnavais.ex3.index.DocTerm;
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import lombok.Setter;
+
+import java.nio.file.Path;
+import java.util.List;
+
+/**
+ * Flight recorder event emitted when a batch of small documents has
+ * been indexed, lasting from the submission of the batch until its
+ * segment is published.
+ */
+@Name("com.github.pnavais.ex3.BatchIndexed")
+@Label("Batch Indexed")
+@Category({"TF/IDF Server", "Indexing"})
+@Description("A batch of small documents read by a single task and published in a new segment")
+@StackTrace(false)
+@Setter
+public class BatchIndexedEvent extends Event implements FlightEvent {
+
+    @Label("Documents")
+    private int documents;
+
+    @Label("Size")
+    @DataAmount
+    private long bytes;
+
+    @Label("Tokens")
+    @Description("The number of words of the indexed documents")
+    private long tokens;
+
+    @Label("Terms Hit")
+    @Description("The number of terms found at least once, summed over the documents")
+    private int termsHit;
+
+    @Label("First Document")
+    private String firstPath;
+
+    /**
+     * Fills the fields of the event from the given documents and
+     * the statistics of their terms (to be called only when the
+     * event is going to be committed).
+     *
+     * @param docs the documents
+     * @param docTerms the statistics of the terms
+     */
+    public void describe(List<Path> docs, List<DocTerm> docTerms) {
+        this.documents = docs.size();
+        this.bytes = docs.stream().mapToLong(IndexingStatistics::sizeOf).sum();
+        this.firstPath = docs.isEmpty() ? null : docs.get(0).toString();
+        this.tokens = IndexingStatistics.tokens(docTerms);
+        this.termsHit = IndexingStatistics.termsHit(docTerms);
+    }
+}
@@ -0,0 +1,44 @@
+/*
+ *
+ * Copyright 2020 Pablo Navais
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+
+package com.github.pnavais.ex3.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import lombok.Setter;
+
+/**
+ * Flight recorder event emitted when an event is published
+ * in the event bus, lasting while it is delivered.
+ */
+@Name("com.github.pnavais.ex3.BusEventPublish")
+@Label("Bus Event Publish")
+@Category({"TF/IDF Server", "Events"})
+@Description("The delivery of an event to the subscribers of the event bus")
+@Setter
+public class BusEventPublishEvent extends Event implements FlightEvent {
+
+    @Label("Event Type")
+    private Class<?> eventType;
+
+    @Label("Subscribers")
+    private int subscribers;
+}
@@ -0,0 +1,45 @@
+/*
+ *
+ * Copyright 2020 Pablo Navais
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+
+package com.github.pnavais.ex3.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import lombok.Setter;
+
+/**
+ * Flight recorder event emitted when the documents of a directory
+ * are loaded, lasting while they are listed and submitted.
+ */
+@Name("com.github.pnavais.ex3.DirectoryLoad")
+@Label("Directory Load")
+@Category({"TF/IDF Server", "Indexing"})
+@Description("The listing of a directory and the submission of its documents")
+@Setter
+public class DirectoryLoadEvent extends Event implements FlightEvent {
+
+    @Label("Directory")
+    private String directory;
+
+    @Label("New Files")
+    @Description("The number of files listed not previously known")
+    private int newFiles;
+}
@@ -0,0 +1,85 @@
+/*
+ *
+ * Copyright 2020 Pablo Navais
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+
+package com.github.pnavais.ex3.jfr;
+
+import com.github.pnavais.ex3.index.DocTerm;
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import lombok.Setter;
+
+import java.nio.file.Path;
+import java.util.List;
+
+/**
+ * Flight recorder event emitted when a document (or archive) has been
+ * indexed, lasting from the submission of the indexing task until
+ * its segment is published.
+ */
+@Name("com.github.pnavais.ex3.DocumentIndexed")
+@Label("Document Indexed")
+@Category({"TF/IDF Server", "Indexing"})
+@Description("A document read and published in a new segment of the index")
+@StackTrace(false)
+@Setter
+public class DocumentIndexedEvent extends Event implements FlightEvent {
+
+    @Label("Document")
+    private String path;
+
+    @Label("Size")
+    @DataAmount
+    private long bytes;
+
+    @Label("Documents")
+    @Description("The number of documents indexed (the entries of archives)")
+    private int documents;
+
+    @Label("Tokens")
+    @Description("The number of words of the indexed documents")
+    private long tokens;
+
+    @Label("Terms Hit")
+    @Description("The number of terms found at least once, summed over the documents")
+    private int termsHit;
+
+    @Label("Failed")
+    @Description("Whether the document could not be parsed and was indexed without terms")
+    private boolean failed;
+
+    /**
+     * Fills the fields of the event from the given document and
+     * the statistics of its terms (to be called only when the
+     * event is going to be committed).
+     *
+     * @param doc the document
+     * @param docTerms the statistics of the terms
+     */
+    public void describe(Path doc, List<DocTerm> docTerms) {
+        this.path = doc.toString();
+        this.bytes = IndexingStatistics.sizeOf(doc);
+        this.documents = (int) docTerms.stream().map(DocTerm::getDocument).distinct().count();
+        this.tokens = IndexingStatistics.tokens(docTerms);
+        this.termsHit = IndexingStatistics.termsHit(docTerms);
+    }
+}
@@ -0,0 +1,74 @@
+/*
+ *
+ * Copyright 2020 Pablo Navais
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+
+package com.github.pnavais.ex3.jfr;
+
+/**
+ * The operations of the flight recorder events of the server, implemented by all
+ * of them through the flight recorder event they extend. Callers handle the events
+ * through this interface, so the event classes are only loaded when the flight
+ * recorder is available (see {@link FlightRecording}), using {@link #NONE} otherwise.
+ */
+public interface FlightEvent {
+
+    /** The event recording nothing, used when the flight recorder is not available */
+    FlightEvent NONE = new FlightEvent() {
+        @Override
+        public void begin() {
+            // Nothing to record
+        }
+
+        @Override
+        public void end() {
+            // Nothing to record
+        }
+
+        @Override
+        public boolean shouldCommit() {
+            return false;
+        }
+
+        @Override
+        public void commit() {
+            // Nothing to record
+        }
+    };
+
+    /**
+     * Starts the timing of the event.
+     */
+    void begin();
+
+    /**
+     * Ends the timing of the event.
+     */
+    void end();
+
+    /**
+     * Checks whether the event is enabled and lasted long enough to be recorded,
+     * so its fields should be filled.
+     *
+     * @return true if the event should be committed, false otherwise
+     */
+    boolean shouldCommit();
+
+    /**
+     * Records the event.
+     */
+    void commit();
+}
@@ -0,0 +1,63 @@
+/*
+ *
+ * Copyright 2020 Pablo Navais
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+
+package com.github.pnavais.ex3.jfr;
+
+import lombok.AccessLevel;
+import lombok.NoArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Checks once whether the running virtual machine provides the flight recorder
+ * API (missing in Java 8 runtimes before 8u262 and some non-HotSpot builds).
+ * The events are only created when available, using {@link FlightEvent#NONE}
+ * otherwise. As the event classes extend the flight recorder event, callers only
+ * create them once checked and keep them as {@link FlightEvent}, casting them to
+ * fill their fields when committed, so they are never loaded when not available.
+ */
+@Slf4j
+@NoArgsConstructor(access = AccessLevel.PRIVATE)
+public final class FlightRecording {
+
+    /** Whether the flight recorder API is available */
+    private static final boolean AVAILABLE = checkAvailable();
+
+    /**
+     * Checks whether the flight recorder events can be created.
+     *
+     * @return true if available, false otherwise
+     */
+    public static boolean isAvailable() {
+        return AVAILABLE;
+    }
+
+    /**
+     * Looks up the flight recorder event class from the class loader of the events.
+     *
+     * @return true if found, false otherwise
+     */
+    private static boolean checkAvailable() {
+        try {
+            Class.forName("jdk.jfr.Event", false, FlightRecording.class.getClassLoader());
+            return true;
+        } catch (ClassNotFoundException | LinkageError e) {
+            log.info("Flight recorder not available, the server events will not be recorded");
+            return false;
+        }
+    }
+}
@@ -0,0 +1,45 @@
+/*
+ *
+ * Copyright 2020 Pablo Navais
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+
+package com.github.pnavais.ex3.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import lombok.Setter;
+
+/**
+ * Flight recorder event emitted when the index is refreshed,
+ * lasting while the pending documents are submitted.
+ */
+@Name("com.github.pnavais.ex3.IndexRefresh")
+@Label("Index Refresh")
+@Category({"TF/IDF Server", "Indexing"})
+@Description("The submission of the documents pending to be indexed")
+@Setter
+public class IndexRefreshEvent extends Event implements FlightEvent {
+
+    @Label("Pending Documents")
+    private long pendingDocuments;
+
+    @Label("Known Documents")
+    @Description("The number of documents in the document set, indexed or not")
+    private int knownDocuments;
+}
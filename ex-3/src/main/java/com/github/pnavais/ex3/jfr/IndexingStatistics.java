@@ -0,0 +1,75 @@
+/*
+ *
+ * Copyright 2020 Pablo Navais
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+
+package com.github.pnavais.ex3.jfr;
+
+import com.github.pnavais.ex3.index.DocTerm;
+import lombok.AccessLevel;
+import lombok.NoArgsConstructor;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Computes the fields of the indexing events from the statistics
+ * of the terms. Events only record their own declared fields,
+ * so they cannot be inherited from a common event class.
+ */
+@NoArgsConstructor(access = AccessLevel.PRIVATE)
+final class IndexingStatistics {
+
+    /**
+     * Counts the words of the documents from the statistics of their terms.
+     *
+     * @param docTerms the statistics of the terms
+     * @return the number of words
+     */
+    static long tokens(List<DocTerm> docTerms) {
+        Map<Path, Long> wordCounts = new HashMap<>();
+        docTerms.forEach(docTerm -> wordCounts.put(docTerm.getDocument(), docTerm.getWordCount()));
+        return wordCounts.values().stream().mapToLong(Long::longValue).sum();
+    }
+
+    /**
+     * Counts the terms found at least once in each document.
+     *
+     * @param docTerms the statistics of the terms
+     * @return the number of terms hit
+     */
+    static int termsHit(List<DocTerm> docTerms) {
+        return (int) docTerms.stream().filter(docTerm -> docTerm.getOccurrences() > 0).count();
+    }
+
+    /**
+     * Retrieves the size of the given file.
+     *
+     * @param doc the file
+     * @return the size or 0 if not accessible
+     */
+    static long sizeOf(Path doc) {
+        try {
+            return Files.size(doc);
+        } catch (IOException e) {
+            return 0;
+        }
+    }
+}
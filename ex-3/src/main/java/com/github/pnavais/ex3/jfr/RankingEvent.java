@@ -0,0 +1,55 @@
+/*
+ *
+ * Copyright 2020 Pablo Navais
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+
+package com.github.pnavais.ex3.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import lombok.Setter;
+
+/**
+ * Flight recorder event emitted for every ranking of
+ * the index (tick of the server).
+ */
+@Name("com.github.pnavais.ex3.Ranking")
+@Label("Ranking")
+@Category({"TF/IDF Server", "Ranking"})
+@Description("The computation and display of the top documents of a snapshot")
+@Setter
+public class RankingEvent extends Event implements FlightEvent {
+
+    @Label("Scorer")
+    private String scorer;
+
+    @Label("Top Results")
+    private int topResults;
+
+    @Label("Results")
+    private int results;
+
+    @Label("Documents")
+    @Description("The number of documents in the ranked snapshot")
+    private int documents;
+
+    @Label("Generation")
+    @Description("The generation of the ranked snapshot")
+    private long generation;
+}
@@ -0,0 +1,54 @@
+/*
+ *
+ * Copyright 2020 Pablo Navais
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+
+package com.github.pnavais.ex3.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import lombok.Setter;
+
+/**
+ * Flight recorder event emitted when segments of the index
+ * are merged in the background.
+ */
+@Name("com.github.pnavais.ex3.SegmentMerge")
+@Label("Segment Merge")
+@Category({"TF/IDF Server", "Indexing"})
+@Description("The merge of several segments of the index into a single one")
+@StackTrace(false)
+@Setter
+public class SegmentMergeEvent extends Event implements FlightEvent {
+
+    @Label("Segments")
+    private int segments;
+
+    @Label("Documents")
+    private int documents;
+
+    @Label("Applied")
+    @Description("Whether the merged segment was published (false if the sources changed meanwhile)")
+    private boolean applied;
+
+    @Label("Generation")
+    @Description("The generation of the snapshot publishing the merged segment")
+    private long generation;
+}
@@ -0,0 +1,231 @@
+/*
+ *
+ * Copyright 2020 Pablo Navais
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+
+package com.github.pnavais.ex3.loadgen;
+
+import lombok.Getter;
+import lombok.NonNull;
+import lombok.Setter;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Consumer;
+
+/**
+ * Writes synthetic documents into a (watched) directory at a controlled
+ * rate, emulating the external agents dropping files for the server.
+ * <p>
+ * The words of the documents are drawn from a {@link ZipfVocabulary},
+ * and the number of words of each document follows a log-uniform
+ * distribution between the configured bounds, so most documents are
+ * small while a few are much larger. On top of the steady rate, bursts
+ * of documents can be written at once every burst period.
+ * <p>
+ * Documents are written to a staging directory next to the target one
+ * and then atomically moved into it, so the watchers only get notified
+ * of complete documents.
+ */
+@Slf4j
+public class DocumentLoadGenerator implements Runnable {
+
+    /** The number of words per line */
+    private static final int WORDS_PER_LINE = 12;
+
+    /** The directory receiving the documents */
+    @Getter
+    private final Path directory;
+
+    /** The directory where the documents are written before being moved */
+    private final Path staging;
+
+    /** The prefix of the documents, unique to each generator */
+    private final String prefix;
+
+    /** The vocabulary of the documents */
+    private final ZipfVocabulary vocabulary;
+
+    /** The random generator */
+    private final Random random;
+
+    /** The number of documents written per second */
+    @Setter
+    private double rate = 10;
+
+    /** The duration of the generation (0 for no limit) */
+    @Setter
+    private long durationMs;
+
+    /** The minimum number of words of each document */
+    @Setter
+    private int minWords = 50;
+
+    /** The maximum number of words of each document */
+    @Setter
+    private int maxWords = 5000;
+
+    /** The number of documents written at once in each burst (0 for no bursts) */
+    @Setter
+    private int burstSize;
+
+    /** The period between bursts */
+    @Setter
+    private long burstPeriodMs = TimeUnit.MINUTES.toMillis(1);
+
+    /** The listener notified once each document is in the directory */
+    @Setter
+    private Consumer<Path> listener = doc -> { };
+
+    /** The number of documents written */
+    private final AtomicLong documents = new AtomicLong();
+
+    /** The number of bytes written */
+    private final AtomicLong bytes = new AtomicLong();
+
+    /** Whether the generation must stop */
+    private volatile boolean stopped;
+
+    /**
+     * Creates the generator for the given directory.
+     *
+     * @param directory the directory receiving the documents
+     * @param vocabulary the vocabulary of the documents
+     * @param random the random generator
+     */
+    public DocumentLoadGenerator(@NonNull Path directory, @NonNull ZipfVocabulary vocabulary, @NonNull Random random) {
+        this.directory = directory.toAbsolutePath();
+        this.staging = this.directory.resolveSibling("." + this.directory.getFileName() + ".staging");
+        this.prefix = "doc-" + Long.toString(System.currentTimeMillis(), Character.MAX_RADIX) + "-";
+        this.vocabulary = vocabulary;
+        this.random = random;
+    }
+
+    /**
+     * Writes documents at the configured rate until the duration
+     * elapses, the generator is stopped or the thread interrupted.
+     */
+    @Override
+    public void run() {
+        try {
+            Files.createDirectories(staging);
+            long start = System.nanoTime();
+            long end = (durationMs > 0) ? start + TimeUnit.MILLISECONDS.toNanos(durationMs) : Long.MAX_VALUE;
+            long interval = (long) (TimeUnit.SECONDS.toNanos(1) / rate);
+            long burstInterval = TimeUnit.MILLISECONDS.toNanos(burstPeriodMs);
+            long nextDocument = start;
+            long nextBurst = start + burstInterval;
+
+            while (!stopped && !Thread.currentThread().isInterrupted()) {
+                long now = System.nanoTime();
+                if (now - end >= 0) {
+                    break;
+                }
+                if ((burstSize > 0) && (now - nextBurst >= 0)) {
+                    log.debug("Writing a burst of {} documents", burstSize);
+                    for (int i = 0; i < burstSize; i++) {
+                        writeDocument();
+                    }
+                    nextBurst += burstInterval;
+                } else if (now - nextDocument >= 0) {
+                    writeDocument();
+                    nextDocument += interval;
+                } else {
+                    long wakeUp = (burstSize > 0) ? Math.min(nextDocument - now, nextBurst - now) : nextDocument - now;
+                    LockSupport.parkNanos(Math.min(wakeUp, end - now));
+                }
+            }
+        } catch (IOException e) {
+            log.error("Error writing documents to \"{}\". {}", directory, e.getMessage());
+        } finally {
+            try {
+                Files.deleteIfExists(staging);
+            } catch (IOException e) {
+                log.warn("Cannot delete the staging directory \"{}\"", staging);
+            }
+        }
+    }
+
+    /**
+     * Stops the generation.
+     */
+    public void stop() {
+        this.stopped = true;
+    }
+
+    /**
+     * Writes a new document in the staging directory and moves
+     * it into the target directory.
+     *
+     * @throws IOException if the document cannot be written
+     */
+    private void writeDocument() throws IOException {
+        long id = documents.get();
+        Path staged = staging.resolve(prefix + id + ".txt");
+        int words = nextWordCount();
+        try (Writer writer = Files.newBufferedWriter(staged, StandardCharsets.UTF_8)) {
+            for (int w = 1; w <= words; w++) {
+                writer.write(vocabulary.next(random));
+                writer.write((w % WORDS_PER_LINE == 0) ? '\n' : ' ');
+            }
+        }
+        bytes.addAndGet(Files.size(staged));
+        Path doc = Files.move(staged, directory.resolve(staged.getFileName()), StandardCopyOption.ATOMIC_MOVE);
+        documents.incrementAndGet();
+        listener.accept(doc);
+    }
+
+    /**
+     * Draws the number of words of a document from
+     * a log-uniform distribution.
+     *
+     * @return the number of words
+     */
+    private int nextWordCount() {
+        if (maxWords <= minWords) {
+            return minWords;
+        }
+        double log = Math.log(minWords) + random.nextDouble() * (Math.log(maxWords) - Math.log(minWords));
+        return (int) Math.round(Math.exp(log));
+    }
+
+    /**
+     * Retrieves the number of documents written.
+     *
+     * @return the number of documents
+     */
+    public long getDocuments() {
+        return documents.get();
+    }
+
+    /**
+     * Retrieves the number of bytes written.
+     *
+     * @return the number of bytes
+     */
+    public long getBytes() {
+        return bytes.get();
+    }
+}
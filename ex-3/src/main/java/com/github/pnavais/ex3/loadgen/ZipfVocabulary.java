@@ -0,0 +1,130 @@
+/*
+ *
+ * Copyright 2020 Pablo Navais
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+
+package com.github.pnavais.ex3.loadgen;
+
+import lombok.Getter;
+
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * A vocabulary of synthetic words whose frequencies follow a Zipf
+ * distribution, i.e. the probability of the word of rank k is
+ * proportional to 1 / k^s.
+ * <p>
+ * Words are pronounceable syllables derived from their rank, so the
+ * word of a given rank is always the same (e.g. to choose the terms
+ * to rank with a known document frequency).
+ */
+public class ZipfVocabulary {
+
+    /** The consonants of the syllables */
+    private static final char[] CONSONANTS = "bcdfghjklmnpqrstvwxz".toCharArray();
+
+    /** The vowels of the syllables */
+    private static final char[] VOWELS = "aeiou".toCharArray();
+
+    /** The number of different syllables */
+    private static final int SYLLABLES = CONSONANTS.length * VOWELS.length;
+
+    /** The words by rank */
+    private final String[] words;
+
+    /** The cumulative probability of each rank */
+    private final double[] cumulative;
+
+    /** The exponent of the distribution */
+    @Getter
+    private final double exponent;
+
+    /**
+     * Creates the vocabulary with the given number of words
+     * and exponent of the distribution.
+     *
+     * @param size the number of words
+     * @param exponent the exponent (1.0 for natural language)
+     */
+    public ZipfVocabulary(int size, double exponent) {
+        if (size <= 0) {
+            throw new IllegalArgumentException("The vocabulary must have at least one word");
+        }
+        this.exponent = exponent;
+        this.words = new String[size];
+        this.cumulative = new double[size];
+        double total = 0;
+        for (int i = 0; i < size; i++) {
+            words[i] = word(i);
+            total += 1.0 / Math.pow(i + 1, exponent);
+            cumulative[i] = total;
+        }
+        for (int i = 0; i < size; i++) {
+            cumulative[i] /= total;
+        }
+    }
+
+    /**
+     * Builds the word of the given rank (0 being the most
+     * frequent one) as a sequence of syllables.
+     *
+     * @param rank the rank
+     * @return the word
+     */
+    public static String word(int rank) {
+        StringBuilder word = new StringBuilder();
+        int remaining = rank;
+        do {
+            int syllable = remaining % SYLLABLES;
+            word.append(CONSONANTS[syllable % CONSONANTS.length]).append(VOWELS[syllable / CONSONANTS.length]);
+            remaining /= SYLLABLES;
+        } while (remaining > 0);
+        return word.toString();
+    }
+
+    /**
+     * Draws a random word following the distribution.
+     *
+     * @param random the random generator
+     * @return the word
+     */
+    public String next(Random random) {
+        int rank = Arrays.binarySearch(cumulative, random.nextDouble());
+        rank = (rank >= 0) ? rank : -(rank + 1);
+        return words[Math.min(rank, words.length - 1)];
+    }
+
+    /**
+     * Retrieves the probability of the word of the given rank
+     * appearing at any position of a document.
+     *
+     * @param rank the rank
+     * @return the probability
+     */
+    public double probability(int rank) {
+        return (rank == 0) ? cumulative[0] : cumulative[rank] - cumulative[rank - 1];
+    }
+
+    /**
+     * Retrieves the number of words.
+     *
+     * @return the size of the vocabulary
+     */
+    public int size() {
+        return words.length;
+    }
+}
@@ -0,0 +1,318 @@
+/*
+ *
+ * Copyright 2020 Pablo Navais
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+package com.github.pnavais.ex3.matcher;
+
+import com.github.pnavais.ex3.normalizer.TermNormalizer;
+import com.github.pnavais.ex3.normalizer.TokenCache;
+import lombok.Getter;
+import lombok.NonNull;
+
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.regex.Pattern;
+
+/**
+ * The set of terms to look for compiled for matching. Terms can be single
+ * words or phrases of several words separated by whitespace.
+ * <p>
+ * The distinct words of all the terms form the vocabulary, which can be looked up either
+ * as strings or as UTF-8 encoded bytes (see {@link Utf8TermMatcher}). The phrases are
+ * compiled into a {@link TermAutomaton} over the word ids of the vocabulary, so that all
+ * the terms are matched in a single pass over the words of a document.
+ * <p>
+ * When a {@link TermNormalizer} is given, the words of the terms are normalized before
+ * compiling them and so must be the tokens looked up (see {@link #lookup(byte[], int)}).
+ * The ids resolved for the raw tokens are kept in a bounded {@link TokenCache}, so the
+ * most frequent tokens are only normalized once.
+ * <p>
+ * The compiled set is itself the (unmodifiable) set of the terms as supplied, so it can be
+ * compiled once and passed instead of the plain terms to the readers of every document.
+ */
+public class CompiledTermSet extends AbstractSet<String> {
+
+    /** The id of the tokens dropped by the normalizer */
+    public static final int SKIP = -2;
+
+    /** The maximum number of normalized tokens cached */
+    private static final int TOKEN_CACHE_SIZE = 1 << 14;
+
+    /** The longest token normalized, longer tokens are not matched */
+    private static final int MAX_NORMALIZED_LENGTH = 255;
+
+    /** The buffer of each thread the words looked up are encoded into, grown as needed */
+    private static final ThreadLocal<byte[]> WORD_BUFFERS =
+            ThreadLocal.withInitial(() -> new byte[(MAX_NORMALIZED_LENGTH + 1) * 2]);
+
+    /** The pattern separating the words of a phrase */
+    private static final Pattern WORD_SEPARATOR = Pattern.compile("\\s+");
+
+    /** The terms as supplied */
+    private final Set<String> source;
+
+    /** The terms in matching order (the term id is the position in the list) */
+    @Getter
+    private final List<String> terms;
+
+    /** The phrase matched by each term (terms with the same words share the phrase) */
+    private final int[] termPhrases;
+
+    /** The number of different phrases */
+    @Getter
+    private final int phraseCount;
+
+    /** The word ids of the vocabulary */
+    private final Map<String, Integer> wordIds;
+
+    /** The vocabulary matched over UTF-8 bytes */
+    @Getter
+    private final Utf8TermMatcher vocabulary;
+
+    /** The automaton matching the phrases */
+    @Getter
+    private final TermAutomaton automaton;
+
+    /** The normalizer of the words */
+    @Getter
+    private final TermNormalizer normalizer;
+
+    /** The ids of the normalized tokens */
+    private final TokenCache tokenCache;
+
+    /** The longest token which may match a word of the vocabulary */
+    @Getter
+    private final int maxTokenLength;
+
+    /**
+     * Compiles the given set of terms.
+     *
+     * @param terms the terms
+     */
+    public CompiledTermSet(@NonNull Set<String> terms) {
+        this(terms, TermNormalizer.NONE);
+    }
+
+    /**
+     * Compiles the given set of terms normalizing their words.
+     *
+     * @param terms the terms
+     * @param normalizer the normalizer
+     */
+    public CompiledTermSet(@NonNull Set<String> terms, @NonNull TermNormalizer normalizer) {
+        this.source = terms;
+        this.normalizer = normalizer;
+        this.terms = Collections.unmodifiableList(new ArrayList<>(terms));
+        this.termPhrases = new int[this.terms.size()];
+        this.wordIds = new LinkedHashMap<>();
+
+        Map<List<Integer>, Integer> phraseIds = new LinkedHashMap<>();
+        for (int id = 0; id < this.terms.size(); id++) {
+            List<Integer> phrase = new ArrayList<>();
+            for (String word : words(this.terms.get(id))) {
+                String normalized = normalizer.normalize(word);
+                if (normalized != null) {
+                    phrase.add(wordIds.computeIfAbsent(normalized, w -> wordIds.size()));
+                }
+            }
+            termPhrases[id] = phrase.isEmpty() ? -1 : phraseIds.computeIfAbsent(phrase, p -> phraseIds.size());
+        }
+
+        List<int[]> phrases = new ArrayList<>();
+        phraseIds.keySet().forEach(phrase -> phrases.add(phrase.stream().mapToInt(Integer::intValue).toArray()));
+
+        this.phraseCount = phrases.size();
+        this.vocabulary = Utf8TermMatcher.of(wordIds.keySet());
+        this.automaton = new TermAutomaton(phrases);
+        this.tokenCache = normalizer.isIdentity() ? null : new TokenCache(TOKEN_CACHE_SIZE);
+        this.maxTokenLength = normalizer.isIdentity() ? vocabulary.getMaxLength()
+                : Math.max(MAX_NORMALIZED_LENGTH, vocabulary.getMaxLength());
+    }
+
+    /**
+     * Retrieves the compiled term set for the given terms and normalizer, reusing
+     * the terms if already compiled with the same normalizer. Term sets passed
+     * to several documents should be compiled once beforehand.
+     *
+     * @param terms the terms
+     * @param normalizer the normalizer
+     * @return the compiled term set
+     */
+    public static CompiledTermSet of(@NonNull Set<String> terms, @NonNull TermNormalizer normalizer) {
+        if ((terms instanceof CompiledTermSet) && (((CompiledTermSet) terms).normalizer == normalizer)) {
+            return (CompiledTermSet) terms;
+        }
+        return new CompiledTermSet(terms, normalizer);
+    }
+
+    /**
+     * Iterates over the terms as supplied.
+     *
+     * @return the iterator of the terms
+     */
+    @Override
+    public Iterator<String> iterator() {
+        return Collections.unmodifiableSet(source).iterator();
+    }
+
+    /**
+     * Splits a term into its words.
+     *
+     * @param term the term
+     * @return the words of the term
+     */
+    public static List<String> words(String term) {
+        String trimmed = term.trim();
+        return trimmed.isEmpty() ? Collections.emptyList() : Arrays.asList(WORD_SEPARATOR.split(trimmed));
+    }
+
+    /**
+     * Retrieves the id of the given word in the vocabulary,
+     * normalizing it first. The word is encoded into a buffer
+     * of the calling thread, reused for the following words.
+     *
+     * @param word the word
+     * @return the word id, {@link Utf8TermMatcher#NO_MATCH} if not in the vocabulary
+     * or {@link #SKIP} if dropped by the normalizer
+     */
+    public int wordId(String word) {
+        if (normalizer.isIdentity()) {
+            Integer id = wordIds.get(word);
+            return (id != null) ? id : Utf8TermMatcher.NO_MATCH;
+        }
+        // Words have at least as many bytes as chars
+        if (word.length() > maxTokenLength) {
+            return Utf8TermMatcher.NO_MATCH;
+        }
+        byte[] buffer = WORD_BUFFERS.get();
+        if (buffer.length < maxTokenLength * 2) {
+            buffer = new byte[maxTokenLength * 2];
+            WORD_BUFFERS.set(buffer);
+        }
+        int len = encodeAscii(word, buffer);
+        if (len < 0) {
+            byte[] encoded = word.getBytes(StandardCharsets.UTF_8);
+            if (encoded.length > maxTokenLength) {
+                return Utf8TermMatcher.NO_MATCH;
+            }
+            System.arraycopy(encoded, 0, buffer, 0, encoded.length);
+            len = encoded.length;
+        }
+        return lookup(buffer, len);
+    }
+
+    /**
+     * Encodes the given word into the start of the buffer if made only of ASCII chars.
+     *
+     * @param word the word
+     * @param buffer the buffer, at least as long as the word
+     * @return the length of the encoded word or -1 if not ASCII
+     */
+    private static int encodeAscii(String word, byte[] buffer) {
+        int length = word.length();
+        for (int i = 0; i < length; i++) {
+            char c = word.charAt(i);
+            if (c >= 0x80) {
+                return -1;
+            }
+            buffer[i] = (byte) c;
+        }
+        return length;
+    }
+
+    /**
+     * Retrieves the id in the vocabulary of the UTF-8 encoded token stored at
+     * the start of the given buffer, normalizing it in place if needed. The
+     * buffer should leave room for the normalized token to grow (see
+     * {@link TermNormalizer#normalize(byte[], int)}).
+     *
+     * @param token the buffer containing the token
+     * @param len the length of the token
+     * @return the word id, {@link Utf8TermMatcher#NO_MATCH} if not in the vocabulary
+     * or {@link #SKIP} if dropped by the normalizer
+     */
+    public int lookup(byte[] token, int len) {
+        if (normalizer.isIdentity()) {
+            return vocabulary.match(token, 0, len);
+        }
+        if (!normalizer.mayMatch(token, len, vocabulary)) {
+            return Utf8TermMatcher.NO_MATCH;
+        }
+        if (!normalizer.needsDecoding(token, len)) {
+            return resolve(token, normalizer.normalize(token, len));
+        }
+
+        // Tokens decoded to be normalized are cached
+        long hash = TokenCache.hash(token, len);
+        int id = tokenCache.get(token, len, hash);
+        if (id == TokenCache.MISS) {
+            byte[] key = TokenCache.isCacheable(len) ? Arrays.copyOf(token, len) : null;
+            id = resolve(token, normalizer.normalize(token, len));
+            if (key != null) {
+                tokenCache.put(key, hash, id);
+            }
+        }
+        return id;
+    }
+
+    /**
+     * Retrieves the id in the vocabulary of the normalized token.
+     *
+     * @param token the buffer containing the normalized token
+     * @param len the length of the token or {@link TermNormalizer#DROPPED}
+     * @return the word id, {@link Utf8TermMatcher#NO_MATCH} if not in the vocabulary
+     * or {@link #SKIP} if dropped
+     */
+    private int resolve(byte[] token, int len) {
+        return (len == TermNormalizer.DROPPED) ? SKIP : vocabulary.match(token, 0, len);
+    }
+
+    /**
+     * Retrieves the occurrences of a term given the occurrences
+     * of every phrase.
+     *
+     * @param termId the term id
+     * @param phraseHits the occurrences of each phrase
+     * @return the occurrences of the term
+     */
+    public long occurrences(int termId, long[] phraseHits) {
+        int phrase = termPhrases[termId];
+        return (phrase != -1) ? phraseHits[phrase] : 0;
+    }
+
+    /**
+     * Retrieves the encoded positions of a term given the
+     * positions recorded for every phrase.
+     *
+     * @param termId the term id
+     * @param positions the recorder of the positions of the phrases
+     * @return the encoded positions of the term or null if not found
+     */
+    public byte[] positions(int termId, TermPositions.Builder positions) {
+        int phrase = termPhrases[termId];
+        return (phrase != -1) ? positions.get(phrase) : null;
+    }
+
+    /**
+     * Retrieves the number of terms
+     *
+     * @return the number of terms
+     */
+    @Override
+    public int size() {
+        return terms.size();
+    }
+}
@@ -0,0 +1,264 @@
+/*
+ *
+ * Copyright 2020 Pablo Navais
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+package com.github.pnavais.ex3.matcher;
+
+import lombok.NonNull;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.List;
+
+/**
+ * An Aho-Corasick automaton matching phrases (sequences of words) in a single
+ * pass over a stream of words. The alphabet of the automaton are word ids, so that
+ * every token is looked up once in the vocabulary and then fed to the automaton :
+ * - Tokens not in the vocabulary reset the automaton to its root, as no phrase can contain them.
+ * - Otherwise the automaton follows the transition of the word, falling back through
+ *   the failure links until a transition exists (amortized constant time per token).
+ * <p>
+ * Every state knows the phrase ending in it (if any) and the next state in its
+ * failure chain ending a phrase, allowing to report all overlapping matches
+ * without walking the whole failure chain.
+ * <p>
+ * Transitions are stored in a single open addressing table keyed by state and word,
+ * so memory stays proportional to the number of words in the phrases regardless
+ * of the size of the vocabulary.
+ */
+public class TermAutomaton {
+
+    /** The initial state of the automaton */
+    public static final int ROOT = 0;
+
+    /** Marks the absence of a state or a phrase */
+    private static final int NONE = -1;
+
+    /** Marks an empty slot in the transitions table */
+    private static final long EMPTY = -1L;
+
+    /** The phrase ending in each state */
+    private final int[] phraseOf;
+
+    /** The number of words of each phrase */
+    private final int[] phraseLengths;
+
+    /** The next state in the failure chain ending a phrase */
+    private final int[] outputLink;
+
+    /** The failure link of each state */
+    private final int[] failure;
+
+    /** The keys (state and word) of the transitions table */
+    private final long[] transitionKeys;
+
+    /** The target states of the transitions table */
+    private final int[] transitionTargets;
+
+    /** The mask to compute the slot of a transition */
+    private final int transitionMask;
+
+    /**
+     * Compiles the automaton for the given phrases. The id
+     * of each phrase is its position in the list. Phrases
+     * are expected to be distinct, a repeated phrase is only
+     * reported for its first id.
+     *
+     * @param phrases the word ids of each phrase
+     */
+    public TermAutomaton(@NonNull List<int[]> phrases) {
+        int maxStates = 1 + phrases.stream().mapToInt(p -> p.length).sum();
+        int size = Integer.highestOneBit(Math.max(2, maxStates * 2) - 1) << 1;
+        this.transitionKeys = new long[size];
+        this.phraseLengths = phrases.stream().mapToInt(p -> p.length).toArray();
+        this.transitionTargets = new int[size];
+        this.transitionMask = size - 1;
+        Arrays.fill(transitionKeys, EMPTY);
+
+        // Build the trie
+        List<List<int[]>> children = new ArrayList<>();
+        children.add(new ArrayList<>());
+        List<Integer> phraseStates = new ArrayList<>();
+        for (int[] phrase : phrases) {
+            int state = ROOT;
+            for (int word : phrase) {
+                int target = transition(state, word);
+                if (target == NONE) {
+                    target = children.size();
+                    children.add(new ArrayList<>());
+                    children.get(state).add(new int[] { word, target });
+                    addTransition(state, word, target);
+                }
+                state = target;
+            }
+            phraseStates.add(state);
+        }
+
+        int states = children.size();
+        this.phraseOf = new int[states];
+        this.outputLink = new int[states];
+        this.failure = new int[states];
+        Arrays.fill(phraseOf, NONE);
+        Arrays.fill(outputLink, NONE);
+        for (int id = 0; id < phrases.size(); id++) {
+            if ((phrases.get(id).length > 0) && (phraseOf[phraseStates.get(id)] == NONE)) {
+                phraseOf[phraseStates.get(id)] = id;
+            }
+        }
+
+        buildFailureLinks(children);
+    }
+
+    /**
+     * Computes the next state after reading the given word.
+     *
+     * @param state the current state
+     * @param word the word id or a negative value for words out of the vocabulary
+     * @return the next state
+     */
+    public int next(int state, int word) {
+        if (word < 0) {
+            return ROOT;
+        }
+        for (;;) {
+            int target = transition(state, word);
+            if (target != NONE) {
+                return target;
+            }
+            if (state == ROOT) {
+                return ROOT;
+            }
+            state = failure[state];
+        }
+    }
+
+    /**
+     * Accounts the phrases ending in the given state.
+     *
+     * @param state the current state
+     * @param hits the occurrences of each phrase
+     */
+    public void emit(int state, long[] hits) {
+        for (int s = (phraseOf[state] != NONE) ? state : outputLink[state]; s != NONE; s = outputLink[s]) {
+            hits[phraseOf[s]]++;
+        }
+    }
+
+    /**
+     * Accounts the phrases ending in the given state, recording
+     * the position of their first word.
+     *
+     * @param state the current state
+     * @param hits the occurrences of each phrase
+     * @param positions the recorder of the positions of the phrases
+     * @param position the position of the current word
+     */
+    public void emit(int state, long[] hits, TermPositions.Builder positions, long position) {
+        for (int s = (phraseOf[state] != NONE) ? state : outputLink[state]; s != NONE; s = outputLink[s]) {
+            hits[phraseOf[s]]++;
+            positions.add(phraseOf[s], position - phraseLengths[phraseOf[s]] + 1);
+        }
+    }
+
+    /**
+     * Retrieves the number of states of the automaton
+     *
+     * @return the number of states
+     */
+    public int size() {
+        return phraseOf.length;
+    }
+
+    /**
+     * Computes the failure and output links visiting
+     * the trie in breadth first order.
+     *
+     * @param children the transitions of each state
+     */
+    private void buildFailureLinks(List<List<int[]>> children) {
+        Deque<Integer> queue = new ArrayDeque<>();
+        for (int[] child : children.get(ROOT)) {
+            failure[child[1]] = ROOT;
+            queue.add(child[1]);
+        }
+
+        while (!queue.isEmpty()) {
+            int state = queue.poll();
+            for (int[] child : children.get(state)) {
+                int word = child[0];
+                int target = child[1];
+
+                int f = failure[state];
+                while ((f != ROOT) && (transition(f, word) == NONE)) {
+                    f = failure[f];
+                }
+                int fallback = transition(f, word);
+                failure[target] = (fallback != NONE) ? fallback : ROOT;
+                outputLink[target] = (phraseOf[failure[target]] != NONE) ? failure[target] : outputLink[failure[target]];
+                queue.add(target);
+            }
+        }
+    }
+
+    /**
+     * Retrieves the target of a transition.
+     *
+     * @param state the source state
+     * @param word the word id
+     * @return the target state or {@link #NONE} if no transition exists
+     */
+    private int transition(int state, int word) {
+        long key = ((long) state << 32) | word;
+        for (int slot = slotOf(key); ; slot = (slot + 1) & transitionMask) {
+            long current = transitionKeys[slot];
+            if (current == key) {
+                return transitionTargets[slot];
+            } else if (current == EMPTY) {
+                return NONE;
+            }
+        }
+    }
+
+    /**
+     * Adds a new transition to the table
+     *
+     * @param state the source state
+     * @param word the word id
+     * @param target the target state
+     */
+    private void addTransition(int state, int word, int target) {
+        long key = ((long) state << 32) | word;
+        int slot = slotOf(key);
+        while (transitionKeys[slot] != EMPTY) {
+            slot = (slot + 1) & transitionMask;
+        }
+        transitionKeys[slot] = key;
+        transitionTargets[slot] = target;
+    }
+
+    /**
+     * Computes the slot of a transition key.
+     *
+     * @param key the key
+     * @return the slot
+     */
+    private int slotOf(long key) {
+        long h = key * 0x9E3779B97F4A7C15L;
+        return (int) (h >>> 32) & transitionMask;
+    }
+}
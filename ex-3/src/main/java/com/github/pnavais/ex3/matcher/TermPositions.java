@@ -0,0 +1,141 @@
+/*
+ *
+ * Copyright 2020 Pablo Navais
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+
+package com.github.pnavais.ex3.matcher;
+
+import lombok.AccessLevel;
+import lombok.NoArgsConstructor;
+
+import java.util.Arrays;
+
+/**
+ * Encodes the positions of a term in a document (the index of the words where it
+ * is found, in ascending order) as the gaps between consecutive positions, written
+ * as variable length integers of 7 bits per byte (the high bit marking the bytes
+ * followed by another one). The gaps between the occurrences of a term are usually
+ * small, so most positions take a single byte.
+ */
+@NoArgsConstructor(access = AccessLevel.PRIVATE)
+public final class TermPositions {
+
+    /** The bits of a byte holding the value */
+    private static final int VALUE_BITS = 0x7F;
+
+    /** The bit of a byte marking that another one follows */
+    private static final int CONTINUATION_BIT = 0x80;
+
+    /**
+     * Decodes all the positions of the given range of encoded bytes.
+     *
+     * @param encoded the encoded positions
+     * @param from the start of the range
+     * @param to the end of the range (exclusive)
+     * @return the positions in ascending order
+     */
+    public static int[] decode(byte[] encoded, int from, int to) {
+        int[] positions = new int[to - from];
+        int count = 0;
+        int position = 0;
+        for (int i = from; i < to; ) {
+            int gap = 0;
+            int shift = 0;
+            int b;
+            do {
+                b = encoded[i++];
+                gap |= (b & VALUE_BITS) << shift;
+                shift += 7;
+            } while ((b & CONTINUATION_BIT) != 0);
+            position += gap;
+            positions[count++] = position;
+        }
+        return Arrays.copyOf(positions, count);
+    }
+
+    /**
+     * Decodes all the given encoded positions.
+     *
+     * @param encoded the encoded positions
+     * @return the positions in ascending order
+     */
+    public static int[] decode(byte[] encoded) {
+        return decode(encoded, 0, encoded.length);
+    }
+
+    /**
+     * Records the positions of several phrases in a document,
+     * encoding each one as soon as it is found.
+     */
+    public static final class Builder {
+
+        /** The encoded positions of each phrase */
+        private final byte[][] encoded;
+
+        /** The number of bytes encoded for each phrase */
+        private final int[] lengths;
+
+        /** The last position recorded for each phrase */
+        private final long[] last;
+
+        /**
+         * Creates the builder for the given number of phrases.
+         *
+         * @param phraseCount the number of phrases
+         */
+        public Builder(int phraseCount) {
+            this.encoded = new byte[phraseCount][];
+            this.lengths = new int[phraseCount];
+            this.last = new long[phraseCount];
+        }
+
+        /**
+         * Records a position of a phrase, which must not be lower
+         * than the last one recorded for the phrase.
+         *
+         * @param phrase the phrase id
+         * @param position the position
+         */
+        public void add(int phrase, long position) {
+            long gap = position - last[phrase];
+            last[phrase] = position;
+            byte[] bytes = encoded[phrase];
+            if (bytes == null) {
+                bytes = new byte[8];
+            } else if (lengths[phrase] + 10 > bytes.length) {
+                bytes = Arrays.copyOf(bytes, bytes.length * 2);
+            }
+            int length = lengths[phrase];
+            while (gap > VALUE_BITS) {
+                bytes[length++] = (byte) ((gap & VALUE_BITS) | CONTINUATION_BIT);
+                gap >>>= 7;
+            }
+            bytes[length++] = (byte) gap;
+            encoded[phrase] = bytes;
+            lengths[phrase] = length;
+        }
+
+        /**
+         * Retrieves the encoded positions of a phrase.
+         *
+         * @param phrase the phrase id
+         * @return the encoded positions or null if the phrase was not found
+         */
+        public byte[] get(int phrase) {
+            return (encoded[phrase] != null) ? Arrays.copyOf(encoded[phrase], lengths[phrase]) : null;
+        }
+    }
+}
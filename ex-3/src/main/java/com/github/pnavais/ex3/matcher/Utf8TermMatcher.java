@@ -0,0 +1,460 @@
+/*
+ *
+ * Copyright 2020 Pablo Navais
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+package com.github.pnavais.ex3.matcher;
+
+import lombok.Getter;
+import lombok.NonNull;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+
+/**
+ * Matches tokens against a fixed set of terms directly over their UTF-8
+ * encoded bytes, avoiding any charset decoding.
+ * <p>
+ * The terms are pre-encoded and stored in a minimal-collision perfect hash table
+ * built with the "hash and displace" technique :
+ * - Terms are distributed in buckets using a first hash.
+ * - For each bucket (largest first), a displacement is searched so that all the terms
+ *   in the bucket land in free slots of the table.
+ * <p>
+ * A lookup therefore performs a single hash pass over the token bytes and a single
+ * comparison against the only candidate term, both processing the token 8 bytes at a time.
+ * Before hashing, tokens are discarded using a prefilter on their length and first byte
+ * which rejects most of the non matching tokens at almost no cost.
+ */
+public class Utf8TermMatcher {
+
+    /** Value returned when a token does not match any term */
+    public static final int NO_MATCH = -1;
+
+    /** The multiplier used to hash every word of a token */
+    private static final long HASH_MULTIPLIER = 0x9E3779B97F4A7C15L;
+
+    /** The number of seeds to try before growing the table */
+    private static final int MAX_SEED_ATTEMPTS = 8;
+
+    /** The maximum displacement multiplier to try for a bucket */
+    private static final int MAX_MULTIPLIER = 512;
+
+    /** The bits of the displacement reserved to the offset */
+    private static final int OFFSET_BITS = 22;
+
+    /** The terms in matching order (the term id is the position in the list) */
+    @Getter
+    private final List<String> terms;
+
+    /** The UTF-8 encoded terms by term id */
+    private final byte[][] encodedTerms;
+
+    /** The UTF-8 encoded terms by term id packed in little endian words */
+    private final long[][] packedTerms;
+
+    /** The term id of each slot in the table */
+    private int[] slots;
+
+    /** The displacement of each bucket */
+    private int[] displacements;
+
+    /** The mask to compute the slot of a hash */
+    private int slotMask;
+
+    /** The seed mixed with the hashes of the table */
+    private long seed;
+
+    /** The mask to compute the bucket of a hash */
+    private final int bucketMask;
+
+    /** Bit set of the term lengths (lengths of 64 bytes or more are not filtered) */
+    private final long lengthMask;
+
+    /** Bit set of the first bytes of the terms */
+    private final long[] firstByteMask;
+
+    /** The length of the longest term in bytes */
+    @Getter
+    private final int maxLength;
+
+    /**
+     * Compiles the matcher for the given terms.
+     *
+     * @param terms the terms to match
+     */
+    public Utf8TermMatcher(@NonNull Collection<String> terms) {
+        this.terms = Collections.unmodifiableList(new ArrayList<>(new LinkedHashSet<>(terms)));
+        this.encodedTerms = new byte[this.terms.size()][];
+        this.packedTerms = new long[this.terms.size()][];
+        this.firstByteMask = new long[4];
+
+        long lengths = 0;
+        int longest = 0;
+        for (int i = 0; i < encodedTerms.length; i++) {
+            byte[] encoded = this.terms.get(i).getBytes(StandardCharsets.UTF_8);
+            encodedTerms[i] = encoded;
+            packedTerms[i] = pack(encoded);
+            longest = Math.max(longest, encoded.length);
+            lengths |= (encoded.length < 64) ? (1L << encoded.length) : 0;
+            if (encoded.length > 0) {
+                int first = encoded[0] & 0xFF;
+                firstByteMask[first >>> 6] |= 1L << first;
+            }
+        }
+        this.lengthMask = lengths;
+        this.maxLength = longest;
+
+        this.bucketMask = Integer.highestOneBit(Math.max(1, encodedTerms.length / 4)) - 1;
+        buildTable(Integer.highestOneBit(Math.max(2, encodedTerms.length * 2) - 1) << 1);
+    }
+
+    /**
+     * Static factory method to build the instance
+     *
+     * @param terms the terms to match
+     * @return the matcher
+     */
+    public static Utf8TermMatcher of(Collection<String> terms) {
+        return new Utf8TermMatcher(terms);
+    }
+
+    /**
+     * Retrieves the number of terms in the matcher
+     *
+     * @return the number of terms
+     */
+    public int size() {
+        return encodedTerms.length;
+    }
+
+    /**
+     * Finds the term matching the given token.
+     *
+     * @param src the source containing the token
+     * @param off the offset of the token in the source
+     * @param len the length of the token
+     * @return the term id or {@link #NO_MATCH}
+     */
+    public int match(byte[] src, int off, int len) {
+        if (!accepts(len, src[off])) {
+            return NO_MATCH;
+        }
+
+        long h = len;
+        for (int i = 0; i < len; i += Long.BYTES) {
+            h = (h ^ word(src, off + i, Math.min(Long.BYTES, len - i))) * HASH_MULTIPLIER;
+        }
+
+        int id = slots[slotOf(mix(h ^ seed))];
+        if (id != NO_MATCH) {
+            byte[] term = encodedTerms[id];
+            if (term.length != len) {
+                return NO_MATCH;
+            }
+            for (int i = 0; i < len; i++) {
+                if (term[i] != src[off + i]) {
+                    return NO_MATCH;
+                }
+            }
+        }
+        return id;
+    }
+
+    /**
+     * Finds the term matching the given token. The buffer must use
+     * the little endian byte order.
+     *
+     * @param src the source containing the token
+     * @param off the absolute offset of the token in the source
+     * @param len the length of the token
+     * @return the term id or {@link #NO_MATCH}
+     */
+    public int match(ByteBuffer src, int off, int len) {
+        if (!accepts(len, src.get(off))) {
+            return NO_MATCH;
+        }
+
+        long h = len;
+        for (int i = 0; i < len; i += Long.BYTES) {
+            h = (h ^ word(src, off + i, Math.min(Long.BYTES, len - i))) * HASH_MULTIPLIER;
+        }
+
+        int id = slots[slotOf(mix(h ^ seed))];
+        if (id != NO_MATCH) {
+            if (encodedTerms[id].length != len) {
+                return NO_MATCH;
+            }
+            long[] term = packedTerms[id];
+            for (int i = 0, w = 0; i < len; i += Long.BYTES, w++) {
+                if (term[w] != word(src, off + i, Math.min(Long.BYTES, len - i))) {
+                    return NO_MATCH;
+                }
+            }
+        }
+        return id;
+    }
+
+    /**
+     * Applies the prefilter to the token, discarding most of the tokens
+     * not matching any term without hashing them.
+     *
+     * @param len the length of the token
+     * @param first the first byte of the token
+     * @return true if the token may match a term, false otherwise
+     */
+    public boolean accepts(int len, byte first) {
+        if ((len > maxLength) || ((len < 64) && ((lengthMask & (1L << len)) == 0))) {
+            return false;
+        }
+        int b = first & 0xFF;
+        return (firstByteMask[b >>> 6] & (1L << b)) != 0;
+    }
+
+    /**
+     * Computes the slot of a hash using the displacement
+     * of its bucket.
+     *
+     * @param h the hash
+     * @return the slot in the table
+     */
+    private int slotOf(long h) {
+        int d = displacements[bucketOf(h)];
+        return slotOf(h, d >>> OFFSET_BITS, d & ((1 << OFFSET_BITS) - 1));
+    }
+
+    /**
+     * Computes the slot of a hash for a given displacement.
+     *
+     * @param h the hash
+     * @param d0 the displacement multiplier
+     * @param d1 the displacement offset
+     * @return the slot in the table
+     */
+    private int slotOf(long h, int d0, int d1) {
+        int f1 = (int) h;
+        int f2 = ((int) (h >>> 24)) | 1;
+        return (f1 + d0 * f2 + d1) & slotMask;
+    }
+
+    /**
+     * Computes the bucket of a hash.
+     *
+     * @param h the hash
+     * @return the bucket
+     */
+    private int bucketOf(long h) {
+        return (int) (h >>> 48) & bucketMask;
+    }
+
+    /**
+     * Builds the perfect hash table, trying several seeds
+     * and growing the table until all the terms are placed.
+     *
+     * @param initialSize the initial number of slots
+     */
+    private void buildTable(int initialSize) {
+        long[] hashes = new long[encodedTerms.length];
+        for (int id = 0; id < encodedTerms.length; id++) {
+            hashes[id] = hash(encodedTerms[id]);
+        }
+
+        for (int size = initialSize; size <= (1 << OFFSET_BITS); size <<= 1) {
+            for (int attempt = 0; attempt < MAX_SEED_ATTEMPTS; attempt++) {
+                if (tryBuildTable(size, attempt * HASH_MULTIPLIER, hashes)) {
+                    return;
+                }
+            }
+        }
+        throw new IllegalStateException("Unable to build the perfect hash table for the terms");
+    }
+
+    /**
+     * Tries to build the perfect hash table placing the buckets
+     * with more terms first.
+     *
+     * @param size the number of slots
+     * @param seed the seed to mix with the hashes
+     * @param hashes the hashes of all terms
+     * @return true if all the terms were placed, false otherwise
+     */
+    private boolean tryBuildTable(int size, long seed, long[] hashes) {
+        this.seed = seed;
+        this.slotMask = size - 1;
+        this.slots = new int[size];
+        this.displacements = new int[bucketMask + 1];
+        Arrays.fill(slots, NO_MATCH);
+
+        List<List<Integer>> buckets = new ArrayList<>();
+        for (int i = 0; i <= bucketMask; i++) {
+            buckets.add(new ArrayList<>());
+        }
+
+        long[] mixed = new long[hashes.length];
+        for (int id = 0; id < hashes.length; id++) {
+            mixed[id] = mix(hashes[id] ^ seed);
+            buckets.get(bucketOf(mixed[id])).add(id);
+        }
+
+        Integer[] order = new Integer[buckets.size()];
+        for (int i = 0; i < order.length; i++) {
+            order[i] = i;
+        }
+        Arrays.sort(order, Comparator.comparingInt((Integer b) -> buckets.get(b).size()).reversed());
+
+        for (Integer bucket : order) {
+            List<Integer> ids = buckets.get(bucket);
+            if (!ids.isEmpty()) {
+                int displacement = place(ids, mixed);
+                if (displacement == NO_MATCH) {
+                    return false;
+                }
+                displacements[bucket] = displacement;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Searches a displacement placing all the terms of a bucket
+     * in free and different slots, and fills them.
+     *
+     * @param ids the terms in the bucket
+     * @param hashes the mixed hashes of all terms
+     * @return the displacement found or {@link #NO_MATCH} if not found
+     */
+    private int place(List<Integer> ids, long[] hashes) {
+        int[] candidates = new int[ids.size()];
+        int multipliers = Math.min(slots.length, MAX_MULTIPLIER);
+        for (int d0 = 0; d0 < multipliers; d0++) {
+            for (int d1 = 0; d1 < slots.length; d1++) {
+                if (fits(ids, hashes, d0, d1, candidates)) {
+                    for (int i = 0; i < candidates.length; i++) {
+                        slots[candidates[i]] = ids.get(i);
+                    }
+                    return (d0 << OFFSET_BITS) | d1;
+                }
+            }
+        }
+        return NO_MATCH;
+    }
+
+    /**
+     * Checks whether the terms of a bucket fit in the table
+     * with the given displacement.
+     *
+     * @param ids the terms in the bucket
+     * @param hashes the hashes of all terms
+     * @param d0 the displacement multiplier
+     * @param d1 the displacement offset
+     * @param candidates the candidate slots found
+     * @return true if all the terms fit, false otherwise
+     */
+    private boolean fits(List<Integer> ids, long[] hashes, int d0, int d1, int[] candidates) {
+        for (int i = 0; i < candidates.length; i++) {
+            int slot = slotOf(hashes[ids.get(i)], d0, d1);
+            if (slots[slot] != NO_MATCH) {
+                return false;
+            }
+            for (int j = 0; j < i; j++) {
+                if (candidates[j] == slot) {
+                    return false;
+                }
+            }
+            candidates[i] = slot;
+        }
+        return true;
+    }
+
+    /**
+     * Computes the hash of the given bytes
+     *
+     * @param bytes the bytes
+     * @return the hash
+     */
+    private static long hash(byte[] bytes) {
+        long h = bytes.length;
+        for (int i = 0; i < bytes.length; i += Long.BYTES) {
+            h = (h ^ word(bytes, i, Math.min(Long.BYTES, bytes.length - i))) * HASH_MULTIPLIER;
+        }
+        return h;
+    }
+
+    /**
+     * Packs the given bytes in little endian words, padding
+     * the last one with zeros.
+     *
+     * @param bytes the bytes
+     * @return the words
+     */
+    private static long[] pack(byte[] bytes) {
+        long[] words = new long[(bytes.length + Long.BYTES - 1) / Long.BYTES];
+        for (int i = 0; i < words.length; i++) {
+            words[i] = word(bytes, i * Long.BYTES, Math.min(Long.BYTES, bytes.length - i * Long.BYTES));
+        }
+        return words;
+    }
+
+    /**
+     * Reads up to 8 bytes as a little endian word,
+     * the missing bytes being zero.
+     *
+     * @param src the source
+     * @param off the offset of the bytes
+     * @param len the number of bytes to read (1 to 8)
+     * @return the word
+     */
+    private static long word(byte[] src, int off, int len) {
+        long word = 0;
+        for (int i = len - 1; i >= 0; i--) {
+            word = (word << 8) | (src[off + i] & 0xFF);
+        }
+        return word;
+    }
+
+    /**
+     * Reads up to 8 bytes as a little endian word,
+     * the missing bytes being zero.
+     *
+     * @param src the source (using little endian byte order)
+     * @param off the absolute offset of the bytes
+     * @param len the number of bytes to read (1 to 8)
+     * @return the word
+     */
+    private static long word(ByteBuffer src, int off, int len) {
+        if (off + Long.BYTES <= src.limit()) {
+            return src.getLong(off) & (-1L >>> ((Long.BYTES - len) << 3));
+        }
+        long word = 0;
+        for (int i = len - 1; i >= 0; i--) {
+            word = (word << 8) | (src.get(off + i) & 0xFF);
+        }
+        return word;
+    }
+
+    /**
+     * Finalizes the hash to spread its bits.
+     *
+     * @param h the hash
+     * @return the mixed hash
+     */
+    private static long mix(long h) {
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        return h;
+    }
+}
@@ -0,0 +1,344 @@
+/*
+ *
+ * Copyright 2020 Pablo Navais
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+package com.github.pnavais.ex3.matcher;
+
+import lombok.Getter;
+import lombok.NonNull;
+import lombok.Setter;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+
+/**
+ * Splits UTF-8 encoded contents into tokens and counts the words and
+ * the occurrences of the terms of a {@link CompiledTermSet} without decoding them.
+ * Every token is looked up in the vocabulary of the terms (see {@link Utf8TermMatcher})
+ * and its word id fed to the automaton matching the phrases (see {@link TermAutomaton}).
+ * If the terms are normalized, tokens are copied to the token buffer and normalized there
+ * in place, tokens dropped by the normalizer are neither counted nor matched.
+ * Tokens can also be collected in the filter of the words of the document (see {@link WordFilter}).
+ * <p>
+ * Tokens are separated by ASCII whitespace and control characters (bytes in the
+ * range [0x00, 0x20]), which never appear inside multi-byte UTF-8 sequences.
+ * Contents can be supplied in several consecutive chunks, tokens spanning
+ * two chunks are carried over to the next one.
+ * <p>
+ * Direct and mapped buffers are scanned 8 bytes at a time, locating all the separators
+ * in a word with a few arithmetic operations (SWAR) instead of testing every byte.
+ */
+public class Utf8TermScanner {
+
+    /** The mask of the low 7 bits of every byte in a word */
+    private static final long LOW_BITS = 0x7F7F7F7F7F7F7F7FL;
+
+    /** The mask of the high bit of every byte in a word */
+    private static final long HIGH_BITS = 0x8080808080808080L;
+
+    /** Added to every byte to set its high bit if its low 7 bits are above the last separator (0x20) */
+    private static final long SEPARATOR_BIAS = 0x5F5F5F5F5F5F5F5FL;
+
+    /** The highest separator byte */
+    private static final int MAX_SEPARATOR = 0x20;
+
+    /** The terms to look for */
+    @Getter
+    private final CompiledTermSet terms;
+
+    /** The vocabulary of the terms */
+    private final Utf8TermMatcher vocabulary;
+
+    /** Whether the tokens must be normalized before matching them */
+    private final boolean normalizing;
+
+    /** The longest token which may match a term */
+    private final int maxTokenLength;
+
+    /** The automaton matching the phrases */
+    private final TermAutomaton automaton;
+
+    /** The current state of the automaton */
+    private int state;
+
+    /** The occurrences of each phrase */
+    private final long[] hits;
+
+    /** The number of words found */
+    @Getter
+    private long wordCount;
+
+    /** The start of the token spanning chunks, also used to normalize the tokens */
+    private final byte[] carry;
+
+    /** The length of the token spanning chunks (can be greater than the carried bytes) */
+    private int carryLength;
+
+    /** The builder of the filter of the words, null if not built */
+    @Setter
+    private WordFilter.Builder words;
+
+    /** The recorder of the positions of the phrases, null if not recorded */
+    @Setter
+    private TermPositions.Builder positions;
+
+    /** The hash of the token spanning chunks, including all its bytes */
+    private long carryHash = WordFilter.SEED;
+
+    /**
+     * Creates the scanner for the given terms.
+     *
+     * @param terms the terms to look for
+     */
+    public Utf8TermScanner(@NonNull CompiledTermSet terms) {
+        this.terms = terms;
+        this.vocabulary = terms.getVocabulary();
+        this.normalizing = !terms.getNormalizer().isIdentity();
+        this.maxTokenLength = terms.getMaxTokenLength();
+        this.automaton = terms.getAutomaton();
+        this.state = TermAutomaton.ROOT;
+        this.hits = new long[terms.getPhraseCount()];
+        this.carry = new byte[normalizing ? (maxTokenLength + 1) * 2 : maxTokenLength + 1];
+    }
+
+    /**
+     * Retrieves the occurrences found for the given term.
+     *
+     * @param termId the term id
+     * @return the number of occurrences
+     */
+    public long getHits(int termId) {
+        return terms.occurrences(termId, hits);
+    }
+
+    /**
+     * Retrieves the encoded positions found for the given term, if recorded.
+     *
+     * @param termId the term id
+     * @return the encoded positions or null if not found or not recorded
+     */
+    public byte[] getPositions(int termId) {
+        return (positions != null) ? terms.positions(termId, positions) : null;
+    }
+
+    /**
+     * Scans the next chunk of contents.
+     *
+     * @param src the contents
+     * @param off the offset of the chunk
+     * @param len the length of the chunk
+     */
+    public void scan(byte[] src, int off, int len) {
+        int tokenStart = off;
+        for (int i = off, end = off + len; i < end; i++) {
+            if ((src[i] & 0xFF) <= MAX_SEPARATOR) {
+                endToken(src, tokenStart, i);
+                tokenStart = i + 1;
+            }
+        }
+        carry(src, tokenStart, off + len);
+    }
+
+    /**
+     * Scans the remaining contents of the given buffer
+     * leaving it fully consumed.
+     *
+     * @param src the contents
+     */
+    public void scan(ByteBuffer src) {
+        if (src.hasArray()) {
+            scan(src.array(), src.arrayOffset() + src.position(), src.remaining());
+            src.position(src.limit());
+            return;
+        }
+
+        ByteBuffer buffer = src.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+        int limit = buffer.limit();
+        int tokenStart = buffer.position();
+        int i = tokenStart;
+
+        for (; i + Long.BYTES <= limit; i += Long.BYTES) {
+            long word = buffer.getLong(i);
+            long separators = ~(((word & LOW_BITS) + SEPARATOR_BIAS) | word) & HIGH_BITS;
+            while (separators != 0) {
+                int pos = i + (Long.numberOfTrailingZeros(separators) >>> 3);
+                endToken(buffer, tokenStart, pos);
+                tokenStart = pos + 1;
+                separators &= separators - 1;
+            }
+        }
+
+        for (; i < limit; i++) {
+            if ((buffer.get(i) & 0xFF) <= MAX_SEPARATOR) {
+                endToken(buffer, tokenStart, i);
+                tokenStart = i + 1;
+            }
+        }
+
+        carry(buffer, tokenStart, limit);
+        src.position(limit);
+    }
+
+    /**
+     * Processes the token carried over from the last chunk, if any.
+     * Must be called once the contents have been fully scanned.
+     */
+    public void finish() {
+        if (carryLength > 0) {
+            onToken();
+        }
+    }
+
+    /**
+     * Builds the filter of the words found, if collected.
+     *
+     * @return the filter of the words or null if not collected
+     */
+    public WordFilter buildWordFilter() {
+        return (words != null) ? words.build() : null;
+    }
+
+    /**
+     * Retrieves the hashes of the distinct words found, if collected.
+     *
+     * @return the hashes of the words or null if not collected
+     */
+    public long[] getWordHashes() {
+        return (words != null) ? words.hashes() : null;
+    }
+
+    /**
+     * Clears the statistics to scan new contents.
+     */
+    public void reset() {
+        Arrays.fill(hits, 0);
+        wordCount = 0;
+        carryLength = 0;
+        carryHash = WordFilter.SEED;
+        state = TermAutomaton.ROOT;
+    }
+
+    /**
+     * Processes the token ending in the given position.
+     *
+     * @param src the contents
+     * @param start the start of the token in the current chunk
+     * @param end the end of the token (exclusive)
+     */
+    private void endToken(byte[] src, int start, int end) {
+        if ((carryLength > 0) || (normalizing && (end > start))) {
+            carry(src, start, end);
+            onToken();
+        } else if (end > start) {
+            if (words != null) {
+                words.add(WordFilter.hash(WordFilter.SEED, src, start, end - start));
+            }
+            onWord(vocabulary.match(src, start, end - start));
+        }
+    }
+
+    /**
+     * Processes the token ending in the given position.
+     *
+     * @param src the contents
+     * @param start the start of the token in the current chunk
+     * @param end the end of the token (exclusive)
+     */
+    private void endToken(ByteBuffer src, int start, int end) {
+        if ((carryLength > 0) || (normalizing && (end > start))) {
+            carry(src, start, end);
+            onToken();
+        } else if (end > start) {
+            if (words != null) {
+                words.add(WordFilter.hash(WordFilter.SEED, src, start, end - start));
+            }
+            onWord(vocabulary.match(src, start, end - start));
+        }
+    }
+
+    /**
+     * Processes the token stored in the token buffer.
+     */
+    private void onToken() {
+        if (words != null) {
+            words.add(carryHash);
+            carryHash = WordFilter.SEED;
+        }
+        onWord((carryLength <= maxTokenLength) ? terms.lookup(carry, carryLength) : Utf8TermMatcher.NO_MATCH);
+        carryLength = 0;
+    }
+
+    /**
+     * Counts the word and feeds it to the automaton accounting
+     * the phrases ending in it.
+     *
+     * @param wordId the word id in the vocabulary, {@link Utf8TermMatcher#NO_MATCH}
+     *               or {@link CompiledTermSet#SKIP} if the token is dropped
+     */
+    private void onWord(int wordId) {
+        if (wordId == CompiledTermSet.SKIP) {
+            return;
+        }
+        wordCount++;
+        state = automaton.next(state, wordId);
+        if (state != TermAutomaton.ROOT) {
+            if (positions != null) {
+                automaton.emit(state, hits, positions, wordCount - 1);
+            } else {
+                automaton.emit(state, hits);
+            }
+        }
+    }
+
+    /**
+     * Appends the given bytes to the carried token. Bytes exceeding
+     * the longest token to match are only accounted.
+     *
+     * @param src the contents
+     * @param start the start of the bytes
+     * @param end the end of the bytes (exclusive)
+     */
+    private void carry(byte[] src, int start, int end) {
+        int offset = Math.min(carryLength, maxTokenLength + 1);
+        int len = Math.min(end - start, maxTokenLength + 1 - offset);
+        System.arraycopy(src, start, carry, offset, len);
+        carryLength += end - start;
+        if (words != null) {
+            carryHash = WordFilter.hash(carryHash, src, start, end - start);
+        }
+    }
+
+    /**
+     * Appends the given bytes to the carried token. Bytes exceeding
+     * the longest token to match are only accounted.
+     *
+     * @param src the contents
+     * @param start the start of the bytes
+     * @param end the end of the bytes (exclusive)
+     */
+    private void carry(ByteBuffer src, int start, int end) {
+        int offset = Math.min(carryLength, maxTokenLength + 1);
+        int len = Math.min(end - start, maxTokenLength + 1 - offset);
+        for (int i = 0; i < len; i++) {
+            carry[offset + i] = src.get(start + i);
+        }
+        carryLength += end - start;
+        if (words != null) {
+            carryHash = WordFilter.hash(carryHash, src, start, end - start);
+        }
+    }
+}
@@ -0,0 +1,326 @@
+/*
+ *
+ * Copyright 2020 Pablo Navais
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+
+package com.github.pnavais.ex3.matcher;
+
+import lombok.Getter;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * A Bloom filter of the distinct words of a document, allowing to skip the document
+ * when looking for words it definitely does not contain. Words found are always
+ * reported, while words not in the document are wrongly reported with the
+ * false positive rate the filter was sized for (see {@link WordFilterPolicy}).
+ * <p>
+ * Words are hashed over their UTF-8 bytes with FNV-1a, which can be computed over tokens
+ * split in several chunks (see {@link #hash(long, byte[], int, int)}). The hash is then
+ * mixed and split in two halves, deriving the bits probed by double hashing.
+ */
+public final class WordFilter {
+
+    /** The initial value of the hash of a word */
+    public static final long SEED = 0xCBF29CE484222325L;
+
+    /** The multiplier of the hash of a word */
+    private static final long PRIME = 0x100000001B3L;
+
+    /** The maximum number of bits probed per word */
+    private static final int MAX_HASHES = 16;
+
+    /** The bits of the filter */
+    private final long[] bits;
+
+    /** The number of bits probed per word */
+    @Getter
+    private final int hashes;
+
+    /**
+     * Creates the filter with the given bits.
+     *
+     * @param bits the bits of the filter
+     * @param hashes the number of bits probed per word
+     */
+    private WordFilter(long[] bits, int hashes) {
+        this.bits = bits;
+        this.hashes = hashes;
+    }
+
+    /**
+     * Hashes the given word.
+     *
+     * @param word the word
+     * @return the hash of the word
+     */
+    public static long hash(String word) {
+        long h = SEED;
+        for (int i = 0; i < word.length(); i++) {
+            char c = word.charAt(i);
+            if (c >= 0x80) {
+                byte[] encoded = word.getBytes(StandardCharsets.UTF_8);
+                return hash(SEED, encoded, 0, encoded.length);
+            }
+            h = (h ^ c) * PRIME;
+        }
+        return h;
+    }
+
+    /**
+     * Continues the hash of a word with the given UTF-8 bytes.
+     *
+     * @param h the hash of the preceding bytes of the word ({@link #SEED} if none)
+     * @param src the contents
+     * @param off the offset of the bytes
+     * @param len the number of bytes
+     * @return the hash of the word including the bytes
+     */
+    public static long hash(long h, byte[] src, int off, int len) {
+        for (int i = off, end = off + len; i < end; i++) {
+            h = (h ^ (src[i] & 0xFF)) * PRIME;
+        }
+        return h;
+    }
+
+    /**
+     * Continues the hash of a word with the given UTF-8 bytes.
+     *
+     * @param h the hash of the preceding bytes of the word ({@link #SEED} if none)
+     * @param src the contents
+     * @param off the offset of the bytes
+     * @param len the number of bytes
+     * @return the hash of the word including the bytes
+     */
+    public static long hash(long h, ByteBuffer src, int off, int len) {
+        for (int i = off, end = off + len; i < end; i++) {
+            h = (h ^ (src.get(i) & 0xFF)) * PRIME;
+        }
+        return h;
+    }
+
+    /**
+     * Checks whether the document may contain the word with the given hash.
+     *
+     * @param hash the hash of the word
+     * @return false if the document does not contain the word, true if it may contain it
+     */
+    public boolean mightContain(long hash) {
+        long mixed = mix(hash);
+        int h1 = (int) mixed;
+        int h2 = (int) (mixed >>> 32);
+        int size = bits.length * Long.SIZE;
+        for (int i = 0; i < hashes; i++) {
+            int bit = ((h1 + i * h2) & Integer.MAX_VALUE) % size;
+            if ((bits[bit >>> 6] & (1L << bit)) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Checks whether the document may contain all the words with the given hashes.
+     *
+     * @param hashes the hashes of the words
+     * @return false if the document lacks any of the words, true if it may contain all of them
+     */
+    public boolean mightContainAll(long[] hashes) {
+        for (long hash : hashes) {
+            if (!mightContain(hash)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Retrieves the memory taken by the bits of the filter.
+     *
+     * @return the size in bytes
+     */
+    public int sizeInBytes() {
+        return bits.length * Long.BYTES;
+    }
+
+    /**
+     * Mixes the bits of the hash of a word (murmur3 finalizer), so
+     * that its two halves can be used as independent hashes.
+     *
+     * @param h the hash
+     * @return the mixed hash
+     */
+    public static long mix(long h) {
+        h = (h ^ (h >>> 33)) * 0xFF51AFD7ED558CCDL;
+        h = (h ^ (h >>> 33)) * 0xC4CEB9FE1A85EC53L;
+        return h ^ (h >>> 33);
+    }
+
+    /**
+     * Collects the distinct words of a document while it is read, building
+     * the filter once the number of words is known so it can be sized for
+     * the target false positive rate. The hashes of the distinct words can
+     * also be retrieved to account the document frequency of every word.
+     */
+    public static final class Builder {
+
+        /** The initial capacity of the set of words */
+        private static final int INITIAL_CAPACITY = 64;
+
+        /** The policy sizing the filter */
+        private final WordFilterPolicy policy;
+
+        /** The hashes of the distinct words (open addressing, 0 marks an empty slot) */
+        private long[] words;
+
+        /** The number of distinct words stored in the set */
+        private int size;
+
+        /** Whether a word hashing to 0 was found */
+        private boolean zero;
+
+        /** Whether the hashes of the words are retrieved */
+        private final boolean collecting;
+
+        /**
+         * Creates the builder for the given policy.
+         *
+         * @param policy the policy sizing the filter
+         * @param collecting whether the hashes of the words are retrieved
+         */
+        Builder(WordFilterPolicy policy, boolean collecting) {
+            this.policy = policy;
+            this.collecting = collecting;
+            this.words = new long[INITIAL_CAPACITY];
+        }
+
+        /**
+         * Adds the word with the given hash.
+         *
+         * @param hash the hash of the word
+         */
+        public void add(long hash) {
+            if (hash == 0) {
+                zero = true;
+                return;
+            }
+            int mask = words.length - 1;
+            for (int slot = (int) mix(hash) & mask; ; slot = (slot + 1) & mask) {
+                if (words[slot] == hash) {
+                    return;
+                }
+                if (words[slot] == 0) {
+                    words[slot] = hash;
+                    if (++size * 2 > words.length) {
+                        grow();
+                    }
+                    return;
+                }
+            }
+        }
+
+        /**
+         * Retrieves the number of distinct words added.
+         *
+         * @return the number of words
+         */
+        public int size() {
+            return zero ? size + 1 : size;
+        }
+
+        /**
+         * Retrieves the hashes of the distinct words added, if collected.
+         *
+         * @return the hashes of the words or null if not collected
+         */
+        public long[] hashes() {
+            if (!collecting) {
+                return null;
+            }
+            long[] hashes = new long[size()];
+            int i = 0;
+            for (long word : words) {
+                if (word != 0) {
+                    hashes[i++] = word;
+                }
+            }
+            return hashes;
+        }
+
+        /**
+         * Builds the filter of the words added, sized for the false positive rate
+         * of the policy without exceeding its maximum size.
+         *
+         * @return the filter or null if the policy is disabled
+         */
+        public WordFilter build() {
+            if (!policy.isEnabled()) {
+                return null;
+            }
+            int count = Math.max(1, size());
+            double optimal = -count * Math.log(policy.getFalsePositiveRate()) / (Math.log(2) * Math.log(2));
+            long maxBits = policy.getMaxBytes() * (long) Byte.SIZE;
+            int longs = (int) Math.max(1, (Math.min((long) Math.ceil(optimal), maxBits) + Long.SIZE - 1) / Long.SIZE);
+            int hashes = (int) Math.max(1, Math.min(MAX_HASHES, Math.round(longs * (double) Long.SIZE / count * Math.log(2))));
+
+            WordFilter filter = new WordFilter(new long[longs], hashes);
+            for (long word : words) {
+                if (word != 0) {
+                    filter.set(word);
+                }
+            }
+            if (zero) {
+                filter.set(0);
+            }
+            return filter;
+        }
+
+        /**
+         * Doubles the capacity of the set of words.
+         */
+        private void grow() {
+            long[] previous = words;
+            words = new long[previous.length * 2];
+            int mask = words.length - 1;
+            for (long word : previous) {
+                if (word != 0) {
+                    int slot = (int) mix(word) & mask;
+                    while (words[slot] != 0) {
+                        slot = (slot + 1) & mask;
+                    }
+                    words[slot] = word;
+                }
+            }
+        }
+    }
+
+    /**
+     * Sets the bits of the word with the given hash.
+     *
+     * @param hash the hash of the word
+     */
+    private void set(long hash) {
+        long mixed = mix(hash);
+        int h1 = (int) mixed;
+        int h2 = (int) (mixed >>> 32);
+        int size = bits.length * Long.SIZE;
+        for (int i = 0; i < hashes; i++) {
+            int bit = ((h1 + i * h2) & Integer.MAX_VALUE) % size;
+            bits[bit >>> 6] |= 1L << bit;
+        }
+    }
+}
@@ -0,0 +1,112 @@
+/*
+ *
+ * Copyright 2020 Pablo Navais
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+
+package com.github.pnavais.ex3.matcher;
+
+import lombok.Getter;
+
+/**
+ * Sizes the {@link WordFilter}s built for the documents while they are read,
+ * trading memory for the proportion of documents wrongly kept when looking
+ * for words they do not contain.
+ * <p>
+ * Filters take about 1.2 bytes per distinct word of the document for a false
+ * positive rate of 1% (0.6 bytes for 10%), capped to the maximum size per document.
+ * Documents with more words than fit in the maximum size get a higher rate.
+ */
+@Getter
+public class WordFilterPolicy {
+
+    /** The policy building no filters */
+    public static final WordFilterPolicy DISABLED = new WordFilterPolicy();
+
+    /** The default false positive rate of the filters */
+    public static final double DEFAULT_FALSE_POSITIVE_RATE = 0.01;
+
+    /** The default maximum size in bytes of the filter of a document */
+    public static final int DEFAULT_MAX_BYTES = 4096;
+
+    /** The target false positive rate of the filters */
+    private final double falsePositiveRate;
+
+    /** The maximum size in bytes of the filter of a document */
+    private final int maxBytes;
+
+    /**
+     * Creates the disabled policy.
+     */
+    private WordFilterPolicy() {
+        this.falsePositiveRate = 1;
+        this.maxBytes = 0;
+    }
+
+    /**
+     * Creates the policy with the default false positive rate and maximum size.
+     *
+     * @return the policy
+     */
+    public static WordFilterPolicy defaults() {
+        return new WordFilterPolicy(DEFAULT_FALSE_POSITIVE_RATE, DEFAULT_MAX_BYTES);
+    }
+
+    /**
+     * Creates the policy with the given false positive rate and maximum size.
+     *
+     * @param falsePositiveRate the target false positive rate, between 0 and 1 (exclusive)
+     * @param maxBytes the maximum size in bytes of the filter of a document (at least 8)
+     */
+    public WordFilterPolicy(double falsePositiveRate, int maxBytes) {
+        if ((falsePositiveRate <= 0) || (falsePositiveRate >= 1)) {
+            throw new IllegalArgumentException("The false positive rate must be between 0 and 1");
+        }
+        if (maxBytes < Long.BYTES) {
+            throw new IllegalArgumentException("The maximum size of the filters must be at least " + Long.BYTES + " bytes");
+        }
+        this.falsePositiveRate = falsePositiveRate;
+        this.maxBytes = maxBytes;
+    }
+
+    /**
+     * Checks whether filters are built.
+     *
+     * @return true if enabled, false otherwise
+     */
+    public boolean isEnabled() {
+        return this != DISABLED;
+    }
+
+    /**
+     * Creates a builder collecting the words of a document.
+     *
+     * @return the builder or null if the policy is disabled
+     */
+    public WordFilter.Builder newBuilder() {
+        return newBuilder(false);
+    }
+
+    /**
+     * Creates a builder collecting the words of a document,
+     * optionally retrieving the hashes of the words.
+     *
+     * @param collecting whether the hashes of the words are retrieved
+     * @return the builder or null if neither the policy is enabled nor the hashes retrieved
+     */
+    public WordFilter.Builder newBuilder(boolean collecting) {
+        return (isEnabled() || collecting) ? new WordFilter.Builder(this, collecting) : null;
+    }
+}
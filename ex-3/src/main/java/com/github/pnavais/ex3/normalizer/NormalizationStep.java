@@ -0,0 +1,37 @@
+/*
+ *
+ * Copyright 2020 Pablo Navais
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+package com.github.pnavais.ex3.normalizer;
+
+/**
+ * The steps applied to normalize the terms and the tokens of the documents,
+ * always in the order they are declared.
+ */
+public enum NormalizationStep {
+
+    /** Strips the leading and trailing punctuation of the tokens (i.e. "(error)," becomes "error") */
+    PUNCTUATION,
+
+    /** Folds the tokens to lower case */
+    LOWERCASE,
+
+    /** Drops the most common English words (i.e. "the", "of") */
+    STOPWORDS,
+
+    /** Reduces plural forms to their singular (i.e. "errors" becomes "error") */
+    STEM
+}
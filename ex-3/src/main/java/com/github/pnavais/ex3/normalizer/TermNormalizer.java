@@ -0,0 +1,351 @@
+/*
+ *
+ * Copyright 2020 Pablo Navais
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+package com.github.pnavais.ex3.normalizer;
+
+import com.github.pnavais.ex3.matcher.Utf8TermMatcher;
+import lombok.Getter;
+import lombok.NonNull;
+
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+
+/**
+ * Normalizes the UTF-8 encoded tokens of the documents and the terms
+ * applying the configured {@link NormalizationStep}s in place, so that
+ * tokens like "Errors," match the term "error".
+ * <p>
+ * Tokens are normalized directly over their bytes : ASCII punctuation and
+ * case are handled byte by byte, only tokens containing multi-byte characters
+ * are decoded to be stripped and folded. Stemming only removes plural suffixes
+ * following Harman's S-stemmer rules, which are cheap to apply over bytes.
+ * <p>
+ * Instances are immutable and can be shared between threads.
+ */
+public class TermNormalizer {
+
+    /** The length returned for the tokens to drop */
+    public static final int DROPPED = -1;
+
+    /** The normalizer leaving tokens unchanged */
+    public static final TermNormalizer NONE = new TermNormalizer(Collections.emptySet(), Collections.emptySet());
+
+    /** The default English stop words */
+    public static final Set<String> DEFAULT_STOP_WORDS = Collections.unmodifiableSet(new LinkedHashSet<>(Arrays.asList(
+            "a", "an", "and", "are", "as", "at", "be", "but", "by", "for", "if", "in", "into", "is", "it",
+            "no", "not", "of", "on", "or", "such", "that", "the", "their", "then", "there", "these",
+            "they", "this", "to", "was", "will", "with")));
+
+    /** The steps to apply */
+    @Getter
+    private final Set<NormalizationStep> steps;
+
+    /** Strips the punctuation */
+    private final boolean stripPunctuation;
+
+    /** Folds the case */
+    private final boolean lowerCase;
+
+    /** Reduces the plural forms */
+    private final boolean stem;
+
+    /** The stop words to drop (null if not dropping stop words) */
+    private final Utf8TermMatcher stopWords;
+
+    /**
+     * Creates the normalizer applying the given steps.
+     *
+     * @param steps the normalization steps
+     * @param stopWords the stop words to drop if enabled
+     */
+    public TermNormalizer(@NonNull Collection<NormalizationStep> steps, @NonNull Collection<String> stopWords) {
+        this.steps = steps.isEmpty() ? Collections.emptySet() : Collections.unmodifiableSet(EnumSet.copyOf(steps));
+        this.stripPunctuation = this.steps.contains(NormalizationStep.PUNCTUATION);
+        this.lowerCase = this.steps.contains(NormalizationStep.LOWERCASE);
+        this.stem = this.steps.contains(NormalizationStep.STEM);
+
+        if (this.steps.contains(NormalizationStep.STOPWORDS)) {
+            // Stop words are compared once stripped and folded
+            Set<String> normalized = new LinkedHashSet<>();
+            for (String word : stopWords) {
+                byte[] encoded = word.getBytes(StandardCharsets.UTF_8);
+                byte[] token = Arrays.copyOf(encoded, encoded.length * 2);
+                int len = fold(token, encoded.length);
+                if (len > 0) {
+                    normalized.add(new String(token, 0, len, StandardCharsets.UTF_8));
+                }
+            }
+            this.stopWords = Utf8TermMatcher.of(normalized);
+        } else {
+            this.stopWords = null;
+        }
+    }
+
+    /**
+     * Creates the normalizer applying the given steps with
+     * the default stop words.
+     *
+     * @param steps the normalization steps
+     * @return the normalizer
+     */
+    public static TermNormalizer of(Collection<NormalizationStep> steps) {
+        return ((steps == null) || steps.isEmpty()) ? NONE : new TermNormalizer(steps, DEFAULT_STOP_WORDS);
+    }
+
+    /**
+     * Checks whether the normalizer leaves tokens unchanged.
+     *
+     * @return true if no steps are applied, false otherwise
+     */
+    public boolean isIdentity() {
+        return steps.isEmpty();
+    }
+
+    /**
+     * Normalizes the given word.
+     *
+     * @param word the word
+     * @return the normalized word or null if dropped
+     */
+    public String normalize(String word) {
+        byte[] encoded = word.getBytes(StandardCharsets.UTF_8);
+        byte[] token = Arrays.copyOf(encoded, encoded.length * 2);
+        int len = normalize(token, encoded.length);
+        return (len != DROPPED) ? new String(token, 0, len, StandardCharsets.UTF_8) : null;
+    }
+
+    /**
+     * Normalizes in place the token stored at the start of the given buffer.
+     * Tokens whose normalized form does not fit in the buffer are left unchanged.
+     *
+     * @param token the buffer containing the token
+     * @param len the length of the token
+     * @return the length of the normalized token or {@link #DROPPED} if the token must be dropped
+     */
+    public int normalize(byte[] token, int len) {
+        if (isIdentity()) {
+            return len;
+        }
+
+        int normalizedLen = fold(token, len);
+        if (normalizedLen == 0) {
+            return DROPPED;
+        }
+        if ((stopWords != null) && (stopWords.match(token, 0, normalizedLen) != Utf8TermMatcher.NO_MATCH)) {
+            return DROPPED;
+        }
+        return stem ? stem(token, normalizedLen) : normalizedLen;
+    }
+
+    /**
+     * Checks whether normalizing the token requires decoding it, which
+     * happens for tokens with multi-byte characters to strip or fold.
+     *
+     * @param token the buffer containing the token
+     * @param len the length of the token
+     * @return true if the token must be decoded, false otherwise
+     */
+    public boolean needsDecoding(byte[] token, int len) {
+        if (stripPunctuation || lowerCase) {
+            for (int i = 0; i < len; i++) {
+                if (token[i] < 0) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Checks cheaply whether the normalized form of the token may either be dropped
+     * or match a word of the given vocabulary, using the prefilter of the vocabulary
+     * and the stop words (see {@link Utf8TermMatcher#accepts(int, byte)}). Tokens
+     * rejected are known not to match without normalizing them.
+     *
+     * @param token the buffer containing the token
+     * @param len the length of the token
+     * @param vocabulary the vocabulary
+     * @return false if the normalized token cannot match nor be dropped, true otherwise
+     */
+    public boolean mayMatch(byte[] token, int len, Utf8TermMatcher vocabulary) {
+        int start = 0;
+        int end = len;
+        if (stripPunctuation) {
+            while ((start < end) && isAsciiPunctuation(token[start])) {
+                start++;
+            }
+            while ((end > start) && isAsciiPunctuation(token[end - 1])) {
+                end--;
+            }
+        }
+        if ((start == end) || (token[start] < 0) || (token[end - 1] < 0)) {
+            // Dropped or possibly starting or ending with multi-byte punctuation
+            return true;
+        }
+
+        byte first = token[start];
+        if (lowerCase && (first >= 'A') && (first <= 'Z')) {
+            first = (byte) (first + ('a' - 'A'));
+        }
+        int folded = end - start;
+        if ((stopWords != null) && stopWords.accepts(folded, first)) {
+            return true;
+        }
+        // Stemming removes up to two bytes
+        int minLength = stem ? Math.max(1, folded - 2) : folded;
+        for (int candidate = folded; candidate >= minLength; candidate--) {
+            if (vocabulary.accepts(candidate, first)) {
+                return true;
+            }
+        }
+
+        // Folding multi-byte characters may change the length of the token
+        return lowerCase && needsDecoding(token, len);
+    }
+
+    /**
+     * Strips the punctuation and folds the case of the token in place.
+     *
+     * @param token the buffer containing the token
+     * @param len the length of the token
+     * @return the length of the resulting token
+     */
+    private int fold(byte[] token, int len) {
+        if (!stripPunctuation && !lowerCase) {
+            return len;
+        }
+
+        int start = 0;
+        int end = len;
+        if (stripPunctuation) {
+            while ((start < end) && isAsciiPunctuation(token[start])) {
+                start++;
+            }
+            while ((end > start) && isAsciiPunctuation(token[end - 1])) {
+                end--;
+            }
+        }
+
+        int n = 0;
+        for (int i = start; i < end; i++) {
+            byte b = token[i];
+            if (b < 0) {
+                // Multi-byte characters are handled decoding the token
+                return foldUnicode(token, n, i, end);
+            }
+            token[n++] = (lowerCase && (b >= 'A') && (b <= 'Z')) ? (byte) (b + ('a' - 'A')) : b;
+        }
+        return n;
+    }
+
+    /**
+     * Strips the punctuation and folds the case of a token containing
+     * multi-byte characters, decoding it. If the result does not fit
+     * in the buffer, only the ASCII characters are folded.
+     *
+     * @param token the buffer containing the token
+     * @param folded the number of bytes already folded at the start of the buffer
+     * @param rest the start of the bytes pending to fold
+     * @param end the end of the token (exclusive)
+     * @return the length of the resulting token
+     */
+    private int foldUnicode(byte[] token, int folded, int rest, int end) {
+        String word = new String(token, 0, folded, StandardCharsets.US_ASCII) +
+                new String(token, rest, end - rest, StandardCharsets.UTF_8);
+
+        if (stripPunctuation) {
+            int first = 0;
+            while ((first < word.length()) && !Character.isLetterOrDigit(word.codePointAt(first))) {
+                first += Character.charCount(word.codePointAt(first));
+            }
+            int last = word.length();
+            while ((last > first) && !Character.isLetterOrDigit(word.codePointBefore(last))) {
+                last -= Character.charCount(word.codePointBefore(last));
+            }
+            word = word.substring(first, last);
+        }
+        if (lowerCase) {
+            word = word.toLowerCase(Locale.ROOT);
+        }
+
+        byte[] encoded = word.getBytes(StandardCharsets.UTF_8);
+        if (encoded.length > token.length) {
+            System.arraycopy(token, rest, token, folded, end - rest);
+            return folded + end - rest;
+        }
+        System.arraycopy(encoded, 0, token, 0, encoded.length);
+        return encoded.length;
+    }
+
+    /**
+     * Reduces the plural forms of the token following Harman's S-stemmer
+     * rules ("ies" to "y", "es" to "e" and removing the final "s").
+     * Short tokens are left unchanged.
+     *
+     * @param token the buffer containing the token
+     * @param len the length of the token
+     * @return the length of the stemmed token
+     */
+    private static int stem(byte[] token, int len) {
+        if ((len <= 3) || (token[len - 1] != 's')) {
+            return len;
+        }
+        if (endsWith(token, len, "ies") && !endsWith(token, len, "eies") && !endsWith(token, len, "aies")) {
+            token[len - 3] = 'y';
+            return len - 2;
+        }
+        if (endsWith(token, len, "es") && !endsWith(token, len, "aes") && !endsWith(token, len, "ees")
+                && !endsWith(token, len, "oes")) {
+            return len - 1;
+        }
+        if (!endsWith(token, len, "us") && !endsWith(token, len, "ss")) {
+            return len - 1;
+        }
+        return len;
+    }
+
+    /**
+     * Checks whether the token ends with the given ASCII suffix.
+     *
+     * @param token the buffer containing the token
+     * @param len the length of the token
+     * @param suffix the suffix
+     * @return true if the token ends with the suffix, false otherwise
+     */
+    private static boolean endsWith(byte[] token, int len, String suffix) {
+        int offset = len - suffix.length();
+        if (offset < 0) {
+            return false;
+        }
+        for (int i = 0; i < suffix.length(); i++) {
+            if (token[offset + i] != suffix.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Checks whether the byte is an ASCII character other than a letter or digit.
+     *
+     * @param b the byte
+     * @return true if ASCII punctuation, symbol, whitespace or control character
+     */
+    private static boolean isAsciiPunctuation(byte b) {
+        return (b >= 0) && !(((b >= 'a') && (b <= 'z')) || ((b >= 'A') && (b <= 'Z')) || ((b >= '0') && (b <= '9')));
+    }
+}
@@ -0,0 +1,145 @@
+/*
+ *
+ * Copyright 2020 Pablo Navais
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+package com.github.pnavais.ex3.normalizer;
+
+import lombok.AllArgsConstructor;
+
+/**
+ * A bounded cache of the values computed for raw tokens (i.e. the id of their
+ * normalized form), avoiding to normalize again the most frequent tokens.
+ * <p>
+ * The cache is direct mapped : every token has a single slot, replacing the
+ * previous entry on collision, so its size never exceeds the given capacity.
+ * Entries are immutable and slots are read and written without locking, a thread
+ * may miss an entry just stored by another thread but never see a partial one.
+ */
+public class TokenCache {
+
+    /** The value returned for tokens not found */
+    public static final int MISS = Integer.MIN_VALUE;
+
+    /** The longest token cached */
+    public static final int MAX_KEY_LENGTH = 32;
+
+    /** The FNV-1a offset basis */
+    private static final long FNV_OFFSET = 0xCBF29CE484222325L;
+
+    /** The FNV-1a prime */
+    private static final long FNV_PRIME = 0x100000001B3L;
+
+    /** The cache slots */
+    private final Entry[] entries;
+
+    /** The mask to compute the slot of a token */
+    private final int mask;
+
+    /**
+     * Creates the cache with the given capacity, rounded up to a power of two.
+     *
+     * @param capacity the maximum number of tokens cached
+     */
+    public TokenCache(int capacity) {
+        int size = Integer.highestOneBit(Math.max(2, capacity) - 1) << 1;
+        this.entries = new Entry[size];
+        this.mask = size - 1;
+    }
+
+    /**
+     * Computes the hash of the given token.
+     *
+     * @param src the buffer containing the token
+     * @param len the length of the token
+     * @return the hash of the token
+     */
+    public static long hash(byte[] src, int len) {
+        long h = FNV_OFFSET;
+        for (int i = 0; i < len; i++) {
+            h = (h ^ (src[i] & 0xFF)) * FNV_PRIME;
+        }
+        return h;
+    }
+
+    /**
+     * Retrieves the value cached for the given token.
+     *
+     * @param src the buffer containing the token at its start
+     * @param len the length of the token
+     * @param hash the hash of the token
+     * @return the value or {@link #MISS} if not cached
+     */
+    public int get(byte[] src, int len, long hash) {
+        Entry entry = entries[slotOf(hash)];
+        if ((entry != null) && (entry.hash == hash) && (entry.key.length == len)) {
+            for (int i = 0; i < len; i++) {
+                if (entry.key[i] != src[i]) {
+                    return MISS;
+                }
+            }
+            return entry.value;
+        }
+        return MISS;
+    }
+
+    /**
+     * Checks whether the token can be cached.
+     *
+     * @param len the length of the token
+     * @return true if not longer than {@link #MAX_KEY_LENGTH}, false otherwise
+     */
+    public static boolean isCacheable(int len) {
+        return len <= MAX_KEY_LENGTH;
+    }
+
+    /**
+     * Stores the value computed for the given token. The
+     * token is kept and must not be modified afterwards.
+     *
+     * @param key the token
+     * @param hash the hash of the token
+     * @param value the value
+     */
+    public void put(byte[] key, long hash, int value) {
+        entries[slotOf(hash)] = new Entry(hash, key, value);
+    }
+
+    /**
+     * Computes the slot of a token given its hash.
+     *
+     * @param hash the hash of the token
+     * @return the slot
+     */
+    private int slotOf(long hash) {
+        return (int) (hash ^ (hash >>> 32)) & mask;
+    }
+
+    /**
+     * A cached token and its value
+     */
+    @AllArgsConstructor
+    private static final class Entry {
+
+        /** The hash of the token */
+        private final long hash;
+
+        /** The token bytes */
+        private final byte[] key;
+
+        /** The value computed for the token */
+        private final int value;
+    }
+}
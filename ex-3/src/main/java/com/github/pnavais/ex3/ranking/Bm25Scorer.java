@@ -0,0 +1,130 @@
+/*
+ *
+ * Copyright 2020 Pablo Navais
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+
+package com.github.pnavais.ex3.ranking;
+
+import com.github.pnavais.ex3.api.ranking.Scorer;
+import lombok.Getter;
+
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.Set;
+
+/**
+ * The Okapi BM25 scoring function, saturating the contribution of the
+ * occurrences of each term and normalizing it by the length of the
+ * document relative to the average length, i.e. for each term :
+ *     idf("term") x (tf x (k1 + 1)) / (tf + k1 x (1 - b + b x |doc| / avgdl))
+ * with idf("term") = ln(1 + (D - d + 0.5) / (d + 0.5)), which is never negative.
+ * The score of a document is the sum of the scores of its terms.
+ */
+@Getter
+public class Bm25Scorer implements Scorer {
+
+    /** The default saturation of the term occurrences */
+    public static final double DEFAULT_K1 = 1.2;
+
+    /** The default length normalization */
+    public static final double DEFAULT_B = 0.75;
+
+    /** The statistics relied on */
+    private static final Set<ScoringStatistic> STATISTICS = Collections.unmodifiableSet(
+            EnumSet.allOf(ScoringStatistic.class));
+
+    /** The saturation of the term occurrences */
+    private final double k1;
+
+    /** The length normalization, from 0 (none) to 1 (full) */
+    private final double b;
+
+    /**
+     * Creates the scorer with the default parameters.
+     */
+    public Bm25Scorer() {
+        this(DEFAULT_K1, DEFAULT_B);
+    }
+
+    /**
+     * Creates the scorer with the given parameters.
+     *
+     * @param k1 the saturation of the term occurrences
+     * @param b the length normalization, from 0 (none) to 1 (full)
+     */
+    public Bm25Scorer(double k1, double b) {
+        if ((k1 < 0) || (b < 0) || (b > 1)) {
+            throw new IllegalArgumentException("Invalid BM25 parameters k1=" + k1 + ", b=" + b);
+        }
+        this.k1 = k1;
+        this.b = b;
+    }
+
+    @Override
+    public String getName() {
+        return "BM25";
+    }
+
+    @Override
+    public Set<ScoringStatistic> getStatistics() {
+        return STATISTICS;
+    }
+
+    /**
+     * Computes the idf of the term i.e. ln(1 + (D - d + 0.5) / (d + 0.5)).
+     *
+     * @param documentFrequency the number of documents containing the term
+     * @param collection the statistics of the collection
+     * @return the idf of the term
+     */
+    @Override
+    public double termWeight(int documentFrequency, CollectionStatistics collection) {
+        return (documentFrequency > 0)
+                ? Math.log(1 + (collection.getDocumentCount() - documentFrequency + 0.5) / (documentFrequency + 0.5))
+                : 0.0;
+    }
+
+    /**
+     * Computes the length normalization of the document i.e. k1 x (1 - b + b x |doc| / avgdl).
+     *
+     * @param wordCount the number of words of the document
+     * @param collection the statistics of the collection
+     * @return the norm of the document
+     */
+    @Override
+    public double documentNorm(long wordCount, CollectionStatistics collection) {
+        double averageLength = collection.getAverageDocumentLength();
+        return k1 * ((averageLength > 0) ? (1 - b + b * wordCount / averageLength) : 1);
+    }
+
+    /**
+     * Computes the saturated score of the term in the document.
+     *
+     * @param occurrences the occurrences of the term in the document
+     * @param documentNorm the norm of the document
+     * @param termWeight the idf of the term
+     * @return the score of the term
+     */
+    @Override
+    public double score(long occurrences, double documentNorm, double termWeight) {
+        return termWeight * (occurrences * (k1 + 1)) / (occurrences + documentNorm);
+    }
+
+    @Override
+    public boolean isProportionalToWeight() {
+        return true;
+    }
+}
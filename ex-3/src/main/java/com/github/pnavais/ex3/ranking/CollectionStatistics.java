@@ -0,0 +1,39 @@
+/*
+ *
+ * Copyright 2020 Pablo Navais
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+
+package com.github.pnavais.ex3.ranking;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.ToString;
+
+/**
+ * The statistics of all the documents of the index,
+ * as seen by a snapshot of the index.
+ */
+@Getter
+@ToString
+@AllArgsConstructor(staticName = "of")
+public class CollectionStatistics {
+
+    /** The total number of documents */
+    private final int documentCount;
+
+    /** The average number of words of the documents */
+    private final double averageDocumentLength;
+}
@@ -0,0 +1,78 @@
+/*
+ *
+ * Copyright 2020 Pablo Navais
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+
+package com.github.pnavais.ex3.ranking;
+
+import com.github.pnavais.ex3.api.ranking.Scorer;
+
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.Set;
+
+/**
+ * A TF/IDF scoring function with sublinear (logarithmic) term frequencies,
+ * so that a term found twenty times does not weigh twenty times more
+ * than a term found once, i.e. for each term :
+ *     (1 + log10(occurrences)) x log10(D/d)
+ * Documents are not normalized by their length. The score of a document
+ * is the average of the scores of all the terms.
+ */
+public class LogTfScorer implements Scorer {
+
+    /** The statistics relied on */
+    private static final Set<ScoringStatistic> STATISTICS = Collections.unmodifiableSet(
+            EnumSet.of(ScoringStatistic.INVERSE_DOCUMENT_FREQUENCY));
+
+    /** The idf of the terms, as in the classic TF/IDF */
+    private final TfIdfScorer tfIdf = new TfIdfScorer();
+
+    @Override
+    public String getName() {
+        return "log-TF/IDF";
+    }
+
+    @Override
+    public Set<ScoringStatistic> getStatistics() {
+        return STATISTICS;
+    }
+
+    @Override
+    public double termWeight(int documentFrequency, CollectionStatistics collection) {
+        return tfIdf.termWeight(documentFrequency, collection);
+    }
+
+    @Override
+    public double documentNorm(long wordCount, CollectionStatistics collection) {
+        return 1.0;
+    }
+
+    @Override
+    public double score(long occurrences, double documentNorm, double termWeight) {
+        return (1 + Math.log10(occurrences)) * termWeight;
+    }
+
+    @Override
+    public boolean isProportionalToWeight() {
+        return true;
+    }
+
+    @Override
+    public double combine(double sum, int termCount) {
+        return tfIdf.combine(sum, termCount);
+    }
+}
@@ -0,0 +1,153 @@
+/*
+ *
+ * Copyright 2020 Pablo Navais
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+
+package com.github.pnavais.ex3.ranking;
+
+import lombok.AccessLevel;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+/**
+ * Boosts the score of the documents where all the terms ranked are found close to each
+ * other, given their positions in the documents (see {@link #boost(int[][], int[])}) :
+ * - Within N words : the terms are found, in any order, in a window of N words, widened
+ *   by the extra words of the phrases among them.
+ * - Phrase : the terms are found in consecutive words, in the order they are ranked.
+ * The span of a document is the smallest number of words from the first word of one of
+ * the terms to the last word of another one containing all of them (the positions of
+ * phrases being the ones of their first word). Documents whose span fits the window
+ * are boosted by 1 + (number of words of the terms / span), i.e. up to twice their
+ * score when the terms are found in consecutive words.
+ */
+@Getter
+@AllArgsConstructor(access = AccessLevel.PRIVATE)
+public final class Proximity {
+
+    /** The number of words of the window or 0 for as many as the words of the terms */
+    private final int window;
+
+    /** Whether the terms must be found in the order they are ranked */
+    private final boolean ordered;
+
+    /**
+     * Creates the proximity of the terms found, in any order,
+     * in a window of the given number of words.
+     *
+     * @param words the number of words of the window
+     * @return the proximity
+     * @throws IllegalArgumentException if the window is not positive
+     */
+    public static Proximity within(int words) {
+        if (words < 1) {
+            throw new IllegalArgumentException("Invalid proximity window " + words);
+        }
+        return new Proximity(words, false);
+    }
+
+    /**
+     * Creates the proximity of the terms found in consecutive
+     * words, in the order they are ranked.
+     *
+     * @return the proximity
+     */
+    public static Proximity phrase() {
+        return new Proximity(0, true);
+    }
+
+    /**
+     * Computes the boost of the score of a document given the positions of the terms
+     * ranked, in the order they are ranked, and their number of words. Documents lacking
+     * some term (or their positions) and rankings of a single term are not boosted.
+     *
+     * @param positions the positions of each term in ascending order (null if not found)
+     * @param words the number of words of each term
+     * @return the factor multiplying the score of the document
+     */
+    public double boost(int[][] positions, int[] words) {
+        if (positions.length < 2) {
+            return 1.0;
+        }
+        long totalWords = 0;
+        for (int t = 0; t < positions.length; t++) {
+            if ((positions[t] == null) || (positions[t].length == 0)) {
+                return 1.0;
+            }
+            totalWords += words[t];
+        }
+        long span = ordered ? orderedSpan(positions, words) : span(positions, words);
+        long maxSpan = (window > 0) ? window + totalWords - positions.length : totalWords;
+        return (span <= maxSpan) ? 1.0 + Math.min(1.0, totalWords / (double) span) : 1.0;
+    }
+
+    /**
+     * Computes the smallest window containing a position of every term, moving
+     * the lowest position of the current window until a term is exhausted.
+     *
+     * @param positions the positions of each term in ascending order
+     * @param words the number of words of each term
+     * @return the number of words of the smallest window
+     */
+    private static long span(int[][] positions, int[] words) {
+        int[] next = new int[positions.length];
+        long span = Long.MAX_VALUE;
+        for (;;) {
+            int lowest = 0;
+            long end = Long.MIN_VALUE;
+            for (int t = 0; t < positions.length; t++) {
+                int position = positions[t][next[t]];
+                end = Math.max(end, (long) position + words[t]);
+                if (position < positions[lowest][next[lowest]]) {
+                    lowest = t;
+                }
+            }
+            span = Math.min(span, end - positions[lowest][next[lowest]]);
+            if (++next[lowest] == positions[lowest].length) {
+                return span;
+            }
+        }
+    }
+
+    /**
+     * Computes the smallest window containing a position of every term in the given
+     * order, following each position of the first term with the next positions of the
+     * rest found after the last word of the previous term. The positions found only
+     * move forward, as the ones of the first term do.
+     *
+     * @param positions the positions of each term in ascending order
+     * @param words the number of words of each term
+     * @return the number of words of the smallest window or {@link Long#MAX_VALUE} if none
+     */
+    private static long orderedSpan(int[][] positions, int[] words) {
+        int[] next = new int[positions.length];
+        long span = Long.MAX_VALUE;
+        for (int start : positions[0]) {
+            long end = (long) start + words[0];
+            for (int t = 1; t < positions.length; t++) {
+                while ((next[t] < positions[t].length) && (positions[t][next[t]] < end)) {
+                    next[t]++;
+                }
+                if (next[t] == positions[t].length) {
+                    return span;
+                }
+                end = (long) positions[t][next[t]] + words[t];
+            }
+            span = Math.min(span, end - start);
+        }
+        return span;
+    }
+}
@@ -0,0 +1,36 @@
+/*
+ *
+ * Copyright 2020 Pablo Navais
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+
+package com.github.pnavais.ex3.ranking;
+
+/**
+ * The algorithms retrieving the top documents of a ranking
+ */
+public enum RankingMode {
+
+    /** Skips the documents which cannot enter the top results walking the postings of the terms */
+    MAXSCORE,
+
+    /**
+     * Scores all the documents accumulating a column of precomputed term scores per term,
+     * in loops over contiguous arrays the JIT compiler can unroll and vectorize. Only applied
+     * to the scoring functions proportional to the weights of the terms, falling back
+     * to {@link #MAXSCORE} otherwise. Scores are computed in single precision.
+     */
+    COLUMNAR
+}
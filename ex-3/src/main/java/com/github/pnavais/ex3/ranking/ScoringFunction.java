@@ -0,0 +1,45 @@
+/*
+ *
+ * Copyright 2020 Pablo Navais
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+
+package com.github.pnavais.ex3.ranking;
+
+import com.github.pnavais.ex3.api.ranking.Scorer;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+import java.util.function.Supplier;
+
+/**
+ * The scoring functions available to rank the documents
+ */
+@Getter
+@AllArgsConstructor
+public enum ScoringFunction {
+
+    /** The average tf/idf of the terms */
+    TFIDF(TfIdfScorer::new),
+
+    /** Okapi BM25 with the default parameters (k1 = 1.2, b = 0.75) */
+    BM25(Bm25Scorer::new),
+
+    /** The average tf/idf of the terms with logarithmic term frequencies */
+    LOG_TF(LogTfScorer::new);
+
+    /** The supplier of scorer instances */
+    private final Supplier<Scorer> scorerSupplier;
+}
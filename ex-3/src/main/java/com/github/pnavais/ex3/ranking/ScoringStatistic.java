@@ -0,0 +1,35 @@
+/*
+ *
+ * Copyright 2020 Pablo Navais
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+
+package com.github.pnavais.ex3.ranking;
+
+/**
+ * The statistics of the index a {@link com.github.pnavais.ex3.api.ranking.Scorer}
+ * may rely on, precomputed once per snapshot of the index.
+ */
+public enum ScoringStatistic {
+
+    /** The length of each document, giving the norm of the document */
+    DOCUMENT_LENGTH,
+
+    /** The average length of the documents in the index */
+    AVERAGE_DOCUMENT_LENGTH,
+
+    /** The number of documents containing each term, giving the weight of the term */
+    INVERSE_DOCUMENT_FREQUENCY
+}
@@ -20,6 +20,12 @@ package com.github.pnavais.ex3.ranking;
 
 import com.github.pnavais.ex3.api.index.IndexManager;
 import com.github.pnavais.ex3.api.ranking.RankingManager;
+import com.github.pnavais.ex3.api.ranking.Scorer;
+import com.github.pnavais.ex3.freshness.FreshnessTracker;
+import com.github.pnavais.ex3.index.IndexSnapshot;
+import com.github.pnavais.ex3.jfr.FlightEvent;
+import com.github.pnavais.ex3.jfr.FlightRecording;
+import com.github.pnavais.ex3.jfr.RankingEvent;
 import lombok.AllArgsConstructor;
 import lombok.Getter;
 import lombok.NonNull;
@@ -28,16 +34,16 @@ import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Component;
 
 import java.io.PrintStream;
-import java.nio.file.Path;
 import java.time.LocalDateTime;
+import java.util.ArrayList;
 import java.util.Collections;
-import java.util.Comparator;
 import java.util.List;
-import java.util.stream.Collectors;
+import java.util.concurrent.ForkJoinPool;
 
 /**
  * An implementation of the {@link RankingManager} allowing
- * to display TF/IDF statistics of a given index.
+ * to display TF/IDF statistics of a given index. Documents
+ * can be alternatively ranked by any other {@link Scorer}.
  */
 @Component
 @Slf4j
@@ -46,6 +52,53 @@ public class TfIdfRankingManager implements RankingManager {
     @Setter
     private int topResults;
 
+    /**
+     * The scoring function ranking the documents
+     */
+    @Setter
+    @NonNull
+    private Scorer scorer = new TfIdfScorer();
+
+    /**
+     * The algorithm retrieving the top documents
+     */
+    @Setter
+    @NonNull
+    private RankingMode rankingMode = RankingMode.MAXSCORE;
+
+    /**
+     * The pool ranking the partitions of large snapshots in parallel
+     * (null to rank them in the calling thread until a parallelism is established)
+     */
+    private volatile ForkJoinPool rankingPool;
+
+    /**
+     * The proximity of the terms boosting the scores of the
+     * documents, if any (see {@link Proximity})
+     */
+    @Setter
+    private Proximity proximity;
+
+    /**
+     * Establishes the number of threads ranking the partitions of large
+     * snapshots in parallel, 1 ranking them in the calling thread. The pool
+     * of the threads is created here, shutting down the one it replaces.
+     *
+     * @param parallelism the number of threads
+     * @throws IllegalArgumentException if the number of threads is not positive
+     */
+    @Override
+    public void setParallelism(int parallelism) {
+        if (parallelism < 1) {
+            throw new IllegalArgumentException("Invalid ranking parallelism " + parallelism);
+        }
+        ForkJoinPool previous = rankingPool;
+        rankingPool = (parallelism > 1) ? new ForkJoinPool(parallelism) : null;
+        if (previous != null) {
+            previous.shutdown();
+        }
+    }
+
     /**
      * Writes the top results in terms of
      * generics statistics for the terms and documents
@@ -69,24 +122,48 @@ public class TfIdfRankingManager implements RankingManager {
      */
     @Override
     public void displayTopResults(int n, @NonNull IndexManager manager, @NonNull PrintStream pw) {
-        log.debug("Computing the TF/IDF top {} results : Terms {} (index size : {})", n, manager.getTerms(), manager.size());
-        List<DocStat> docStats = manager.getDocs().stream()
-                .map(doc -> DocStat.of(doc, manager.getTermsTfIdfFor(doc)))
-                .sorted(Comparator.comparing(DocStat::getTfIdf).reversed())
-                .limit(n)
-                .collect(Collectors.toList());
+        FlightEvent event = FlightRecording.isAvailable() ? new RankingEvent() : FlightEvent.NONE;
+        event.begin();
+        // Rank a consistent view of the index, unaffected by the documents being indexed
+        IndexSnapshot snapshot = manager.snapshot();
+        FreshnessTracker.getDefault().visible(snapshot.getGeneration());
+        Scorer rankingScorer = scorer;
+        log.debug("Computing the {} top {} results : Terms {} (index size : {}, snapshot : {})",
+                rankingScorer.getName(), n, snapshot.getTerms(), snapshot.size(), snapshot.getGeneration());
+        // Only the documents which may enter the top results are scored (all of them in columns or by proximity)
+        List<DocStat> docStats = new ArrayList<>(Math.min(n, snapshot.size()));
+        Proximity rankingProximity = proximity;
+        if (rankingProximity != null) {
+            snapshot.forEachTopScore(rankingScorer, n, rankingProximity,
+                    (docId, score) -> docStats.add(DocStat.of(docId, score)));
+        } else {
+            snapshot.forEachTopScore(rankingScorer, n, rankingMode, rankingPool,
+                    (docId, score) -> docStats.add(DocStat.of(docId, score)));
+        }
 
-        String header = String.format("Top %d TF/IDF results [%s]", n, LocalDateTime.now());
+        String header = String.format("Top %d %s results [%s]", n, rankingScorer.getName(), LocalDateTime.now());
         String ruler = String.join("", Collections.nCopies(header.length(), "-"));
         pw.printf("%n%s%n%s%n", header, ruler);
-        docStats.forEach(docStat -> pw.printf("[%s] %.4f\n", docStat.getDoc().getFileName(), docStat.getTfIdf()));
+        // Only the documents of the top results are resolved from their ids
+        docStats.forEach(docStat -> pw.printf("[%s] %.4f\n", snapshot.getDocument(docStat.getDocId()).getFileName(),
+                docStat.getScore()));
+
+        if (event.shouldCommit()) {
+            RankingEvent rankingEvent = (RankingEvent) event;
+            rankingEvent.setScorer(rankingScorer.getName());
+            rankingEvent.setTopResults(n);
+            rankingEvent.setResults(docStats.size());
+            rankingEvent.setDocuments(snapshot.size());
+            rankingEvent.setGeneration(snapshot.getGeneration());
+            rankingEvent.commit();
+        }
     }
 
     @Getter
     @Setter
     @AllArgsConstructor(staticName = "of")
     private static class DocStat {
-        private Path doc;
-        private Double tfIdf;
+        private int docId;
+        private Double score;
     }
 }
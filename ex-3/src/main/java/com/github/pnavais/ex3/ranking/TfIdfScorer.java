@@ -0,0 +1,103 @@
+/*
+ *
+ * Copyright 2020 Pablo Navais
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+
+package com.github.pnavais.ex3.ranking;
+
+import com.github.pnavais.ex3.api.ranking.Scorer;
+
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.Set;
+
+/**
+ * The classic TF/IDF scoring function, scoring each document with the average
+ * of the tf/idf statistics of all the terms, i.e. for each term :
+ *     tf/idf("term", doc, D) = (occurrences / word count of doc) x log10(D/d)
+ * with D the total number of documents and d the number of documents containing the term.
+ */
+public class TfIdfScorer implements Scorer {
+
+    /** The statistics relied on */
+    private static final Set<ScoringStatistic> STATISTICS = Collections.unmodifiableSet(
+            EnumSet.of(ScoringStatistic.DOCUMENT_LENGTH, ScoringStatistic.INVERSE_DOCUMENT_FREQUENCY));
+
+    @Override
+    public String getName() {
+        return "TF/IDF";
+    }
+
+    @Override
+    public Set<ScoringStatistic> getStatistics() {
+        return STATISTICS;
+    }
+
+    /**
+     * Computes the idf of the term i.e. log10(D/d).
+     *
+     * @param documentFrequency the number of documents containing the term
+     * @param collection the statistics of the collection
+     * @return the idf of the term
+     */
+    @Override
+    public double termWeight(int documentFrequency, CollectionStatistics collection) {
+        return ((documentFrequency > 0) && (collection.getDocumentCount() > 0))
+                ? Math.log10((collection.getDocumentCount() * 1.0) / documentFrequency) : 0.0;
+    }
+
+    /**
+     * The norm of a document is its word count.
+     *
+     * @param wordCount the number of words of the document
+     * @param collection the statistics of the collection
+     * @return the word count
+     */
+    @Override
+    public double documentNorm(long wordCount, CollectionStatistics collection) {
+        return wordCount;
+    }
+
+    /**
+     * Computes the tf/idf of the term in the document.
+     *
+     * @param occurrences the occurrences of the term in the document
+     * @param documentNorm the word count of the document
+     * @param termWeight the idf of the term
+     * @return the tf/idf of the term
+     */
+    @Override
+    public double score(long occurrences, double documentNorm, double termWeight) {
+        return ((occurrences * 1.0) / documentNorm) * termWeight;
+    }
+
+    @Override
+    public boolean isProportionalToWeight() {
+        return true;
+    }
+
+    /**
+     * Averages the tf/idf of all the terms.
+     *
+     * @param sum the sum of the scores of the terms
+     * @param termCount the number of terms ranked
+     * @return the average tf/idf
+     */
+    @Override
+    public double combine(double sum, int termCount) {
+        return (termCount > 0) ? sum / termCount : 0.0;
+    }
+}
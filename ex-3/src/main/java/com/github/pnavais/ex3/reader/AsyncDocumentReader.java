@@ -0,0 +1,265 @@
+/*
+ *
+ * Copyright 2020 Pablo Navais
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+package com.github.pnavais.ex3.reader;
+
+import com.github.pnavais.ex3.api.exception.FileParsingException;
+import com.github.pnavais.ex3.api.reader.DocumentReader;
+import com.github.pnavais.ex3.index.DocTerm;
+import com.github.pnavais.ex3.matcher.CompiledTermSet;
+import com.github.pnavais.ex3.matcher.Utf8TermScanner;
+import com.github.pnavais.ex3.matcher.WordFilter;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.AsynchronousFileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+
+/**
+ * An implementation of the Document reader overlapping the reads of the
+ * documents with their tokenization. Documents are read through an
+ * {@link AsynchronousFileChannel} into two direct buffers : while the
+ * terms are matched over the chunk in one of them (see {@link Utf8TermScanner}),
+ * the next chunk is already being read into the other one.
+ * <p>
+ * Only one read is in flight per document, so the indexing thread is kept busy
+ * on slow disks without reading more documents concurrently. The buffers are
+ * kept by every thread, whether the readers are pooled or not, and reused for the
+ * following documents. They are sized after the documents read (up to
+ * {@link #BUFFER_SIZE}), so threads reading small documents only hold small buffers.
+ */
+public class AsyncDocumentReader implements DocumentReader {
+
+    /** The size of each one of the buffers */
+    static final int BUFFER_SIZE = 256 * 1024;
+
+    /** The pair of buffers of each thread, shared by all its readers */
+    private static final ThreadLocal<ByteBuffer[]> BUFFERS = ThreadLocal.withInitial(() -> new ByteBuffer[2]);
+
+    /** The scanner of the last document, reused while the terms do not change */
+    private Utf8TermScanner scanner;
+
+    /**
+     * Byte level readers do not decode the documents into words,
+     * terms are matched through {@link #processDocTerms(Path, Set)}.
+     *
+     * @return always empty
+     */
+    @Override
+    public Optional<String[]> getNextWords(String tokenSeparator) {
+        return Optional.empty();
+    }
+
+    /**
+     * Reads a given document storing the statistics for the
+     * given set of terms.
+     *
+     * @param doc the document to read
+     * @param terms the list of terms
+     * @return the statistics for the terms in the document
+     * @throws FileParsingException on I/O errors
+     */
+    @Override
+    public List<DocTerm> processDocTerms(Path doc, Set<String> terms) throws FileParsingException {
+        CompiledTermSet compiled = CompiledTermSet.of(terms, DocumentReaderFactory.getNormalizer());
+        Utf8TermScanner termScanner = scannerFor(compiled);
+
+        try (AsynchronousFileChannel channel = AsynchronousFileChannel.open(doc, StandardOpenOption.READ)) {
+            scan(channel, termScanner);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new FileParsingException("Interrupted while processing file "+doc, e);
+        } catch (ExecutionException e) {
+            throw new FileParsingException("Error processing file "+doc, e.getCause());
+        } catch (Exception e) {
+            throw new FileParsingException("Error processing file "+doc, e);
+        }
+
+        return buildDocTerms(doc, compiled, termScanner);
+    }
+
+    /**
+     * Reads the given region of a buffer holding the raw contents
+     * of a document, storing the statistics for the given set of terms.
+     *
+     * @param doc the document the contents belong to
+     * @param contents the buffer holding the raw contents of the document
+     * @param offset the offset of the contents in the buffer
+     * @param length the length of the contents
+     * @param terms the list of terms
+     * @return the statistics for the terms in the document
+     */
+    @Override
+    public List<DocTerm> processDocTerms(Path doc, byte[] contents, int offset, int length, Set<String> terms) {
+        CompiledTermSet compiled = CompiledTermSet.of(terms, DocumentReaderFactory.getNormalizer());
+        Utf8TermScanner termScanner = scannerFor(compiled);
+        termScanner.scan(contents, offset, length);
+        termScanner.finish();
+
+        return buildDocTerms(doc, compiled, termScanner);
+    }
+
+    /**
+     * Reads the given raw contents of a document, already loaded
+     * in memory, storing the statistics for the given set of terms.
+     *
+     * @param doc the document the contents belong to
+     * @param contents the raw contents of the document
+     * @param terms the list of terms
+     * @return the statistics for the terms in the document
+     */
+    @Override
+    public List<DocTerm> processDocTerms(Path doc, byte[] contents, Set<String> terms) {
+        return processDocTerms(doc, contents, 0, contents.length, terms);
+    }
+
+    /**
+     * Scans the whole contents of the channel, reading the next chunk
+     * while the current one is scanned. The read in flight, if any,
+     * is always awaited before returning, so the buffers can be reused.
+     *
+     * @param channel the file channel
+     * @param termScanner the scanner
+     * @throws InterruptedException if interrupted while waiting for a read
+     * @throws ExecutionException on I/O errors
+     * @throws IOException on I/O errors retrieving the size of the file
+     */
+    private static void scan(AsynchronousFileChannel channel, Utf8TermScanner termScanner)
+            throws InterruptedException, ExecutionException, IOException {
+        ByteBuffer[] buffers = buffersFor(channel.size());
+        ByteBuffer current = buffers[0];
+        ByteBuffer next = buffers[1];
+
+        current.clear();
+        Future<Integer> pending = channel.read(current, 0);
+        long position = 0;
+        try {
+            for (;;) {
+                int read = pending.get();
+                pending = null;
+                if (read == -1) {
+                    break;
+                }
+                position += read;
+
+                // Start reading the next chunk before scanning the current one
+                next.clear();
+                pending = channel.read(next, position);
+                current.flip();
+                termScanner.scan(current);
+
+                ByteBuffer scanned = current;
+                current = next;
+                next = scanned;
+            }
+        } finally {
+            awaitQuietly(pending);
+        }
+        termScanner.finish();
+    }
+
+    /**
+     * Retrieves the buffers of the calling thread, replacing them by larger
+     * ones if too small to read the given file in chunks of {@link #BUFFER_SIZE}.
+     *
+     * @param fileSize the size of the file
+     * @return the buffers
+     */
+    private static ByteBuffer[] buffersFor(long fileSize) {
+        int capacity = (int) Math.max(1, Math.min(fileSize, BUFFER_SIZE));
+        ByteBuffer[] buffers = BUFFERS.get();
+        if ((buffers[0] == null) || (buffers[0].capacity() < capacity)) {
+            buffers[0] = ByteBuffer.allocateDirect(capacity);
+            buffers[1] = ByteBuffer.allocateDirect(capacity);
+        }
+        return buffers;
+    }
+
+    /**
+     * Waits for the given read to complete, ignoring its outcome.
+     *
+     * @param pending the pending read or null if none
+     */
+    private static void awaitQuietly(Future<Integer> pending) {
+        if (pending != null) {
+            boolean interrupted = false;
+            for (;;) {
+                try {
+                    pending.get();
+                    break;
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                } catch (ExecutionException e) {
+                    break;
+                }
+            }
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    /**
+     * Retrieves the scanner for the given terms, reusing the one of
+     * the last document read if the terms did not change.
+     *
+     * @param compiled the compiled terms
+     * @return the scanner, ready to scan new contents
+     */
+    private Utf8TermScanner scannerFor(CompiledTermSet compiled) {
+        if ((scanner == null) || (scanner.getTerms() != compiled)) {
+            scanner = new Utf8TermScanner(compiled);
+        } else {
+            scanner.reset();
+        }
+        scanner.setWords(DocumentReaderFactory.newWordFilterBuilder());
+        scanner.setPositions(DocumentReaderFactory.newPositionsBuilder(compiled.getPhraseCount()));
+        return scanner;
+    }
+
+    /**
+     * Builds the list of terms statistics found by the scanner.
+     *
+     * @param doc the document
+     * @param compiled the compiled terms
+     * @param termScanner the scanner
+     * @return the statistics for the terms in the document
+     */
+    private static List<DocTerm> buildDocTerms(Path doc, CompiledTermSet compiled, Utf8TermScanner termScanner) {
+        List<DocTerm> docTerms = new ArrayList<>(compiled.size());
+        WordFilter wordFilter = termScanner.buildWordFilter();
+        long[] wordHashes = termScanner.getWordHashes();
+        for (int id = 0; id < compiled.size(); id++) {
+            DocTerm docTerm = DocTerm.of(compiled.getTerms().get(id), doc);
+            docTerm.setOccurrences(termScanner.getHits(id));
+            docTerm.setWordCount(termScanner.getWordCount());
+            docTerm.setWordFilter(wordFilter);
+            docTerm.setWordHashes(wordHashes);
+            docTerm.setPositions(termScanner.getPositions(id));
+            docTerms.add(docTerm);
+        }
+
+        return docTerms;
+    }
+}
@@ -21,25 +21,47 @@ package com.github.pnavais.ex3.reader;
 import com.github.pnavais.ex3.api.exception.FileParsingException;
 import com.github.pnavais.ex3.api.reader.DocumentReader;
 import com.github.pnavais.ex3.index.DocTerm;
+import com.github.pnavais.ex3.matcher.CompiledTermSet;
+import com.github.pnavais.ex3.matcher.TermAutomaton;
+import com.github.pnavais.ex3.matcher.TermPositions;
+import com.github.pnavais.ex3.matcher.WordFilter;
 import lombok.extern.slf4j.Slf4j;
 
 import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.nio.file.Files;
 import java.nio.file.Path;
-import java.util.*;
-import java.util.stream.Collectors;
-import java.util.stream.Stream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
 
 /**
  * An implementation of the Document reader using a Stream to read file lines.
+ * <p>
+ * The buffers decoding the documents and the occurrences of the phrases are
+ * allocated once per reader and reset for the following documents, so readers
+ * reused for several documents (see {@link DocumentReaderFactory#setPooling(boolean)})
+ * only allocate the words of the lines and the statistics they return.
  */
 @Slf4j
 public class BufferedDocumentReader implements DocumentReader {
 
+    /** The separator of the words of the lines */
+    private static final char WORD_SEPARATOR = ' ';
+
     /** The stream of lines */
     private BufferedReader reader;
 
+    /** The reader of the UTF-8 lines of the documents, reused for the following ones */
+    private ReusableLineReader lineReader;
+
+    /** The occurrences of each phrase, reset for every document */
+    private long[] phraseHits;
+
     /**
      * Creates the buffered reader of data to process from the given file.
      *
@@ -48,12 +70,49 @@ public class BufferedDocumentReader implements DocumentReader {
      */
     public void openFile(Path filePath) throws FileParsingException {
         try  {
-            this.reader = Files.newBufferedReader(filePath);
+            this.reader = newReader(filePath);
         } catch (Exception e) {
             throw new FileParsingException("Error processing file "+filePath, e);
         }
     }
 
+    /**
+     * Creates the character reader for the given file. Subclasses
+     * may override it to decode the file contents on the fly.
+     *
+     * @param filePath the complete file path
+     * @return the buffered reader
+     * @throws IOException on I/O errors
+     */
+    protected BufferedReader newReader(Path filePath) throws IOException {
+        return lineReader().open(Files.newInputStream(filePath));
+    }
+
+    /**
+     * Creates the character reader for the given raw contents of a file.
+     * Subclasses may override it to decode the contents on the fly.
+     *
+     * @param contents the raw contents
+     * @return the buffered reader
+     * @throws IOException on I/O errors
+     */
+    protected BufferedReader newReader(InputStream contents) throws IOException {
+        return lineReader().open(contents);
+    }
+
+    /**
+     * Retrieves the reader of the UTF-8 lines of the documents,
+     * created the first time a document is opened.
+     *
+     * @return the line reader
+     */
+    private ReusableLineReader lineReader() {
+        if (lineReader == null) {
+            lineReader = new ReusableLineReader();
+        }
+        return lineReader;
+    }
+
     /**
      * Closes the buffered reader
      */
@@ -103,47 +162,228 @@ public class BufferedDocumentReader implements DocumentReader {
         // Open the file for reading
         openFile(doc);
 
-        // Build the initial terms information
-        Map<String, DocTerm> docTermMap = terms.stream().collect(Collectors.toMap(s -> s, s -> DocTerm.of(s, doc)));
+        return processOpenDocument(doc, terms);
+    }
+
+    /**
+     * Reads the given raw contents of a document, already loaded
+     * in memory, storing the statistics for the given set of terms.
+     *
+     * @param doc the document the contents belong to
+     * @param contents the raw contents of the document
+     * @param terms the list of terms
+     * @return the statistics for the terms in the document
+     * @throws FileParsingException on decoding errors
+     */
+    @Override
+    public List<DocTerm> processDocTerms(Path doc, byte[] contents, Set<String> terms) throws FileParsingException {
+        return processDocTerms(doc, contents, 0, contents.length, terms);
+    }
+
+    /**
+     * Reads the given region of a buffer holding the raw contents
+     * of a document, storing the statistics for the given set of terms.
+     *
+     * @param doc the document the contents belong to
+     * @param contents the buffer holding the raw contents of the document
+     * @param offset the offset of the contents in the buffer
+     * @param length the length of the contents
+     * @param terms the list of terms
+     * @return the statistics for the terms in the document
+     * @throws FileParsingException on decoding errors
+     */
+    @Override
+    public List<DocTerm> processDocTerms(Path doc, byte[] contents, int offset, int length, Set<String> terms)
+            throws FileParsingException {
+        try {
+            return processDocTerms(doc, newReader(new ByteArrayInputStream(contents, offset, length)), terms);
+        } catch (Exception e) {
+            throw new FileParsingException("Error processing file "+doc, e);
+        }
+    }
+
+    /**
+     * Reads the given contents as the document storing the statistics
+     * for the given set of terms. The contents are closed afterwards.
+     *
+     * @param doc the document the contents belong to
+     * @param contents the contents of the document
+     * @param terms the list of terms
+     * @return the statistics for the terms in the document
+     */
+    public List<DocTerm> processDocTerms(Path doc, BufferedReader contents, Set<String> terms) {
+        this.reader = contents;
+        return processOpenDocument(doc, terms);
+    }
+
+    /**
+     * Reads the currently opened document storing the statistics
+     * for the given set of terms.
+     *
+     * @param doc the document to read
+     * @param terms the list of terms
+     * @return the statistics for the terms in the document
+     */
+    private List<DocTerm> processOpenDocument(Path doc, Set<String> terms) {
+        CompiledTermSet compiled = CompiledTermSet.of(terms, DocumentReaderFactory.getNormalizer());
+        if ((phraseHits == null) || (phraseHits.length != compiled.getPhraseCount())) {
+            phraseHits = new long[compiled.getPhraseCount()];
+        } else {
+            Arrays.fill(phraseHits, 0);
+        }
+        WordFilter.Builder words = DocumentReaderFactory.newWordFilterBuilder();
+        TermPositions.Builder positions = DocumentReaderFactory.newPositionsBuilder(compiled.getPhraseCount());
 
         // Update document statistics
-        long wordCount = computeTermsStats(docTermMap);
-        docTermMap.values().forEach(docTerm -> docTerm.setWordCount(wordCount));
+        long wordCount = computeTermsStats(compiled, phraseHits, words, positions);
+        WordFilter wordFilter = (words != null) ? words.build() : null;
+        long[] wordHashes = (words != null) ? words.hashes() : null;
 
         // Close file
         closeFile();
 
         // Build the list of terms statistics
-        return new ArrayList<>(docTermMap.values());
+        List<DocTerm> docTerms = new ArrayList<>(compiled.size());
+        for (int id = 0; id < compiled.size(); id++) {
+            DocTerm docTerm = DocTerm.of(compiled.getTerms().get(id), doc);
+            docTerm.setOccurrences(compiled.occurrences(id, phraseHits));
+            docTerm.setWordCount(wordCount);
+            docTerm.setWordFilter(wordFilter);
+            docTerm.setWordHashes(wordHashes);
+            docTerm.setPositions((positions != null) ? compiled.positions(id, positions) : null);
+            docTerms.add(docTerm);
+        }
+
+        return docTerms;
     }
 
     /**
-     * Read the whole file line by line storing the statistics of
-     * the required terms and retrieving the word count of the file.
+     * Read the whole file line by line storing the occurrences of
+     * the phrases of the terms and retrieving the word count of the file.
+     * Phrases may span several lines. Words dropped by the normalizer
+     * are not accounted.
      *
-     * @param docTermMap the map storing terms statistics
+     * @param compiled the compiled terms
+     * @param phraseHits the occurrences of each phrase
+     * @param words the builder of the filter of the words or null if none
+     * @param positions the recorder of the positions of the phrases or null if none
      * @return the word count of the document
      */
-    private long computeTermsStats(Map<String, DocTerm> docTermMap) {
-        long wordCount = 0;
-
-        for (;;) {
-            Optional<String[]> nextWords = getNextWords();
-            if (nextWords.isPresent()) {
-                String[] words = nextWords.get();
-                wordCount+= words.length;
-                Stream.of(words).forEachOrdered(w -> {
-                    // Process only words matching the terms
-                    if (docTermMap.containsKey(w)) {
-                        DocTerm docTerm = docTermMap.get(w);
-                        docTerm.increaseCount();
+    private long computeTermsStats(CompiledTermSet compiled, long[] phraseHits, WordFilter.Builder words,
+                                   TermPositions.Builder positions) {
+        LineScan scan = new LineScan(compiled, phraseHits, words, positions);
+        if (reader != null) {
+            try {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    scan.line(line);
+                }
+            } catch (IOException e) {
+                log.error("Error reading from file", e);
+            }
+        }
+
+        return scan.wordCount;
+    }
+
+    /**
+     * Splits the lines into words as {@link String#split(String)} does with the
+     * default token separator (keeping the empty words but the trailing ones),
+     * feeding them to the automaton without building an array per line.
+     */
+    private static final class LineScan {
+
+        /** The compiled terms */
+        private final CompiledTermSet compiled;
+
+        /** The automaton matching the phrases */
+        private final TermAutomaton automaton;
+
+        /** The occurrences of each phrase */
+        private final long[] phraseHits;
+
+        /** The builder of the filter of the words or null if none */
+        private final WordFilter.Builder words;
+
+        /** The recorder of the positions of the phrases or null if none */
+        private final TermPositions.Builder positions;
+
+        /** The current state of the automaton */
+        private int state = TermAutomaton.ROOT;
+
+        /** The number of words found */
+        private long wordCount;
+
+        /**
+         * Creates the scan of a document.
+         *
+         * @param compiled the compiled terms
+         * @param phraseHits the occurrences of each phrase
+         * @param words the builder of the filter of the words or null if none
+         * @param positions the recorder of the positions of the phrases or null if none
+         */
+        LineScan(CompiledTermSet compiled, long[] phraseHits, WordFilter.Builder words,
+                 TermPositions.Builder positions) {
+            this.compiled = compiled;
+            this.automaton = compiled.getAutomaton();
+            this.phraseHits = phraseHits;
+            this.words = words;
+            this.positions = positions;
+        }
+
+        /**
+         * Scans the words of a line.
+         *
+         * @param line the line
+         */
+        void line(String line) {
+            int end = line.indexOf(WORD_SEPARATOR);
+            if (end < 0) {
+                word(line);
+                return;
+            }
+            int start = 0;
+            int empty = 0;
+            for (;;) {
+                if (end > start) {
+                    // Empty words are only accounted when followed by other words
+                    for (; empty > 0; empty--) {
+                        word("");
                     }
-                });
-            } else {
-                break;
+                    word(line.substring(start, end));
+                } else {
+                    empty++;
+                }
+                if (end == line.length()) {
+                    break;
+                }
+                start = end + 1;
+                end = line.indexOf(WORD_SEPARATOR, start);
+                if (end < 0) {
+                    end = line.length();
+                }
             }
         }
 
-        return wordCount;
+        /**
+         * Counts the word and feeds it to the automaton.
+         *
+         * @param w the word
+         */
+        private void word(String w) {
+            if ((words != null) && !w.isEmpty()) {
+                words.add(WordFilter.hash(w));
+            }
+            int wordId = compiled.wordId(w);
+            if (wordId != CompiledTermSet.SKIP) {
+                wordCount++;
+                state = automaton.next(state, wordId);
+                if (positions != null) {
+                    automaton.emit(state, phraseHits, positions, wordCount - 1);
+                } else {
+                    automaton.emit(state, phraseHits);
+                }
+            }
+        }
     }
 }
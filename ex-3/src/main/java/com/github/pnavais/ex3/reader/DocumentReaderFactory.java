@@ -19,27 +19,130 @@
 package com.github.pnavais.ex3.reader;
 
 import com.github.pnavais.ex3.api.reader.DocumentReader;
+import com.github.pnavais.ex3.matcher.TermPositions;
+import com.github.pnavais.ex3.matcher.WordFilter;
+import com.github.pnavais.ex3.matcher.WordFilterPolicy;
+import com.github.pnavais.ex3.normalizer.TermNormalizer;
 import lombok.AccessLevel;
 import lombok.NoArgsConstructor;
+import lombok.NonNull;
+import lombok.extern.slf4j.Slf4j;
 
+import java.nio.file.Path;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.function.Supplier;
 
 /**
- * A factory to create {@link DocumentReader} instances
+ * A factory to create {@link DocumentReader} instances.
+ * Readers can be selected by the file type of the document to read,
+ * falling back to the default reader when no specific reader is registered.
+ * All the readers normalize the terms and tokens with the same {@link TermNormalizer}
+ * and build the filters of the words of the documents with the same {@link WordFilterPolicy}.
+ * <p>
+ * Readers are created for every document unless pooled, in which case every thread
+ * reuses the same reader of each type for all the documents it reads.
  */
+@Slf4j
 @NoArgsConstructor(access = AccessLevel.PRIVATE)
 public class DocumentReaderFactory {
 
     /** The default document reader supplier */
     private static Supplier<DocumentReader> readerSupplier = BufferedDocumentReader::new;
 
+    /** The document reader suppliers by file extension */
+    private static final Map<String, Supplier<DocumentReader>> extensionSuppliers = new ConcurrentHashMap<>();
+
+    /** The normalizer of the terms and tokens */
+    private static TermNormalizer normalizer = TermNormalizer.NONE;
+
+    /** The policy of the filters of the words of the documents */
+    private static WordFilterPolicy wordFilterPolicy = WordFilterPolicy.DISABLED;
+
+    /** Whether the readers collect the hashes of the distinct words of the documents */
+    private static boolean collectingWords;
+
+    /** Whether the readers record the positions of the terms in the documents */
+    private static boolean recordingPositions;
+
+    /** Whether every thread reuses the same readers for all the documents */
+    private static boolean pooling;
+
+    /** The suppliers of the pooled readers by the supplier of the readers they delegate to */
+    private static final Map<Supplier<DocumentReader>, Supplier<DocumentReader>> pooledSuppliers =
+            new ConcurrentHashMap<>();
+
+    static {
+        registerReader("gz", GzipDocumentReader::new);
+        registerReader("zip", ZipDocumentReader::new);
+    }
+
     /**
      * Retrieves a new document reader.
      *
      * @return the document reader
      */
     public static DocumentReader getReader() {
-        return readerSupplier.get();
+        return pooled(readerSupplier).get();
+    }
+
+    /**
+     * Retrieves a new document reader suitable for the
+     * file type of the given document.
+     *
+     * @param doc the document to read
+     * @return the document reader
+     */
+    public static DocumentReader getReader(Path doc) {
+        return getSupplier(doc).get();
+    }
+
+    /**
+     * Retrieves the supplier of the document readers suitable for the
+     * file type of the given document. Documents with the same supplier
+     * can be read one after the other with the same reader.
+     *
+     * @param doc the document to read
+     * @return the document reader supplier
+     */
+    public static Supplier<DocumentReader> getSupplier(Path doc) {
+        Supplier<DocumentReader> supplier = null;
+        Path fileName = doc.getFileName();
+        if (fileName != null) {
+            String name = fileName.toString();
+            int extIndex = name.lastIndexOf('.');
+            if (extIndex != -1) {
+                supplier = extensionSuppliers.get(name.substring(extIndex + 1).toLowerCase(Locale.ROOT));
+            }
+        }
+        return pooled((supplier != null) ? supplier : readerSupplier);
+    }
+
+    /**
+     * Retrieves the supplier of the pooled readers delegating to the
+     * readers of the given supplier, if pooling them. The same supplier
+     * is always retrieved for the readers of the same supplier.
+     *
+     * @param supplier the supplier of the readers
+     * @return the supplier of the pooled readers or the given one if not pooled
+     */
+    private static Supplier<DocumentReader> pooled(Supplier<DocumentReader> supplier) {
+        return pooling ? pooledSuppliers.computeIfAbsent(supplier, s -> {
+            DocumentReader reader = new PooledDocumentReader(s);
+            return () -> reader;
+        }) : supplier;
+    }
+
+    /**
+     * Registers the supplier of the document reader instances
+     * for files with the given extension.
+     *
+     * @param extension the file extension (without dot)
+     * @param supplier the reader supplier
+     */
+    public static void registerReader(String extension, Supplier<DocumentReader> supplier) {
+        extensionSuppliers.put(extension.toLowerCase(Locale.ROOT), supplier);
     }
 
     /**
@@ -50,4 +153,141 @@ public class DocumentReaderFactory {
     public static void setReaderSupplier(Supplier<DocumentReader> readerSupplier) {
         DocumentReaderFactory.readerSupplier = readerSupplier;
     }
+
+    /**
+     * Retrieves the normalizer of the terms and tokens
+     * used by the readers.
+     *
+     * @return the normalizer
+     */
+    public static TermNormalizer getNormalizer() {
+        return normalizer;
+    }
+
+    /**
+     * Sets the normalizer of the terms and tokens
+     * used by the readers.
+     *
+     * @param normalizer the normalizer
+     */
+    public static void setNormalizer(@NonNull TermNormalizer normalizer) {
+        DocumentReaderFactory.normalizer = normalizer;
+        checkCollectingWords();
+    }
+
+    /**
+     * Retrieves the policy of the filters of the words
+     * of the documents built by the readers.
+     *
+     * @return the word filter policy
+     */
+    public static WordFilterPolicy getWordFilterPolicy() {
+        return wordFilterPolicy;
+    }
+
+    /**
+     * Sets the policy of the filters of the words
+     * of the documents built by the readers.
+     *
+     * @param wordFilterPolicy the word filter policy ({@link WordFilterPolicy#DISABLED} builds none)
+     */
+    public static void setWordFilterPolicy(@NonNull WordFilterPolicy wordFilterPolicy) {
+        DocumentReaderFactory.wordFilterPolicy = wordFilterPolicy;
+    }
+
+    /**
+     * Checks whether the readers collect the hashes
+     * of the distinct words of the documents.
+     *
+     * @return true if collected, false otherwise
+     */
+    public static boolean isCollectingWords() {
+        return collectingWords;
+    }
+
+    /**
+     * Establishes whether the readers collect the hashes of the distinct
+     * words of the documents (i.e. to estimate their document frequency).
+     * Words are only collected while the tokens are not normalized.
+     *
+     * @param collectingWords true to collect the words, false otherwise
+     */
+    public static void setCollectingWords(boolean collectingWords) {
+        DocumentReaderFactory.collectingWords = collectingWords;
+        checkCollectingWords();
+    }
+
+    /**
+     * Warns when the words must be collected while the tokens are normalized,
+     * as the readers collect none of them then (see {@link #newWordFilterBuilder()}).
+     */
+    private static void checkCollectingWords() {
+        if (collectingWords && !normalizer.isIdentity()) {
+            log.warn("The words of the documents are not collected with normalized terms, "
+                    + "their document frequency will not be estimated");
+        }
+    }
+
+    /**
+     * Checks whether the readers record the
+     * positions of the terms in the documents.
+     *
+     * @return true if recorded, false otherwise
+     */
+    public static boolean isRecordingPositions() {
+        return recordingPositions;
+    }
+
+    /**
+     * Establishes whether the readers record the positions of the terms
+     * in the documents (i.e. to rank the documents by their proximity).
+     *
+     * @param recordingPositions true to record the positions, false otherwise
+     */
+    public static void setRecordingPositions(boolean recordingPositions) {
+        DocumentReaderFactory.recordingPositions = recordingPositions;
+    }
+
+    /**
+     * Checks whether every thread reuses the same
+     * readers for all the documents it reads.
+     *
+     * @return true if pooled, false otherwise
+     */
+    public static boolean isPooling() {
+        return pooling;
+    }
+
+    /**
+     * Establishes whether every thread reuses the same readers, with their buffers,
+     * for all the documents it reads instead of creating a reader per document.
+     * Readers are kept by the threads until they terminate, so pooling only pays
+     * off with long-lived threads (i.e. not with virtual threads).
+     *
+     * @param pooling true to pool the readers, false otherwise
+     */
+    public static void setPooling(boolean pooling) {
+        DocumentReaderFactory.pooling = pooling;
+    }
+
+    /**
+     * Creates a builder of the filter of the words of a document, also collecting
+     * the hashes of the words if needed. Filters keep the tokens as found in the
+     * documents, so they are only built when the tokens are not normalized.
+     *
+     * @return the builder or null if neither a filter must be built nor the words collected
+     */
+    public static WordFilter.Builder newWordFilterBuilder() {
+        return normalizer.isIdentity() ? wordFilterPolicy.newBuilder(collectingWords) : null;
+    }
+
+    /**
+     * Creates a recorder of the positions of the phrases of the terms in a document.
+     *
+     * @param phraseCount the number of phrases
+     * @return the recorder or null if the positions are not recorded
+     */
+    public static TermPositions.Builder newPositionsBuilder(int phraseCount) {
+        return recordingPositions ? new TermPositions.Builder(phraseCount) : null;
+    }
 }
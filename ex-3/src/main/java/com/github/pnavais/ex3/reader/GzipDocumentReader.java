@@ -0,0 +1,70 @@
+/*
+ *
+ * Copyright 2020 Pablo Navais
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+package com.github.pnavais.ex3.reader;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * An implementation of the Document reader decompressing gzip files
+ * on the fly, avoiding to unpack them to disk before indexing.
+ */
+public class GzipDocumentReader extends BufferedDocumentReader {
+
+    /** The size of the decompression buffer */
+    private static final int INFLATER_BUFFER_SIZE = 64 * 1024;
+
+    /**
+     * Creates the character reader decompressing the
+     * contents of the given gzip file.
+     *
+     * @param filePath the complete file path
+     * @return the buffered reader
+     * @throws IOException on I/O errors
+     */
+    @Override
+    protected BufferedReader newReader(Path filePath) throws IOException {
+        InputStream in = Files.newInputStream(filePath);
+        try {
+            return newReader(in);
+        } catch (IOException e) {
+            in.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Creates the character reader decompressing the
+     * given raw contents of a gzip file.
+     *
+     * @param contents the raw contents
+     * @return the buffered reader
+     * @throws IOException on I/O errors
+     */
+    @Override
+    protected BufferedReader newReader(InputStream contents) throws IOException {
+        return new BufferedReader(new InputStreamReader(new GZIPInputStream(contents, INFLATER_BUFFER_SIZE),
+                StandardCharsets.UTF_8));
+    }
+}
@@ -0,0 +1,225 @@
+/*
+ *
+ * Copyright 2020 Pablo Navais
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+package com.github.pnavais.ex3.reader;
+
+import com.github.pnavais.ex3.api.exception.FileParsingException;
+import com.github.pnavais.ex3.api.reader.DocumentReader;
+import com.github.pnavais.ex3.index.DocTerm;
+import com.github.pnavais.ex3.matcher.CompiledTermSet;
+import com.github.pnavais.ex3.matcher.Utf8TermScanner;
+import com.github.pnavais.ex3.matcher.WordFilter;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+
+/**
+ * An implementation of the Document reader matching the terms directly over
+ * the UTF-8 encoded contents of the documents, without decoding them.
+ * <p>
+ * Large files are memory mapped while small files are read at once, avoiding
+ * the cost of the mapping, into a buffer reused for the following documents.
+ * Only the word count and the occurrences of the terms are extracted
+ * (see {@link Utf8TermScanner}).
+ */
+public class MappedDocumentReader implements DocumentReader {
+
+    /** The minimum size of the files to map */
+    private static final long MAP_THRESHOLD = 1024 * 1024;
+
+    /** The maximum size of each mapped region */
+    private static final long MAX_MAP_SIZE = 256L * 1024 * 1024;
+
+    /** The size of the chunks read when the file system does not support mapping */
+    private static final int READ_CHUNK_SIZE = 1024 * 1024;
+
+    /** The scanner of the last document, reused while the terms do not change */
+    private Utf8TermScanner scanner;
+
+    /** The buffer of the files read at once, reused for the following ones */
+    private ByteBuffer buffer;
+
+    /**
+     * Byte level readers do not decode the documents into words,
+     * terms are matched through {@link #processDocTerms(Path, Set)}.
+     *
+     * @return always empty
+     */
+    @Override
+    public Optional<String[]> getNextWords(String tokenSeparator) {
+        return Optional.empty();
+    }
+
+    /**
+     * Reads a given document storing the statistics for the
+     * given set of terms.
+     *
+     * @param doc the document to read
+     * @param terms the list of terms
+     * @return the statistics for the terms in the document
+     * @throws FileParsingException on I/O errors
+     */
+    @Override
+    public List<DocTerm> processDocTerms(Path doc, Set<String> terms) throws FileParsingException {
+        CompiledTermSet compiled = CompiledTermSet.of(terms, DocumentReaderFactory.getNormalizer());
+        Utf8TermScanner scanner = scannerFor(compiled);
+
+        try (FileChannel channel = FileChannel.open(doc, StandardOpenOption.READ)) {
+            scan(channel, scanner);
+        } catch (Exception e) {
+            throw new FileParsingException("Error processing file "+doc, e);
+        }
+
+        return buildDocTerms(doc, compiled, scanner);
+    }
+
+    /**
+     * Reads the given raw contents of a document, already loaded
+     * in memory, storing the statistics for the given set of terms.
+     *
+     * @param doc the document the contents belong to
+     * @param contents the raw contents of the document
+     * @param terms the list of terms
+     * @return the statistics for the terms in the document
+     */
+    @Override
+    public List<DocTerm> processDocTerms(Path doc, byte[] contents, Set<String> terms) {
+        return processDocTerms(doc, contents, 0, contents.length, terms);
+    }
+
+    /**
+     * Reads the given region of a buffer holding the raw contents
+     * of a document, storing the statistics for the given set of terms.
+     *
+     * @param doc the document the contents belong to
+     * @param contents the buffer holding the raw contents of the document
+     * @param offset the offset of the contents in the buffer
+     * @param length the length of the contents
+     * @param terms the list of terms
+     * @return the statistics for the terms in the document
+     */
+    @Override
+    public List<DocTerm> processDocTerms(Path doc, byte[] contents, int offset, int length, Set<String> terms) {
+        CompiledTermSet compiled = CompiledTermSet.of(terms, DocumentReaderFactory.getNormalizer());
+        Utf8TermScanner scanner = scannerFor(compiled);
+        scanner.scan(contents, offset, length);
+        scanner.finish();
+
+        return buildDocTerms(doc, compiled, scanner);
+    }
+
+    /**
+     * Retrieves the scanner for the given terms, reusing the one of
+     * the last document read if the terms did not change.
+     *
+     * @param compiled the compiled terms
+     * @return the scanner, ready to scan new contents
+     */
+    private Utf8TermScanner scannerFor(CompiledTermSet compiled) {
+        if ((scanner == null) || (scanner.getTerms() != compiled)) {
+            scanner = new Utf8TermScanner(compiled);
+        } else {
+            scanner.reset();
+        }
+        scanner.setWords(DocumentReaderFactory.newWordFilterBuilder());
+        scanner.setPositions(DocumentReaderFactory.newPositionsBuilder(compiled.getPhraseCount()));
+        return scanner;
+    }
+
+    /**
+     * Builds the list of terms statistics found by the scanner.
+     *
+     * @param doc the document
+     * @param compiled the compiled terms
+     * @param scanner the scanner
+     * @return the statistics for the terms in the document
+     */
+    private static List<DocTerm> buildDocTerms(Path doc, CompiledTermSet compiled, Utf8TermScanner scanner) {
+        List<DocTerm> docTerms = new ArrayList<>(compiled.size());
+        WordFilter wordFilter = scanner.buildWordFilter();
+        long[] wordHashes = scanner.getWordHashes();
+        for (int id = 0; id < compiled.size(); id++) {
+            DocTerm docTerm = DocTerm.of(compiled.getTerms().get(id), doc);
+            docTerm.setOccurrences(scanner.getHits(id));
+            docTerm.setWordCount(scanner.getWordCount());
+            docTerm.setWordFilter(wordFilter);
+            docTerm.setWordHashes(wordHashes);
+            docTerm.setPositions(scanner.getPositions(id));
+            docTerms.add(docTerm);
+        }
+
+        return docTerms;
+    }
+
+    /**
+     * Retrieves the buffer of the files read at once, only
+     * allocating a new one if the last one is not large enough.
+     *
+     * @param capacity the number of bytes to read
+     * @return the cleared buffer, limited to the given capacity
+     */
+    private ByteBuffer buffer(int capacity) {
+        if ((buffer == null) || (buffer.capacity() < capacity)) {
+            buffer = ByteBuffer.allocate(capacity);
+        }
+        buffer.clear().limit(capacity);
+        return buffer;
+    }
+
+    /**
+     * Scans the whole contents of the channel.
+     *
+     * @param channel the file channel
+     * @param scanner the scanner
+     * @throws IOException on I/O errors
+     */
+    private void scan(FileChannel channel, Utf8TermScanner scanner) throws IOException {
+        long size = channel.size();
+        if (size < MAP_THRESHOLD) {
+            ByteBuffer contents = buffer((int) size);
+            while (contents.hasRemaining() && (channel.read(contents) != -1)) {
+                // Read until filled
+            }
+            contents.flip();
+            scanner.scan(contents);
+        } else {
+            try {
+                for (long position = 0; position < size; position += MAX_MAP_SIZE) {
+                    scanner.scan(channel.map(FileChannel.MapMode.READ_ONLY, position,
+                            Math.min(MAX_MAP_SIZE, size - position)));
+                }
+            } catch (UnsupportedOperationException e) {
+                // File systems not supporting mapping are read in chunks
+                ByteBuffer chunk = buffer(READ_CHUNK_SIZE);
+                channel.position(0);
+                while (channel.read(chunk) != -1) {
+                    chunk.flip();
+                    scanner.scan(chunk);
+                    chunk.clear();
+                }
+            }
+        }
+        scanner.finish();
+    }
+}
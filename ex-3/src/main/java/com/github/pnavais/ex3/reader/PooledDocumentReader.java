@@ -0,0 +1,142 @@
+/*
+ *
+ * Copyright 2020 Pablo Navais
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+
+package com.github.pnavais.ex3.reader;
+
+import com.github.pnavais.ex3.api.exception.FileParsingException;
+import com.github.pnavais.ex3.api.reader.DocumentReader;
+import com.github.pnavais.ex3.index.DocTerm;
+import lombok.NonNull;
+
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.function.Supplier;
+
+/**
+ * A document reader delegating to a reader of the calling thread, so every
+ * indexing thread reuses the same reader, with its buffers and arrays, for all
+ * the documents it reads instead of creating a new one for every document.
+ * <p>
+ * The pooled reader itself holds no state and can be shared by all the threads.
+ * A thread reading a document while already reading another one (i.e. the entry
+ * of an archive) uses a new reader for the nested document.
+ */
+class PooledDocumentReader implements DocumentReader {
+
+    /** The supplier of the readers of each thread */
+    private final Supplier<DocumentReader> supplier;
+
+    /** The reader of each thread */
+    private final ThreadLocal<Slot> slots;
+
+    /**
+     * Creates the pooled reader of the readers of the given supplier.
+     *
+     * @param supplier the supplier of the readers
+     */
+    PooledDocumentReader(@NonNull Supplier<DocumentReader> supplier) {
+        this.supplier = supplier;
+        this.slots = ThreadLocal.withInitial(() -> new Slot(supplier.get()));
+    }
+
+    @Override
+    public Optional<String[]> getNextWords(String tokenSeparator) {
+        return slots.get().reader.getNextWords(tokenSeparator);
+    }
+
+    @Override
+    public List<DocTerm> processDocTerms(Path doc, Set<String> terms) throws FileParsingException {
+        return read(reader -> reader.processDocTerms(doc, terms));
+    }
+
+    @Override
+    public List<DocTerm> processDocTerms(Path doc, byte[] contents, Set<String> terms) throws FileParsingException {
+        return read(reader -> reader.processDocTerms(doc, contents, terms));
+    }
+
+    @Override
+    public List<DocTerm> processDocTerms(Path doc, byte[] contents, int offset, int length, Set<String> terms)
+            throws FileParsingException {
+        return read(reader -> reader.processDocTerms(doc, contents, offset, length, terms));
+    }
+
+    @Override
+    public boolean isContainer() {
+        return slots.get().reader.isContainer();
+    }
+
+    /**
+     * Reads a document with the reader of the calling thread,
+     * or a new one if the thread is already reading a document.
+     *
+     * @param read the read of the document
+     * @return the statistics for the terms in the document
+     * @throws FileParsingException on I/O errors
+     */
+    private List<DocTerm> read(DocumentRead read) throws FileParsingException {
+        Slot slot = slots.get();
+        if (slot.reading) {
+            return read.apply(supplier.get());
+        }
+        slot.reading = true;
+        try {
+            return read.apply(slot.reader);
+        } finally {
+            slot.reading = false;
+        }
+    }
+
+    /**
+     * The reader of a thread
+     */
+    private static final class Slot {
+
+        /** The reader */
+        private final DocumentReader reader;
+
+        /** Whether the reader is reading a document */
+        private boolean reading;
+
+        /**
+         * Creates the slot of the given reader.
+         *
+         * @param reader the reader
+         */
+        Slot(DocumentReader reader) {
+            this.reader = reader;
+        }
+    }
+
+    /**
+     * The read of a document by a reader
+     */
+    @FunctionalInterface
+    private interface DocumentRead {
+
+        /**
+         * Reads the document with the given reader.
+         *
+         * @param reader the reader
+         * @return the statistics for the terms in the document
+         * @throws FileParsingException on I/O errors
+         */
+        List<DocTerm> apply(DocumentReader reader) throws FileParsingException;
+    }
+}
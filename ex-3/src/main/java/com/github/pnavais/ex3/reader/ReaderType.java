@@ -0,0 +1,44 @@
+/*
+ *
+ * Copyright 2020 Pablo Navais
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+package com.github.pnavais.ex3.reader;
+
+import com.github.pnavais.ex3.api.reader.DocumentReader;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+import java.util.function.Supplier;
+
+/**
+ * The types of readers available to read plain text documents
+ */
+@Getter
+@AllArgsConstructor
+public enum ReaderType {
+
+    /** Reads the documents line by line decoding its contents */
+    BUFFERED(BufferedDocumentReader::new),
+
+    /** Matches the terms over the UTF-8 encoded contents of the documents */
+    MAPPED(MappedDocumentReader::new),
+
+    /** Matches the terms over the UTF-8 encoded contents while the next chunk is being read */
+    ASYNC(AsyncDocumentReader::new);
+
+    /** The supplier of reader instances */
+    private final Supplier<DocumentReader> readerSupplier;
+}
@@ -0,0 +1,281 @@
+/*
+ *
+ * Copyright 2020 Pablo Navais
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+
+package com.github.pnavais.ex3.reader;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.StringReader;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * A {@link BufferedReader} of UTF-8 encoded streams which can be reopened over
+ * another stream, reusing its byte and char buffers, its decoder and the builder
+ * of the lines for all the documents read (instead of allocating them for every
+ * document as {@link java.nio.file.Files#newBufferedReader(java.nio.file.Path)} does).
+ * <p>
+ * Lines are terminated as in {@link BufferedReader#readLine()} and malformed input
+ * is reported. Closing the reader closes the current stream, keeping the buffers.
+ * Mark and reset are not supported.
+ */
+class ReusableLineReader extends BufferedReader {
+
+    /** The size of the buffers */
+    static final int BUFFER_SIZE = 8192;
+
+    /** The buffer of the bytes read */
+    private final byte[] bytes = new byte[BUFFER_SIZE];
+
+    /** The bytes read pending to be decoded */
+    private final ByteBuffer byteBuffer = ByteBuffer.wrap(bytes);
+
+    /** The chars decoded pending to be consumed */
+    private final CharBuffer chars = CharBuffer.allocate(BUFFER_SIZE);
+
+    /** The decoder of the bytes */
+    private final CharsetDecoder decoder = StandardCharsets.UTF_8.newDecoder();
+
+    /** The builder of the lines */
+    private final StringBuilder line = new StringBuilder();
+
+    /** The stream being read */
+    private InputStream in;
+
+    /** Whether the end of the stream was reached */
+    private boolean endOfInput;
+
+    /** Whether the decoder was flushed once the end of the stream was reached */
+    private boolean flushed;
+
+    /** The destination of single chars read */
+    private final char[] single = new char[1];
+
+    /** Whether the next char must be skipped if it is a line feed */
+    private boolean skipLF;
+
+    /**
+     * Creates the reader, to be opened over a stream.
+     */
+    ReusableLineReader() {
+        // The buffer of the parent class is never used
+        super(new StringReader(""), 1);
+    }
+
+    /**
+     * Opens the reader over the given stream, discarding
+     * the contents pending from the previous one.
+     *
+     * @param in the stream
+     * @return this reader
+     */
+    ReusableLineReader open(InputStream in) {
+        this.in = in;
+        this.endOfInput = false;
+        this.flushed = false;
+        this.skipLF = false;
+        this.decoder.reset();
+        this.byteBuffer.clear().flip();
+        this.chars.clear().flip();
+        return this;
+    }
+
+    /**
+     * Reads a line of text, terminated by a line feed, a carriage return
+     * or both. Lines are built in a reused builder.
+     *
+     * @return the line without terminators or null if the end of the stream was reached
+     * @throws IOException on I/O or decoding errors
+     */
+    @Override
+    public String readLine() throws IOException {
+        line.setLength(0);
+        boolean started = false;
+        for (;;) {
+            if (!chars.hasRemaining() && !fill()) {
+                return started ? line.toString() : null;
+            }
+            char[] buffer = chars.array();
+            int start = chars.position();
+            int limit = chars.limit();
+            if (skipLF) {
+                skipLF = false;
+                if (buffer[start] == '\n') {
+                    chars.position(++start);
+                    continue;
+                }
+            }
+            started = true;
+            int end = start;
+            while ((end < limit) && (buffer[end] != '\n') && (buffer[end] != '\r')) {
+                end++;
+            }
+            line.append(buffer, start, end - start);
+            if (end < limit) {
+                skipLF = (buffer[end] == '\r');
+                chars.position(end + 1);
+                return line.toString();
+            }
+            chars.position(end);
+        }
+    }
+
+    /**
+     * Reads chars into a portion of an array.
+     *
+     * @param cbuf the destination buffer
+     * @param off the offset at which to start storing chars
+     * @param len the maximum number of chars to read
+     * @return the number of chars read or -1 if the end of the stream was reached
+     * @throws IOException on I/O or decoding errors
+     */
+    @Override
+    public int read(char[] cbuf, int off, int len) throws IOException {
+        if (len == 0) {
+            return 0;
+        }
+        if (skipLF) {
+            skipLF = false;
+            if (!chars.hasRemaining() && !fill()) {
+                return -1;
+            }
+            if (chars.get(chars.position()) == '\n') {
+                chars.get();
+            }
+        }
+        if (!chars.hasRemaining() && !fill()) {
+            return -1;
+        }
+        int n = Math.min(len, chars.remaining());
+        chars.get(cbuf, off, n);
+        return n;
+    }
+
+    /**
+     * Reads a single char.
+     *
+     * @return the char or -1 if the end of the stream was reached
+     * @throws IOException on I/O or decoding errors
+     */
+    @Override
+    public int read() throws IOException {
+        return (read(single, 0, 1) == -1) ? -1 : single[0];
+    }
+
+    /**
+     * Skips chars.
+     *
+     * @param n the number of chars to skip
+     * @return the number of chars skipped
+     * @throws IOException on I/O or decoding errors
+     */
+    @Override
+    public long skip(long n) throws IOException {
+        long skipped = 0;
+        while ((skipped < n) && (chars.hasRemaining() || fill())) {
+            int count = (int) Math.min(n - skipped, chars.remaining());
+            chars.position(chars.position() + count);
+            skipped += count;
+        }
+        skipLF = false;
+        return skipped;
+    }
+
+    /**
+     * Tells whether decoded chars are pending to be read.
+     *
+     * @return true if chars can be read without blocking
+     */
+    @Override
+    public boolean ready() {
+        return chars.hasRemaining();
+    }
+
+    @Override
+    public boolean markSupported() {
+        return false;
+    }
+
+    @Override
+    public void mark(int readAheadLimit) throws IOException {
+        throw new IOException("mark() not supported");
+    }
+
+    @Override
+    public void reset() throws IOException {
+        throw new IOException("reset() not supported");
+    }
+
+    /**
+     * Closes the current stream, keeping the buffers
+     * to open the reader over another stream.
+     *
+     * @throws IOException on I/O errors
+     */
+    @Override
+    public void close() throws IOException {
+        if (in != null) {
+            try {
+                in.close();
+            } finally {
+                in = null;
+            }
+        }
+    }
+
+    /**
+     * Decodes the next chars, reading more bytes when needed.
+     *
+     * @return true if chars were decoded, false at the end of the stream
+     * @throws IOException on I/O or decoding errors
+     */
+    private boolean fill() throws IOException {
+        if ((in == null) || flushed) {
+            return false;
+        }
+        chars.clear();
+        for (;;) {
+            CoderResult result = decoder.decode(byteBuffer, chars, endOfInput);
+            if (result.isError()) {
+                result.throwException();
+            }
+            if (chars.position() > 0) {
+                break;
+            }
+            if (endOfInput) {
+                decoder.flush(chars);
+                flushed = true;
+                break;
+            }
+            byteBuffer.compact();
+            int read = in.read(bytes, byteBuffer.position(), byteBuffer.remaining());
+            if (read < 0) {
+                endOfInput = true;
+            } else {
+                byteBuffer.position(byteBuffer.position() + read);
+            }
+            byteBuffer.flip();
+        }
+        chars.flip();
+        return chars.hasRemaining();
+    }
+}
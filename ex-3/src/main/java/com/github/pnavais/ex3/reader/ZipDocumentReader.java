@@ -0,0 +1,235 @@
+/*
+ *
+ * Copyright 2020 Pablo Navais
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+package com.github.pnavais.ex3.reader;
+
+import com.github.pnavais.ex3.api.exception.FileParsingException;
+import com.github.pnavais.ex3.api.reader.DocumentReader;
+import com.github.pnavais.ex3.index.DocTerm;
+import lombok.AllArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+
+/**
+ * An implementation of the Document reader for zip archives. Each entry
+ * of the archive is treated as its own document, identified by the entry
+ * name resolved against the archive path (i.e. /dir/bundle.zip/doc.txt).
+ * Entries whose names escape the archive path (i.e. ../doc.txt) are skipped.
+ * <p>
+ * Small entries are decompressed sequentially while their contents are tokenized
+ * in parallel by the readers of the {@link DocumentReaderFactory}. The amount of
+ * decompressed data waiting to be tokenized is bounded to avoid loading the whole
+ * archive in memory. Entries larger than {@link #STREAMING_THRESHOLD} are never
+ * loaded, they are tokenized while decompressed instead.
+ */
+@Slf4j
+public class ZipDocumentReader implements DocumentReader {
+
+    /** Maximum amount of decompressed bytes pending tokenization */
+    private static final long MAX_PENDING_BYTES = 64L * 1024 * 1024;
+
+    /** The size from which the entries are tokenized while decompressed */
+    static final int STREAMING_THRESHOLD = 1024 * 1024;
+
+    /** The size of the buffer used to read entries */
+    private static final int READ_BUFFER_SIZE = 64 * 1024;
+
+    /** The reader of the entries tokenized while decompressed, reused for the following ones */
+    private BufferedDocumentReader streamingReader;
+
+    /**
+     * Archives are not line oriented, their entries are read
+     * through {@link #processDocTerms(Path, Set)}.
+     *
+     * @return always empty
+     */
+    @Override
+    public Optional<String[]> getNextWords(String tokenSeparator) {
+        return Optional.empty();
+    }
+
+    /**
+     * Reads all the entries of the given archive storing the statistics
+     * for the given set of terms for each one of them.
+     *
+     * @param doc the archive to read
+     * @param terms the list of terms
+     * @return the statistics for the terms in every entry of the archive
+     * @throws FileParsingException on I/O errors
+     */
+    @Override
+    public List<DocTerm> processDocTerms(Path doc, Set<String> terms) throws FileParsingException {
+        List<DocTerm> docTerms = new ArrayList<>();
+        Deque<PendingEntry> pending = new ArrayDeque<>();
+        long pendingBytes = 0;
+
+        try (ZipInputStream zip = new ZipInputStream(new BufferedInputStream(Files.newInputStream(doc), READ_BUFFER_SIZE))) {
+            byte[] buffer = new byte[READ_BUFFER_SIZE];
+            ZipEntry entry;
+            while ((entry = zip.getNextEntry()) != null) {
+                Path entryDoc = entry.isDirectory() ? null : resolveEntry(doc, entry);
+                if (entryDoc == null) {
+                    continue;
+                }
+                if (entry.getSize() > STREAMING_THRESHOLD) {
+                    docTerms.addAll(tokenize(entryDoc, new byte[0], zip, terms));
+                    continue;
+                }
+
+                // Wait for the oldest entries until the entry fits in the data in flight
+                long reserved = (entry.getSize() >= 0) ? entry.getSize() : STREAMING_THRESHOLD + READ_BUFFER_SIZE;
+                while (!pending.isEmpty() && (pendingBytes + reserved > MAX_PENDING_BYTES)) {
+                    PendingEntry oldest = pending.poll();
+                    docTerms.addAll(oldest.result.join());
+                    pendingBytes -= oldest.size;
+                }
+
+                byte[] contents = readEntry(zip, buffer);
+                if (contents.length > STREAMING_THRESHOLD) {
+                    docTerms.addAll(tokenize(entryDoc, contents, zip, terms));
+                } else {
+                    pending.add(PendingEntry.of(contents.length,
+                            CompletableFuture.supplyAsync(() -> tokenize(entryDoc, contents, terms))));
+                    pendingBytes += contents.length;
+                }
+            }
+
+            while (!pending.isEmpty()) {
+                docTerms.addAll(pending.poll().result.join());
+            }
+        } catch (IOException | CompletionException e) {
+            pending.forEach(pendingEntry -> pendingEntry.result.cancel(true));
+            throw new FileParsingException("Error processing archive "+doc, e);
+        }
+
+        log.debug("Processed {} entries from archive [{}]", docTerms.stream().map(DocTerm::getDocument).distinct().count(), doc);
+
+        return docTerms;
+    }
+
+    /**
+     * Archives contain several documents
+     *
+     * @return always true
+     */
+    @Override
+    public boolean isContainer() {
+        return true;
+    }
+
+    /**
+     * Builds the path identifying the given entry in the index,
+     * rejecting the entries resolved out of the archive path.
+     *
+     * @param archive the archive
+     * @param entry the entry in the archive
+     * @return the path of the entry or null if out of the archive path
+     */
+    private static Path resolveEntry(Path archive, ZipEntry entry) {
+        String name = entry.getName();
+        int start = 0;
+        while ((start < name.length()) && (name.charAt(start) == '/')) {
+            start++;
+        }
+        Path root = archive.normalize();
+        Path entryDoc = root.resolve(name.substring(start)).normalize();
+        if (!entryDoc.startsWith(root) || entryDoc.equals(root)) {
+            log.warn("Skipping entry [{}] out of archive [{}]", name, archive);
+            return null;
+        }
+        return entryDoc;
+    }
+
+    /**
+     * Reads the contents of the current entry of the archive, stopping
+     * once more than {@link #STREAMING_THRESHOLD} bytes are read.
+     *
+     * @param zip the archive stream
+     * @param buffer the buffer to read into
+     * @return the decompressed entry contents, only the first ones if larger than the threshold
+     * @throws IOException on I/O errors
+     */
+    private static byte[] readEntry(ZipInputStream zip, byte[] buffer) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(buffer.length);
+        int read;
+        while ((out.size() <= STREAMING_THRESHOLD) && ((read = zip.read(buffer)) != -1)) {
+            out.write(buffer, 0, read);
+        }
+        return out.toByteArray();
+    }
+
+    /**
+     * Extracts the terms statistics of a single entry with
+     * the default reader of the {@link DocumentReaderFactory}.
+     *
+     * @param entryDoc the path of the entry
+     * @param contents the decompressed contents
+     * @param terms the list of terms
+     * @return the statistics for the terms in the entry
+     * @throws CompletionException wrapping the parsing errors
+     */
+    private static List<DocTerm> tokenize(Path entryDoc, byte[] contents, Set<String> terms) {
+        try {
+            return DocumentReaderFactory.getReader().processDocTerms(entryDoc, contents, terms);
+        } catch (FileParsingException e) {
+            throw new CompletionException(e);
+        }
+    }
+
+    /**
+     * Extracts the terms statistics of a single entry while its contents
+     * are decompressed, leaving the archive stream open.
+     *
+     * @param entryDoc the path of the entry
+     * @param head the contents of the entry already decompressed
+     * @param zip the archive stream positioned at the rest of the entry
+     * @param terms the list of terms
+     * @return the statistics for the terms in the entry
+     * @throws IOException on I/O errors
+     */
+    private List<DocTerm> tokenize(Path entryDoc, byte[] head, ZipInputStream zip, Set<String> terms)
+            throws IOException {
+        if (streamingReader == null) {
+            streamingReader = new BufferedDocumentReader();
+        }
+        InputStream entry = new FilterInputStream(zip) {
+            @Override
+            public void close() {
+                // The archive stream is closed once all the entries are read
+            }
+        };
+        InputStream contents = new SequenceInputStream(new ByteArrayInputStream(head), entry);
+        return streamingReader.processDocTerms(entryDoc, streamingReader.newReader(contents), terms);
+    }
+
+    /**
+     * An entry whose contents are being tokenized
+     */
+    @AllArgsConstructor(staticName = "of")
+    private static class PendingEntry {
+        private final long size;
+        private final CompletableFuture<List<DocTerm>> result;
+    }
+}
@@ -17,30 +17,65 @@
  */
 
 package com.github.pnavais.ex3.server;
+import com.github.pnavais.common.output.Colorize;
 import com.github.pnavais.ex3.api.event.BusEvent;
 import com.github.pnavais.ex3.api.event.BusEventListener;
 import com.github.pnavais.ex3.api.index.IndexManager;
+import com.github.pnavais.ex3.api.index.MergePolicy;
 import com.github.pnavais.ex3.api.ranking.RankingManager;
+import com.github.pnavais.ex3.api.staging.StagingQueue;
 import com.github.pnavais.ex3.api.watcher.DirectoryWatcher;
 import com.github.pnavais.ex3.config.TfIdfServerConfig;
+import com.github.pnavais.ex3.distributed.DistributedCoordinator;
+import com.github.pnavais.ex3.distributed.IndexWorker;
 import com.github.pnavais.ex3.event.FileEvent;
+import com.github.pnavais.ex3.event.OverflowEvent;
 import com.github.pnavais.ex3.event.SimpleEventBus;
+import com.github.pnavais.ex3.freshness.FreshnessTracker;
+import com.github.pnavais.ex3.index.IndexStorage;
+import com.github.pnavais.ex3.index.SizeTieredMergePolicy;
+import com.github.pnavais.ex3.normalizer.TermNormalizer;
+import com.github.pnavais.ex3.reader.DocumentReaderFactory;
+import com.github.pnavais.ex3.staging.BoundedStagingQueue;
+import com.github.pnavais.ex3.staging.OverflowPolicy;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
 
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Timer;
 import java.util.TimerTask;
+import java.util.concurrent.TimeUnit;
 
 /**
  * The TF/IDF Server starts as a daemon threads to wait for file events
  * and recompute the TF/IDF statistics and the ranking thread to display
  * at a fixed frequency the statistic ranking for the documents in the set.
+ * <p>
+ * The files notified by the watcher are staged in a bounded {@link StagingQueue},
+ * from which the server thread moves them to the index in batches. As the index
+ * bounds the number of documents being indexed concurrently, a slow indexer fills
+ * the queue, whose overflow policy then blocks the watcher, discards the files
+ * (scanning the directory again later) or spills them to disk.
  */
 @Component
 @Slf4j
 public class TfIdfServer implements Runnable, BusEventListener {
 
+    /**
+     * The maximum number of files moved at once to the index
+     */
+    private static final int MAX_BATCH_SIZE = 1024;
+
+    /**
+     * The time to wait for new files before checking for reconciliation requests
+     */
+    private static final long POLL_TIMEOUT_MS = 1000;
+
     /**
      * The server thread
      */
@@ -61,16 +96,33 @@ public class TfIdfServer implements Runnable, BusEventListener {
      */
     private final RankingManager rankingManager;
 
+    /**
+     * The queue of the files waiting to be indexed
+     */
+    private volatile StagingQueue stagingQueue;
+
+    /**
+     * The watched directory
+     */
+    private volatile Path input;
+
+    /**
+     * The worker serving the index to a coordinator, if any
+     */
+    private volatile IndexWorker indexWorker;
+
     @Autowired
     public TfIdfServer(DirectoryWatcher watcher, IndexManager manager, RankingManager rankingManager) {
         this.watcher = watcher;
         this.indexManager = manager;
         this.rankingManager = rankingManager;
+        this.stagingQueue = new BoundedStagingQueue(BoundedStagingQueue.DEFAULT_CAPACITY, OverflowPolicy.BLOCK);
 
         this.serverThread = new Thread(this);
         this.serverThread.setDaemon(true);
 
         SimpleEventBus.getDefault().register(FileEvent.class, this);
+        SimpleEventBus.getDefault().register(OverflowEvent.class, this);
     }
 
     /**
@@ -78,7 +130,31 @@ public class TfIdfServer implements Runnable, BusEventListener {
      * thread.
      */
     public void start(TfIdfServerConfig config) throws InterruptedException {
+        if (!config.getWorkers().isEmpty()) {
+            startCoordinator(config);
+            return;
+        }
+
         // Initialize the index
+        DocumentReaderFactory.setReaderSupplier(config.getReaderType().getReaderSupplier());
+        DocumentReaderFactory.setPooling(config.isPooledReaders());
+        DocumentReaderFactory.setRecordingPositions(config.isRecordingPositions());
+        if (config.isRecordingPositions() && (config.getStorage() != IndexStorage.HEAP)) {
+            log.warn("Term positions are only kept by the {} storage", IndexStorage.HEAP);
+        }
+        DocumentReaderFactory.setNormalizer(TermNormalizer.of(config.getNormalization()));
+        this.indexManager.setSegmentFactory(config.getStorage().getSegmentFactory());
+        this.indexManager.setIndexingExecutor(config.getIndexingMode().createExecutor(config.getMaxOpenFiles()));
+        this.indexManager.setMaxIndexing(config.getMaxIndexing());
+        this.indexManager.setBatchSize(config.getBatchSize());
+        this.indexManager.setMergePolicy((config.getMergeFactor() > 1) ? new SizeTieredMergePolicy(config.getMergeFactor(),
+                SizeTieredMergePolicy.DEFAULT_MAX_MERGED_SIZE) : MergePolicy.NONE);
+        this.stagingQueue = new BoundedStagingQueue(config.getQueueCapacity(), config.getOverflowPolicy());
+        this.input = config.getInput();
+        this.rankingManager.setScorer(config.getScoringFunction().getScorerSupplier().get());
+        this.rankingManager.setRankingMode(config.getRankingMode());
+        this.rankingManager.setParallelism(config.getRankingThreads());
+        this.rankingManager.setProximity(config.getProximity());
         this.indexManager.setTerms(config.getTerms());
         this.indexManager.loadFrom(config.getInput());
 
@@ -86,23 +162,115 @@ public class TfIdfServer implements Runnable, BusEventListener {
         watcher.registerPath(config.getInput());
         watcher.start();
 
+        if (config.getWorkerPort() != null) {
+            startWorker(config.getWorkerPort());
+        }
+
+        if (config.isStartupOnly()) {
+            rankingManager.displayTopResults(config.getMaxResults(), indexManager);
+            logStartupTime();
+            stop();
+            return;
+        }
+
         // Starts a ranking timer with the configured fixed rate (period) in milliseconds
         long period = config.getPeriod() * 1000L;
-        new Timer().scheduleAtFixedRate(new TimerTask() {
-            @Override
-            public void run() {
-                rankingManager.displayTopResults(config.getMaxResults(), indexManager);
-            }
-        }, period, period);
+        new Timer().scheduleAtFixedRate(skippingLateTicks(period, () -> {
+            rankingManager.displayTopResults(config.getMaxResults(), indexManager);
+            log.info("Staging queue : {}", stagingQueue.getMetrics());
+            log.info("Freshness : {}", FreshnessTracker.getDefault().getMetrics());
+        }), period, period);
 
         log.info("Looking for terms {} in directory [{}]. Ranking displayed every {}s", config.getTerms(),
                 config.getInput(), config.getPeriod());
 
         // Starts the server thread
+        logStartupTime();
         serverThread.start();
         serverThread.join();
     }
 
+    /**
+     * Starts displaying at a fixed rate the merged ranking of
+     * the documents indexed by the worker nodes of the configuration,
+     * instead of indexing a directory.
+     *
+     * @param config the server configuration
+     */
+    private void startCoordinator(TfIdfServerConfig config) {
+        DistributedCoordinator coordinator = new DistributedCoordinator(config.getWorkers());
+        List<String> terms = new ArrayList<>(config.getTerms());
+        Runnable display = () -> {
+            try {
+                coordinator.displayTopResults(config.getMaxResults(), config.getScoringFunction(), terms, System.out);
+            } catch (IOException | IllegalArgumentException e) {
+                log.error("Error ranking the documents of the worker nodes", e);
+                System.err.println(Colorize.fail("Cannot rank the worker nodes : " + e.getMessage()));
+            }
+        };
+
+        if (config.isStartupOnly()) {
+            display.run();
+            logStartupTime();
+            coordinator.close();
+            return;
+        }
+
+        long period = config.getPeriod() * 1000L;
+        new Timer().scheduleAtFixedRate(skippingLateTicks(period, display), 0, period);
+
+        log.info("Coordinating worker nodes {} for terms {}. Ranking displayed every {}s", config.getWorkers(),
+                config.getTerms(), config.getPeriod());
+        logStartupTime();
+    }
+
+    /**
+     * Starts serving the index to a coordinator on the given port.
+     *
+     * @param port the port
+     */
+    private void startWorker(int port) {
+        try {
+            indexWorker = new IndexWorker(indexManager, port);
+            indexWorker.start();
+        } catch (IOException e) {
+            log.error("Error starting the index worker", e);
+            System.err.println(Colorize.fail("Cannot serve the index on port " + port + " : " + e.getMessage()));
+        }
+    }
+
+    /**
+     * Creates a timer task for the given fixed rate, skipping the executions which
+     * are already a whole period late (the timer catches up back to back with the
+     * executions delayed by a long one, instead of skipping them).
+     *
+     * @param period the period of the timer in milliseconds
+     * @param task the task to run
+     * @return the timer task
+     */
+    private static TimerTask skippingLateTicks(long period, Runnable task) {
+        return new TimerTask() {
+            @Override
+            public void run() {
+                long delay = System.currentTimeMillis() - scheduledExecutionTime();
+                if (delay >= period) {
+                    log.warn("Skipping a ranking tick {} ms late", delay);
+                    return;
+                }
+                task.run();
+            }
+        };
+    }
+
+    /**
+     * Logs the time elapsed since the virtual machine started
+     */
+    private void logStartupTime() {
+        if (log.isInfoEnabled()) {
+            log.info("Server started in {} ms", ManagementFactory.getRuntimeMXBean().getUptime());
+        }
+    }
+
     /**
      * Stops the file directory watcher and the server thread
      */
@@ -110,40 +278,59 @@ public class TfIdfServer implements Runnable, BusEventListener {
         log.info("Stopping server");
         watcher.stop();
         serverThread.interrupt();
+        if (indexWorker != null) {
+            try {
+                indexWorker.close();
+            } catch (IOException e) {
+                log.warn("Error stopping the index worker : {}", e.getMessage());
+            }
+        }
     }
 
     /**
-     * Performs the loop to trigger the processing of incoming
-     * file notification events.
+     * Performs the loop moving the staged files to the index in batches.
+     * Once the queue is empty, the watched directory is scanned again
+     * if files were discarded.
      */
     @Override
     public void run() {
-        do {
-            synchronized (this) {
-                try {
-                    wait();
+        try {
+            do {
+                List<Path> files = stagingQueue.poll(MAX_BATCH_SIZE, POLL_TIMEOUT_MS, TimeUnit.MILLISECONDS);
+                if (!files.isEmpty()) {
+                    log.debug("Indexing {} staged file{} ({})", files.size(), files.size() > 1 ? "s" : "",
+                            stagingQueue.getMetrics());
+                    files.forEach(indexManager::addFile);
                     indexManager.refresh();
-                } catch (InterruptedException e) {
-                    Thread.currentThread().interrupt();
-                    return;
+                } else if (stagingQueue.pollReconciliation()) {
+                    log.info("Scanning directory [{}] for files not indexed", input);
+                    indexManager.loadFrom(input);
                 }
-            }
-        } while (true);
+            } while (!Thread.currentThread().isInterrupted());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
     }
 
     /**
-     * Reacts upon file notifications by adding the files to the
-     * index and notifying the server thread of the incoming bus notification.
+     * Reacts upon file notifications by staging the files
+     * to index, and upon lost notifications by requesting
+     * a reconciliation scan.
      *
      * @param e the file event.
      */
     @Override
     public void onEvent(BusEvent e) {
         if (e instanceof FileEvent) {
-            synchronized (this) {
-                ((FileEvent) e).getFileList().forEach(indexManager::addFile);
-                notifyAll();
+            try {
+                for (Path file : ((FileEvent) e).getFileList()) {
+                    stagingQueue.offer(file);
+                }
+            } catch (InterruptedException ie) {
+                Thread.currentThread().interrupt();
             }
+        } else if (e instanceof OverflowEvent) {
+            stagingQueue.requestReconciliation();
         }
     }
 
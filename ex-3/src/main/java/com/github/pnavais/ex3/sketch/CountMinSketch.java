@@ -0,0 +1,141 @@
+/*
+ *
+ * Copyright 2020 Pablo Navais
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+
+package com.github.pnavais.ex3.sketch;
+
+import com.github.pnavais.ex3.matcher.WordFilter;
+import lombok.Getter;
+
+import java.util.Arrays;
+
+/**
+ * A count-min sketch estimating how many times each key was added in a fixed
+ * amount of memory. Estimates never fall below the exact count and exceed it
+ * by at most epsilon times the total count with probability 1 - delta, using
+ * e / epsilon counters per row and ln(1 / delta) rows.
+ * <p>
+ * Counters are updated conservatively, only increasing the ones equal to the
+ * current estimate, which keeps the same guarantees with smaller errors.
+ * Keys are hashes of words (see {@link WordFilter#hash(String)}), mixed and
+ * split in two halves to derive the counter of each row by double hashing.
+ * <p>
+ * Not thread safe.
+ */
+public class CountMinSketch {
+
+    /** The number of counters per row */
+    @Getter
+    private final int width;
+
+    /** The number of rows */
+    @Getter
+    private final int depth;
+
+    /** The counters, row after row */
+    private final int[] counters;
+
+    /** The total count of the keys added */
+    @Getter
+    private long totalCount;
+
+    /**
+     * Creates the sketch for the given error bounds.
+     *
+     * @param epsilon the maximum error relative to the total count, between 0 and 1 (exclusive)
+     * @param delta the probability of exceeding the maximum error, between 0 and 1 (exclusive)
+     */
+    public CountMinSketch(double epsilon, double delta) {
+        if ((epsilon <= 0) || (epsilon >= 1) || (delta <= 0) || (delta >= 1)) {
+            throw new IllegalArgumentException("The error bounds must be between 0 and 1");
+        }
+        this.width = (int) Math.ceil(Math.E / epsilon);
+        this.depth = (int) Math.ceil(Math.log(1 / delta));
+        this.counters = new int[width * depth];
+    }
+
+    /**
+     * Increases the count of the given key.
+     *
+     * @param key the key
+     * @return the estimated count of the key after adding it
+     */
+    public long add(long key) {
+        long mixed = WordFilter.mix(key);
+        int h1 = (int) mixed;
+        int h2 = (int) (mixed >>> 32);
+        int min = Integer.MAX_VALUE;
+        for (int row = 0; row < depth; row++) {
+            min = Math.min(min, counters[slot(row, h1, h2)]);
+        }
+        int updated = (min == Integer.MAX_VALUE) ? min : min + 1;
+        for (int row = 0; row < depth; row++) {
+            int slot = slot(row, h1, h2);
+            if (counters[slot] < updated) {
+                counters[slot] = updated;
+            }
+        }
+        totalCount++;
+        return updated;
+    }
+
+    /**
+     * Estimates the count of the given key.
+     *
+     * @param key the key
+     * @return the estimated count, never below the exact one
+     */
+    public long estimate(long key) {
+        long mixed = WordFilter.mix(key);
+        int h1 = (int) mixed;
+        int h2 = (int) (mixed >>> 32);
+        int min = Integer.MAX_VALUE;
+        for (int row = 0; row < depth; row++) {
+            min = Math.min(min, counters[slot(row, h1, h2)]);
+        }
+        return min;
+    }
+
+    /**
+     * Resets the counts of all the keys.
+     */
+    public void clear() {
+        Arrays.fill(counters, 0);
+        totalCount = 0;
+    }
+
+    /**
+     * Retrieves the memory taken by the counters.
+     *
+     * @return the size in bytes
+     */
+    public long sizeInBytes() {
+        return (long) counters.length * Integer.BYTES;
+    }
+
+    /**
+     * Computes the counter of the key in the given row.
+     *
+     * @param row the row
+     * @param h1 the first half of the mixed hash of the key
+     * @param h2 the second half of the mixed hash of the key
+     * @return the position of the counter
+     */
+    private int slot(int row, int h1, int h2) {
+        return row * width + ((h1 + row * h2) & Integer.MAX_VALUE) % width;
+    }
+}
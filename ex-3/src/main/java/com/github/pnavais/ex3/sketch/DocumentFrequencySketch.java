@@ -0,0 +1,177 @@
+/*
+ *
+ * Copyright 2020 Pablo Navais
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+
+package com.github.pnavais.ex3.sketch;
+
+import com.github.pnavais.ex3.matcher.CompiledTermSet;
+import com.github.pnavais.ex3.matcher.WordFilter;
+import lombok.Getter;
+
+import java.util.List;
+
+/**
+ * Estimates the document frequency of every word ever indexed in a fixed
+ * amount of memory, allowing to compute the idf of arbitrary terms.
+ * <p>
+ * Each document accounts once for every distinct word it contains. Counts are
+ * kept in a {@link CountMinSketch}, never underestimating the document frequency
+ * and overestimating it by at most epsilon times the total number of words
+ * accounted with probability 1 - delta. As this error is relative to the total
+ * count, the most frequent words are also tracked by {@link HeavyHitters},
+ * counted exactly if tracked since their first document.
+ * <p>
+ * The document frequency of a phrase is bounded by the one of its least
+ * frequent word, which is the estimate retrieved for phrases.
+ */
+public class DocumentFrequencySketch {
+
+    /** The default maximum error relative to the total count */
+    public static final double DEFAULT_EPSILON = 1e-5;
+
+    /** The default probability of exceeding the maximum error */
+    public static final double DEFAULT_DELTA = 0.01;
+
+    /** The default number of frequent words tracked */
+    public static final int DEFAULT_HEAVY_HITTERS = 1000;
+
+    /** Approximate bytes taken by each frequent word tracked (heap entry and index) */
+    private static final int HEAVY_HITTER_BYTES = 3 * Long.BYTES + 64;
+
+    /** The maximum error relative to the total count */
+    @Getter
+    private final double epsilon;
+
+    /** The probability of exceeding the maximum error */
+    @Getter
+    private final double delta;
+
+    /** The document frequencies of all the words */
+    private final CountMinSketch frequencies;
+
+    /** The most frequent words */
+    private final HeavyHitters heavyHitters;
+
+    /** The number of documents accounted */
+    private long documents;
+
+    /**
+     * Creates the sketch with the default error bounds and frequent words tracked.
+     */
+    public DocumentFrequencySketch() {
+        this(DEFAULT_EPSILON, DEFAULT_DELTA, DEFAULT_HEAVY_HITTERS);
+    }
+
+    /**
+     * Creates the sketch with the given error bounds and frequent words tracked.
+     *
+     * @param epsilon the maximum error relative to the total count, between 0 and 1 (exclusive)
+     * @param delta the probability of exceeding the maximum error, between 0 and 1 (exclusive)
+     * @param heavyHitters the number of frequent words tracked (at least 1)
+     */
+    public DocumentFrequencySketch(double epsilon, double delta, int heavyHitters) {
+        this.epsilon = epsilon;
+        this.delta = delta;
+        this.frequencies = new CountMinSketch(epsilon, delta);
+        this.heavyHitters = new HeavyHitters(heavyHitters);
+    }
+
+    /**
+     * Accounts a document with the given distinct words.
+     *
+     * @param wordHashes the hashes of the distinct words of the document (see {@link WordFilter#hash(String)})
+     */
+    public synchronized void addDocument(long[] wordHashes) {
+        for (long hash : wordHashes) {
+            frequencies.add(hash);
+            heavyHitters.add(hash);
+        }
+        documents++;
+    }
+
+    /**
+     * Estimates the number of documents containing the word with the given hash.
+     *
+     * @param wordHash the hash of the word
+     * @return the estimated document frequency, never below the exact one
+     */
+    public synchronized long estimate(long wordHash) {
+        long estimate = frequencies.estimate(wordHash);
+        return heavyHitters.contains(wordHash) ? Math.min(estimate, heavyHitters.count(wordHash)) : estimate;
+    }
+
+    /**
+     * Estimates the number of documents containing the given term. Phrases
+     * are estimated by their least frequent word.
+     *
+     * @param term the term
+     * @return the estimated document frequency, never below the exact one
+     */
+    public long estimate(String term) {
+        List<String> words = CompiledTermSet.words(term);
+        long estimate = words.isEmpty() ? 0 : Long.MAX_VALUE;
+        for (String word : words) {
+            estimate = Math.min(estimate, estimate(WordFilter.hash(word)));
+        }
+        return estimate;
+    }
+
+    /**
+     * Retrieves the maximum overestimation of the document frequencies
+     * (with probability 1 - delta), i.e. epsilon times the number of
+     * distinct words accounted for every document.
+     *
+     * @return the error bound in documents
+     */
+    public synchronized long getErrorBound() {
+        return (long) Math.ceil(epsilon * frequencies.getTotalCount());
+    }
+
+    /**
+     * Retrieves the number of documents accounted.
+     *
+     * @return the number of documents
+     */
+    public synchronized long getDocuments() {
+        return documents;
+    }
+
+    /**
+     * Retrieves the approximate memory taken by the sketch, fixed
+     * regardless of the number of documents and words accounted.
+     *
+     * @return the size in bytes
+     */
+    public long sizeInBytes() {
+        return frequencies.sizeInBytes() + (long) heavyHitters.getCapacity() * HEAVY_HITTER_BYTES;
+    }
+
+    /**
+     * Resets the sketch, forgetting all the documents accounted.
+     */
+    public synchronized void clear() {
+        frequencies.clear();
+        heavyHitters.clear();
+        documents = 0;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return String.format("%d documents, %d words accounted, error <= %d documents (%.0f%% confidence), %d KB",
+                documents, frequencies.getTotalCount(), getErrorBound(), (1 - delta) * 100, sizeInBytes() / 1024);
+    }
+}
@@ -0,0 +1,208 @@
+/*
+ *
+ * Copyright 2020 Pablo Navais
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+
+package com.github.pnavais.ex3.sketch;
+
+import lombok.Getter;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Tracks the most frequent keys in a fixed number of counters (Space-Saving).
+ * Keys not tracked replace the least counted one, inheriting its count as their
+ * error, so every key added more than total count / capacity times is tracked,
+ * and the count of a tracked key exceeds the exact one by at most its error.
+ * Keys tracked since their first addition are thus counted exactly.
+ * <p>
+ * Counters are kept in a min-heap indexed by key, so each addition takes
+ * logarithmic time in the capacity. Not thread safe.
+ */
+public class HeavyHitters {
+
+    /** The maximum number of keys tracked */
+    @Getter
+    private final int capacity;
+
+    /** The keys tracked, as a min-heap by count */
+    private final long[] keys;
+
+    /** The counts of the keys */
+    private final long[] counts;
+
+    /** The maximum overestimation of the counts of the keys */
+    private final long[] errors;
+
+    /** The position in the heap of each key tracked */
+    private final Map<Long, Integer> positions;
+
+    /** The number of keys tracked */
+    private int size;
+
+    /**
+     * Creates the structure tracking the given number of keys.
+     *
+     * @param capacity the maximum number of keys tracked (at least 1)
+     */
+    public HeavyHitters(int capacity) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("The capacity must be at least 1");
+        }
+        this.capacity = capacity;
+        this.keys = new long[capacity];
+        this.counts = new long[capacity];
+        this.errors = new long[capacity];
+        this.positions = new HashMap<>(capacity * 2);
+    }
+
+    /**
+     * Increases the count of the given key, tracking it if needed.
+     *
+     * @param key the key
+     */
+    public void add(long key) {
+        Integer position = positions.get(key);
+        if (position != null) {
+            counts[position]++;
+            siftDown(position);
+        } else if (size < capacity) {
+            keys[size] = key;
+            counts[size] = 1;
+            errors[size] = 0;
+            positions.put(key, size);
+            siftUp(size++);
+        } else {
+            positions.remove(keys[0]);
+            keys[0] = key;
+            errors[0] = counts[0];
+            counts[0]++;
+            positions.put(key, 0);
+            siftDown(0);
+        }
+    }
+
+    /**
+     * Checks whether the given key is tracked.
+     *
+     * @param key the key
+     * @return true if tracked, false otherwise
+     */
+    public boolean contains(long key) {
+        return positions.containsKey(key);
+    }
+
+    /**
+     * Retrieves the count of the given key.
+     *
+     * @param key the key
+     * @return the count, at most its error above the exact one, or 0 if not tracked
+     */
+    public long count(long key) {
+        Integer position = positions.get(key);
+        return (position != null) ? counts[position] : 0;
+    }
+
+    /**
+     * Retrieves the maximum overestimation of the count of the given key.
+     *
+     * @param key the key
+     * @return the error of the count or 0 if not tracked
+     */
+    public long error(long key) {
+        Integer position = positions.get(key);
+        return (position != null) ? errors[position] : 0;
+    }
+
+    /**
+     * Retrieves the number of keys tracked.
+     *
+     * @return the number of keys
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Stops tracking all the keys.
+     */
+    public void clear() {
+        positions.clear();
+        size = 0;
+    }
+
+    /**
+     * Moves the counter at the given position towards the root
+     * while its count is lower than the one of its parent.
+     *
+     * @param position the position in the heap
+     */
+    private void siftUp(int position) {
+        while (position > 0) {
+            int parent = (position - 1) >>> 1;
+            if (counts[parent] <= counts[position]) {
+                return;
+            }
+            swap(position, parent);
+            position = parent;
+        }
+    }
+
+    /**
+     * Moves the counter at the given position towards the leaves
+     * while its count is greater than the one of its children.
+     *
+     * @param position the position in the heap
+     */
+    private void siftDown(int position) {
+        for (;;) {
+            int smallest = position;
+            int left = 2 * position + 1;
+            if ((left < size) && (counts[left] < counts[smallest])) {
+                smallest = left;
+            }
+            if ((left + 1 < size) && (counts[left + 1] < counts[smallest])) {
+                smallest = left + 1;
+            }
+            if (smallest == position) {
+                return;
+            }
+            swap(position, smallest);
+            position = smallest;
+        }
+    }
+
+    /**
+     * Swaps the counters at the given positions.
+     *
+     * @param i the first position
+     * @param j the second position
+     */
+    private void swap(int i, int j) {
+        long key = keys[i];
+        long count = counts[i];
+        long error = errors[i];
+        keys[i] = keys[j];
+        counts[i] = counts[j];
+        errors[i] = errors[j];
+        keys[j] = key;
+        counts[j] = count;
+        errors[j] = error;
+        positions.put(keys[i], i);
+        positions.put(keys[j], j);
+    }
+}
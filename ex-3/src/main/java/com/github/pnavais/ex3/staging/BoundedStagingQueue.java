@@ -0,0 +1,261 @@
+/*
+ *
+ * Copyright 2020 Pablo Navais
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+
+package com.github.pnavais.ex3.staging;
+
+import com.github.pnavais.ex3.api.staging.StagingQueue;
+import lombok.NonNull;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * An implementation of the {@link StagingQueue} holding a bounded number of
+ * files in memory. Files offered to the full queue are handled as follows,
+ * depending on its {@link OverflowPolicy} :
+ * - BLOCK : the caller (i.e. the watcher) waits until the indexer makes room.
+ * - SHED : the file is discarded and a reconciliation scan is requested, so the
+ *   file is indexed afterwards by scanning its directory.
+ * - SPILL : the file name is appended to a spill file on disk, read back in order
+ *   as the queue is drained. New files keep being spilled while the spill file is
+ *   not empty, preserving the order of arrival.
+ */
+@Slf4j
+public class BoundedStagingQueue implements StagingQueue {
+
+    /** The default maximum number of files in memory */
+    public static final int DEFAULT_CAPACITY = 10_000;
+
+    /** The files in memory */
+    private final BlockingQueue<Path> queue;
+
+    /** The maximum number of files in memory */
+    private final int capacity;
+
+    /** The overflow policy */
+    private final OverflowPolicy policy;
+
+    /** The directory of the spill file */
+    private final Path spillDirectory;
+
+    /** The spill file, created on first use (guarded by this) */
+    private SpillFile spill;
+
+    /** Whether a reconciliation scan was requested */
+    private final AtomicBoolean reconciliation;
+
+    /** The highest number of files held in memory */
+    private final AtomicInteger maxDepth;
+
+    /** The total number of files accepted */
+    private final LongAdder accepted;
+
+    /** The total number of files discarded */
+    private final LongAdder shed;
+
+    /** The total number of files spilled to disk */
+    private final LongAdder totalSpilled;
+
+    /** The total time blocked waiting for room */
+    private final LongAdder blockedNanos;
+
+    /**
+     * Creates the queue spilling files, if needed, to the temporary directory.
+     *
+     * @param capacity the maximum number of files in memory
+     * @param policy the overflow policy
+     */
+    public BoundedStagingQueue(int capacity, @NonNull OverflowPolicy policy) {
+        this(capacity, policy, Paths.get(System.getProperty("java.io.tmpdir")));
+    }
+
+    /**
+     * Creates the queue spilling files, if needed, to the given directory.
+     *
+     * @param capacity the maximum number of files in memory
+     * @param policy the overflow policy
+     * @param spillDirectory the directory of the spill file
+     */
+    public BoundedStagingQueue(int capacity, @NonNull OverflowPolicy policy, @NonNull Path spillDirectory) {
+        this.capacity = Math.max(1, capacity);
+        this.queue = new ArrayBlockingQueue<>(this.capacity);
+        this.policy = policy;
+        this.spillDirectory = spillDirectory;
+        this.reconciliation = new AtomicBoolean();
+        this.maxDepth = new AtomicInteger();
+        this.accepted = new LongAdder();
+        this.shed = new LongAdder();
+        this.totalSpilled = new LongAdder();
+        this.blockedNanos = new LongAdder();
+    }
+
+    /**
+     * Adds a new file to the queue, applying the
+     * overflow policy if the queue is full.
+     *
+     * @param file the file
+     * @throws InterruptedException if interrupted while waiting for room in the queue
+     */
+    @Override
+    public void offer(@NonNull Path file) throws InterruptedException {
+        switch (policy) {
+            case BLOCK:
+                if (!queue.offer(file)) {
+                    long start = System.nanoTime();
+                    queue.put(file);
+                    blockedNanos.add(System.nanoTime() - start);
+                }
+                accepted.increment();
+                break;
+            case SHED:
+                if (queue.offer(file)) {
+                    accepted.increment();
+                } else {
+                    discard(file);
+                }
+                break;
+            case SPILL:
+            default:
+                offerOrSpill(file);
+                break;
+        }
+        maxDepth.accumulateAndGet(queue.size(), Math::max);
+    }
+
+    /**
+     * Retrieves and removes the next files of the queue, waiting for them if
+     * the queue is empty. Spilled files are first read back into the queue.
+     *
+     * @param maxFiles the maximum number of files to retrieve
+     * @param timeout the maximum time to wait
+     * @param unit the unit of the timeout
+     * @return the files or an empty list if none arrived before the timeout
+     * @throws InterruptedException if interrupted while waiting
+     */
+    @Override
+    public List<Path> poll(int maxFiles, long timeout, TimeUnit unit) throws InterruptedException {
+        refill();
+        List<Path> files = new ArrayList<>();
+        Path first = queue.poll(timeout, unit);
+        if (first != null) {
+            files.add(first);
+            queue.drainTo(files, maxFiles - 1);
+        }
+        return files;
+    }
+
+    /**
+     * Requests a reconciliation scan of the watched directories.
+     */
+    @Override
+    public void requestReconciliation() {
+        reconciliation.set(true);
+    }
+
+    /**
+     * Checks and clears the pending reconciliation request.
+     *
+     * @return true if a reconciliation scan was requested, false otherwise
+     */
+    @Override
+    public boolean pollReconciliation() {
+        return reconciliation.getAndSet(false);
+    }
+
+    /**
+     * Retrieves the current metrics of the queue.
+     *
+     * @return the metrics
+     */
+    @Override
+    public StagingMetrics getMetrics() {
+        long spilled;
+        synchronized (this) {
+            spilled = (spill != null) ? spill.size() : 0;
+        }
+        return new StagingMetrics(queue.size(), capacity, maxDepth.get(), spilled, accepted.sum(), shed.sum(),
+                totalSpilled.sum(), TimeUnit.NANOSECONDS.toMillis(blockedNanos.sum()));
+    }
+
+    /**
+     * Adds the file to the queue if there is room and no files are
+     * waiting in the spill file, otherwise appends it to the spill file.
+     *
+     * @param file the file
+     */
+    private synchronized void offerOrSpill(Path file) {
+        if (((spill == null) || (spill.size() == 0)) && queue.offer(file)) {
+            accepted.increment();
+            return;
+        }
+        try {
+            if (spill == null) {
+                spill = new SpillFile(spillDirectory);
+            }
+            spill.append(file);
+            accepted.increment();
+            totalSpilled.increment();
+        } catch (IOException e) {
+            log.error("Error spilling file [{}] to disk. Cause : {}", file, e.getMessage());
+            discard(file);
+        }
+    }
+
+    /**
+     * Moves the spilled files back to the queue while there is room.
+     */
+    private synchronized void refill() {
+        try {
+            while ((spill != null) && (spill.size() > 0) && (queue.remainingCapacity() > 0)) {
+                queue.offer(spill.next());
+            }
+        } catch (IOException e) {
+            // The remaining files are discarded, relying on the reconciliation scan
+            log.error("Error reading spilled files. Cause : {}", e.getMessage());
+            shed.add(spill.size());
+            requestReconciliation();
+            try {
+                spill.close();
+            } catch (IOException ce) {
+                log.error("Error closing spill file", ce);
+            }
+            spill = null;
+        }
+    }
+
+    /**
+     * Discards the file, requesting a reconciliation scan to index it later.
+     *
+     * @param file the file
+     */
+    private void discard(Path file) {
+        log.trace("Staging queue full, discarding file [{}]", file);
+        shed.increment();
+        requestReconciliation();
+    }
+}
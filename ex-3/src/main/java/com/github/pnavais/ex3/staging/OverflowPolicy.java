@@ -0,0 +1,34 @@
+/*
+ *
+ * Copyright 2020 Pablo Navais
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+
+package com.github.pnavais.ex3.staging;
+
+/**
+ * The policies applied to the files offered to a full {@link BoundedStagingQueue}
+ */
+public enum OverflowPolicy {
+
+    /** Blocks the watcher until there is room in the queue */
+    BLOCK,
+
+    /** Discards the file, requesting a reconciliation scan of the watched directories */
+    SHED,
+
+    /** Appends the file name to a spill file on disk, read back once the queue is drained */
+    SPILL
+}
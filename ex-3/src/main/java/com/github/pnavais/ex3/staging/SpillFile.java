@@ -0,0 +1,146 @@
+/*
+ *
+ * Copyright 2020 Pablo Navais
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+
+package com.github.pnavais.ex3.staging;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileSystem;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * A FIFO of file names stored in a temporary file. Each name is written
+ * as its length (int) followed by its UTF-8 bytes, reading them back
+ * from a separate position. The file is truncated once fully read.
+ */
+final class SpillFile implements Closeable {
+
+    /** The channel of the file */
+    private final FileChannel channel;
+
+    /** The file system of the spilled files */
+    private FileSystem fileSystem;
+
+    /** The position of the next name written */
+    private long writePosition;
+
+    /** The position of the next name read */
+    private long readPosition;
+
+    /** The number of names not yet read */
+    private long size;
+
+    /**
+     * Creates the spill file in the given directory. The file is deleted
+     * right away when possible, otherwise when the JVM exits.
+     *
+     * @param directory the directory
+     * @throws IOException on I/O errors
+     */
+    SpillFile(Path directory) throws IOException {
+        Path file = Files.createTempFile(directory, "staging", ".spill");
+        try {
+            this.channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        } finally {
+            if (!file.toFile().delete()) {
+                file.toFile().deleteOnExit();
+            }
+        }
+    }
+
+    /**
+     * Appends the name of a file.
+     *
+     * @param path the file
+     * @throws IOException on I/O errors
+     */
+    void append(Path path) throws IOException {
+        fileSystem = path.getFileSystem();
+        byte[] name = path.toString().getBytes(StandardCharsets.UTF_8);
+        ByteBuffer record = ByteBuffer.allocate(Integer.BYTES + name.length);
+        record.putInt(name.length).put(name).flip();
+        while (record.hasRemaining()) {
+            writePosition += channel.write(record, writePosition);
+        }
+        size++;
+    }
+
+    /**
+     * Reads the next file, truncating the spill file when no names remain.
+     *
+     * @return the file or null if none remain
+     * @throws IOException on I/O errors
+     */
+    Path next() throws IOException {
+        if (size == 0) {
+            return null;
+        }
+        ByteBuffer length = read(Integer.BYTES);
+        ByteBuffer name = read(length.getInt());
+        if (--size == 0) {
+            channel.truncate(0);
+            readPosition = 0;
+            writePosition = 0;
+        }
+        return fileSystem.getPath(new String(name.array(), StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Retrieves the number of names not yet read.
+     *
+     * @return the number of names
+     */
+    long size() {
+        return size;
+    }
+
+    /**
+     * Closes the spill file.
+     *
+     * @throws IOException on I/O errors
+     */
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    /**
+     * Reads the given number of bytes at the read position.
+     *
+     * @param length the number of bytes
+     * @return the buffer with the bytes read
+     * @throws IOException on I/O errors
+     */
+    private ByteBuffer read(int length) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(length);
+        while (buffer.hasRemaining()) {
+            int read = channel.read(buffer, readPosition);
+            if (read < 0) {
+                throw new IOException("Unexpected end of spill file");
+            }
+            readPosition += read;
+        }
+        buffer.flip();
+        return buffer;
+    }
+}
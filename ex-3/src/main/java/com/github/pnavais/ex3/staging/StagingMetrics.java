@@ -0,0 +1,60 @@
+/*
+ *
+ * Copyright 2020 Pablo Navais
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+
+package com.github.pnavais.ex3.staging;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+/**
+ * The metrics of a staging queue at a given point in time
+ */
+@Getter
+@AllArgsConstructor
+public class StagingMetrics {
+
+    /** The number of files in memory */
+    private final int depth;
+
+    /** The maximum number of files in memory */
+    private final int capacity;
+
+    /** The highest number of files held in memory */
+    private final int maxDepth;
+
+    /** The number of files spilled to disk not yet read back */
+    private final long spilled;
+
+    /** The total number of files accepted */
+    private final long accepted;
+
+    /** The total number of files discarded */
+    private final long shed;
+
+    /** The total number of files spilled to disk */
+    private final long totalSpilled;
+
+    /** The total time the watcher was blocked in milliseconds */
+    private final long blockedMillis;
+
+    @Override
+    public String toString() {
+        return String.format("depth=%d/%d maxDepth=%d spilled=%d accepted=%d shed=%d totalSpilled=%d blocked=%dms",
+                depth, capacity, maxDepth, spilled, accepted, shed, totalSpilled, blockedMillis);
+    }
+}
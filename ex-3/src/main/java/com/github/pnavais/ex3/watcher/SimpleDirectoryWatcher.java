@@ -21,7 +21,9 @@ package com.github.pnavais.ex3.watcher;
 import com.github.pnavais.ex3.api.watcher.DirectoryWatcher;
 import com.github.pnavais.common.file.FileCommons;
 import com.github.pnavais.ex3.event.FileEvent;
+import com.github.pnavais.ex3.event.OverflowEvent;
 import com.github.pnavais.ex3.event.SimpleEventBus;
+import com.github.pnavais.ex3.freshness.FreshnessTracker;
 import lombok.NonNull;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Component;
@@ -31,6 +33,7 @@ import java.nio.file.*;
 import java.util.*;
 
 import static java.nio.file.StandardWatchEventKinds.ENTRY_CREATE;
+import static java.nio.file.StandardWatchEventKinds.OVERFLOW;
 
 /**
  * The directory watcher allows to obtain notifications on
@@ -109,7 +112,7 @@ public class SimpleDirectoryWatcher implements DirectoryWatcher {
      */
     @Override
     public void stop() {
-        if (this.watchThread.isAlive() && !(this.watchThread.isInterrupted())) {
+        if ((this.watchThread != null) && this.watchThread.isAlive() && !(this.watchThread.isInterrupted())) {
             this.watchThread.interrupt();
         }
     }
@@ -141,7 +144,8 @@ public class SimpleDirectoryWatcher implements DirectoryWatcher {
 
     /**
      * Verify poll events to check if the event is valid
-     * or not and new files have been created.
+     * or not and new files have been created. Lost events
+     * are notified so the directory can be scanned again.
      *
      * @param key the key to verify
      * @return the list of new files or empty
@@ -151,7 +155,12 @@ public class SimpleDirectoryWatcher implements DirectoryWatcher {
 
         for (WatchEvent<?> event : key.pollEvents()) {
             if ((event.kind() == ENTRY_CREATE) && (event.context() instanceof Path)) {
-                newFiles.add(keyMap.get(key).resolve((Path)event.context()));
+                Path file = keyMap.get(key).resolve((Path)event.context());
+                FreshnessTracker.getDefault().watched(file);
+                newFiles.add(file);
+            } else if (event.kind() == OVERFLOW) {
+                log.warn("File events lost for directory \"{}\"", keyMap.get(key));
+                SimpleEventBus.getDefault().publish(OverflowEvent.with(keyMap.get(key)));
             }
         }
 
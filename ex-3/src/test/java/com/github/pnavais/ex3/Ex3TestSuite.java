@@ -19,6 +19,7 @@
 package com.github.pnavais.ex3;
 
 import org.junit.platform.runner.JUnitPlatform;
+import org.junit.platform.suite.api.SelectClasses;
 import org.junit.platform.suite.api.SelectPackages;
 import org.junit.platform.suite.api.SuiteDisplayName;
 import org.junit.runner.RunWith;
@@ -29,6 +30,11 @@ import org.junit.runner.RunWith;
  */
 @RunWith(JUnitPlatform.class)
 @SuiteDisplayName("Unit tests for the Exercise 2")
-@SelectPackages("com.github.pnavais.ex3.index")
+@SelectClasses(TfIdfServerLiteAppTest.class)
+@SelectPackages({"com.github.pnavais.ex3.index", "com.github.pnavais.ex3.matcher", "com.github.pnavais.ex3.normalizer",
+        "com.github.pnavais.ex3.loadgen", "com.github.pnavais.ex3.staging",
+        "com.github.pnavais.ex3.freshness", "com.github.pnavais.ex3.sketch",
+        "com.github.pnavais.ex3.distributed", "com.github.pnavais.ex3.reader",
+        "com.github.pnavais.ex3.jfr"})
 public class Ex3TestSuite {
 }
@@ -0,0 +1,83 @@
+/*
+ *
+ * Copyright 2020 Pablo Navais
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+
+package com.github.pnavais.ex3;
+
+import com.github.pnavais.ex3.config.TfIdfServerConfig;
+import com.github.pnavais.ex3.index.SimpleIndexManager;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import picocli.CommandLine;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static java.util.concurrent.TimeUnit.SECONDS;
+import static org.awaitility.Awaitility.await;
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for the {@link TfIdfServerLiteApp} class
+ */
+@DisplayName("Unit tests for the TfIdfServerLiteApp class")
+public class TfIdfServerLiteAppTest {
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    @DisplayName("Parse the configuration and start the server without the Spring context")
+    void startLiteServerTest() throws IOException {
+        Files.write(tempDir.resolve("doc1.txt"), "Dummy string for test purposes".getBytes(StandardCharsets.UTF_8));
+        Files.write(tempDir.resolve("doc2.txt"), "Dummy string".getBytes(StandardCharsets.UTF_8));
+
+        SimpleIndexManager manager = new SimpleIndexManager();
+        AtomicReference<TfIdfServerConfig> parsed = new AtomicReference<>();
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        PrintStream stdout = System.out;
+        int exitCode;
+        System.setOut(new PrintStream(out, true, StandardCharsets.UTF_8.name()));
+        try {
+            exitCode = new CommandLine(new TfIdfServerConfig(cfg -> {
+                parsed.set(cfg);
+                TfIdfServerLiteApp.run(cfg, manager);
+            })).setCaseInsensitiveEnumValuesAllowed(true)
+                    .execute("-d", tempDir.toString(), "-t", "test \"dummy string\"", "-n", "3", "--merge-factor", "1",
+                            "--lite", "--startup-only");
+        } finally {
+            System.setOut(stdout);
+        }
+
+        assertEquals(0, exitCode, "Exit code mismatch");
+        TfIdfServerConfig config = parsed.get();
+        assertNotNull(config, "The lite application should be run");
+        assertTrue(config.isLite(), "The lite option should be parsed");
+        assertEquals(tempDir, config.getInput(), "Input directory mismatch");
+        assertEquals(3, config.getMaxResults(), "Maximum results mismatch");
+        assertTrue(config.getTerms().contains("dummy string"), "Phrases should be parsed");
+        assertEquals(config.getTerms(), manager.getTerms(), "The index manager should be wired with the terms");
+        assertTrue(out.toString(StandardCharsets.UTF_8.name()).contains("Top 3"), "The ranking should be displayed");
+        await().atMost(5, SECONDS).until(() -> manager.size() == 2);
+    }
+}
@@ -0,0 +1,220 @@
+/*
+ *
+ * Copyright 2020 Pablo Navais
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+
+package com.github.pnavais.ex3.distributed;
+
+import com.github.pnavais.ex3.index.IndexSnapshot;
+import com.github.pnavais.ex3.index.SimpleIndexManager;
+import com.github.pnavais.ex3.ranking.ScoringFunction;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.jimfs.Configuration;
+import com.google.common.jimfs.Jimfs;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileSystem;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static java.util.concurrent.TimeUnit.SECONDS;
+import static org.awaitility.Awaitility.await;
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for the ranking of a collection partitioned among several worker nodes
+ */
+@DisplayName("Unit tests for the distributed ranking")
+public class DistributedRankingTest {
+
+    /** In-memory filesystem */
+    private static final FileSystem testFileSystem = Jimfs.newFileSystem(Configuration.unix());
+
+    /** The terms to rank */
+    private static final List<String> TERMS = ImmutableList.of("common", "frequent", "rare", "frequent word");
+
+    /** The number of worker nodes */
+    private static final int NODES = 3;
+
+    /** The index of all the documents */
+    private static SimpleIndexManager single;
+
+    /** The workers serving each partition of the documents */
+    private static final List<IndexWorker> workers = new ArrayList<>();
+
+    /** The addresses of the workers */
+    private static final List<InetSocketAddress> addresses = new ArrayList<>();
+
+    @BeforeAll
+    static void startWorkers() throws IOException {
+        Path all = Files.createDirectories(testFileSystem.getPath("/all"));
+        List<Path> partitions = new ArrayList<>();
+        for (int p = 0; p < NODES; p++) {
+            partitions.add(Files.createDirectories(testFileSystem.getPath("/node" + p)));
+        }
+        // Unbalanced partitions, so the statistics of each node differ from the global ones
+        Random random = new Random(11);
+        for (int i = 0; i < 90; i++) {
+            String text = randomText(random, i % NODES);
+            Files.write(all.resolve("doc" + i + ".txt"), Collections.singletonList(text), StandardCharsets.UTF_8);
+            Files.write(partitions.get((i % 6 == 0) ? 0 : i % NODES).resolve("doc" + i + ".txt"),
+                    Collections.singletonList(text), StandardCharsets.UTF_8);
+        }
+
+        single = buildManager(all, 90);
+        int indexed = 0;
+        for (int p = 0; p < NODES; p++) {
+            int size = (int) Files.list(partitions.get(p)).count();
+            indexed += size;
+            IndexWorker worker = new IndexWorker(buildManager(partitions.get(p), size), 0);
+            worker.start();
+            workers.add(worker);
+            addresses.add(InetSocketAddress.createUnresolved("localhost", worker.getPort()));
+        }
+        assertEquals(90, indexed, "Partitions size mismatch");
+    }
+
+    @AfterAll
+    static void stopWorkers() throws IOException {
+        for (IndexWorker worker : workers) {
+            worker.close();
+        }
+    }
+
+    @Test
+    @DisplayName("Merge the top results of the nodes into the exact global ones")
+    void exactTopResultsTest() throws IOException {
+        try (DistributedCoordinator coordinator = new DistributedCoordinator(addresses)) {
+            for (ScoringFunction function : ScoringFunction.values()) {
+                // Every document ranked, whatever the order of the documents with the same score
+                Map<String, Double> expected = scoresOf(single.snapshot(), function, 90);
+                Map<String, Double> actual = scoresOf(coordinator.topResults(90, function, TERMS));
+                assertEquals(expected.keySet(), actual.keySet(), "Documents mismatch for " + function);
+                expected.forEach((doc, score) -> assertEquals(score, actual.get(doc), 1e-12,
+                        "Score mismatch for " + doc + " with " + function));
+
+                // Scores summed in a different order when skipping documents may differ in the last digits
+                List<Double> expectedTop = new ArrayList<>(scoresOf(single.snapshot(), function, 10).values());
+                expectedTop.sort(Collections.reverseOrder());
+                List<RankedDocument> top = coordinator.topResults(10, function, TERMS);
+                assertEquals(expectedTop.size(), top.size(), "Top 10 size mismatch for " + function);
+                for (int i = 0; i < top.size(); i++) {
+                    assertEquals(expectedTop.get(i), top.get(i).getScore(), 1e-12,
+                            "Top 10 score mismatch at " + i + " for " + function);
+                }
+            }
+        }
+    }
+
+    @Test
+    @DisplayName("Merge the sorted top results of the nodes")
+    void mergeTest() {
+        List<List<RankedDocument>> tops = ImmutableList.of(
+                ImmutableList.of(RankedDocument.of("a", "/a/1", 3.0), RankedDocument.of("a", "/a/2", 1.0)),
+                Collections.emptyList(),
+                ImmutableList.of(RankedDocument.of("c", "/c/1", 3.0), RankedDocument.of("c", "/c/2", 2.0)));
+
+        List<String> merged = new ArrayList<>();
+        DistributedCoordinator.merge(tops, 3).forEach(result -> merged.add(result.getDocument()));
+        assertEquals(ImmutableList.of("/a/1", "/c/1", "/c/2"), merged, "Merged results mismatch");
+        assertEquals("2", RankedDocument.of("a", "C:\\docs\\2", 0).getFileName(), "File name mismatch");
+    }
+
+    @Test
+    @DisplayName("Fail to rank terms not indexed by the nodes")
+    void unknownTermTest() {
+        try (DistributedCoordinator coordinator = new DistributedCoordinator(addresses)) {
+            IOException e = assertThrows(IOException.class, () -> coordinator.topResults(5, ScoringFunction.BM25,
+                    ImmutableList.of("common", "unknown")), "Unknown term ranked");
+            assertTrue(e.getMessage().contains("unknown"), "Error message mismatch");
+        }
+        assertThrows(IllegalArgumentException.class, () -> DistributedProtocol.parseAddress("localhost"),
+                "Address without port accepted");
+    }
+
+    /**
+     * Builds an index manager loading the documents of the given directory.
+     *
+     * @param dir the directory
+     * @param size the number of documents
+     * @return the index manager
+     */
+    private static SimpleIndexManager buildManager(Path dir, int size) {
+        SimpleIndexManager manager = new SimpleIndexManager();
+        manager.setTerms(ImmutableSet.copyOf(TERMS));
+        manager.loadFrom(dir);
+        await().atMost(5, SECONDS).until(() -> manager.size() == size);
+        return manager;
+    }
+
+    /**
+     * Retrieves the top scores of a single index by document name.
+     *
+     * @param snapshot the snapshot of the index
+     * @param function the scoring function
+     * @param n the maximum number of documents
+     * @return the scores by document name
+     */
+    private static Map<String, Double> scoresOf(IndexSnapshot snapshot, ScoringFunction function, int n) {
+        Map<String, Double> scores = new HashMap<>();
+        snapshot.forEachTopScore(function.getScorerSupplier().get(), n, (docId, score) ->
+                scores.put(snapshot.getDocument(docId).getFileName().toString(), score));
+        return scores;
+    }
+
+    /**
+     * Retrieves the scores of the ranked documents by document name.
+     *
+     * @param ranking the ranked documents
+     * @return the scores by document name
+     */
+    private static Map<String, Double> scoresOf(List<RankedDocument> ranking) {
+        Map<String, Double> scores = new HashMap<>();
+        ranking.forEach(result -> scores.put(result.getFileName(), result.getScore()));
+        return scores;
+    }
+
+    /**
+     * Generates a short random text mixing the terms with filler words,
+     * where some terms are more frequent depending on the partition.
+     *
+     * @param random the random generator
+     * @param bias the partition biasing the words
+     * @return the text
+     */
+    private static String randomText(Random random, int bias) {
+        String[] words = { "common", "common", "frequent", "rare", "filler", "other", "word",
+                (bias == 0) ? "rare" : "frequent" };
+        StringBuilder text = new StringBuilder();
+        for (int i = 0, n = 5 + random.nextInt(40); i < n; i++) {
+            text.append(words[random.nextInt(words.length)]).append(' ');
+        }
+        return text.toString();
+    }
+}
@@ -0,0 +1,105 @@
+/*
+ *
+ * Copyright 2020 Pablo Navais
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+
+package com.github.pnavais.ex3.freshness;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for the {@link FreshnessTracker} class
+ */
+@DisplayName("Unit tests for the FreshnessTracker class")
+public class FreshnessTrackerTest {
+
+    @Test
+    @DisplayName("Record the latencies of each stage once the document is visible")
+    void trackStagesTest() throws InterruptedException {
+        FreshnessTracker tracker = new FreshnessTracker();
+        Path doc = Paths.get("/data/doc1.txt");
+
+        tracker.watched(doc);
+        TimeUnit.MILLISECONDS.sleep(20);
+        tracker.indexingStarted(doc);
+        TimeUnit.MILLISECONDS.sleep(10);
+        tracker.indexed(doc, 3);
+        tracker.visible(2);
+
+        FreshnessMetrics metrics = tracker.getMetrics();
+        assertEquals(1, metrics.getCount(FreshnessStage.WAITING), "Waiting documents mismatch");
+        assertEquals(1, metrics.getCount(FreshnessStage.INDEXING), "Indexing documents mismatch");
+        assertEquals(0, metrics.getCount(FreshnessStage.END_TO_END), "Not visible before its generation");
+        assertTrue(metrics.getMax(FreshnessStage.WAITING) >= TimeUnit.MILLISECONDS.toMicros(20),
+                "Waiting latency too low");
+        assertTrue(metrics.getMax(FreshnessStage.INDEXING) >= TimeUnit.MILLISECONDS.toMicros(10),
+                "Indexing latency too low");
+        assertEquals(1, tracker.size(), "The document should be pending visibility");
+
+        tracker.visible(3);
+        metrics = tracker.getMetrics();
+        assertEquals(0, metrics.getCount(FreshnessStage.WAITING), "The interval should be reset");
+        assertEquals(1, metrics.getCount(FreshnessStage.VISIBILITY), "Visible documents mismatch");
+        assertEquals(1, metrics.getCount(FreshnessStage.END_TO_END), "Visible documents mismatch");
+        assertTrue(metrics.getPercentile(FreshnessStage.END_TO_END, 99.9) >= TimeUnit.MILLISECONDS.toMicros(30),
+                "End to end latency too low");
+        assertEquals(0, tracker.size(), "No documents should be tracked");
+    }
+
+    @Test
+    @DisplayName("Ignore documents not notified by the watcher")
+    void ignoreUntrackedTest() {
+        FreshnessTracker tracker = new FreshnessTracker();
+        Path doc = Paths.get("/data/doc2.txt");
+
+        tracker.indexingStarted(doc);
+        tracker.indexed(doc, 1);
+        tracker.visible(1);
+
+        FreshnessMetrics metrics = tracker.getMetrics();
+        for (FreshnessStage stage : FreshnessStage.values()) {
+            assertEquals(0, metrics.getCount(stage), "No latencies should be recorded");
+        }
+        assertEquals(0, tracker.size(), "No documents should be tracked");
+    }
+
+    @Test
+    @DisplayName("Evict the stale documents once too many are tracked")
+    void evictStaleTest() throws InterruptedException {
+        FreshnessTracker tracker = new FreshnessTracker(TimeUnit.SECONDS.toNanos(1));
+        for (int i = 0; i < FreshnessTracker.MAX_TRACKED; i++) {
+            tracker.watched(Paths.get("/data/stuck" + i + ".txt"));
+        }
+        Path doc = Paths.get("/data/doc3.txt");
+        tracker.watched(doc);
+        assertEquals(FreshnessTracker.MAX_TRACKED, tracker.size(), "Recent documents should not be evicted");
+
+        TimeUnit.MILLISECONDS.sleep(1100);
+        tracker.watched(doc);
+        assertEquals(1, tracker.size(), "Stale documents should be evicted");
+        tracker.indexed(doc, 1);
+        tracker.visible(1);
+        assertEquals(1, tracker.getMetrics().getCount(FreshnessStage.END_TO_END), "Visible documents mismatch");
+        assertEquals(0, tracker.size(), "No documents should be tracked");
+    }
+}
@@ -0,0 +1,120 @@
+/*
+ *
+ * Copyright 2020 Pablo Navais
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+
+package com.github.pnavais.ex3.index;
+
+import com.google.common.jimfs.Configuration;
+import com.google.common.jimfs.Jimfs;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.nio.file.FileSystem;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for the {@link DocumentDictionary} class
+ */
+@DisplayName("Unit tests for the DocumentDictionary class")
+public class DocumentDictionaryTest {
+
+    /** In-memory filesystem */
+    private static final FileSystem testFileSystem = Jimfs.newFileSystem(Configuration.unix());
+
+    @Test
+    @DisplayName("Intern and resolve paths sharing their prefixes")
+    void internAndResolveTest() {
+        DocumentDictionary dictionary = new DocumentDictionary();
+        List<Path> docs = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            docs.add(testFileSystem.getPath("/corpus", "dir" + (i / 7), "doc" + i + ".txt"));
+        }
+        docs.add(testFileSystem.getPath("/other/ñandú.txt"));
+        docs.add(testFileSystem.getPath("/corpus"));
+
+        for (int i = 0; i < docs.size(); i++) {
+            assertEquals(i, dictionary.intern(docs.get(i)), "Ids must be assigned in order");
+        }
+        for (int i = 0; i < docs.size(); i++) {
+            assertEquals(i, dictionary.intern(docs.get(i)), "Interning again must return the same id");
+            assertEquals(i, dictionary.find(docs.get(i)), "Id not found");
+            assertEquals(docs.get(i), dictionary.resolve(i), "Resolved path mismatch");
+        }
+
+        assertEquals(docs.size(), dictionary.size(), "Dictionary size mismatch");
+        assertEquals(DocumentDictionary.NOT_FOUND, dictionary.find(testFileSystem.getPath("/corpus/missing.txt")),
+                "Missing path must not be found");
+        assertTrue(dictionary.getStoredBytes() < docs.stream().mapToInt(doc -> doc.toString().length()).sum() / 2,
+                "Paths must be front coded");
+    }
+
+    @Test
+    @DisplayName("Find and resolve paths while others are interned concurrently")
+    void concurrentInternAndResolveTest() throws Exception {
+        DocumentDictionary dictionary = new DocumentDictionary();
+        List<Path> docs = new ArrayList<>();
+        for (int i = 0; i < 20000; i++) {
+            docs.add(testFileSystem.getPath("/corpus", "dir" + (i / 100), "doc" + i + ".txt"));
+        }
+
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            Future<?> writer = executor.submit(() -> docs.forEach(dictionary::intern));
+            List<Future<?>> readers = new ArrayList<>();
+            for (int r = 0; r < 3; r++) {
+                readers.add(executor.submit(() -> {
+                    while (!writer.isDone()) {
+                        int id = dictionary.size() - 1;
+                        if (id >= 0) {
+                            assertEquals(docs.get(id), dictionary.resolve(id), "Resolved path mismatch");
+                            assertEquals(id, dictionary.find(docs.get(id)), "Id not found");
+                        }
+                    }
+                }));
+            }
+            writer.get(10, TimeUnit.SECONDS);
+            for (Future<?> reader : readers) {
+                reader.get(10, TimeUnit.SECONDS);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        assertEquals(docs.size(), dictionary.size(), "Dictionary size mismatch");
+    }
+
+    @Test
+    @DisplayName("Reject paths from different file systems")
+    void fileSystemMismatchTest() {
+        DocumentDictionary dictionary = new DocumentDictionary();
+        dictionary.intern(testFileSystem.getPath("/corpus/doc.txt"));
+
+        assertEquals(DocumentDictionary.NOT_FOUND, dictionary.find(Paths.get("/corpus/doc.txt")),
+                "Paths of other file systems must not be found");
+        assertThrows(IllegalArgumentException.class, () -> dictionary.intern(Paths.get("/corpus/doc.txt")),
+                "Paths of other file systems must be rejected");
+        assertThrows(IndexOutOfBoundsException.class, () -> dictionary.resolve(1), "Unknown ids must be rejected");
+    }
+}
@@ -19,9 +19,20 @@
 package com.github.pnavais.ex3.index;
 
 import com.github.pnavais.ex3.api.index.IndexManager;
+import com.github.pnavais.ex3.api.index.IndexSegment;
+import com.github.pnavais.ex3.api.index.IndexingExecutor;
+import com.github.pnavais.ex3.api.reader.DocumentReader;
+import com.github.pnavais.ex3.matcher.WordFilterPolicy;
+import com.github.pnavais.ex3.normalizer.NormalizationStep;
+import com.github.pnavais.ex3.normalizer.TermNormalizer;
+import com.github.pnavais.ex3.ranking.ScoringFunction;
+import com.github.pnavais.ex3.reader.DocumentReaderFactory;
+import com.github.pnavais.ex3.reader.ReaderType;
 import com.github.pnavais.ex3.test.Ex3TestConfig;
 import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.ImmutableSet;
+import com.google.common.primitives.Ints;
 import com.google.common.jimfs.Configuration;
 import com.google.common.jimfs.Jimfs;
 import lombok.extern.java.Log;
@@ -36,12 +47,29 @@ import org.springframework.test.context.junit.jupiter.SpringExtension;
 
 import java.io.File;
 import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.FileSystem;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.EnumSet;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.Collectors;
+import java.util.zip.GZIPOutputStream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
 
 import static java.util.concurrent.TimeUnit.SECONDS;
 import static org.awaitility.Awaitility.await;
@@ -185,6 +213,460 @@ public class IndexManagerTest {
         assertEquals(0, manager.size(), "Index document size mismatch");
     }
 
+    @Test
+    @DisplayName("Retrieve and verify term statistics using the mapped reader")
+    void retrieveTermStatsWithMappedReaderTest() {
+        Path doc1 = writeTestFile(testDir, "doc1.txt", ImmutableList.of("Dummy string for test purposes"));
+        writeTestFile(testDir, "doc2.txt", ImmutableList.of("Dummy string"));
+
+        DocumentReaderFactory.setReaderSupplier(ReaderType.MAPPED.getReaderSupplier());
+        try {
+            fillIndex(DEFAULT_TERMS);
+        } finally {
+            DocumentReaderFactory.setReaderSupplier(ReaderType.BUFFERED.getReaderSupplier());
+        }
+
+        List<DocTerm> testData = manager.getDocTermsFor("test");
+        assertEquals(1, testData.size(), "Term statistics size mismatch");
+        assertEquals(doc1, testData.get(0).getDocument(), "Document mismatch");
+        assertEquals(1, testData.get(0).getOccurrences(), "Incorrect number of occurrences found");
+        assertEquals(5, testData.get(0).getWordCount(), "Incorrect total number of words found");
+        assertEquals((1.0/5) * Math.log10(2.0/1), manager.getTermTfIdf("test", doc1), "Tf/Idf statistic mismatch");
+    }
+
+    @Test
+    @DisplayName("Query terms not indexed reading only the documents which may contain them")
+    void queryTermsTest() {
+        DocumentReaderFactory.setWordFilterPolicy(WordFilterPolicy.defaults());
+        try {
+            for (ReaderType readerType : new ReaderType[] { ReaderType.BUFFERED, ReaderType.MAPPED }) {
+                Path doc1 = writeTestFile(testDir, "doc1.txt", ImmutableList.of("Dummy string for test purposes"));
+                Path doc2 = writeTestFile(testDir, "doc2.txt", ImmutableList.of("Dummy string"));
+                DocumentReaderFactory.setReaderSupplier(readerType.getReaderSupplier());
+                try {
+                    fillIndex(DEFAULT_TERMS);
+                } finally {
+                    DocumentReaderFactory.setReaderSupplier(ReaderType.BUFFERED.getReaderSupplier());
+                }
+
+                List<DocTerm> found = manager.queryTerms(ImmutableSet.of("purposes", "missing"));
+                assertEquals(1, found.size(), "Query results size mismatch for " + readerType);
+                assertEquals(doc1, found.get(0).getDocument(), "Document mismatch for " + readerType);
+                assertEquals(1, found.get(0).getOccurrences(), "Occurrences mismatch for " + readerType);
+                assertEquals(2, manager.queryTerms(ImmutableSet.of("Dummy string")).size(),
+                        "Phrase query results size mismatch for " + readerType);
+
+                // Documents lacking the terms when indexed are not read again
+                writeTestFile(testDir, doc2.getFileName().toString(), ImmutableList.of("purposes"));
+                assertEquals(1, manager.queryTerms(ImmutableSet.of("purposes")).size(),
+                        "Document lacking the term read for " + readerType);
+                manager.clear();
+            }
+        } finally {
+            DocumentReaderFactory.setWordFilterPolicy(WordFilterPolicy.DISABLED);
+        }
+    }
+
+    @Test
+    @DisplayName("Retrieve and verify term statistics using the asynchronous reader over several chunks")
+    void retrieveTermStatsWithAsyncReaderTest() {
+        Path doc1 = writeTestFile(testDir, "doc1.txt", Collections.nCopies(100_000, "Dummy string for test purposes"));
+        Path doc2 = writeTestFile(testDir, "doc2.txt", ImmutableList.of("Dummy string"));
+
+        DocumentReaderFactory.setReaderSupplier(ReaderType.ASYNC.getReaderSupplier());
+        try {
+            fillIndex(DEFAULT_TERMS);
+        } finally {
+            DocumentReaderFactory.setReaderSupplier(ReaderType.BUFFERED.getReaderSupplier());
+        }
+
+        List<DocTerm> testData = manager.getDocTermsFor("test");
+        assertEquals(1, testData.size(), "Term statistics size mismatch");
+        assertEquals(doc1, testData.get(0).getDocument(), "Document mismatch");
+        assertEquals(100_000, testData.get(0).getOccurrences(), "Incorrect number of occurrences found");
+        assertEquals(500_000, testData.get(0).getWordCount(), "Incorrect total number of words found");
+        assertEquals(2, manager.getDocTermsFor("string").stream().filter(docTerm -> docTerm.getDocument().equals(doc2))
+                .mapToLong(DocTerm::getWordCount).sum(), "Incorrect total number of words found");
+    }
+
+    @Test
+    @DisplayName("Rank the documents with the available scoring functions")
+    void rankWithScorersTest() {
+        Path doc1 = writeTestFile(testDir, "doc1.txt", ImmutableList.of("Dummy string for test purposes test"));
+        Path doc2 = writeTestFile(testDir, "doc2.txt", ImmutableList.of("Dummy string"));
+
+        fillIndex(DEFAULT_TERMS);
+
+        IndexSnapshot snapshot = manager.snapshot();
+        Map<ScoringFunction, Map<Path, Double>> scores = new EnumMap<>(ScoringFunction.class);
+        for (ScoringFunction function : ScoringFunction.values()) {
+            Map<Path, Double> functionScores = new HashMap<>();
+            snapshot.forEachScore(function.getScorerSupplier().get(),
+                    (docId, score) -> functionScores.put(snapshot.getDocument(docId), score));
+            scores.put(function, functionScores);
+        }
+
+        assertEquals(manager.getTermsTfIdfFor(doc1), scores.get(ScoringFunction.TFIDF).get(doc1), 1e-12,
+                "TF/IDF score mismatch");
+        assertEquals((1 + Math.log10(2)) * Math.log10(2.0/1) / 3, scores.get(ScoringFunction.LOG_TF).get(doc1), 1e-12,
+                "Log TF/IDF score mismatch");
+
+        double averageLength = (6 + 2) / 2.0;
+        double norm1 = 1.2 * (0.25 + 0.75 * 6 / averageLength);
+        double norm2 = 1.2 * (0.25 + 0.75 * 2 / averageLength);
+        double commonIdf = Math.log(1 + 0.5 / 2.5);
+        assertEquals(2 * commonIdf * 2.2 / (1 + norm1) + Math.log(2) * 2 * 2.2 / (2 + norm1),
+                scores.get(ScoringFunction.BM25).get(doc1), 1e-12, "BM25 score mismatch");
+        assertEquals(2 * commonIdf * 2.2 / (1 + norm2), scores.get(ScoringFunction.BM25).get(doc2), 1e-12,
+                "BM25 score mismatch");
+    }
+
+    @Test
+    @DisplayName("Retrieve and verify phrase statistics spanning several lines")
+    void retrievePhraseStatsTest() {
+        Path doc1 = writeTestFile(testDir, "doc1.txt", ImmutableList.of("Dummy string for", "test purposes Dummy string"));
+        writeTestFile(testDir, "doc2.txt", ImmutableList.of("Dummy test"));
+
+        fillIndex(ImmutableSet.of("Dummy string", "for test"));
+
+        List<DocTerm> testData = manager.getDocTermsFor("Dummy string");
+        assertEquals(1, testData.size(), "Term statistics size mismatch");
+        assertEquals(doc1, testData.get(0).getDocument(), "Document mismatch");
+        assertEquals(2, testData.get(0).getOccurrences(), "Incorrect number of occurrences found");
+        assertEquals(7, testData.get(0).getWordCount(), "Incorrect total number of words found");
+        assertEquals(1, manager.getDocTermsFor("for test").get(0).getOccurrences(), "Incorrect number of occurrences found");
+        assertEquals((2.0/7) * Math.log10(2.0/1), manager.getTermTfIdf("Dummy string", doc1), "Tf/Idf statistic mismatch");
+    }
+
+    @Test
+    @DisplayName("Retrieve and verify term statistics normalizing terms and documents")
+    void retrieveNormalizedTermStatsTest() {
+        Path doc1 = writeTestFile(testDir, "doc1.txt", ImmutableList.of("Dummy strings, for the TEST purposes"));
+        writeTestFile(testDir, "doc2.txt", ImmutableList.of("dummy  string."));
+
+        DocumentReaderFactory.setNormalizer(TermNormalizer.of(EnumSet.allOf(NormalizationStep.class)));
+        try {
+            fillIndex(DEFAULT_TERMS);
+        } finally {
+            DocumentReaderFactory.setNormalizer(TermNormalizer.NONE);
+        }
+
+        List<DocTerm> testData = manager.getDocTermsFor("Dummy");
+        assertEquals(2, testData.size(), "Term statistics size mismatch");
+        testData = manager.getDocTermsFor("test");
+        assertEquals(doc1, testData.get(0).getDocument(), "Document mismatch");
+        assertEquals(1, testData.get(0).getOccurrences(), "Incorrect number of occurrences found");
+        assertEquals(4, testData.get(0).getWordCount(), "Stop words should not be counted");
+        assertEquals(2, manager.getDocTermsFor("string").size(), "Term statistics size mismatch");
+    }
+
+    @Test
+    @DisplayName("Keep index snapshots unaffected by documents indexed afterwards")
+    void snapshotIsolationTest() {
+        Path doc1 = writeTestFile(testDir, "doc1.txt", ImmutableList.of("Dummy string for test purposes"));
+        writeTestFile(testDir, "doc2.txt", ImmutableList.of("Dummy string"));
+        fillIndex(DEFAULT_TERMS);
+
+        IndexSnapshot snapshot = manager.snapshot();
+        double tfIdf = snapshot.getTermTfIdf("test", doc1);
+
+        Path doc3 = writeTestFile(testDir, "doc3.txt", ImmutableList.of("Another test"));
+        manager.addFile(doc3);
+        manager.refresh();
+        await().atMost(5, SECONDS).until(() -> manager.snapshot().size() == 3);
+
+        assertEquals(2, snapshot.size(), "The snapshot should not contain new documents");
+        assertEquals(tfIdf, snapshot.getTermTfIdf("test", doc1), "The snapshot statistics should not change");
+        assertEquals(1, snapshot.getDocTermsFor("test").size(), "The snapshot postings should not change");
+        assertTrue(manager.snapshot().getGeneration() > snapshot.getGeneration(), "Snapshot generation mismatch");
+        assertEquals((1.0/5) * Math.log10(3.0/2), manager.getTermTfIdf("test", doc1), "Tf/Idf statistic mismatch");
+        assertEquals(3, manager.getDocs().size(), "Index documents mismatch");
+    }
+
+    @Test
+    @DisplayName("Discard the documents still being indexed when clearing the index")
+    void clearDiscardsPendingIndexingTest() {
+        writeTestFile(testDir, "doc1.txt", ImmutableList.of("Dummy string for test purposes"));
+
+        // Complete the indexing of the documents on demand in the calling thread
+        IndexingExecutor executor = new PooledIndexingExecutor();
+        List<Runnable> pending = new ArrayList<>();
+        manager.setIndexingExecutor(new IndexingExecutor() {
+            @Override
+            public CompletableFuture<List<DocTerm>> submit(Path doc, DocumentReader reader, Set<String> terms) {
+                CompletableFuture<List<DocTerm>> future = new CompletableFuture<>();
+                pending.add(() -> future.complete(executor.submit(doc, reader, terms).join()));
+                return future;
+            }
+
+            @Override
+            public CompletableFuture<List<DocTerm>> submitBatch(List<Path> docs, DocumentReader reader,
+                                                                Set<String> terms) {
+                CompletableFuture<List<DocTerm>> future = new CompletableFuture<>();
+                pending.add(() -> future.complete(executor.submitBatch(docs, reader, terms).join()));
+                return future;
+            }
+        });
+        try {
+            manager.setTerms(DEFAULT_TERMS);
+            manager.loadFrom(testDir);
+            manager.clear();
+            manager.loadFrom(testDir);
+            assertEquals(2, pending.size(), "The document should be indexed again after clearing the index");
+
+            pending.get(0).run();
+            assertEquals(0, manager.size(), "The document indexed before clearing the index should be discarded");
+            pending.get(1).run();
+            assertEquals(1, manager.size(), "Index document size mismatch");
+            assertEquals(1, manager.getDocTermsFor("test").size(), "Term statistics size mismatch");
+        } finally {
+            manager.setIndexingExecutor(new PooledIndexingExecutor());
+        }
+    }
+
+    @Test
+    @DisplayName("Retrieve and verify term statistics stored off-heap")
+    void retrieveOffHeapTermStatsTest() {
+        Path doc1 = writeTestFile(testDir, "doc1.txt", ImmutableList.of("Dummy string for test purposes"));
+        Path doc2 = writeTestFile(testDir, "doc2.txt", ImmutableList.of("Dummy string"));
+
+        manager.setSegmentFactory(IndexStorage.OFF_HEAP.getSegmentFactory());
+        try {
+            fillIndex(DEFAULT_TERMS);
+
+            List<DocTerm> testData = manager.getDocTermsFor("test");
+            assertEquals(1, testData.size(), "Term statistics size mismatch");
+            assertEquals(doc1, testData.get(0).getDocument(), "Document mismatch");
+            assertEquals(1, testData.get(0).getOccurrences(), "Incorrect number of occurrences found");
+            assertEquals(5, testData.get(0).getWordCount(), "Incorrect total number of words found");
+            assertThat("The document terms did not match", manager.getDocTermsFor("Dummy"),
+                    containsInAnyOrder(DocTerm.of("Dummy", doc1), DocTerm.of("Dummy", doc2)));
+            assertThat("The documents did not match", manager.getDocs(), containsInAnyOrder(doc1, doc2));
+
+            double tfIdf = (1.0/5) * Math.log10(2.0/1);
+            assertEquals(tfIdf, manager.getTermTfIdf("test", doc1), "Tf/Idf statistic mismatch");
+            Map<Path, Double> ranking = new HashMap<>();
+            IndexSnapshot snapshot = manager.snapshot();
+            snapshot.forEachTfIdf((docId, value) -> ranking.put(snapshot.getDocument(docId), value));
+            assertEquals(ImmutableMap.of(doc1, tfIdf / 3, doc2, 0.0), ranking, "Average Tf/Idf statistic mismatch");
+        } finally {
+            manager.setSegmentFactory(IndexStorage.HEAP.getSegmentFactory());
+        }
+    }
+
+    @Test
+    @DisplayName("Fill the index with gzip compressed documents")
+    void fillIndexWithGzipTest() throws IOException {
+        Path doc1 = testDir.resolve("doc1.txt.gz");
+        try (Writer writer = new OutputStreamWriter(new GZIPOutputStream(Files.newOutputStream(doc1)),
+                StandardCharsets.UTF_8)) {
+            writer.write("Dummy string for test purposes\n");
+        }
+        writeTestFile(testDir, "doc2.txt", ImmutableList.of("Dummy string"));
+
+        fillIndex(DEFAULT_TERMS);
+
+        List<DocTerm> testData = manager.getDocTermsFor("test");
+        assertEquals(1, testData.size(), "Term statistics size mismatch");
+        assertEquals(doc1, testData.get(0).getDocument(), "Document mismatch");
+        assertEquals(5, testData.get(0).getWordCount(), "Incorrect total number of words found");
+    }
+
+    @Test
+    @DisplayName("Fill the index reading and tokenizing the documents in separate executors")
+    void fillIndexWithStagedExecutorTest() throws IOException {
+        Path doc1 = testDir.resolve("doc1.txt.gz");
+        try (Writer writer = new OutputStreamWriter(new GZIPOutputStream(Files.newOutputStream(doc1)),
+                StandardCharsets.UTF_8)) {
+            writer.write("Dummy string for test purposes\n");
+        }
+        Path doc2 = writeTestFile(testDir, "doc2.txt", ImmutableList.of("Dummy string"));
+
+        ExecutorService ioExecutor = Executors.newCachedThreadPool();
+        manager.setIndexingExecutor(new StagedIndexingExecutor(ioExecutor, ForkJoinPool.commonPool(), 1));
+        DocumentReaderFactory.setReaderSupplier(ReaderType.MAPPED.getReaderSupplier());
+        try {
+            fillIndex(DEFAULT_TERMS);
+        } finally {
+            DocumentReaderFactory.setReaderSupplier(ReaderType.BUFFERED.getReaderSupplier());
+            manager.setIndexingExecutor(new PooledIndexingExecutor());
+            ioExecutor.shutdown();
+        }
+
+        List<DocTerm> testData = manager.getDocTermsFor("test");
+        assertEquals(1, testData.size(), "Term statistics size mismatch");
+        assertEquals(doc1, testData.get(0).getDocument(), "Document mismatch");
+        assertEquals(5, testData.get(0).getWordCount(), "Incorrect total number of words found");
+        assertEquals(2, manager.getDocTermsFor("string").stream().filter(docTerm -> docTerm.getDocument().equals(doc2))
+                .mapToLong(DocTerm::getWordCount).sum(), "Incorrect total number of words found");
+        assertEquals(0, manager.getTermTfIdf("Dummy", doc2), "Tf/Idf should be zero since present in both documents");
+    }
+
+    @Test
+    @DisplayName("Reuse the readers of each indexing thread keeping the same statistics")
+    void fillIndexWithPooledReadersTest() throws IOException {
+        Files.write(testDir.resolve("doc0.txt"), "Dummy  string\r\n test\rDummy string\r\n\r\n  \n"
+                .getBytes(StandardCharsets.UTF_8));
+        Files.write(testDir.resolve("doc1.txt"), (String.join("", Collections.nCopies(2000, "Dummy string ñandú test "))
+                + "\n").getBytes(StandardCharsets.UTF_8));
+        try (Writer writer = new OutputStreamWriter(new GZIPOutputStream(Files.newOutputStream(
+                testDir.resolve("doc2.txt.gz"))), StandardCharsets.UTF_8)) {
+            writer.write("test Dummy\r\nstring");
+        }
+        Files.write(testDir.resolve("doc3.txt"), new byte[0]);
+        Files.write(testDir.resolve("doc4.txt"), "Dummy".getBytes(StandardCharsets.UTF_8));
+        Set<String> terms = ImmutableSet.of("Dummy", "test", "string", "Dummy string");
+
+        try {
+            for (ReaderType readerType : ReaderType.values()) {
+                DocumentReaderFactory.setReaderSupplier(readerType.getReaderSupplier());
+                DocumentReaderFactory.setPooling(false);
+                Map<String, Long> expected = indexedStats(terms, 5);
+                DocumentReaderFactory.setPooling(true);
+                for (int pass = 0; pass < 2; pass++) {
+                    assertEquals(expected, indexedStats(terms, 5), "Pooled statistics mismatch for " + readerType);
+                }
+                if (readerType == ReaderType.BUFFERED) {
+                    assertEquals(8L, expected.get("doc0.txt/Dummy/words"), "Word count mismatch");
+                    assertEquals(1L, expected.get("doc0.txt/Dummy string"), "Phrase occurrences mismatch");
+                }
+            }
+        } finally {
+            DocumentReaderFactory.setPooling(false);
+            DocumentReaderFactory.setReaderSupplier(ReaderType.BUFFERED.getReaderSupplier());
+        }
+    }
+
+    @Test
+    @DisplayName("Record the positions of the terms and phrases with every reader")
+    void recordPositionsTest() {
+        writeTestFile(testDir, "doc0.txt", ImmutableList.of("Dummy string for test", "Dummy string test"));
+        writeTestFile(testDir, "doc1.txt", ImmutableList.of("test"));
+        Set<String> terms = ImmutableSet.of("Dummy", "test", "Dummy string");
+
+        try {
+            DocumentReaderFactory.setRecordingPositions(true);
+            for (ReaderType readerType : ReaderType.values()) {
+                DocumentReaderFactory.setReaderSupplier(readerType.getReaderSupplier());
+                manager.clear();
+                fillIndex(terms);
+
+                Map<String, List<Integer>> positions = indexedPositions(manager.snapshot(), terms);
+                assertEquals(ImmutableList.of(0, 4), positions.get("doc0.txt/Dummy"),
+                        "Positions mismatch for " + readerType);
+                assertEquals(ImmutableList.of(3, 6), positions.get("doc0.txt/test"),
+                        "Positions mismatch for " + readerType);
+                assertEquals(ImmutableList.of(0, 4), positions.get("doc0.txt/Dummy string"),
+                        "Phrase positions mismatch for " + readerType);
+                assertEquals(ImmutableList.of(0), positions.get("doc1.txt/test"),
+                        "Positions mismatch for " + readerType);
+                assertFalse(positions.containsKey("doc1.txt/Dummy"), "Unexpected positions for " + readerType);
+            }
+        } finally {
+            DocumentReaderFactory.setRecordingPositions(false);
+            DocumentReaderFactory.setReaderSupplier(ReaderType.BUFFERED.getReaderSupplier());
+        }
+    }
+
+    @Test
+    @DisplayName("Fill the index with batches of small documents, publishing a segment per batch")
+    void fillIndexInBatchesTest() {
+        for (int i = 0; i < 10; i++) {
+            writeTestFile(testDir, "doc" + i + ".txt", ImmutableList.of((i % 2 == 0) ? "Dummy string for test purposes"
+                    : "Dummy string"));
+        }
+        writeTestFile(testDir, "empty.txt", ImmutableList.of());
+
+        manager.setBatchSize(4);
+        try {
+            manager.setTerms(DEFAULT_TERMS);
+            long generation = manager.snapshot().getGeneration();
+            manager.loadFrom(testDir);
+
+            await().atMost(5, SECONDS).until(() -> manager.size() == 11);
+            assertEquals(generation + 3, manager.snapshot().getGeneration(), "A snapshot should be published per batch");
+        } finally {
+            manager.setBatchSize(SimpleIndexManager.DEFAULT_BATCH_SIZE);
+        }
+
+        assertEquals(5, manager.getDocTermsFor("test").size(), "Term statistics size mismatch");
+        assertEquals((1.0/5) * Math.log10(11.0/5), manager.getTermTfIdf("test", testDir.resolve("doc0.txt")),
+                "Tf/Idf statistic mismatch");
+        assertEquals(0, manager.getTermsTfIdfFor(testDir.resolve("empty.txt")), "Empty documents have no Tf/Idf");
+    }
+
+    @Test
+    @DisplayName("Fill the index with the entries of a zip archive")
+    void fillIndexWithZipTest() throws IOException {
+        Path archive = testDir.resolve("bundle.zip");
+        Map<String, String> entries = ImmutableMap.of("doc1.txt", "Dummy string for test purposes",
+                "nested/doc2.txt", "Dummy string", "doc3.txt", "test test string");
+        try (ZipOutputStream zip = new ZipOutputStream(Files.newOutputStream(archive))) {
+            zip.putNextEntry(new ZipEntry("nested/"));
+            for (Map.Entry<String, String> entry : entries.entrySet()) {
+                zip.putNextEntry(new ZipEntry(entry.getKey()));
+                zip.write(entry.getValue().getBytes(StandardCharsets.UTF_8));
+            }
+        }
+
+        manager.setTerms(DEFAULT_TERMS);
+        manager.loadFrom(testDir);
+
+        await().atMost(5, SECONDS).until(() -> manager.size() == 3);
+        assertThat("The documents did not match", manager.getDocs(), containsInAnyOrder(
+                archive.resolve("doc1.txt"), archive.resolve("nested/doc2.txt"), archive.resolve("doc3.txt")));
+        assertThat("The document terms did not match", manager.getDocTermsFor("test"),
+                containsInAnyOrder(DocTerm.of("test", archive.resolve("doc1.txt")),
+                        DocTerm.of("test", archive.resolve("doc3.txt"))));
+        assertEquals((1.0/5) * Math.log10(3.0/2), manager.getTermTfIdf("test", archive.resolve("doc1.txt")),
+                "Tf/Idf statistic mismatch");
+        assertThat("The queried documents did not match", manager.queryTerms(ImmutableSet.of("string")).stream()
+                .map(DocTerm::getDocument).collect(Collectors.toList()), containsInAnyOrder(
+                archive.resolve("doc1.txt"), archive.resolve("nested/doc2.txt"), archive.resolve("doc3.txt")));
+    }
+
+    @Test
+    @DisplayName("Keep the archives indexed when loading the directory again")
+    void reloadIndexedArchiveTest() throws IOException {
+        Path archive = testDir.resolve("bundle.zip");
+        try (ZipOutputStream zip = new ZipOutputStream(Files.newOutputStream(archive))) {
+            zip.putNextEntry(new ZipEntry("doc1.txt"));
+            zip.write("Dummy string for test purposes".getBytes(StandardCharsets.UTF_8));
+            zip.putNextEntry(new ZipEntry("doc2.txt"));
+            zip.write("Dummy string".getBytes(StandardCharsets.UTF_8));
+        }
+
+        // Count the documents submitted for indexing
+        IndexingExecutor executor = new PooledIndexingExecutor();
+        List<Path> submitted = new CopyOnWriteArrayList<>();
+        manager.setIndexingExecutor(new IndexingExecutor() {
+            @Override
+            public CompletableFuture<List<DocTerm>> submit(Path doc, DocumentReader reader, Set<String> terms) {
+                submitted.add(doc);
+                return executor.submit(doc, reader, terms);
+            }
+
+            @Override
+            public CompletableFuture<List<DocTerm>> submitBatch(List<Path> docs, DocumentReader reader,
+                                                                Set<String> terms) {
+                submitted.addAll(docs);
+                return executor.submitBatch(docs, reader, terms);
+            }
+        });
+        try {
+            manager.setTerms(DEFAULT_TERMS);
+            manager.loadFrom(testDir);
+            await().atMost(5, SECONDS).until(() -> manager.getDocs().size() == 2);
+
+            manager.loadFrom(testDir);
+            manager.refresh();
+            assertEquals(Collections.singletonList(archive), submitted, "The archive should only be read once");
+            assertEquals(2, manager.size(), "Index document size mismatch");
+        } finally {
+            manager.setIndexingExecutor(new PooledIndexingExecutor());
+        }
+    }
+
     /**
      * Fills the index with test documents and verify its
      * correct population asynchronously.
@@ -193,10 +675,58 @@ public class IndexManagerTest {
         manager.setTerms(terms);
         manager.loadFrom(testDir);
 
-        await().atMost(5, SECONDS).until(() -> manager.size() != 0);
+        await().atMost(5, SECONDS).until(() -> manager.size() >= 2);
         assertEquals(2, manager.size(), "Index document size mismatch");
     }
 
+    /**
+     * Indexes the documents of the test directory, retrieving the occurrences
+     * and the word count of every term in every document.
+     *
+     * @param terms the terms
+     * @param size the number of documents
+     * @return the statistics by document and term
+     */
+    private Map<String, Long> indexedStats(Set<String> terms, int size) {
+        manager.clear();
+        manager.setTerms(terms);
+        manager.loadFrom(testDir);
+        await().atMost(5, SECONDS).until(() -> manager.size() == size);
+
+        Map<String, Long> stats = new HashMap<>();
+        for (String term : terms) {
+            manager.getDocTermsFor(term).forEach(docTerm -> {
+                String key = docTerm.getDocument().getFileName() + "/" + term;
+                stats.put(key, docTerm.getOccurrences());
+                stats.put(key + "/words", docTerm.getWordCount());
+            });
+        }
+        return stats;
+    }
+
+    /**
+     * Retrieves the positions of the given terms in every document of the snapshot.
+     *
+     * @param snapshot the snapshot
+     * @param terms the terms
+     * @return the positions by document and term
+     */
+    private static Map<String, List<Integer>> indexedPositions(IndexSnapshot snapshot, Set<String> terms) {
+        Map<String, List<Integer>> positions = new HashMap<>();
+        for (IndexSegment segment : snapshot.getSegments()) {
+            for (String term : terms) {
+                IndexSegment.PostingCursor cursor = segment.postings(term);
+                for (int docId = cursor.docId(); docId != IndexSegment.PostingCursor.NO_MORE_DOCS;
+                     docId = cursor.next()) {
+                    assertNotNull(cursor.positions(), "Positions not recorded");
+                    positions.put(snapshot.getDocument(docId).getFileName() + "/" + term,
+                            Ints.asList(cursor.positions()));
+                }
+            }
+        }
+        return positions;
+    }
+
     /**
      * Creates a dummy test file in the given directory.
      *
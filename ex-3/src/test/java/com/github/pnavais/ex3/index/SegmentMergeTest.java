@@ -0,0 +1,257 @@
+/*
+ *
+ * Copyright 2020 Pablo Navais
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+
+package com.github.pnavais.ex3.index;
+
+import com.github.pnavais.ex3.api.index.IndexSegment;
+import com.github.pnavais.ex3.api.index.MergePolicy;
+import com.github.pnavais.ex3.api.ranking.Scorer;
+import com.github.pnavais.ex3.ranking.ScoringFunction;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.jimfs.Configuration;
+import com.google.common.jimfs.Jimfs;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileSystem;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+import static java.util.concurrent.TimeUnit.SECONDS;
+import static org.awaitility.Awaitility.await;
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for the merge of the segments of the index
+ */
+@DisplayName("Unit tests for the merge of index segments")
+public class SegmentMergeTest {
+
+    /** In-memory filesystem */
+    private static final FileSystem testFileSystem = Jimfs.newFileSystem(Configuration.unix());
+
+    /** The terms to rank */
+    private static final Set<String> TERMS = ImmutableSet.of("common", "frequent", "rare");
+
+    @Test
+    @DisplayName("Merge segments keeping the same documents and scores")
+    void mergeSegmentsTest() {
+        for (IndexStorage storage : new IndexStorage[] { IndexStorage.HEAP, IndexStorage.OFF_HEAP }) {
+            IndexSnapshot snapshot = buildSnapshot(storage, 12);
+            List<IndexSegment> sources = snapshot.getSegments().subList(2, 10);
+            IndexSegment merged = sources.get(0).merge(sources.subList(1, sources.size()));
+            IndexSnapshot updated = snapshot.withMerged(sources, merged);
+
+            assertNotNull(updated, "Merge not applied for " + storage);
+            assertEquals(5, updated.getSegments().size(), "Segment count mismatch for " + storage);
+            assertSame(merged, updated.getSegments().get(2), "Merged segment position mismatch for " + storage);
+            assertEquals(sources.stream().mapToInt(IndexSegment::size).sum(), merged.size(),
+                    "Merged size mismatch for " + storage);
+            assertEquals(snapshot.size(), updated.size(), "Document count mismatch for " + storage);
+            assertEquals(snapshot.getGeneration() + 1, updated.getGeneration(), "Generation mismatch for " + storage);
+            for (ScoringFunction function : ScoringFunction.values()) {
+                Scorer scorer = function.getScorerSupplier().get();
+                assertEquals(scoresOf(snapshot, scorer), scoresOf(updated, scorer),
+                        "Score mismatch for " + storage + "/" + function);
+            }
+        }
+    }
+
+    @Test
+    @DisplayName("Discard merges of segments no longer in the snapshot")
+    void discardStaleMergeTest() {
+        IndexSnapshot snapshot = buildSnapshot(IndexStorage.HEAP, 3);
+        List<IndexSegment> sources = snapshot.getSegments();
+        IndexSegment merged = sources.get(0).merge(sources.subList(1, sources.size()));
+
+        IndexSnapshot cleared = snapshot.cleared();
+        assertNull(cleared.withMerged(sources, merged), "Stale merge applied");
+    }
+
+    @Test
+    @DisplayName("Merge the oldest segments of each size tier")
+    void sizeTieredPolicyTest() {
+        DocumentDictionary dictionary = new DocumentDictionary();
+        List<IndexSegment> segments = new ArrayList<>();
+        int[] sizes = { 1, 2, 12, 3, 15, 1, 20, 2, 200, 4, 5 };
+        for (int i = 0; i < sizes.length; i++) {
+            segments.add(buildSegment(dictionary, "tier" + i, sizes[i], new Random(i)));
+        }
+
+        List<List<IndexSegment>> merges = new SizeTieredMergePolicy(3, 100).findMerges(segments);
+        assertEquals(3, merges.size(), "Merge count mismatch");
+        assertEquals(pick(segments, 0, 1, 5), merges.get(0), "Tier of 1-2 documents mismatch");
+        assertEquals(pick(segments, 3, 9, 10), merges.get(1), "Tier of 3-8 documents mismatch");
+        assertEquals(pick(segments, 2, 4, 6), merges.get(2), "Tier of 9-26 documents mismatch");
+        assertTrue(MergePolicy.NONE.findMerges(segments).isEmpty(), "Merges found by the no-op policy");
+        assertThrows(IllegalArgumentException.class, () -> new SizeTieredMergePolicy(1, 100),
+                "Invalid merge factor accepted");
+    }
+
+    @Test
+    @DisplayName("Merge the segments of the index manager in the background")
+    void backgroundMergeTest() throws IOException {
+        Path dir = Files.createDirectories(testFileSystem.getPath("/background"));
+        Random random = new Random(7);
+        for (int i = 0; i < 40; i++) {
+            Files.write(dir.resolve("doc" + i + ".txt"), Collections.singletonList(randomText(random)),
+                    StandardCharsets.UTF_8);
+        }
+
+        SimpleIndexManager merging = buildManager(new SizeTieredMergePolicy(4, 1000));
+        SimpleIndexManager plain = buildManager(MergePolicy.NONE);
+        merging.loadFrom(dir);
+        plain.loadFrom(dir);
+
+        await().atMost(5, SECONDS).until(() -> (merging.size() == 40) && (merging.snapshot().getSegments().size() < 10));
+        await().atMost(5, SECONDS).until(() -> plain.size() == 40);
+        assertEquals(40, plain.snapshot().getSegments().size(), "Segments merged by the no-op policy");
+        for (Path doc : plain.getDocs()) {
+            assertEquals(plain.getTermsTfIdfFor(doc), merging.getTermsTfIdfFor(doc), 1e-12, "TF/IDF mismatch for " + doc);
+        }
+    }
+
+    /**
+     * Picks the segments at the given positions.
+     *
+     * @param segments the segments
+     * @param positions the positions
+     * @return the picked segments
+     */
+    private static List<IndexSegment> pick(List<IndexSegment> segments, int... positions) {
+        List<IndexSegment> picked = new ArrayList<>();
+        for (int position : positions) {
+            picked.add(segments.get(position));
+        }
+        return picked;
+    }
+
+    /**
+     * Builds an index manager indexing every document
+     * in its own segment with the given merge policy.
+     *
+     * @param mergePolicy the merge policy
+     * @return the index manager
+     */
+    private static SimpleIndexManager buildManager(MergePolicy mergePolicy) {
+        SimpleIndexManager manager = new SimpleIndexManager();
+        manager.setTerms(TERMS);
+        manager.setBatchSize(1);
+        manager.setMergePolicy(mergePolicy);
+        return manager;
+    }
+
+    /**
+     * Retrieves the scores of every document in the snapshot.
+     *
+     * @param snapshot the snapshot
+     * @param scorer the scorer
+     * @return the scores by document
+     */
+    private static Map<Integer, Double> scoresOf(IndexSnapshot snapshot, Scorer scorer) {
+        Map<Integer, Double> scores = new HashMap<>();
+        snapshot.forEachScore(scorer, scores::put);
+        return scores;
+    }
+
+    /**
+     * Builds a snapshot of several segments with random documents.
+     *
+     * @param storage the storage of the segments
+     * @param segments the number of segments
+     * @return the snapshot
+     */
+    private static IndexSnapshot buildSnapshot(IndexStorage storage, int segments) {
+        DocumentDictionary dictionary = new DocumentDictionary();
+        IndexSnapshot snapshot = IndexSnapshot.empty(dictionary).withTerms(TERMS);
+        Random random = new Random(42);
+        for (int s = 0; s < segments; s++) {
+            snapshot = snapshot.withSegment(buildSegment(storage, dictionary, storage + "/segment" + s,
+                    1 + random.nextInt(30), random));
+        }
+        return snapshot;
+    }
+
+    /**
+     * Builds a heap segment with the given number of random documents.
+     *
+     * @param dictionary the document dictionary
+     * @param name the name of the segment
+     * @param size the number of documents
+     * @param random the random generator
+     * @return the segment
+     */
+    private static IndexSegment buildSegment(DocumentDictionary dictionary, String name, int size, Random random) {
+        return buildSegment(IndexStorage.HEAP, dictionary, name, size, random);
+    }
+
+    /**
+     * Builds a segment with the given number of random documents, where
+     * each term is found in a decreasing proportion of the documents.
+     *
+     * @param storage the storage of the segment
+     * @param dictionary the document dictionary
+     * @param name the name of the segment
+     * @param size the number of documents
+     * @param random the random generator
+     * @return the segment
+     */
+    private static IndexSegment buildSegment(IndexStorage storage, DocumentDictionary dictionary, String name, int size,
+                                             Random random) {
+        double[] frequencies = { 0.9, 0.4, 0.05 };
+        List<Path> docs = new ArrayList<>();
+        List<DocTerm> docTerms = new ArrayList<>();
+        for (int d = 0; d < size; d++) {
+            Path doc = testFileSystem.getPath("/corpus", name, "doc" + d + ".txt");
+            docs.add(doc);
+            long wordCount = 10 + random.nextInt(1000);
+            int t = 0;
+            for (String term : TERMS) {
+                DocTerm docTerm = DocTerm.of(term, doc);
+                docTerm.setWordCount(wordCount);
+                docTerm.setOccurrences((random.nextDouble() < frequencies[t++]) ? 1 + random.nextInt(10) : 0);
+                docTerms.add(docTerm);
+            }
+        }
+        return storage.getSegmentFactory().build(dictionary, docs, docTerms);
+    }
+
+    /**
+     * Generates a short random text mixing the terms with filler words.
+     *
+     * @param random the random generator
+     * @return the text
+     */
+    private static String randomText(Random random) {
+        String[] words = { "common", "common", "frequent", "rare", "filler", "other", "word" };
+        StringBuilder text = new StringBuilder();
+        for (int i = 0, n = 5 + random.nextInt(20); i < n; i++) {
+            text.append(words[random.nextInt(words.length)]).append(' ');
+        }
+        return text.toString();
+    }
+}
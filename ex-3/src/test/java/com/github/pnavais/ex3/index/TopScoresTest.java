@@ -0,0 +1,348 @@
+/*
+ *
+ * Copyright 2020 Pablo Navais
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+
+package com.github.pnavais.ex3.index;
+
+import com.github.pnavais.ex3.api.index.IndexSegment;
+import com.github.pnavais.ex3.api.ranking.Scorer;
+import com.github.pnavais.ex3.matcher.TermPositions;
+import com.github.pnavais.ex3.ranking.Proximity;
+import com.github.pnavais.ex3.ranking.RankingMode;
+import com.github.pnavais.ex3.ranking.ScoringFunction;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.jimfs.Configuration;
+import com.google.common.jimfs.Jimfs;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.nio.file.FileSystem;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for the retrieval of the top scores of an {@link IndexSnapshot}
+ */
+@DisplayName("Unit tests for the top scores of the IndexSnapshot class")
+public class TopScoresTest {
+
+    /** In-memory filesystem */
+    private static final FileSystem testFileSystem = Jimfs.newFileSystem(Configuration.unix());
+
+    /** The terms to rank, from the most to the least frequent */
+    private static final Set<String> TERMS = ImmutableSet.of("common", "frequent", "rare", "unique");
+
+    @Test
+    @DisplayName("Retrieve the same top documents as ranking all of them")
+    void topScoresMatchAllScoresTest() {
+        for (IndexStorage storage : new IndexStorage[] { IndexStorage.HEAP, IndexStorage.OFF_HEAP }) {
+            IndexSnapshot snapshot = buildSnapshot(storage);
+            for (ScoringFunction function : ScoringFunction.values()) {
+                Scorer scorer = function.getScorerSupplier().get();
+                Map<Integer, Double> allScores = new HashMap<>();
+                List<Double> sortedScores = new ArrayList<>();
+                snapshot.forEachScore(scorer, (docId, score) -> {
+                    allScores.put(docId, score);
+                    sortedScores.add(score);
+                });
+                sortedScores.sort(Comparator.reverseOrder());
+
+                for (int n : new int[] { 1, 5, 50, snapshot.size() + 10 }) {
+                    List<Integer> topDocs = new ArrayList<>();
+                    List<Double> topScores = new ArrayList<>();
+                    snapshot.forEachTopScore(scorer, n, (docId, score) -> {
+                        topDocs.add(docId);
+                        topScores.add(score);
+                    });
+
+                    String context = storage + "/" + function + "/top " + n;
+                    assertEquals(Math.min(n, snapshot.size()), topDocs.size(), "Top size mismatch " + context);
+                    assertEquals(topDocs.size(), topDocs.stream().distinct().count(), "Duplicated documents " + context);
+                    for (int i = 0; i < topDocs.size(); i++) {
+                        assertEquals(allScores.get(topDocs.get(i)), topScores.get(i), 1e-12,
+                                "Score mismatch " + context);
+                        assertEquals(sortedScores.get(i), topScores.get(i), 1e-12, "Rank mismatch " + context);
+                    }
+                }
+            }
+        }
+    }
+
+    @Test
+    @DisplayName("Share the statistics of the segments between the snapshots containing them")
+    void sharedSegmentStatisticsTest() {
+        List<IndexSegment> segments = buildSnapshot(IndexStorage.HEAP, 5, 100).getSegments();
+        Scorer scorer = ScoringFunction.BM25.getScorerSupplier().get();
+        IndexSnapshot snapshot = IndexSnapshot.empty(new DocumentDictionary()).withTerms(TERMS);
+        SegmentStatistics statistics = null;
+        for (IndexSegment segment : segments) {
+            snapshot = snapshot.withSegment(segment);
+            List<Double> sortedScores = new ArrayList<>();
+            snapshot.forEachScore(scorer, (docId, score) -> sortedScores.add(score));
+            sortedScores.sort(Comparator.reverseOrder());
+            List<Double> topScores = new ArrayList<>();
+            snapshot.forEachTopScore(scorer, 10, (docId, score) -> topScores.add(score));
+
+            String context = "with " + snapshot.getSegments().size() + " segments";
+            assertEquals(10, topScores.size(), "Top size mismatch " + context);
+            for (int i = 0; i < topScores.size(); i++) {
+                assertEquals(sortedScores.get(i), topScores.get(i), 1e-12, "Rank mismatch " + context);
+            }
+            if (statistics == null) {
+                statistics = SegmentStatistics.of(segment);
+            }
+        }
+        assertSame(statistics, SegmentStatistics.of(segments.get(0)), "Segment statistics not shared");
+    }
+
+    @Test
+    @DisplayName("Retrieve the same top scores ranking the documents in columns")
+    void columnarTopScoresMatchAllScoresTest() {
+        for (IndexStorage storage : new IndexStorage[] { IndexStorage.HEAP, IndexStorage.OFF_HEAP }) {
+            IndexSnapshot snapshot = buildSnapshot(storage);
+            for (ScoringFunction function : ScoringFunction.values()) {
+                Scorer scorer = function.getScorerSupplier().get();
+                Map<Integer, Double> allScores = new HashMap<>();
+                List<Double> sortedScores = new ArrayList<>();
+                snapshot.forEachScore(scorer, (docId, score) -> {
+                    allScores.put(docId, score);
+                    sortedScores.add(score);
+                });
+                sortedScores.sort(Comparator.reverseOrder());
+
+                for (int n : new int[] { 1, 5, 50, snapshot.size() + 10 }) {
+                    List<Integer> topDocs = new ArrayList<>();
+                    List<Double> topScores = new ArrayList<>();
+                    snapshot.forEachTopScore(scorer, n, RankingMode.COLUMNAR, (docId, score) -> {
+                        topDocs.add(docId);
+                        topScores.add(score);
+                    });
+
+                    // Columns are accumulated in single precision
+                    String context = storage + "/" + function + "/top " + n;
+                    assertEquals(Math.min(n, snapshot.size()), topDocs.size(), "Top size mismatch " + context);
+                    assertEquals(topDocs.size(), topDocs.stream().distinct().count(), "Duplicated documents " + context);
+                    for (int i = 0; i < topDocs.size(); i++) {
+                        double expected = allScores.get(topDocs.get(i));
+                        assertEquals(expected, topScores.get(i), 1e-5 * expected, "Score mismatch " + context);
+                        assertEquals(sortedScores.get(i), topScores.get(i), 1e-5 * sortedScores.get(i),
+                                "Rank mismatch " + context);
+                    }
+                }
+            }
+        }
+    }
+
+    @Test
+    @DisplayName("Retrieve the same top scores ranking partitions of the documents in parallel")
+    void parallelTopScoresMatchAllScoresTest() {
+        ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            IndexSnapshot snapshot = buildSnapshot(IndexStorage.HEAP, 3, 2 * ScoringContext.PARTITION_SIZE + 100);
+            for (ScoringFunction function : ScoringFunction.values()) {
+                Scorer scorer = function.getScorerSupplier().get();
+                Map<Integer, Double> allScores = new HashMap<>();
+                List<Double> sortedScores = new ArrayList<>();
+                snapshot.forEachScore(scorer, (docId, score) -> {
+                    allScores.put(docId, score);
+                    sortedScores.add(score);
+                });
+                sortedScores.sort(Comparator.reverseOrder());
+
+                for (RankingMode mode : RankingMode.values()) {
+                    for (int n : new int[] { 1, 10, 1000 }) {
+                        List<Integer> topDocs = new ArrayList<>();
+                        List<Double> topScores = new ArrayList<>();
+                        snapshot.forEachTopScore(scorer, n, mode, pool, (docId, score) -> {
+                            topDocs.add(docId);
+                            topScores.add(score);
+                        });
+
+                        // Columns are accumulated in single precision
+                        String context = function + "/" + mode + "/top " + n;
+                        double tolerance = (mode == RankingMode.COLUMNAR) ? 1e-5 : 1e-12;
+                        assertEquals(n, topDocs.size(), "Top size mismatch " + context);
+                        assertEquals(n, topDocs.stream().distinct().count(), "Duplicated documents " + context);
+                        for (int i = 0; i < n; i++) {
+                            double expected = allScores.get(topDocs.get(i));
+                            assertEquals(expected, topScores.get(i), tolerance * expected, "Score mismatch " + context);
+                            assertEquals(sortedScores.get(i), topScores.get(i), tolerance * sortedScores.get(i),
+                                    "Rank mismatch " + context);
+                        }
+                    }
+                }
+            }
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    @DisplayName("Boost the scores of the documents where the terms are found close to each other")
+    void proximityTopScoresTest() {
+        DocumentDictionary dictionary = new DocumentDictionary();
+        List<Path> docs = new ArrayList<>();
+        List<DocTerm> docTerms = new ArrayList<>();
+        int[][][] positions = { { { 3 }, { 4 } }, { { 4 }, { 3 } }, { { 0, 12 }, { 6, 20 } }, { {}, {} } };
+        for (int d = 0; d < positions.length; d++) {
+            Path doc = testFileSystem.getPath("/proximity", "doc" + d + ".txt");
+            docs.add(doc);
+            docTerms.add(positionedDocTerm("alpha", doc, positions[d][0]));
+            docTerms.add(positionedDocTerm("beta", doc, positions[d][1]));
+        }
+        IndexSnapshot snapshot = IndexSnapshot.empty(dictionary).withTerms(ImmutableSet.of("alpha", "beta"))
+                .withSegment(IndexStorage.HEAP.getSegmentFactory().build(dictionary, docs, docTerms));
+        Scorer scorer = ScoringFunction.TFIDF.getScorerSupplier().get();
+        double score = Math.log10(4.0 / 3) / 30;
+
+        Map<Path, Double> phrase = topScores(snapshot, scorer, Proximity.phrase());
+        assertEquals(3, phrase.size(), "Top documents size mismatch");
+        assertEquals(2 * score, phrase.get(docs.get(0)), 1e-12, "Phrase score mismatch");
+        assertEquals(score, phrase.get(docs.get(1)), 1e-12, "Reversed phrase should not be boosted");
+        assertEquals(2 * score, phrase.get(docs.get(2)), 1e-12, "Distant terms should not be boosted");
+
+        Map<Path, Double> within = topScores(snapshot, scorer, Proximity.within(7));
+        assertEquals(2 * score, within.get(docs.get(0)), 1e-12, "Proximity score mismatch");
+        assertEquals(2 * score, within.get(docs.get(1)), 1e-12, "Proximity score mismatch in any order");
+        assertEquals(2 * score * (1 + 2.0 / 7), within.get(docs.get(2)), 1e-12, "Proximity score mismatch");
+        assertEquals(2 * score, topScores(snapshot, scorer, Proximity.within(6)).get(docs.get(2)), 1e-12,
+                "Terms out of the window should not be boosted");
+    }
+
+    @Test
+    @DisplayName("Multi-word terms widen the phrase and the proximity window")
+    void multiWordProximityTopScoresTest() {
+        DocumentDictionary dictionary = new DocumentDictionary();
+        List<Path> docs = new ArrayList<>();
+        List<DocTerm> docTerms = new ArrayList<>();
+        int[][][] positions = { { { 3 }, { 5 } }, { { 3 }, { 6 } }, { {}, {} } };
+        for (int d = 0; d < positions.length; d++) {
+            Path doc = testFileSystem.getPath("/proximity", "doc" + d + ".txt");
+            docs.add(doc);
+            docTerms.add(positionedDocTerm("new york", doc, positions[d][0]));
+            docTerms.add(positionedDocTerm("city", doc, positions[d][1]));
+        }
+        IndexSnapshot snapshot = IndexSnapshot.empty(dictionary).withTerms(ImmutableSet.of("new york", "city"))
+                .withSegment(IndexStorage.HEAP.getSegmentFactory().build(dictionary, docs, docTerms));
+        Scorer scorer = ScoringFunction.TFIDF.getScorerSupplier().get();
+        double score = Math.log10(3.0 / 2) / 30;
+
+        Map<Path, Double> phrase = topScores(snapshot, scorer, Proximity.phrase());
+        assertEquals(2, phrase.size(), "Top documents size mismatch");
+        assertEquals(2 * score, phrase.get(docs.get(0)), 1e-12, "Multi-word phrase score mismatch");
+        assertEquals(score, phrase.get(docs.get(1)), 1e-12, "Gapped phrase should not be boosted");
+
+        Map<Path, Double> within = topScores(snapshot, scorer, Proximity.within(3));
+        assertEquals(2 * score, within.get(docs.get(0)), 1e-12, "Proximity score mismatch");
+        assertEquals(score * (1 + 3.0 / 4), within.get(docs.get(1)), 1e-12,
+                "Window should be widened by the extra words");
+        assertEquals(score, topScores(snapshot, scorer, Proximity.within(2)).get(docs.get(1)), 1e-12,
+                "Terms out of the window should not be boosted");
+    }
+
+    /**
+     * Builds a snapshot of several segments with random documents, where
+     * each term is found in a decreasing proportion of the documents.
+     *
+     * @param storage the storage of the segments
+     * @return the snapshot
+     */
+    private static IndexSnapshot buildSnapshot(IndexStorage storage) {
+        return buildSnapshot(storage, 20, 100);
+    }
+
+    /**
+     * Builds a snapshot of the given number of segments with random documents,
+     * where each term is found in a decreasing proportion of the documents.
+     *
+     * @param storage the storage of the segments
+     * @param segments the number of segments
+     * @param docsPerSegment the number of documents of each segment
+     * @return the snapshot
+     */
+    private static IndexSnapshot buildSnapshot(IndexStorage storage, int segments, int docsPerSegment) {
+        DocumentDictionary dictionary = new DocumentDictionary();
+        IndexSnapshot snapshot = IndexSnapshot.empty(dictionary).withTerms(TERMS);
+        Random random = new Random(42);
+        double[] frequencies = { 0.9, 0.5, 0.05, 0.005 };
+        for (int s = 0; s < segments; s++) {
+            List<Path> docs = new ArrayList<>();
+            List<DocTerm> docTerms = new ArrayList<>();
+            for (int d = 0; d < docsPerSegment; d++) {
+                Path doc = testFileSystem.getPath("/corpus", "segment" + s, "doc" + d + ".txt");
+                docs.add(doc);
+                long wordCount = 10 + random.nextInt(1000);
+                int t = 0;
+                for (String term : TERMS) {
+                    DocTerm docTerm = DocTerm.of(term, doc);
+                    docTerm.setWordCount(wordCount);
+                    docTerm.setOccurrences((random.nextDouble() < frequencies[t++]) ? 1 + random.nextInt(10) : 0);
+                    docTerms.add(docTerm);
+                }
+            }
+            snapshot = snapshot.withSegment(storage.getSegmentFactory().build(dictionary, docs, docTerms));
+        }
+        return snapshot;
+    }
+
+    /**
+     * Retrieves the top scores of the snapshot boosted by the given proximity of the terms.
+     *
+     * @param snapshot the snapshot
+     * @param scorer the scorer
+     * @param proximity the proximity of the terms
+     * @return the scores by document
+     */
+    private static Map<Path, Double> topScores(IndexSnapshot snapshot, Scorer scorer, Proximity proximity) {
+        Map<Path, Double> scores = new HashMap<>();
+        snapshot.forEachTopScore(scorer, 10, proximity, (docId, score) -> {
+            if (score > 0) {
+                scores.put(snapshot.getDocument(docId), score);
+            }
+        });
+        return scores;
+    }
+
+    /**
+     * Creates the statistics of a term found at the given positions of a document of 30 words.
+     *
+     * @param term the term
+     * @param doc the document
+     * @param positions the positions of the term
+     * @return the statistics
+     */
+    private static DocTerm positionedDocTerm(String term, Path doc, int[] positions) {
+        TermPositions.Builder builder = new TermPositions.Builder(1);
+        for (int position : positions) {
+            builder.add(0, position);
+        }
+        DocTerm docTerm = DocTerm.of(term, doc);
+        docTerm.setWordCount(30);
+        docTerm.setOccurrences(positions.length);
+        docTerm.setPositions(builder.get(0));
+        return docTerm;
+    }
+}
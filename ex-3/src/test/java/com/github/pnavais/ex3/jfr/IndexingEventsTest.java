@@ -0,0 +1,223 @@
+/*
+ *
+ * Copyright 2020 Pablo Navais
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+
+package com.github.pnavais.ex3.jfr;
+
+import com.github.pnavais.ex3.api.event.BusEvent;
+import com.github.pnavais.ex3.api.index.IndexManager;
+import com.github.pnavais.ex3.api.index.IndexingExecutor;
+import com.github.pnavais.ex3.api.reader.DocumentReader;
+import com.github.pnavais.ex3.index.DocTerm;
+import com.github.pnavais.ex3.index.PooledIndexingExecutor;
+import com.github.pnavais.ex3.event.OverflowEvent;
+import com.github.pnavais.ex3.event.SimpleEventBus;
+import com.github.pnavais.ex3.index.SimpleIndexManager;
+import com.github.pnavais.ex3.ranking.TfIdfRankingManager;
+import com.google.common.collect.ImmutableSet;
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.stream.Collectors;
+
+import static java.util.concurrent.TimeUnit.SECONDS;
+import static org.awaitility.Awaitility.await;
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for the flight recorder events of the indexing
+ */
+@DisplayName("Unit tests for the indexing flight recorder events")
+public class IndexingEventsTest {
+
+    /** The name of the event of the documents indexed on their own */
+    private static final String DOCUMENT_INDEXED = "com.github.pnavais.ex3.DocumentIndexed";
+
+    /** The name of the event of the documents indexed in batches */
+    private static final String BATCH_INDEXED = "com.github.pnavais.ex3.BatchIndexed";
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    @DisplayName("Record the documents and the batches indexed while loading a directory")
+    void recordIndexingEventsTest() throws IOException {
+        Path directory = Files.createDirectory(tempDir.resolve("docs"));
+        Path doc1 = Files.write(directory.resolve("doc1.txt"),
+                "Dummy string for test purposes\n".getBytes(StandardCharsets.UTF_8));
+        Path doc2 = Files.write(directory.resolve("doc2.txt"), "Dummy string\n".getBytes(StandardCharsets.UTF_8));
+        // Larger than the documents batched, so indexed on its own
+        Path large = Files.write(directory.resolve("large.txt"), (String.join(" ", Collections.nCopies(15000, "test"))
+                + "\n").getBytes(StandardCharsets.UTF_8));
+
+        List<RecordedEvent> events;
+        try (Recording recording = new Recording()) {
+            recording.enable(DOCUMENT_INDEXED).withThreshold(Duration.ZERO);
+            recording.enable(BATCH_INDEXED).withThreshold(Duration.ZERO);
+            recording.start();
+
+            // Complete the indexing in the calling thread, so the events are committed once completed
+            IndexingExecutor executor = new PooledIndexingExecutor();
+            List<Runnable> pending = new ArrayList<>();
+            SimpleIndexManager manager = new SimpleIndexManager();
+            manager.setIndexingExecutor(new IndexingExecutor() {
+                @Override
+                public CompletableFuture<List<DocTerm>> submit(Path doc, DocumentReader reader, Set<String> terms) {
+                    CompletableFuture<List<DocTerm>> future = new CompletableFuture<>();
+                    pending.add(() -> future.complete(executor.submit(doc, reader, terms).join()));
+                    return future;
+                }
+
+                @Override
+                public CompletableFuture<List<DocTerm>> submitBatch(List<Path> docs, DocumentReader reader,
+                                                                    Set<String> terms) {
+                    CompletableFuture<List<DocTerm>> future = new CompletableFuture<>();
+                    pending.add(() -> future.complete(executor.submitBatch(docs, reader, terms).join()));
+                    return future;
+                }
+            });
+            manager.setTerms(ImmutableSet.of("test", "string"));
+            manager.loadFrom(directory);
+            pending.forEach(Runnable::run);
+            assertEquals(3, manager.size(), "Index document size mismatch");
+
+            recording.stop();
+            Path dump = tempDir.resolve("indexing.jfr");
+            recording.dump(dump);
+            events = RecordingFile.readAllEvents(dump);
+        }
+
+        List<RecordedEvent> documents = eventsOf(events, DOCUMENT_INDEXED);
+        assertEquals(1, documents.size(), "Document events mismatch");
+        RecordedEvent document = documents.get(0);
+        assertEquals(large.toString(), document.getString("path"), "Document path mismatch");
+        assertEquals(Files.size(large), document.getLong("bytes"), "Document size mismatch");
+        assertEquals(1, document.getInt("documents"), "Documents mismatch");
+        assertEquals(15000, document.getLong("tokens"), "Document tokens mismatch");
+        assertEquals(1, document.getInt("termsHit"), "Document terms hit mismatch");
+        assertFalse(document.getBoolean("failed"), "The document should be parsed");
+
+        List<RecordedEvent> batches = eventsOf(events, BATCH_INDEXED);
+        assertEquals(1, batches.size(), "Batch events mismatch");
+        RecordedEvent batch = batches.get(0);
+        assertEquals(2, batch.getInt("documents"), "Batch documents mismatch");
+        assertEquals(Files.size(doc1) + Files.size(doc2), batch.getLong("bytes"), "Batch size mismatch");
+        assertEquals(7, batch.getLong("tokens"), "Batch tokens mismatch");
+        assertEquals(3, batch.getInt("termsHit"), "Batch terms hit mismatch");
+        assertTrue(ImmutableSet.of(doc1.toString(), doc2.toString()).contains(batch.getString("firstPath")),
+                "Batch first document mismatch");
+    }
+
+    @Test
+    @DisplayName("Index, rank and publish events without the flight recorder API")
+    void withoutFlightRecorderTest() throws Exception {
+        Path directory = Files.createDirectory(tempDir.resolve("docs"));
+        Files.write(directory.resolve("doc1.txt"), "Dummy string for test purposes\n".getBytes(StandardCharsets.UTF_8));
+        Files.write(directory.resolve("doc2.txt"), "Dummy string\n".getBytes(StandardCharsets.UTF_8));
+
+        try (NoFlightRecorderClassLoader loader = new NoFlightRecorderClassLoader()) {
+            assertFalse((Boolean) loader.loadClass(FlightRecording.class.getName()).getMethod("isAvailable")
+                    .invoke(null), "The flight recorder should not be available");
+
+            Class<?> managerClass = loader.loadClass(SimpleIndexManager.class.getName());
+            Object manager = managerClass.newInstance();
+            managerClass.getMethod("setTerms", Set.class).invoke(manager, ImmutableSet.of("test"));
+            managerClass.getMethod("loadFrom", Path.class).invoke(manager, directory);
+            await().atMost(5, SECONDS).until(() -> managerClass.getMethod("size").invoke(manager).equals(2));
+
+            Class<?> rankingClass = loader.loadClass(TfIdfRankingManager.class.getName());
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            rankingClass.getMethod("displayTopResults", int.class, loader.loadClass(IndexManager.class.getName()),
+                    PrintStream.class).invoke(rankingClass.newInstance(), 1, manager, new PrintStream(out, true));
+            assertTrue(out.toString().contains("[doc1.txt]"), "Top result mismatch");
+
+            Class<?> busClass = loader.loadClass(SimpleEventBus.class.getName());
+            Object overflow = loader.loadClass(OverflowEvent.class.getName()).getMethod("with", Path.class)
+                    .invoke(null, directory);
+            busClass.getMethod("publish", loader.loadClass(BusEvent.class.getName()))
+                    .invoke(busClass.getMethod("getDefault").invoke(null), overflow);
+        }
+    }
+
+    /**
+     * Retrieves the recorded events of the given type.
+     *
+     * @param events the recorded events
+     * @param name the name of the event type
+     * @return the events of the type
+     */
+    private static List<RecordedEvent> eventsOf(List<RecordedEvent> events, String name) {
+        return events.stream().filter(event -> event.getEventType().getName().equals(name))
+                .collect(Collectors.toList());
+    }
+
+    /**
+     * Loads the classes of the server on its own, as if the
+     * flight recorder API was missing from the virtual machine.
+     */
+    private static final class NoFlightRecorderClassLoader extends URLClassLoader {
+
+        /** The package of the classes of the server */
+        private static final String SERVER_PACKAGE = "com.github.pnavais.ex3.";
+
+        /**
+         * Creates the class loader of the classes of the server.
+         */
+        NoFlightRecorderClassLoader() {
+            super(new URL[] { SimpleIndexManager.class.getProtectionDomain().getCodeSource().getLocation() },
+                    NoFlightRecorderClassLoader.class.getClassLoader());
+        }
+
+        @Override
+        protected Class<?> loadClass(String name, boolean resolve) throws ClassNotFoundException {
+            if (name.startsWith("jdk.jfr.")) {
+                throw new ClassNotFoundException(name);
+            }
+            if (!name.startsWith(SERVER_PACKAGE)) {
+                return super.loadClass(name, resolve);
+            }
+            synchronized (getClassLoadingLock(name)) {
+                Class<?> loaded = findLoadedClass(name);
+                if (loaded == null) {
+                    loaded = findClass(name);
+                }
+                if (resolve) {
+                    resolveClass(loaded);
+                }
+                return loaded;
+            }
+        }
+    }
+}
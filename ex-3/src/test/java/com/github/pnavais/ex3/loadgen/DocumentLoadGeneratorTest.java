@@ -0,0 +1,88 @@
+/*
+ *
+ * Copyright 2020 Pablo Navais
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+
+package com.github.pnavais.ex3.loadgen;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for the {@link DocumentLoadGenerator} class
+ */
+@DisplayName("Unit tests for the DocumentLoadGenerator class")
+public class DocumentLoadGeneratorTest {
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    @DisplayName("Build a different word for each rank of the vocabulary")
+    void vocabularyWordsTest() {
+        ZipfVocabulary vocabulary = new ZipfVocabulary(10000, 1.0);
+        Set<String> words = IntStream.range(0, vocabulary.size()).mapToObj(ZipfVocabulary::word)
+                .collect(Collectors.toSet());
+        assertEquals(vocabulary.size(), words.size(), "Words should be unique");
+        assertTrue(vocabulary.probability(0) > vocabulary.probability(1), "The first word should be the most frequent");
+        assertEquals(2.0, vocabulary.probability(0) / vocabulary.probability(1), 1e-9, "Zipf ratio mismatch");
+    }
+
+    @Test
+    @DisplayName("Write complete documents at the given rate for the given duration")
+    void generateDocumentsTest() throws IOException {
+        Path directory = Files.createDirectory(tempDir.resolve("watched"));
+        List<Path> notified = Collections.synchronizedList(new ArrayList<>());
+        DocumentLoadGenerator generator = new DocumentLoadGenerator(directory, new ZipfVocabulary(100, 1.0),
+                new Random(42));
+        generator.setRate(50);
+        generator.setDurationMs(400);
+        generator.setMinWords(10);
+        generator.setMaxWords(100);
+        generator.setListener(notified::add);
+        generator.run();
+
+        List<Path> docs;
+        try (Stream<Path> files = Files.list(directory)) {
+            docs = files.collect(Collectors.toList());
+        }
+        assertTrue(generator.getDocuments() >= 15 && generator.getDocuments() <= 25, "Documents written mismatch");
+        assertEquals(generator.getDocuments(), docs.size(), "Documents in directory mismatch");
+        assertEquals(new HashSet<>(docs), new HashSet<>(notified), "Notified documents mismatch");
+        assertFalse(Files.exists(tempDir.resolve(".watched.staging")), "Staging directory should be deleted");
+        for (Path doc : docs) {
+            String[] words = new String(Files.readAllBytes(doc), StandardCharsets.UTF_8).trim().split("\\s+");
+            assertTrue(words.length >= 10 && words.length <= 100, "Number of words out of bounds");
+        }
+    }
+}
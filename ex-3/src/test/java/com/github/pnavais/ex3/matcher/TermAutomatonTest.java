@@ -0,0 +1,124 @@
+/*
+ *
+ * Copyright 2020 Pablo Navais
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+package com.github.pnavais.ex3.matcher;
+
+import com.google.common.collect.ImmutableList;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for the {@link TermAutomaton} class
+ */
+@DisplayName("Unit tests for the TermAutomaton class")
+public class TermAutomatonTest {
+
+    @Test
+    @DisplayName("Match overlapping and nested phrases")
+    void matchOverlappingPhrasesTest() {
+        // Phrases : [0 1], [1], [0 1 0], [1 0 1 2]
+        TermAutomaton automaton = new TermAutomaton(ImmutableList.of(
+                new int[] { 0, 1 }, new int[] { 1 }, new int[] { 0, 1, 0 }, new int[] { 1, 0, 1, 2 }));
+
+        long[] hits = match(automaton, new int[] { 0, 1, 0, 1, 2, -1, 1, 0, 1, 0 }, 4);
+
+        assertArrayEquals(new long[] { 3, 4, 2, 1 }, hits, "Phrase occurrences mismatch");
+    }
+
+    @Test
+    @DisplayName("Match thousands of random phrases")
+    void matchRandomPhrasesTest() {
+        Random random = new Random(42);
+        int vocabularySize = 50;
+        Set<List<Integer>> distinct = new LinkedHashSet<>();
+        while (distinct.size() < 3000) {
+            List<Integer> phrase = new ArrayList<>();
+            for (int j = random.nextInt(4); j >= 0; j--) {
+                phrase.add(random.nextInt(vocabularySize));
+            }
+            distinct.add(phrase);
+        }
+        List<int[]> phrases = distinct.stream()
+                .map(p -> p.stream().mapToInt(Integer::intValue).toArray())
+                .collect(Collectors.toList());
+        int[] words = new int[20000];
+        for (int i = 0; i < words.length; i++) {
+            words[i] = random.nextInt(vocabularySize + 5) - 5;
+        }
+
+        long[] hits = match(new TermAutomaton(phrases), words, phrases.size());
+
+        for (int id = 0; id < phrases.size(); id++) {
+            assertEquals(countNaive(phrases.get(id), words), hits[id], "Phrase occurrences mismatch");
+        }
+    }
+
+    @Test
+    @DisplayName("Match nothing without phrases")
+    void matchNoPhrasesTest() {
+        TermAutomaton automaton = new TermAutomaton(Collections.emptyList());
+        assertEquals(1, automaton.size(), "The automaton should only contain the root");
+        assertEquals(TermAutomaton.ROOT, automaton.next(TermAutomaton.ROOT, 0), "Unexpected transition");
+    }
+
+    /**
+     * Feeds the words to the automaton retrieving the phrase occurrences.
+     *
+     * @param automaton the automaton
+     * @param words the word ids
+     * @param phraseCount the number of phrases
+     * @return the occurrences of each phrase
+     */
+    private static long[] match(TermAutomaton automaton, int[] words, int phraseCount) {
+        long[] hits = new long[phraseCount];
+        int state = TermAutomaton.ROOT;
+        for (int word : words) {
+            state = automaton.next(state, word);
+            automaton.emit(state, hits);
+        }
+        return hits;
+    }
+
+    /**
+     * Counts the occurrences of a phrase comparing it at every position.
+     *
+     * @param phrase the phrase
+     * @param words the word ids
+     * @return the number of occurrences
+     */
+    private static long countNaive(int[] phrase, int[] words) {
+        long count = 0;
+        for (int i = 0; i + phrase.length <= words.length; i++) {
+            int j = 0;
+            while ((j < phrase.length) && (words[i + j] == phrase[j])) {
+                j++;
+            }
+            count += (j == phrase.length) ? 1 : 0;
+        }
+        return count;
+    }
+}
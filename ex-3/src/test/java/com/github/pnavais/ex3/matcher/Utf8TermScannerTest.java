@@ -0,0 +1,137 @@
+/*
+ *
+ * Copyright 2020 Pablo Navais
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+package com.github.pnavais.ex3.matcher;
+
+import com.google.common.collect.ImmutableSet;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for the {@link Utf8TermMatcher} and {@link Utf8TermScanner} classes
+ */
+@DisplayName("Unit tests for the UTF-8 term matcher")
+public class Utf8TermScannerTest {
+
+    /** The testing contents */
+    private static final String CONTENTS = "Dummy string for test purposes\nDummy  string\r\n" +
+            "\tcafé test-case test\u0000testing café";
+
+    /** The testing terms */
+    private static final Set<String> TERMS = ImmutableSet.of("Dummy", "test", "café", "string");
+
+    @Test
+    @DisplayName("Match every term of a large set")
+    void matchLargeTermSetTest() {
+        Random random = new Random(42);
+        List<String> terms = new ArrayList<>();
+        for (int i = 0; i < 5000; i++) {
+            terms.add(Long.toString(random.nextLong(), 36) + "ü");
+        }
+        Utf8TermMatcher matcher = Utf8TermMatcher.of(terms);
+
+        for (int id = 0; id < terms.size(); id++) {
+            byte[] term = terms.get(id).getBytes(StandardCharsets.UTF_8);
+            assertEquals(id, matcher.match(term, 0, term.length), "Term id mismatch");
+            assertEquals(Utf8TermMatcher.NO_MATCH, matcher.match(term, 0, term.length - 1),
+                    "Prefix of a term should not match");
+        }
+    }
+
+    @Test
+    @DisplayName("Count words and terms in heap contents")
+    void scanHeapContentsTest() {
+        Utf8TermScanner scanner = new Utf8TermScanner(new CompiledTermSet(TERMS));
+        byte[] contents = CONTENTS.getBytes(StandardCharsets.UTF_8);
+        scanner.scan(contents, 0, contents.length);
+        scanner.finish();
+
+        verify(scanner);
+    }
+
+    @Test
+    @DisplayName("Count words and terms in direct contents")
+    void scanDirectContentsTest() {
+        Utf8TermScanner scanner = new Utf8TermScanner(new CompiledTermSet(TERMS));
+        byte[] contents = CONTENTS.getBytes(StandardCharsets.UTF_8);
+        ByteBuffer buffer = ByteBuffer.allocateDirect(contents.length);
+        buffer.put(contents).flip();
+        scanner.scan(buffer);
+        scanner.finish();
+
+        assertFalse(buffer.hasRemaining(), "The buffer was not consumed");
+        verify(scanner);
+    }
+
+    @Test
+    @DisplayName("Count words and terms in contents split in chunks")
+    void scanChunkedContentsTest() {
+        byte[] contents = CONTENTS.getBytes(StandardCharsets.UTF_8);
+        for (int chunkSize = 1; chunkSize <= contents.length; chunkSize++) {
+            Utf8TermScanner scanner = new Utf8TermScanner(new CompiledTermSet(TERMS));
+            for (int off = 0; off < contents.length; off += chunkSize) {
+                int len = Math.min(chunkSize, contents.length - off);
+                ByteBuffer chunk = ByteBuffer.allocateDirect(len);
+                chunk.put(contents, off, len).flip();
+                scanner.scan(chunk);
+            }
+            scanner.finish();
+
+            verify(scanner);
+        }
+    }
+
+    @Test
+    @DisplayName("Count phrases spanning chunks")
+    void scanPhrasesTest() {
+        Utf8TermScanner scanner = new Utf8TermScanner(new CompiledTermSet(
+                ImmutableSet.of("Dummy string", "string", "string for test", "test")));
+        byte[] contents = CONTENTS.getBytes(StandardCharsets.UTF_8);
+        for (int off = 0; off < contents.length; off += 3) {
+            scanner.scan(contents, off, Math.min(3, contents.length - off));
+        }
+        scanner.finish();
+
+        assertEquals(12, scanner.getWordCount(), "Incorrect total number of words found");
+        assertEquals(2, scanner.getHits(0), "Incorrect number of occurrences of \"Dummy string\"");
+        assertEquals(2, scanner.getHits(1), "Incorrect number of occurrences of \"string\"");
+        assertEquals(1, scanner.getHits(2), "Incorrect number of occurrences of \"string for test\"");
+        assertEquals(2, scanner.getHits(3), "Incorrect number of occurrences of \"test\"");
+    }
+
+    /**
+     * Verifies the statistics of the testing contents.
+     *
+     * @param scanner the scanner
+     */
+    private static void verify(Utf8TermScanner scanner) {
+        assertEquals(12, scanner.getWordCount(), "Incorrect total number of words found");
+        assertEquals(2, scanner.getHits(0), "Incorrect number of occurrences of \"Dummy\"");
+        assertEquals(2, scanner.getHits(1), "Incorrect number of occurrences of \"test\"");
+        assertEquals(2, scanner.getHits(2), "Incorrect number of occurrences of \"café\"");
+        assertEquals(2, scanner.getHits(3), "Incorrect number of occurrences of \"string\"");
+    }
+}
@@ -0,0 +1,92 @@
+/*
+ *
+ * Copyright 2020 Pablo Navais
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+
+package com.github.pnavais.ex3.matcher;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for the {@link WordFilter} class
+ */
+@DisplayName("Unit tests for the word filter")
+public class WordFilterTest {
+
+    @Test
+    @DisplayName("Hash words the same way whether decoded or split in chunks")
+    void hashConsistencyTest() {
+        for (String word : new String[] { "latency", "café", "naïve-ünïcode", "x" }) {
+            byte[] encoded = word.getBytes(StandardCharsets.UTF_8);
+            long expected = WordFilter.hash(word);
+            assertEquals(expected, WordFilter.hash(WordFilter.SEED, encoded, 0, encoded.length),
+                    "Hash mismatch for the bytes of " + word);
+            int split = encoded.length / 2;
+            long chunked = WordFilter.hash(WordFilter.hash(WordFilter.SEED, encoded, 0, split),
+                    ByteBuffer.wrap(encoded), split, encoded.length - split);
+            assertEquals(expected, chunked, "Hash mismatch for the chunks of " + word);
+        }
+    }
+
+    @Test
+    @DisplayName("Report every word added with a false positive rate close to the target")
+    void falsePositiveRateTest() {
+        Random random = new Random(42);
+        WordFilter.Builder builder = new WordFilterPolicy(0.01, WordFilterPolicy.DEFAULT_MAX_BYTES).newBuilder();
+        List<String> words = new ArrayList<>();
+        for (int i = 0; i < 2000; i++) {
+            String word = Long.toString(random.nextLong() & Long.MAX_VALUE, 36);
+            words.add(word);
+            builder.add(WordFilter.hash(word));
+            builder.add(WordFilter.hash(word));
+        }
+        assertEquals(2000, builder.size(), "Distinct word count mismatch");
+        WordFilter filter = builder.build();
+
+        words.forEach(word -> assertTrue(filter.mightContain(WordFilter.hash(word)), "Word missing " + word));
+        int falsePositives = 0;
+        for (int i = 0; i < 100000; i++) {
+            if (filter.mightContain(WordFilter.hash("absent-" + i))) {
+                falsePositives++;
+            }
+        }
+        assertTrue(falsePositives < 2000, "False positive rate too high : " + falsePositives / 1000.0 + "%");
+        assertTrue(filter.sizeInBytes() < 2000 * 2, "Filter too large : " + filter.sizeInBytes());
+    }
+
+    @Test
+    @DisplayName("Keep the filters within the maximum size")
+    void maxSizeTest() {
+        WordFilter.Builder builder = new WordFilterPolicy(0.001, 64).newBuilder();
+        for (int i = 0; i < 1000; i++) {
+            builder.add(WordFilter.hash("word" + i));
+        }
+        WordFilter filter = builder.build();
+        assertEquals(64, filter.sizeInBytes(), "Filter size mismatch");
+        assertTrue(filter.mightContain(WordFilter.hash("word999")), "Word missing");
+        assertNull(WordFilterPolicy.DISABLED.newBuilder(), "Builder of a disabled policy");
+        assertThrows(IllegalArgumentException.class, () -> new WordFilterPolicy(1, 64), "Invalid rate accepted");
+    }
+}
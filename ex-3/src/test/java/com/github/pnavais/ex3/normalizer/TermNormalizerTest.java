@@ -0,0 +1,88 @@
+/*
+ *
+ * Copyright 2020 Pablo Navais
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+package com.github.pnavais.ex3.normalizer;
+
+import com.github.pnavais.ex3.matcher.CompiledTermSet;
+import com.github.pnavais.ex3.matcher.Utf8TermScanner;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.EnumSet;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for the {@link TermNormalizer} class
+ */
+@DisplayName("Unit tests for the TermNormalizer class")
+public class TermNormalizerTest {
+
+    /** The normalizer applying all the steps */
+    private static final TermNormalizer FULL = TermNormalizer.of(EnumSet.allOf(NormalizationStep.class));
+
+    @Test
+    @DisplayName("Normalize words applying all the steps")
+    void normalizeWordsTest() {
+        assertEquals("error", FULL.normalize("Errors,"), "Punctuation, case and plural not normalized");
+        assertEquals("query", FULL.normalize("(QUERIES)"), "Plural ending in -ies not normalized");
+        assertEquals("status", FULL.normalize("status"), "Words ending in -us must be kept");
+        assertEquals("test-case", FULL.normalize("\"Test-Case\""), "Inner punctuation must be kept");
+        assertEquals("café", FULL.normalize("«CAFÉ»"), "Multi-byte characters not normalized");
+        assertNull(FULL.normalize("The"), "Stop words must be dropped");
+        assertNull(FULL.normalize("--"), "Punctuation only words must be dropped");
+    }
+
+    @Test
+    @DisplayName("Normalize words applying only some steps")
+    void normalizeStepsTest() {
+        TermNormalizer lowerCase = TermNormalizer.of(ImmutableList.of(NormalizationStep.LOWERCASE));
+        assertEquals("errors,", lowerCase.normalize("Errors,"), "Only case must be folded");
+        assertEquals("the", lowerCase.normalize("The"), "Stop words must be kept");
+        assertTrue(TermNormalizer.of(ImmutableList.of()).isIdentity(), "No steps must leave words unchanged");
+        assertEquals("Errors,", TermNormalizer.NONE.normalize("Errors,"), "Words must be left unchanged");
+    }
+
+    @Test
+    @DisplayName("Scan normalized tokens through the token cache")
+    void scanNormalizedTest() {
+        CompiledTermSet terms = new CompiledTermSet(ImmutableSet.of("Error", "error budget", "café"), FULL);
+        assertEquals(ImmutableSet.of("Error", "error budget", "café"), terms, "The terms as supplied must be kept");
+        assertSame(terms, CompiledTermSet.of(terms, FULL), "Compiled terms must be reused");
+        assertNotSame(terms, CompiledTermSet.of(terms, TermNormalizer.NONE), "Terms must be compiled again");
+        byte[] contents = ("ERRORS, the Error budget! errors... (café) The error\tof budgets " +
+                "error-budget").getBytes(StandardCharsets.UTF_8);
+
+        // Scan twice to exercise the cached tokens
+        for (int i = 0; i < 2; i++) {
+            Utf8TermScanner scanner = new Utf8TermScanner(terms);
+            ByteBuffer buffer = ByteBuffer.allocateDirect(contents.length);
+            buffer.put(contents).flip();
+            scanner.scan(buffer);
+            scanner.finish();
+
+            assertEquals(8, scanner.getWordCount(), "Stop words must not be counted");
+            assertEquals(4, scanner.getHits(0), "Incorrect number of occurrences of \"Error\"");
+            assertEquals(2, scanner.getHits(1), "Incorrect number of occurrences of \"error budget\"");
+            assertEquals(1, scanner.getHits(2), "Incorrect number of occurrences of \"café\"");
+        }
+    }
+}
@@ -0,0 +1,117 @@
+/*
+ *
+ * Copyright 2020 Pablo Navais
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+
+package com.github.pnavais.ex3.reader;
+
+import com.github.pnavais.ex3.api.exception.FileParsingException;
+import com.github.pnavais.ex3.index.DocTerm;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.jimfs.Configuration;
+import com.google.common.jimfs.Jimfs;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileSystem;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for the {@link ZipDocumentReader} class
+ */
+@DisplayName("Unit tests for the ZipDocumentReader class")
+public class ZipDocumentReaderTest {
+
+    /** In-memory filesystem */
+    private static final FileSystem testFileSystem = Jimfs.newFileSystem(Configuration.unix());
+
+    @Test
+    @DisplayName("Read the entries of an archive, including subdirectories, skipping the ones out of it")
+    void processEntriesTest() throws IOException, FileParsingException {
+        Path archive = Files.createDirectories(testFileSystem.getPath("/archives")).resolve("bundle.zip");
+        try (ZipOutputStream zip = new ZipOutputStream(Files.newOutputStream(archive))) {
+            zip.putNextEntry(new ZipEntry("nested/"));
+            Map<String, String> entries = ImmutableMap.<String, String>builder()
+                    .put("doc1.txt", "test string")
+                    .put("nested/doc2.txt", "test test")
+                    .put("/rooted/./doc3.txt", "string")
+                    .put("../escaped.txt", "test")
+                    .put("nested/../../escaped.txt", "test")
+                    .put("nested/..", "test")
+                    .build();
+            for (Map.Entry<String, String> entry : entries.entrySet()) {
+                zip.putNextEntry(new ZipEntry(entry.getKey()));
+                zip.write(entry.getValue().getBytes(StandardCharsets.UTF_8));
+            }
+        }
+
+        List<DocTerm> docTerms = new ZipDocumentReader().processDocTerms(archive, ImmutableSet.of("test", "string"));
+
+        Map<Path, Long> occurrences = new HashMap<>();
+        docTerms.forEach(docTerm -> occurrences.merge(docTerm.getDocument(), docTerm.getOccurrences(), Long::sum));
+        assertEquals(ImmutableMap.of(archive.resolve("doc1.txt"), 2L, archive.resolve("nested/doc2.txt"), 2L,
+                archive.resolve("rooted/doc3.txt"), 1L), occurrences, "Entries mismatch");
+        assertTrue(docTerms.stream().allMatch(docTerm -> docTerm.getDocument().startsWith(archive)),
+                "Entries must not escape the archive");
+    }
+
+    @Test
+    @DisplayName("Read the entries larger than the streaming threshold, with known and unknown sizes")
+    void processLargeEntriesTest() throws IOException, FileParsingException {
+        StringBuilder contents = new StringBuilder();
+        int lines = 0;
+        while (contents.length() <= 2 * ZipDocumentReader.STREAMING_THRESHOLD) {
+            contents.append("test string\n");
+            lines++;
+        }
+        byte[] bytes = contents.toString().getBytes(StandardCharsets.UTF_8);
+        CRC32 crc = new CRC32();
+        crc.update(bytes);
+
+        Path archive = Files.createDirectories(testFileSystem.getPath("/archives")).resolve("large.zip");
+        try (ZipOutputStream zip = new ZipOutputStream(Files.newOutputStream(archive))) {
+            zip.putNextEntry(new ZipEntry("deflated.txt"));
+            zip.write(bytes);
+            ZipEntry stored = new ZipEntry("stored.txt");
+            stored.setMethod(ZipEntry.STORED);
+            stored.setSize(bytes.length);
+            stored.setCrc(crc.getValue());
+            zip.putNextEntry(stored);
+            zip.write(bytes);
+            zip.putNextEntry(new ZipEntry("small.txt"));
+            zip.write("test".getBytes(StandardCharsets.UTF_8));
+        }
+
+        List<DocTerm> docTerms = new ZipDocumentReader().processDocTerms(archive, ImmutableSet.of("test"));
+
+        Map<Path, Long> occurrences = new HashMap<>();
+        docTerms.forEach(docTerm -> occurrences.merge(docTerm.getDocument(), docTerm.getOccurrences(), Long::sum));
+        assertEquals(ImmutableMap.of(archive.resolve("deflated.txt"), (long) lines, archive.resolve("stored.txt"),
+                (long) lines, archive.resolve("small.txt"), 1L), occurrences, "Entries mismatch");
+    }
+}
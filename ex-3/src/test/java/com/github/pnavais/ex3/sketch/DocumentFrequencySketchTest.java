@@ -0,0 +1,148 @@
+/*
+ *
+ * Copyright 2020 Pablo Navais
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+
+package com.github.pnavais.ex3.sketch;
+
+import com.github.pnavais.ex3.index.SimpleIndexManager;
+import com.github.pnavais.ex3.loadgen.ZipfVocabulary;
+import com.github.pnavais.ex3.matcher.WordFilter;
+import com.github.pnavais.ex3.reader.DocumentReaderFactory;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.jimfs.Configuration;
+import com.google.common.jimfs.Jimfs;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileSystem;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+import static java.util.concurrent.TimeUnit.SECONDS;
+import static org.awaitility.Awaitility.await;
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for the {@link DocumentFrequencySketch} class
+ */
+@DisplayName("Unit tests for the document frequency sketch")
+public class DocumentFrequencySketchTest {
+
+    /** In-memory filesystem */
+    private static final FileSystem testFileSystem = Jimfs.newFileSystem(Configuration.unix());
+
+    @Test
+    @DisplayName("Estimate document frequencies within the error bound")
+    void estimateWithinBoundsTest() {
+        ZipfVocabulary vocabulary = new ZipfVocabulary(50000, 1.0);
+        DocumentFrequencySketch sketch = new DocumentFrequencySketch(1e-3, 0.01, 100);
+        Map<String, Integer> exact = new HashMap<>();
+        Random random = new Random(42);
+        for (int d = 0; d < 2000; d++) {
+            Set<String> words = new HashSet<>();
+            for (int w = 0; w < 100; w++) {
+                words.add(vocabulary.next(random));
+            }
+            words.forEach(word -> exact.merge(word, 1, Integer::sum));
+            sketch.addDocument(words.stream().mapToLong(WordFilter::hash).toArray());
+        }
+
+        assertEquals(2000, sketch.getDocuments(), "Document count mismatch");
+        long bound = sketch.getErrorBound();
+        int exceeded = 0;
+        for (Map.Entry<String, Integer> entry : exact.entrySet()) {
+            long estimate = sketch.estimate(entry.getKey());
+            assertTrue(estimate >= entry.getValue(), "Underestimated frequency of " + entry.getKey());
+            if (estimate - entry.getValue() > bound) {
+                exceeded++;
+            }
+        }
+        assertTrue(exceeded <= exact.size() / 50, "Too many estimates above the error bound : " + exceeded);
+        for (int rank = 0; rank < 10; rank++) {
+            String word = ZipfVocabulary.word(rank);
+            assertEquals((long) exact.get(word), sketch.estimate(word), "Frequent word not counted exactly " + word);
+        }
+        assertEquals(0, sketch.estimate("missing-word-never-seen") > bound ? 1 : 0, "Absent word above the bound");
+    }
+
+    @Test
+    @DisplayName("Track the most frequent keys with bounded errors")
+    void heavyHittersTest() {
+        HeavyHitters heavyHitters = new HeavyHitters(10);
+        Random random = new Random(7);
+        Map<Long, Integer> exact = new HashMap<>();
+        for (int i = 0; i < 20000; i++) {
+            long key = (random.nextInt(4) == 0) ? random.nextInt(1000) + 100 : random.nextInt(5);
+            exact.merge(key, 1, Integer::sum);
+            heavyHitters.add(key);
+        }
+
+        assertEquals(10, heavyHitters.size(), "Tracked keys mismatch");
+        for (long key = 0; key < 5; key++) {
+            assertTrue(heavyHitters.contains(key), "Frequent key not tracked " + key);
+            long count = heavyHitters.count(key);
+            assertTrue((count >= exact.get(key)) && (count - heavyHitters.error(key) <= exact.get(key)),
+                    "Count out of bounds for " + key);
+        }
+    }
+
+    @Test
+    @DisplayName("Estimate the document frequency of words not indexed")
+    void indexManagerEstimateTest() throws IOException {
+        Path dir = Files.createDirectories(testFileSystem.getPath("/estimate"));
+        Files.write(dir.resolve("doc1.txt"), Collections.singletonList("Dummy string for test purposes"),
+                StandardCharsets.UTF_8);
+        Files.write(dir.resolve("doc2.txt"), Collections.singletonList("Dummy string"), StandardCharsets.UTF_8);
+        Files.write(dir.resolve("doc3.txt"), Collections.singletonList("another dummy document"),
+                StandardCharsets.UTF_8);
+
+        SimpleIndexManager manager = new SimpleIndexManager();
+        manager.setTerms(ImmutableSet.of("test"));
+        manager.setFrequencySketch(new DocumentFrequencySketch());
+        DocumentReaderFactory.setCollectingWords(true);
+        try {
+            manager.loadFrom(dir);
+            await().atMost(5, SECONDS).until(() -> manager.size() == 3);
+
+            // Documents indexed again once modified are only accounted once
+            long generation = manager.snapshot().getGeneration();
+            manager.addFile(dir.resolve("doc1.txt"));
+            manager.refresh();
+            await().atMost(5, SECONDS).until(() -> manager.snapshot().getGeneration() > generation);
+        } finally {
+            DocumentReaderFactory.setCollectingWords(false);
+        }
+
+        assertEquals(2, manager.estimateDocumentFrequency("Dummy"), "Word frequency mismatch");
+        assertEquals(2, manager.estimateDocumentFrequency("Dummy string"), "Phrase frequency mismatch");
+        assertEquals(1, manager.estimateDocumentFrequency("purposes"), "Rare word frequency mismatch");
+        assertEquals(0, manager.estimateDocumentFrequency("missing"), "Missing word frequency mismatch");
+        assertEquals(Math.log10(3.0 / 2), manager.getApproximateIdf("string"), 1e-12, "Idf mismatch");
+        assertEquals(0.0, manager.getApproximateIdf("missing"), "Idf of a missing word mismatch");
+
+        manager.clear();
+        assertEquals(0, manager.estimateDocumentFrequency("Dummy"), "Sketch not cleared");
+    }
+}
@@ -0,0 +1,87 @@
+/*
+ *
+ * Copyright 2020 Pablo Navais
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+
+package com.github.pnavais.ex3.staging;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for the {@link BoundedStagingQueue} class
+ */
+@DisplayName("Unit tests for the BoundedStagingQueue class")
+public class StagingQueueTest {
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    @DisplayName("Discard files when the queue is full")
+    void shedOverflowTest() throws InterruptedException {
+        BoundedStagingQueue queue = new BoundedStagingQueue(2, OverflowPolicy.SHED);
+        for (int i = 0; i < 5; i++) {
+            queue.offer(tempDir.resolve("doc" + i + ".txt"));
+        }
+
+        StagingMetrics metrics = queue.getMetrics();
+        assertEquals(2, metrics.getDepth(), "Queue depth mismatch");
+        assertEquals(2, metrics.getAccepted(), "Accepted files mismatch");
+        assertEquals(3, metrics.getShed(), "Discarded files mismatch");
+        assertTrue(queue.pollReconciliation(), "A reconciliation scan should be requested");
+        assertFalse(queue.pollReconciliation(), "The reconciliation request should be cleared");
+        assertEquals(2, queue.poll(10, 0, TimeUnit.MILLISECONDS).size(), "Staged files mismatch");
+    }
+
+    @Test
+    @DisplayName("Spill files to disk when the queue is full, keeping their order")
+    void spillOverflowTest() throws InterruptedException {
+        BoundedStagingQueue queue = new BoundedStagingQueue(3, OverflowPolicy.SPILL, tempDir);
+        List<Path> files = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            files.add(tempDir.resolve("dir" + (i % 2)).resolve("doc" + i + ".txt"));
+            queue.offer(files.get(i));
+        }
+
+        StagingMetrics metrics = queue.getMetrics();
+        assertEquals(3, metrics.getDepth(), "Queue depth mismatch");
+        assertEquals(7, metrics.getSpilled(), "Spilled files mismatch");
+        assertEquals(0, metrics.getShed(), "No files should be discarded");
+
+        List<Path> staged = new ArrayList<>();
+        List<Path> batch;
+        while (!(batch = queue.poll(2, 0, TimeUnit.MILLISECONDS)).isEmpty()) {
+            staged.addAll(batch);
+            if (staged.size() <= 4) {
+                Path late = tempDir.resolve("late" + staged.size() + ".txt");
+                files.add(late);
+                queue.offer(late);
+            }
+        }
+        assertEquals(files, staged, "Files must be staged in order of arrival");
+        assertEquals(0, queue.getMetrics().getSpilled(), "Spilled files must be read back");
+        assertFalse(queue.pollReconciliation(), "No reconciliation scan should be requested");
+    }
+}
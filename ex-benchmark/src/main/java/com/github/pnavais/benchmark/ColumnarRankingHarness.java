@@ -0,0 +1,160 @@
+/*
+ *
+ * Copyright 2020 Pablo Navais
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+
+package com.github.pnavais.benchmark;
+
+import com.github.pnavais.ex3.api.ranking.Scorer;
+import com.github.pnavais.ex3.index.IndexSnapshot;
+import com.github.pnavais.ex3.index.SimpleIndexManager;
+import com.github.pnavais.ex3.index.SizeTieredMergePolicy;
+import com.github.pnavais.ex3.ranking.RankingMode;
+import com.github.pnavais.ex3.ranking.ScoringFunction;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * Compares the time to rank the top documents walking the postings of the terms
+ * (MaxScore) with scoring all of them from columns of precomputed term scores,
+ * both in the calling thread and splitting the documents in partitions ranked
+ * in parallel.
+ * <p>
+ * Run it with the number of documents, the terms to rank and the number of
+ * threads ranking in parallel, i.e. :
+ * <pre>
+ * java -cp ex-benchmark/target/benchmarks.jar \
+ *      com.github.pnavais.benchmark.ColumnarRankingHarness 50000 error,latency,batch 4
+ * </pre>
+ * Words are drawn with a skewed distribution, so the first ones of the vocabulary
+ * are found in most documents and the last ones in a few. The index is merged
+ * before ranking, then every scoring function ranks the top 10 documents in
+ * both modes, reporting the average time and whether the tops match.
+ */
+public class ColumnarRankingHarness {
+
+    /** The number of words of each document */
+    private static final int WORDS_PER_DOC = 400;
+
+    /** The number of rankings discarded before timing */
+    private static final int WARMUP = 200;
+
+    /** The number of rankings timed */
+    private static final int RANKINGS = 500;
+
+    /** The words of the documents, from the most to the least frequent */
+    private static final String[] VOCABULARY = { "error", "budget", "latency", "request", "server", "index",
+            "document", "term", "queue", "batch", "segment", "ranking", "column", "vector", "shard", "replica" };
+
+    public static void main(String[] args) throws IOException {
+        int docCount = (args.length > 0) ? Integer.parseInt(args[0]) : 50000;
+        List<String> terms = Arrays.asList(((args.length > 1) ? args[1] : "error,latency,batch").split(","));
+        int threads = (args.length > 2) ? Integer.parseInt(args[2]) : Runtime.getRuntime().availableProcessors();
+
+        Path corpus = Files.createTempDirectory("columnar-ranking");
+        Random random = new Random(42);
+        for (int d = 0; d < docCount; d++) {
+            StringBuilder text = new StringBuilder();
+            int length = WORDS_PER_DOC / 2 + random.nextInt(WORDS_PER_DOC);
+            for (int w = 0; w < length; w++) {
+                double skew = random.nextDouble();
+                text.append(VOCABULARY[(int) (VOCABULARY.length * skew * skew * skew)])
+                        .append((w % 16 == 15) ? '\n' : ' ');
+            }
+            Files.write(corpus.resolve("doc-" + d + ".txt"), text.toString().getBytes(StandardCharsets.UTF_8));
+        }
+
+        SimpleIndexManager manager = new SimpleIndexManager();
+        SizeTieredMergePolicy mergePolicy = new SizeTieredMergePolicy(SizeTieredMergePolicy.DEFAULT_MERGE_FACTOR,
+                SizeTieredMergePolicy.DEFAULT_MAX_MERGED_SIZE);
+        manager.setMergePolicy(mergePolicy);
+        manager.setTerms(new HashSet<>(terms));
+        manager.loadFrom(corpus);
+        while ((manager.size() < docCount) || !mergePolicy.findMerges(manager.snapshot().getSegments()).isEmpty()) {
+            Thread.yield();
+        }
+        IndexSnapshot snapshot = manager.snapshot();
+        System.out.printf("documents=%d segments=%d terms=%s threads=%d%n", snapshot.size(),
+                snapshot.getSegments().size(), terms, threads);
+
+        ForkJoinPool pool = new ForkJoinPool(threads);
+        for (ScoringFunction function : ScoringFunction.values()) {
+            Scorer scorer = function.getScorerSupplier().get();
+            List<Integer> maxScoreTop = top(snapshot, scorer, RankingMode.MAXSCORE, null);
+            boolean sameTop = maxScoreTop.equals(top(snapshot, scorer, RankingMode.COLUMNAR, null))
+                    && maxScoreTop.equals(top(snapshot, scorer, RankingMode.MAXSCORE, pool))
+                    && maxScoreTop.equals(top(snapshot, scorer, RankingMode.COLUMNAR, pool));
+            System.out.printf("%-8s maxscore=%d us (parallel %d us) columnar=%d us (parallel %d us) same.top=%b%n",
+                    function, time(snapshot, scorer, RankingMode.MAXSCORE, null),
+                    time(snapshot, scorer, RankingMode.MAXSCORE, pool),
+                    time(snapshot, scorer, RankingMode.COLUMNAR, null),
+                    time(snapshot, scorer, RankingMode.COLUMNAR, pool), sameTop);
+        }
+        pool.shutdown();
+
+        try (Stream<Path> files = Files.list(corpus)) {
+            files.forEach(file -> file.toFile().delete());
+        }
+        Files.delete(corpus);
+    }
+
+    /**
+     * Retrieves the ids of the top 10 documents.
+     *
+     * @param snapshot the snapshot
+     * @param scorer the scorer
+     * @param mode the ranking mode
+     * @param pool the pool ranking in parallel or null
+     * @return the document ids
+     */
+    private static List<Integer> top(IndexSnapshot snapshot, Scorer scorer, RankingMode mode, ForkJoinPool pool) {
+        List<Integer> docIds = new ArrayList<>();
+        snapshot.forEachTopScore(scorer, 10, mode, pool, (docId, score) -> docIds.add(docId));
+        return docIds;
+    }
+
+    /**
+     * Measures the average time to rank the top 10 documents.
+     *
+     * @param snapshot the snapshot
+     * @param scorer the scorer
+     * @param mode the ranking mode
+     * @param pool the pool ranking in parallel or null
+     * @return the average time in microseconds
+     */
+    private static long time(IndexSnapshot snapshot, Scorer scorer, RankingMode mode, ForkJoinPool pool) {
+        long[] checksum = new long[1];
+        for (int i = 0; i < WARMUP; i++) {
+            snapshot.forEachTopScore(scorer, 10, mode, pool, (docId, score) -> checksum[0] += docId);
+        }
+        long start = System.nanoTime();
+        for (int i = 0; i < RANKINGS; i++) {
+            snapshot.forEachTopScore(scorer, 10, mode, pool, (docId, score) -> checksum[0] += docId);
+        }
+        return TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - start) / RANKINGS;
+    }
+}
@@ -0,0 +1,125 @@
+/*
+ *
+ * Copyright 2020 Pablo Navais
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+package com.github.pnavais.benchmark;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Generates synthetic documents whose words follow a Zipfian
+ * distribution over a random vocabulary.
+ */
+public class Corpus {
+
+    /** The number of words per line */
+    private static final int WORDS_PER_LINE = 12;
+
+    /** The vocabulary */
+    private final String[] vocabulary;
+
+    /** The cumulative probability of each word in the vocabulary */
+    private final double[] cdf;
+
+    /** The random generator */
+    private final Random random;
+
+    /**
+     * Creates the corpus generator.
+     *
+     * @param vocabularySize the number of different words
+     * @param seed the random seed
+     */
+    public Corpus(int vocabularySize, long seed) {
+        this.random = new Random(seed);
+        this.vocabulary = new String[vocabularySize];
+        this.cdf = new double[vocabularySize];
+
+        double sum = 0;
+        for (int i = 0; i < vocabularySize; i++) {
+            vocabulary[i] = randomWord();
+            sum += 1.0 / (i + 1);
+            cdf[i] = sum;
+        }
+        for (int i = 0; i < vocabularySize; i++) {
+            cdf[i] /= sum;
+        }
+    }
+
+    /**
+     * Retrieves the word with the given rank
+     * in the vocabulary (0 being the most frequent).
+     *
+     * @param rank the rank
+     * @return the word
+     */
+    public String word(int rank) {
+        return vocabulary[rank];
+    }
+
+    /**
+     * Retrieves the next random word.
+     *
+     * @return the word
+     */
+    public String nextWord() {
+        int index = Arrays.binarySearch(cdf, random.nextDouble());
+        return vocabulary[Math.min((index < 0) ? -index - 1 : index, vocabulary.length - 1)];
+    }
+
+    /**
+     * Writes a document of approximately the given size.
+     *
+     * @param file the file to write
+     * @param size the size in bytes
+     * @return the file written
+     * @throws IOException on I/O errors
+     */
+    public Path writeDocument(Path file, long size) throws IOException {
+        long written = 0;
+        try (BufferedWriter writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+            while (written < size) {
+                StringBuilder line = new StringBuilder();
+                for (int i = 0; i < WORDS_PER_LINE; i++) {
+                    line.append(i > 0 ? " " : "").append(nextWord());
+                }
+                writer.write(line.toString());
+                writer.newLine();
+                written += line.length() + 1;
+            }
+        }
+        return file;
+    }
+
+    /**
+     * Builds a random lower case word.
+     *
+     * @return the word
+     */
+    private String randomWord() {
+        char[] word = new char[2 + random.nextInt(10)];
+        for (int i = 0; i < word.length; i++) {
+            word[i] = (char) ('a' + random.nextInt(26));
+        }
+        return new String(word);
+    }
+}
@@ -0,0 +1,96 @@
+/*
+ *
+ * Copyright 2020 Pablo Navais
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+package com.github.pnavais.benchmark;
+
+import com.github.pnavais.ex3.api.exception.FileParsingException;
+import com.github.pnavais.ex3.index.DocTerm;
+import com.github.pnavais.ex3.normalizer.NormalizationStep;
+import com.github.pnavais.ex3.normalizer.TermNormalizer;
+import com.github.pnavais.ex3.reader.DocumentReaderFactory;
+import com.github.pnavais.ex3.reader.ReaderType;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.EnumSet;
+import java.util.LinkedHashSet;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the time to extract the terms statistics of a large document
+ * with each one of the available readers, with and without normalizing the tokens.
+ * The throughput in bytes per second is the corpus size divided by the average time.
+ *
+ * Run with : java -jar ex-benchmark/target/benchmarks.jar DocumentReaderBenchmark
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class DocumentReaderBenchmark {
+
+    /** The reader to measure */
+    @Param({"BUFFERED", "MAPPED", "ASYNC"})
+    private ReaderType readerType;
+
+    /** Whether to apply all the normalization steps */
+    @Param({"false", "true"})
+    private boolean normalize;
+
+    /** The size of the document in MB */
+    @Param({"256"})
+    private int documentSize;
+
+    /** The number of terms to look for */
+    @Param({"4"})
+    private int termCount;
+
+    /** The document to read */
+    private Path document;
+
+    /** The terms to look for */
+    private Set<String> terms;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        Corpus corpus = new Corpus(50_000, 42);
+        document = corpus.writeDocument(Files.createTempFile("corpus", ".txt"), documentSize * 1024L * 1024L);
+        DocumentReaderFactory.setNormalizer(normalize ? TermNormalizer.of(EnumSet.allOf(NormalizationStep.class))
+                : TermNormalizer.NONE);
+        terms = new LinkedHashSet<>();
+        for (int i = 0; i < termCount; i++) {
+            terms.add(corpus.word(i * 10));
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        Files.deleteIfExists(document);
+    }
+
+    @Benchmark
+    public long processDocTerms() throws FileParsingException {
+        return readerType.getReaderSupplier().get().processDocTerms(document, terms).stream()
+                .mapToLong(DocTerm::getOccurrences)
+                .sum();
+    }
+}
@@ -0,0 +1,169 @@
+/*
+ *
+ * Copyright 2020 Pablo Navais
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+
+package com.github.pnavais.benchmark;
+
+import com.github.pnavais.ex3.index.DocTerm;
+import com.github.pnavais.ex3.index.SimpleIndexManager;
+import com.github.pnavais.ex3.loadgen.ZipfVocabulary;
+import com.github.pnavais.ex3.matcher.WordFilterPolicy;
+import com.github.pnavais.ex3.reader.DocumentReaderFactory;
+import com.github.pnavais.ex3.sketch.DocumentFrequencySketch;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Reports the drift of the rankings of arbitrary terms when their idf is computed
+ * from the document frequencies estimated by a {@link DocumentFrequencySketch}
+ * instead of the exact ones, for several error bounds (and thus memory sizes).
+ * <p>
+ * Documents draw their words from a Zipf distributed vocabulary. Each query mixes
+ * words of different frequencies, ranking the documents containing them by the
+ * average tf/idf of the words, i.e. :
+ * <pre>
+ * java -cp ex-benchmark/target/benchmarks.jar \
+ *      com.github.pnavais.benchmark.FrequencySketchDriftHarness 20000
+ * </pre>
+ * Exact document frequencies are counted from the documents read by the query.
+ */
+public class FrequencySketchDriftHarness {
+
+    /** The number of words of each document */
+    private static final int WORDS_PER_DOC = 300;
+
+    /** The number of words of the vocabulary */
+    private static final int VOCABULARY_SIZE = 200000;
+
+    /** The error bounds of the sketches compared */
+    private static final double[] EPSILONS = { 1e-3, 1e-4, 1e-5, 1e-6 };
+
+    /** The ranks of the words of each query */
+    private static final int[][] QUERIES = { { 5, 500 }, { 50, 5000 }, { 200, 2000, 20000 }, { 1000, 100000 } };
+
+    /** The number of top documents compared */
+    private static final int TOP = 10;
+
+    public static void main(String[] args) throws IOException {
+        int docCount = (args.length > 0) ? Integer.parseInt(args[0]) : 20000;
+
+        Path corpus = Files.createTempDirectory("frequency-sketch");
+        ZipfVocabulary vocabulary = new ZipfVocabulary(VOCABULARY_SIZE, 1.0);
+        Random random = new Random(42);
+        for (int d = 0; d < docCount; d++) {
+            StringBuilder text = new StringBuilder();
+            for (int w = 0; w < WORDS_PER_DOC; w++) {
+                text.append(vocabulary.next(random)).append((w % 16 == 15) ? '\n' : ' ');
+            }
+            Files.write(corpus.resolve("doc-" + d + ".txt"), text.toString().getBytes(StandardCharsets.UTF_8));
+        }
+
+        DocumentReaderFactory.setWordFilterPolicy(WordFilterPolicy.defaults());
+        DocumentReaderFactory.setCollectingWords(true);
+        for (double epsilon : EPSILONS) {
+            DocumentFrequencySketch sketch = new DocumentFrequencySketch(epsilon, DocumentFrequencySketch.DEFAULT_DELTA,
+                    DocumentFrequencySketch.DEFAULT_HEAVY_HITTERS);
+            SimpleIndexManager manager = new SimpleIndexManager();
+            manager.setTerms(Collections.singleton(ZipfVocabulary.word(0)));
+            manager.setFrequencySketch(sketch);
+            manager.loadFrom(corpus);
+            while (manager.size() < docCount) {
+                Thread.yield();
+            }
+            System.out.printf("epsilon=%.0e sketch: %s%n", epsilon, sketch);
+
+            for (int[] ranks : QUERIES) {
+                report(manager, Arrays.stream(ranks).mapToObj(ZipfVocabulary::word)
+                        .collect(Collectors.toCollection(LinkedHashSet::new)));
+            }
+        }
+
+        try (Stream<Path> files = Files.list(corpus)) {
+            files.forEach(file -> file.toFile().delete());
+        }
+        Files.delete(corpus);
+    }
+
+    /**
+     * Ranks the documents containing the given words with the exact
+     * and the estimated document frequencies, reporting the drift.
+     *
+     * @param manager the index manager
+     * @param words the words of the query
+     */
+    private static void report(SimpleIndexManager manager, Set<String> words) {
+        List<DocTerm> found = manager.queryTerms(words);
+        Map<String, Long> exact = found.stream().collect(Collectors.groupingBy(DocTerm::getTerm, Collectors.counting()));
+
+        int documentCount = manager.size();
+        Map<String, Double> exactIdf = new HashMap<>();
+        Map<String, Double> approximateIdf = new HashMap<>();
+        StringBuilder frequencies = new StringBuilder();
+        for (String word : words) {
+            long df = exact.getOrDefault(word, 0L);
+            exactIdf.put(word, (df > 0) ? Math.log10((documentCount * 1.0) / df) : 0.0);
+            approximateIdf.put(word, manager.getApproximateIdf(word));
+            frequencies.append(String.format(" %s=%d/%d", word, df, manager.estimateDocumentFrequency(word)));
+        }
+
+        List<Path> exactRanking = rank(found, exactIdf, words.size());
+        List<Path> approximateRanking = rank(found, approximateIdf, words.size());
+        int overlap = 0;
+        int displacement = 0;
+        for (int i = 0; i < Math.min(TOP, exactRanking.size()); i++) {
+            int position = approximateRanking.indexOf(exactRanking.get(i));
+            overlap += (position < TOP) ? 1 : 0;
+            displacement = Math.max(displacement, Math.abs(position - i));
+        }
+        System.out.printf("  df exact/estimated:%s -> top %d overlap %d/%d, max displacement %d of %d documents%n",
+                frequencies, TOP, overlap, Math.min(TOP, exactRanking.size()), displacement, exactRanking.size());
+    }
+
+    /**
+     * Ranks the documents by the average tf/idf of the words.
+     *
+     * @param found the statistics of the documents containing the words
+     * @param idf the idf of each word
+     * @param words the number of words
+     * @return the documents from the highest to the lowest score
+     */
+    private static List<Path> rank(List<DocTerm> found, Map<String, Double> idf, int words) {
+        Map<Path, Double> scores = new HashMap<>();
+        found.forEach(docTerm -> scores.merge(docTerm.getDocument(),
+                docTerm.computeTf() * idf.get(docTerm.getTerm()) / words, Double::sum));
+        List<Path> ranking = new ArrayList<>(scores.keySet());
+        ranking.sort((a, b) -> {
+            int order = Double.compare(scores.get(b), scores.get(a));
+            return (order != 0) ? order : a.compareTo(b);
+        });
+        return ranking;
+    }
+}
@@ -0,0 +1,169 @@
+/*
+ *
+ * Copyright 2020 Pablo Navais
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+package com.github.pnavais.benchmark;
+
+import com.github.pnavais.ex3.api.index.IndexSegment;
+import com.github.pnavais.ex3.api.index.SegmentFactory;
+import com.github.pnavais.ex3.index.DocTerm;
+import com.github.pnavais.ex3.index.DocumentDictionary;
+import com.github.pnavais.ex3.index.IndexStorage;
+
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the garbage collection cost of the index storages under sustained
+ * ingestion. Segments of synthetic documents are built continuously and kept
+ * alive (as the index would), while the whole index is ranked periodically.
+ * <p>
+ * Run it with a fixed heap for each storage, i.e. :
+ * <pre>
+ * java -Xmx2g -cp ex-benchmark/target/benchmarks.jar \
+ *      com.github.pnavais.benchmark.IngestionGcHarness OFF_HEAP 2000
+ * </pre>
+ * The total and maximum pauses are reported from the garbage collector
+ * beans (the maximum being the longest collection observed between samples).
+ */
+public class IngestionGcHarness {
+
+    /** The number of documents per segment */
+    private static final int DOCS_PER_SEGMENT = 100;
+
+    /** The number of different terms */
+    private static final int VOCABULARY_SIZE = 5000;
+
+    /** The number of terms found in each document */
+    private static final int TERMS_PER_DOC = 500;
+
+    /** The number of segments between ranking passes */
+    private static final int RANKING_INTERVAL = 50;
+
+    /** The number of terms ranked on each pass */
+    private static final int RANKED_TERMS = 3;
+
+    public static void main(String[] args) {
+        IndexStorage storage = (args.length > 0) ? IndexStorage.valueOf(args[0]) : IndexStorage.HEAP;
+        int segmentCount = (args.length > 1) ? Integer.parseInt(args[1]) : 2000;
+
+        SegmentFactory factory = storage.getSegmentFactory();
+        DocumentDictionary dictionary = new DocumentDictionary();
+        Random random = new Random(42);
+        List<IndexSegment> segments = new ArrayList<>();
+        List<String> rankedTerms = new ArrayList<>();
+        for (int i = 0; i < RANKED_TERMS; i++) {
+            rankedTerms.add(term(i));
+        }
+
+        long maxRanking = 0;
+        long maxPause = 0;
+        long lastPauses = gcTime();
+        long start = System.nanoTime();
+
+        for (int s = 0; s < segmentCount; s++) {
+            segments.add(buildSegment(factory, dictionary, random, s));
+
+            long pauses = gcTime();
+            maxPause = Math.max(maxPause, pauses - lastPauses);
+            lastPauses = pauses;
+
+            if ((s + 1) % RANKING_INTERVAL == 0) {
+                long rankingStart = System.nanoTime();
+                double[] total = new double[1];
+                segments.forEach(segment -> segment.forEachDocument(rankedTerms, (docId, wordCount, occurrences) -> {
+                    if (wordCount > 0) {
+                        total[0] += occurrences[0] * 1.0 / wordCount;
+                    }
+                }));
+                maxRanking = Math.max(maxRanking, System.nanoTime() - rankingStart);
+            }
+        }
+
+        long elapsed = System.nanoTime() - start;
+        System.out.printf("storage=%s segments=%d documents=%d postings=%d%n", storage, segmentCount,
+                (long) segmentCount * DOCS_PER_SEGMENT, (long) segmentCount * DOCS_PER_SEGMENT * TERMS_PER_DOC);
+        System.out.printf("elapsed=%d ms gc.count=%d gc.total=%d ms gc.max=%d ms ranking.max=%d ms heap.used=%d MB%n",
+                TimeUnit.NANOSECONDS.toMillis(elapsed), gcCount(), gcTime(), maxPause,
+                TimeUnit.NANOSECONDS.toMillis(maxRanking),
+                (Runtime.getRuntime().totalMemory() - Runtime.getRuntime().freeMemory()) >> 20);
+    }
+
+    /**
+     * Builds a segment of synthetic documents with random occurrences
+     * of a random subset of the vocabulary.
+     *
+     * @param factory the segment factory
+     * @param dictionary the document dictionary
+     * @param random the random generator
+     * @param index the index of the segment
+     * @return the segment
+     */
+    private static IndexSegment buildSegment(SegmentFactory factory, DocumentDictionary dictionary, Random random,
+                                             int index) {
+        List<Path> documents = new ArrayList<>(DOCS_PER_SEGMENT);
+        List<DocTerm> docTerms = new ArrayList<>(DOCS_PER_SEGMENT * TERMS_PER_DOC);
+        for (int d = 0; d < DOCS_PER_SEGMENT; d++) {
+            Path doc = Paths.get("/corpus", "segment-" + index, "doc-" + d + ".txt");
+            documents.add(doc);
+            long wordCount = 1000 + random.nextInt(9000);
+            int first = random.nextInt(VOCABULARY_SIZE);
+            for (int t = 0; t < TERMS_PER_DOC; t++) {
+                DocTerm docTerm = DocTerm.of(term((first + t) % VOCABULARY_SIZE), doc);
+                docTerm.setOccurrences(1 + random.nextInt(20));
+                docTerm.setWordCount(wordCount);
+                docTerms.add(docTerm);
+            }
+        }
+        return factory.build(dictionary, documents, docTerms);
+    }
+
+    /**
+     * Retrieves the term with the given index.
+     *
+     * @param index the index
+     * @return the term
+     */
+    private static String term(int index) {
+        return "term" + index;
+    }
+
+    /**
+     * Retrieves the accumulated collection time of all collectors.
+     *
+     * @return the collection time in milliseconds
+     */
+    private static long gcTime() {
+        return ManagementFactory.getGarbageCollectorMXBeans().stream()
+                .mapToLong(GarbageCollectorMXBean::getCollectionTime).sum();
+    }
+
+    /**
+     * Retrieves the accumulated number of collections of all collectors.
+     *
+     * @return the number of collections
+     */
+    private static long gcCount() {
+        return ManagementFactory.getGarbageCollectorMXBeans().stream()
+                .mapToLong(GarbageCollectorMXBean::getCollectionCount).sum();
+    }
+}
@@ -0,0 +1,184 @@
+/*
+ *
+ * Copyright 2020 Pablo Navais
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+
+package com.github.pnavais.benchmark;
+
+import com.github.pnavais.ex3.api.index.IndexSegment;
+import com.github.pnavais.ex3.api.ranking.Scorer;
+import com.github.pnavais.ex3.index.HeapIndexSegment;
+import com.github.pnavais.ex3.index.IndexSnapshot;
+import com.github.pnavais.ex3.index.SimpleIndexManager;
+import com.github.pnavais.ex3.ranking.Proximity;
+import com.github.pnavais.ex3.ranking.ScoringFunction;
+import com.github.pnavais.ex3.reader.DocumentReaderFactory;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * Measures the memory taken by the positions of the terms in the postings of the
+ * index, indexing the same corpus without and with the positions recorded (see
+ * DocumentReaderFactory.setRecordingPositions), and the time to rank the top
+ * documents boosting the ones where the terms are found close to each other.
+ * <p>
+ * Run it with the number of documents and the terms to rank, i.e. :
+ * <pre>
+ * java -XX:+UseParallelGC -cp ex-benchmark/target/benchmarks.jar \
+ *      com.github.pnavais.benchmark.PositionsMemoryHarness 20000 "error,latency,error budget"
+ * </pre>
+ * The encoded size of the positions is reported by the heap segments, while the
+ * heap retained includes the offsets of the positions of every posting as well.
+ * The parallel collector is preferred, as the regions of G1 left partially used
+ * after a collection account for the heap retained too.
+ */
+public class PositionsMemoryHarness {
+
+    /** The number of words of each document */
+    private static final int WORDS_PER_DOC = 400;
+
+    /** The number of rankings timed */
+    private static final int RANKINGS = 200;
+
+    /** The words of the documents, from the most to the least frequent */
+    private static final String[] VOCABULARY = { "error", "budget", "latency", "request", "server", "index",
+            "document", "term", "queue", "batch", "segment", "ranking" };
+
+    public static void main(String[] args) throws IOException {
+        int docCount = (args.length > 0) ? Integer.parseInt(args[0]) : 20000;
+        List<String> terms = Arrays.asList(((args.length > 1) ? args[1] : "error,latency,error budget").split(","));
+
+        Path corpus = Files.createTempDirectory("positions-memory");
+        Random random = new Random(42);
+        for (int d = 0; d < docCount; d++) {
+            StringBuilder text = new StringBuilder();
+            for (int w = 0; w < WORDS_PER_DOC; w++) {
+                double skew = random.nextDouble();
+                text.append(VOCABULARY[(int) (VOCABULARY.length * skew * skew)])
+                        .append((w % 16 == 15) ? '\n' : ' ');
+            }
+            Files.write(corpus.resolve("doc-" + d + ".txt"), text.toString().getBytes(StandardCharsets.UTF_8));
+        }
+
+        IndexSnapshot[] snapshots = new IndexSnapshot[2];
+        for (int run = 0; run < 2; run++) {
+            DocumentReaderFactory.setRecordingPositions(run == 1);
+            snapshots[run] = index(corpus, terms, docCount);
+        }
+        DocumentReaderFactory.setRecordingPositions(false);
+
+        long[] postings = new long[1];
+        long[] occurrences = new long[1];
+        long positionsSize = 0;
+        for (IndexSegment segment : snapshots[1].getSegments()) {
+            positionsSize += ((HeapIndexSegment) segment).getPositionsSize();
+            for (String term : terms) {
+                segment.forEachPosting(term, (docId, wordCount, termOccurrences) -> {
+                    postings[0]++;
+                    occurrences[0] += termOccurrences;
+                });
+            }
+        }
+        System.out.printf("documents=%d segments=%d terms=%s postings=%d positions=%d%n", snapshots[1].size(),
+                snapshots[1].getSegments().size(), terms, postings[0], occurrences[0]);
+        System.out.printf("encoded positions=%d KB (%.2f bytes/posting, %.2f bytes/position)%n",
+                positionsSize >> 10, (double) positionsSize / postings[0], (double) positionsSize / occurrences[0]);
+
+        Scorer scorer = ScoringFunction.BM25.getScorerSupplier().get();
+        System.out.printf("top 10 : plain=%d us phrase=%d us within 8 words=%d us%n",
+                time(snapshots[1], scorer, null), time(snapshots[1], scorer, Proximity.phrase()),
+                time(snapshots[1], scorer, Proximity.within(8)));
+
+        // The heap retained by each index is the one released once its snapshot is unreachable
+        long[] retained = new long[2];
+        for (int run = 1; run >= 0; run--) {
+            long before = usedHeap();
+            snapshots[run] = null;
+            retained[run] = before - usedHeap();
+        }
+        System.out.printf("heap retained without positions=%d KB with positions=%d KB (%.2f bytes/posting more)%n",
+                retained[0] >> 10, retained[1] >> 10, (double) (retained[1] - retained[0]) / postings[0]);
+
+        try (Stream<Path> files = Files.list(corpus)) {
+            files.forEach(file -> file.toFile().delete());
+        }
+        Files.delete(corpus);
+    }
+
+    /**
+     * Indexes the corpus in a new index.
+     *
+     * @param corpus the directory of the documents
+     * @param terms the terms
+     * @param docCount the number of documents
+     * @return the snapshot of the index
+     */
+    private static IndexSnapshot index(Path corpus, List<String> terms, int docCount) {
+        SimpleIndexManager manager = new SimpleIndexManager();
+        manager.setTerms(new HashSet<>(terms));
+        manager.loadFrom(corpus);
+        while (manager.size() < docCount) {
+            Thread.yield();
+        }
+        return manager.snapshot();
+    }
+
+    /**
+     * Retrieves the heap used after collecting the garbage.
+     *
+     * @return the bytes used
+     */
+    private static long usedHeap() {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+
+    /**
+     * Measures the average time to rank the top 10 documents.
+     *
+     * @param snapshot the snapshot
+     * @param scorer the scorer
+     * @param proximity the proximity of the terms or null for none
+     * @return the average time in microseconds
+     */
+    private static long time(IndexSnapshot snapshot, Scorer scorer, Proximity proximity) {
+        long[] checksum = new long[1];
+        long start = 0;
+        for (int i = 0; i < 2 * RANKINGS; i++) {
+            if (i == RANKINGS) {
+                start = System.nanoTime();
+            }
+            if (proximity != null) {
+                snapshot.forEachTopScore(scorer, 10, proximity, (docId, score) -> checksum[0] += docId);
+            } else {
+                snapshot.forEachTopScore(scorer, 10, (docId, score) -> checksum[0] += docId);
+            }
+        }
+        return TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - start) / RANKINGS;
+    }
+}
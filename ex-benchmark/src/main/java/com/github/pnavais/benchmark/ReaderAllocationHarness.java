@@ -0,0 +1,112 @@
+/*
+ *
+ * Copyright 2020 Pablo Navais
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+
+package com.github.pnavais.benchmark;
+
+import com.github.pnavais.ex3.api.exception.FileParsingException;
+import com.github.pnavais.ex3.index.DocTerm;
+import com.github.pnavais.ex3.reader.DocumentReaderFactory;
+import com.github.pnavais.ex3.reader.ReaderType;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * Measures the bytes allocated and the time to read each small document
+ * with readers created for every document versus pooled readers reused
+ * by the reading thread (see DocumentReaderFactory.setPooling).
+ * <p>
+ * Run it with the number of documents, i.e. :
+ * <pre>
+ * java -cp ex-benchmark/target/benchmarks.jar \
+ *      com.github.pnavais.benchmark.ReaderAllocationHarness 20000
+ * </pre>
+ * The allocations are retrieved from the thread management bean
+ * of the HotSpot virtual machine for the reading thread only.
+ */
+public class ReaderAllocationHarness {
+
+    /** The number of words of each document */
+    private static final int WORDS_PER_DOC = 400;
+
+    /** The number of times the corpus is read */
+    private static final int RUNS = 5;
+
+    /** The words of the documents */
+    private static final String[] VOCABULARY = { "error", "budget", "latency", "request", "server", "index",
+            "document", "term", "queue", "batch", "segment", "ranking" };
+
+    public static void main(String[] args) throws IOException, FileParsingException {
+        int docCount = (args.length > 0) ? Integer.parseInt(args[0]) : 20000;
+
+        Path corpus = Files.createTempDirectory("reader-allocation");
+        Random random = new Random(42);
+        List<Path> docs = new ArrayList<>(docCount);
+        for (int d = 0; d < docCount; d++) {
+            StringBuilder text = new StringBuilder();
+            for (int w = 0; w < WORDS_PER_DOC; w++) {
+                text.append(VOCABULARY[random.nextInt(VOCABULARY.length)]).append((w % 16 == 15) ? '\n' : ' ');
+            }
+            Path doc = corpus.resolve("doc-" + d + ".txt");
+            Files.write(doc, text.toString().getBytes(StandardCharsets.UTF_8));
+            docs.add(doc);
+        }
+        Set<String> terms = new HashSet<>(Arrays.asList("error", "latency", "error budget"));
+
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long threadId = Thread.currentThread().getId();
+        for (ReaderType readerType : ReaderType.values()) {
+            DocumentReaderFactory.setReaderSupplier(readerType.getReaderSupplier());
+            for (boolean pooling : new boolean[] { false, true }) {
+                DocumentReaderFactory.setPooling(pooling);
+                long best = Long.MAX_VALUE;
+                long allocated = Long.MAX_VALUE;
+                long checksum = 0;
+                for (int r = 0; r < RUNS; r++) {
+                    long startBytes = threads.getThreadAllocatedBytes(threadId);
+                    long start = System.nanoTime();
+                    for (Path doc : docs) {
+                        for (DocTerm docTerm : DocumentReaderFactory.getReader(doc).processDocTerms(doc, terms)) {
+                            checksum += docTerm.getOccurrences();
+                        }
+                    }
+                    best = Math.min(best, System.nanoTime() - start);
+                    allocated = Math.min(allocated, threads.getThreadAllocatedBytes(threadId) - startBytes);
+                }
+                System.out.printf("reader=%s pooled=%b best=%d ms bytes/doc=%d (checksum %d)%n", readerType, pooling,
+                        TimeUnit.NANOSECONDS.toMillis(best), allocated / docCount, checksum);
+            }
+        }
+
+        try (Stream<Path> files = Files.list(corpus)) {
+            files.forEach(file -> file.toFile().delete());
+        }
+        Files.delete(corpus);
+    }
+}
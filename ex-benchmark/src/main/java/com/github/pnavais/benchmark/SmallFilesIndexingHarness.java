@@ -0,0 +1,123 @@
+/*
+ *
+ * Copyright 2020 Pablo Navais
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+package com.github.pnavais.benchmark;
+
+import com.github.pnavais.ex3.api.index.MergePolicy;
+import com.github.pnavais.ex3.api.ranking.Scorer;
+import com.github.pnavais.ex3.index.IndexSnapshot;
+import com.github.pnavais.ex3.index.SimpleIndexManager;
+import com.github.pnavais.ex3.index.SizeTieredMergePolicy;
+import com.github.pnavais.ex3.ranking.ScoringFunction;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * Measures the time to index a directory of small documents (a few KB each),
+ * where scheduling a task per document costs more than reading it.
+ * <p>
+ * Run it with different batch sizes (1 disables batching) and merge
+ * factors (1 disables merging), i.e. :
+ * <pre>
+ * java -cp ex-benchmark/target/benchmarks.jar \
+ *      com.github.pnavais.benchmark.SmallFilesIndexingHarness 64 20000 10
+ * </pre>
+ * The corpus is written to a temporary directory and indexed several
+ * times, reporting the best run and the number of snapshots published.
+ * Once the background merges of the last run settle, the number of
+ * segments and the average time to rank the top documents are reported.
+ */
+public class SmallFilesIndexingHarness {
+
+    /** The number of words of each document */
+    private static final int WORDS_PER_DOC = 400;
+
+    /** The number of times the corpus is indexed */
+    private static final int RUNS = 5;
+
+    /** The number of rankings timed */
+    private static final int RANKINGS = 200;
+
+    /** The words of the documents */
+    private static final String[] VOCABULARY = { "error", "budget", "latency", "request", "server", "index",
+            "document", "term", "queue", "batch", "segment", "ranking" };
+
+    public static void main(String[] args) throws IOException {
+        int batchSize = (args.length > 0) ? Integer.parseInt(args[0]) : SimpleIndexManager.DEFAULT_BATCH_SIZE;
+        int docCount = (args.length > 1) ? Integer.parseInt(args[1]) : 20000;
+        int mergeFactor = (args.length > 2) ? Integer.parseInt(args[2]) : SizeTieredMergePolicy.DEFAULT_MERGE_FACTOR;
+        MergePolicy mergePolicy = (mergeFactor > 1) ? new SizeTieredMergePolicy(mergeFactor,
+                SizeTieredMergePolicy.DEFAULT_MAX_MERGED_SIZE) : MergePolicy.NONE;
+
+        Path corpus = Files.createTempDirectory("small-files");
+        Random random = new Random(42);
+        for (int d = 0; d < docCount; d++) {
+            StringBuilder text = new StringBuilder();
+            for (int w = 0; w < WORDS_PER_DOC; w++) {
+                text.append(VOCABULARY[random.nextInt(VOCABULARY.length)]).append((w % 16 == 15) ? '\n' : ' ');
+            }
+            Files.write(corpus.resolve("doc-" + d + ".txt"), text.toString().getBytes(StandardCharsets.UTF_8));
+        }
+
+        long best = Long.MAX_VALUE;
+        long snapshots = 0;
+        SimpleIndexManager manager = null;
+        for (int r = 0; r < RUNS; r++) {
+            manager = new SimpleIndexManager();
+            manager.setBatchSize(batchSize);
+            manager.setMergePolicy(mergePolicy);
+            manager.setTerms(new HashSet<>(Arrays.asList("error", "latency", "batch")));
+            long start = System.nanoTime();
+            manager.loadFrom(corpus);
+            while (manager.size() < docCount) {
+                Thread.yield();
+            }
+            best = Math.min(best, System.nanoTime() - start);
+            snapshots = manager.snapshot().getGeneration();
+        }
+
+        System.out.printf("batch.size=%d documents=%d best=%d ms docs/s=%d snapshots=%d%n", batchSize, docCount,
+                TimeUnit.NANOSECONDS.toMillis(best), docCount * TimeUnit.SECONDS.toNanos(1) / best, snapshots);
+
+        while (!mergePolicy.findMerges(manager.snapshot().getSegments()).isEmpty()) {
+            Thread.yield();
+        }
+        IndexSnapshot snapshot = manager.snapshot();
+        Scorer scorer = ScoringFunction.TFIDF.getScorerSupplier().get();
+        long[] checksum = new long[1];
+        long start = System.nanoTime();
+        for (int i = 0; i < RANKINGS; i++) {
+            snapshot.forEachTopScore(scorer, 10, (docId, score) -> checksum[0] += docId);
+        }
+        System.out.printf("merge.factor=%d segments=%d top10=%d us (checksum %d)%n", mergeFactor,
+                snapshot.getSegments().size(), TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - start) / RANKINGS,
+                checksum[0]);
+
+        try (Stream<Path> files = Files.list(corpus)) {
+            files.forEach(file -> file.toFile().delete());
+        }
+        Files.delete(corpus);
+    }
+}
@@ -0,0 +1,241 @@
+/*
+ *
+ * Copyright 2020 Pablo Navais
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+package com.github.pnavais.benchmark;
+
+import com.github.pnavais.ex3.TfIdfServerLiteApp;
+import com.github.pnavais.ex3.config.TfIdfServerConfig;
+import com.github.pnavais.ex3.index.IndexSnapshot;
+import com.github.pnavais.ex3.index.SimpleIndexManager;
+import com.github.pnavais.ex3.loadgen.DocumentLoadGenerator;
+import com.github.pnavais.ex3.loadgen.ZipfVocabulary;
+import picocli.CommandLine;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+/**
+ * Soak test of the whole server : documents are written by a
+ * {@link DocumentLoadGenerator} into a directory watched by a TF/IDF
+ * server started in-process, which is monitored for hours.
+ * <p>
+ * Run it with the duration in minutes, the rate of documents per second,
+ * the report period in seconds and the size of the bursts, i.e. :
+ * <pre>
+ * java -Xmx1g -cp ex-benchmark/target/benchmarks.jar \
+ *      com.github.pnavais.benchmark.SoakHarness 240 50 60 500
+ * </pre>
+ * Each report displays the sustained ingestion rate (documents added to
+ * the index per second), the time from the arrival of each file until it
+ * is part of the snapshot being ranked (p50, p99 and max) and the heap
+ * used after a full collection (forced at each report to measure the
+ * live set). The summary adds the heap growth per hour, fitted by least
+ * squares over the reports after the first one.
+ */
+public class SoakHarness {
+
+    /** The period between checks of the index in milliseconds */
+    private static final long POLL_PERIOD_MS = 50;
+
+    /** The number of different words */
+    private static final int VOCABULARY_SIZE = 20000;
+
+    /** The ranks of the ranked terms in the vocabulary */
+    private static final int[] RANKED_TERMS = { 5, 50, 500 };
+
+    /** The bytes of a megabyte */
+    private static final double MB = 1024.0 * 1024.0;
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        long duration = TimeUnit.MINUTES.toNanos((args.length > 0) ? Long.parseLong(args[0]) : 10);
+        double rate = (args.length > 1) ? Double.parseDouble(args[1]) : 20;
+        long reportPeriod = TimeUnit.SECONDS.toNanos((args.length > 2) ? Long.parseLong(args[2]) : 60);
+        int burstSize = (args.length > 3) ? Integer.parseInt(args[3]) : 0;
+
+        Path directory = Files.createTempDirectory("soak");
+        Map<Path, Long> arrivals = new ConcurrentHashMap<>();
+        DocumentLoadGenerator generator = new DocumentLoadGenerator(directory,
+                new ZipfVocabulary(VOCABULARY_SIZE, 1.0), new Random(42));
+        generator.setRate(rate);
+        generator.setBurstSize(burstSize);
+        generator.setListener(doc -> arrivals.put(doc, System.nanoTime()));
+
+        SimpleIndexManager manager = new SimpleIndexManager();
+        String terms = Arrays.stream(RANKED_TERMS).mapToObj(ZipfVocabulary::word).collect(Collectors.joining(" "));
+        Thread server = new Thread(() -> new CommandLine(new TfIdfServerConfig(cfg -> TfIdfServerLiteApp.run(cfg,
+                manager))).execute("-d", directory.toString(), "-t", terms, "-p", "86400"), "soak-server");
+        server.setDaemon(true);
+        server.start();
+        while (manager.snapshot().getTerms() == null || manager.snapshot().getTerms().isEmpty()) {
+            Thread.sleep(POLL_PERIOD_MS);
+        }
+        // The directory is registered with the watcher right after setting the terms
+        Thread.sleep(TimeUnit.SECONDS.toMillis(1));
+
+        Thread producer = new Thread(generator, "soak-generator");
+        producer.setDaemon(true);
+        producer.start();
+
+        System.out.printf("Soak test : %.1f docs/s, bursts of %d docs, %d min, terms [%s], directory %s%n", rate,
+                burstSize, TimeUnit.NANOSECONDS.toMinutes(duration), terms, directory);
+        System.out.println("time(s)  written   indexed   docs/s  pending  p50(ms)  p99(ms)  max(ms)  live heap(MB)");
+
+        MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+        LongSamples allLatencies = new LongSamples();
+        LongSamples latencies = new LongSamples();
+        LongSamples heapSamples = new LongSamples();
+        LongSamples heapTimes = new LongSamples();
+        long start = System.nanoTime();
+        long nextReport = start + reportPeriod;
+        long lastGeneration = -1;
+        int lastIndexed = 0;
+
+        while (System.nanoTime() - start < duration) {
+            Thread.sleep(POLL_PERIOD_MS);
+            IndexSnapshot snapshot = manager.snapshot();
+            if (snapshot.getGeneration() != lastGeneration) {
+                lastGeneration = snapshot.getGeneration();
+                long now = System.nanoTime();
+                for (Iterator<Map.Entry<Path, Long>> it = arrivals.entrySet().iterator(); it.hasNext(); ) {
+                    Map.Entry<Path, Long> arrival = it.next();
+                    if (snapshot.contains(arrival.getKey())) {
+                        latencies.add(TimeUnit.NANOSECONDS.toMillis(now - arrival.getValue()));
+                        it.remove();
+                    }
+                }
+            }
+
+            long now = System.nanoTime();
+            if (now - nextReport >= 0) {
+                System.gc();
+                long liveHeap = memory.getHeapMemoryUsage().getUsed();
+                heapSamples.add(liveHeap);
+                heapTimes.add(now - start);
+                int indexed = snapshot.size();
+                System.out.printf("%7d %8d %9d %8.1f %8d %8d %8d %8d %14.1f%n", TimeUnit.NANOSECONDS.toSeconds(now - start),
+                        generator.getDocuments(), indexed, (indexed - lastIndexed) * 1e9 / reportPeriod,
+                        arrivals.size(), latencies.percentile(50), latencies.percentile(99),
+                        latencies.percentile(100), liveHeap / MB);
+                allLatencies.addAll(latencies);
+                latencies = new LongSamples();
+                lastIndexed = indexed;
+                nextReport += reportPeriod;
+            }
+        }
+
+        generator.stop();
+        producer.join();
+        allLatencies.addAll(latencies);
+        double seconds = (System.nanoTime() - start) / 1e9;
+        System.out.printf("Summary : written=%d indexed=%d ingestion=%.1f docs/s latency p50=%d p99=%d p99.9=%d " +
+                        "max=%d ms heap growth=%.1f MB/h%n", generator.getDocuments(), manager.snapshot().size(),
+                manager.snapshot().size() / seconds, allLatencies.percentile(50), allLatencies.percentile(99),
+                allLatencies.percentile(99.9), allLatencies.percentile(100), heapGrowth(heapTimes, heapSamples));
+
+        try (Stream<Path> files = Files.list(directory)) {
+            files.forEach(file -> file.toFile().delete());
+        }
+        Files.delete(directory);
+        System.exit(0);
+    }
+
+    /**
+     * Fits the growth of the heap per hour by least squares,
+     * ignoring the first sample (taken while warming up).
+     *
+     * @param times the times of the samples in nanoseconds
+     * @param heap the live heap samples in bytes
+     * @return the growth in MB per hour
+     */
+    private static double heapGrowth(LongSamples times, LongSamples heap) {
+        int n = heap.size() - 1;
+        if (n < 2) {
+            return 0;
+        }
+        double meanTime = IntStream.rangeClosed(1, n).mapToDouble(times::get).average().orElse(0);
+        double meanHeap = IntStream.rangeClosed(1, n).mapToDouble(heap::get).average().orElse(0);
+        double covariance = 0;
+        double variance = 0;
+        for (int i = 1; i <= n; i++) {
+            covariance += (times.get(i) - meanTime) * (heap.get(i) - meanHeap);
+            variance += (times.get(i) - meanTime) * (times.get(i) - meanTime);
+        }
+        return (covariance / variance) * TimeUnit.HOURS.toNanos(1) / MB;
+    }
+
+    /**
+     * A growable list of long samples.
+     */
+    private static class LongSamples {
+
+        /** The samples */
+        private long[] values = new long[1024];
+
+        /** The number of samples */
+        private int size;
+
+        void add(long value) {
+            if (size == values.length) {
+                values = Arrays.copyOf(values, size * 2);
+            }
+            values[size++] = value;
+        }
+
+        void addAll(LongSamples samples) {
+            for (int i = 0; i < samples.size; i++) {
+                add(samples.values[i]);
+            }
+        }
+
+        long get(int i) {
+            return values[i];
+        }
+
+        int size() {
+            return size;
+        }
+
+        /**
+         * Retrieves the value below which the given percentage
+         * of the samples fall (nearest rank).
+         *
+         * @param percentile the percentile (100 for the maximum)
+         * @return the value or 0 if there are no samples
+         */
+        long percentile(double percentile) {
+            if (size == 0) {
+                return 0;
+            }
+            long[] sorted = Arrays.copyOf(values, size);
+            Arrays.sort(sorted);
+            int rank = (int) Math.ceil(percentile / 100.0 * size);
+            return sorted[Math.max(0, Math.min(size, rank) - 1)];
+        }
+    }
+}
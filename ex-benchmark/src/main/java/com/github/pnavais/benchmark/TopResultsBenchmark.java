@@ -0,0 +1,161 @@
+/*
+ *
+ * Copyright 2020 Pablo Navais
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+package com.github.pnavais.benchmark;
+
+import com.github.pnavais.ex3.api.index.IndexSegment;
+import com.github.pnavais.ex3.api.ranking.Scorer;
+import com.github.pnavais.ex3.index.DocTerm;
+import com.github.pnavais.ex3.index.DocumentDictionary;
+import com.github.pnavais.ex3.index.IndexSnapshot;
+import com.github.pnavais.ex3.index.IndexStorage;
+import com.github.pnavais.ex3.ranking.ScoringFunction;
+import org.openjdk.jmh.annotations.*;
+
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the time to rank a snapshot of the index, either scoring all the
+ * documents or retrieving only the top ones (skipping the documents which
+ * cannot enter them), for growing corpus sizes.
+ * <p>
+ * Term frequencies follow a Zipf distribution, so the ranked terms range
+ * from very frequent to rare. The statistics of the scorer are computed
+ * during the setup, as they are once per snapshot. The snapshots are built
+ * directly from their segments, without reading any document.
+ *
+ * Run with : java -jar ex-benchmark/target/benchmarks.jar TopResultsBenchmark
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class TopResultsBenchmark {
+
+    /** The number of documents per segment */
+    private static final int DOCS_PER_SEGMENT = 1000;
+
+    /** The number of different words */
+    private static final int VOCABULARY_SIZE = 1000;
+
+    /** The number of words of each document */
+    private static final int WORDS_PER_DOC = 200;
+
+    /** The ranks of the ranked terms in the vocabulary */
+    private static final int[] RANKED_TERMS = { 5, 50, 300 };
+
+    /** The number of documents of the corpus */
+    @Param({"100000", "400000", "1600000"})
+    private int documentCount;
+
+    /** The scoring function */
+    @Param({"TFIDF", "BM25"})
+    private ScoringFunction scoringFunction;
+
+    /** The number of top documents */
+    @Param({"10"})
+    private int topResults;
+
+    /** The snapshot to rank */
+    private IndexSnapshot snapshot;
+
+    /** The scorer */
+    private Scorer scorer;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        Random random = new Random(42);
+        double[] cumulative = zipf(VOCABULARY_SIZE);
+        DocumentDictionary dictionary = new DocumentDictionary();
+        LinkedHashSet<String> terms = new LinkedHashSet<>();
+        Arrays.stream(RANKED_TERMS).forEach(rank -> terms.add("term" + rank));
+        List<IndexSegment> segments = new ArrayList<>(documentCount / DOCS_PER_SEGMENT);
+
+        for (int s = 0; s < documentCount / DOCS_PER_SEGMENT; s++) {
+            List<Path> docs = new ArrayList<>(DOCS_PER_SEGMENT);
+            List<DocTerm> docTerms = new ArrayList<>(DOCS_PER_SEGMENT * RANKED_TERMS.length);
+            for (int d = 0; d < DOCS_PER_SEGMENT; d++) {
+                Path doc = Paths.get("/corpus", "segment-" + s, "doc-" + d + ".txt");
+                docs.add(doc);
+                long[] occurrences = new long[RANKED_TERMS.length];
+                int wordCount = WORDS_PER_DOC / 2 + random.nextInt(WORDS_PER_DOC);
+                for (int w = 0; w < wordCount; w++) {
+                    int word = Arrays.binarySearch(cumulative, random.nextDouble());
+                    word = (word >= 0) ? word : -(word + 1);
+                    for (int t = 0; t < RANKED_TERMS.length; t++) {
+                        if (RANKED_TERMS[t] == word) {
+                            occurrences[t]++;
+                        }
+                    }
+                }
+                for (int t = 0; t < RANKED_TERMS.length; t++) {
+                    DocTerm docTerm = DocTerm.of("term" + RANKED_TERMS[t], doc);
+                    docTerm.setWordCount(wordCount);
+                    docTerm.setOccurrences(occurrences[t]);
+                    docTerms.add(docTerm);
+                }
+            }
+            segments.add(IndexStorage.HEAP.getSegmentFactory().build(dictionary, docs, docTerms));
+        }
+        snapshot = IndexSnapshot.of(dictionary, terms, segments);
+
+        scorer = scoringFunction.getScorerSupplier().get();
+        snapshot.forEachTopScore(scorer, topResults, (docId, score) -> { });
+    }
+
+    @Benchmark
+    public double allScores() {
+        double[] best = new double[1];
+        snapshot.forEachScore(scorer, (docId, score) -> best[0] = Math.max(best[0], score));
+        return best[0];
+    }
+
+    @Benchmark
+    public double topScores() {
+        double[] best = new double[1];
+        snapshot.forEachTopScore(scorer, topResults, (docId, score) -> best[0] = Math.max(best[0], score));
+        return best[0];
+    }
+
+    /**
+     * Computes the cumulative distribution of a Zipf distribution.
+     *
+     * @param size the number of words
+     * @return the cumulative probability of each word
+     */
+    private static double[] zipf(int size) {
+        double[] cumulative = new double[size];
+        double total = 0;
+        for (int i = 0; i < size; i++) {
+            total += 1.0 / (i + 1);
+            cumulative[i] = total;
+        }
+        for (int i = 0; i < size; i++) {
+            cumulative[i] /= total;
+        }
+        return cumulative;
+    }
+}
@@ -0,0 +1,114 @@
+/*
+ *
+ * Copyright 2020 Pablo Navais
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+
+package com.github.pnavais.benchmark;
+
+import com.github.pnavais.ex3.index.DocTerm;
+import com.github.pnavais.ex3.index.SimpleIndexManager;
+import com.github.pnavais.ex3.loadgen.ZipfVocabulary;
+import com.github.pnavais.ex3.matcher.WordFilterPolicy;
+import com.github.pnavais.ex3.reader.DocumentReaderFactory;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * Measures the time to query terms not indexed, reading again the documents
+ * which may contain them, with and without the filters of the words of the
+ * documents built while indexing them.
+ * <p>
+ * Documents draw their words from a Zipf distributed vocabulary, so most
+ * words are rare and only found in a few documents, i.e. :
+ * <pre>
+ * java -cp ex-benchmark/target/benchmarks.jar \
+ *      com.github.pnavais.benchmark.WordFilterQueryHarness 20000 0.01 4096
+ * </pre>
+ * Arguments are the number of documents, the false positive rate
+ * and the maximum size in bytes of the filter of a document.
+ */
+public class WordFilterQueryHarness {
+
+    /** The number of words of each document */
+    private static final int WORDS_PER_DOC = 300;
+
+    /** The number of words of the vocabulary */
+    private static final int VOCABULARY_SIZE = 200000;
+
+    /** The ranks of the words queried */
+    private static final int[] QUERIED_RANKS = { 100, 1000, 10000, 100000 };
+
+    /** The number of times each query is run */
+    private static final int RUNS = 3;
+
+    public static void main(String[] args) throws IOException {
+        int docCount = (args.length > 0) ? Integer.parseInt(args[0]) : 20000;
+        double falsePositiveRate = (args.length > 1) ? Double.parseDouble(args[1])
+                : WordFilterPolicy.DEFAULT_FALSE_POSITIVE_RATE;
+        int maxBytes = (args.length > 2) ? Integer.parseInt(args[2]) : WordFilterPolicy.DEFAULT_MAX_BYTES;
+
+        Path corpus = Files.createTempDirectory("word-filters");
+        ZipfVocabulary vocabulary = new ZipfVocabulary(VOCABULARY_SIZE, 1.0);
+        Random random = new Random(42);
+        for (int d = 0; d < docCount; d++) {
+            StringBuilder text = new StringBuilder();
+            for (int w = 0; w < WORDS_PER_DOC; w++) {
+                text.append(vocabulary.next(random)).append((w % 16 == 15) ? '\n' : ' ');
+            }
+            Files.write(corpus.resolve("doc-" + d + ".txt"), text.toString().getBytes(StandardCharsets.UTF_8));
+        }
+
+        for (WordFilterPolicy policy : new WordFilterPolicy[] { WordFilterPolicy.DISABLED,
+                new WordFilterPolicy(falsePositiveRate, maxBytes) }) {
+            DocumentReaderFactory.setWordFilterPolicy(policy);
+            SimpleIndexManager manager = new SimpleIndexManager();
+            manager.setTerms(Collections.singleton(ZipfVocabulary.word(0)));
+            long start = System.nanoTime();
+            manager.loadFrom(corpus);
+            while (manager.size() < docCount) {
+                Thread.yield();
+            }
+            System.out.printf("filters=%s indexing=%d ms%n", policy.isEnabled() ? "fpp " + falsePositiveRate
+                    + ", max " + maxBytes + " bytes" : "none", TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+
+            for (int rank : QUERIED_RANKS) {
+                String word = ZipfVocabulary.word(rank);
+                long best = Long.MAX_VALUE;
+                List<DocTerm> found = Collections.emptyList();
+                for (int r = 0; r < RUNS; r++) {
+                    long queryStart = System.nanoTime();
+                    found = manager.queryTerms(Collections.singleton(word));
+                    best = Math.min(best, System.nanoTime() - queryStart);
+                }
+                System.out.printf("  rank=%d documents=%d best=%d ms%n", rank, found.size(),
+                        TimeUnit.NANOSECONDS.toMillis(best));
+            }
+        }
+
+        try (Stream<Path> files = Files.list(corpus)) {
+            files.forEach(file -> file.toFile().delete());
+        }
+        Files.delete(corpus);
+    }
+}
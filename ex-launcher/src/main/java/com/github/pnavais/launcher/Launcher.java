@@ -22,6 +22,7 @@ import com.github.pnavais.common.cli.ShortErrorMessageHandler;
 import com.github.pnavais.common.output.Colorize;
 import com.github.pnavais.ex1.PalindromeCheckerApp;
 import com.github.pnavais.ex2.KComplementaryFinderApp;
+import com.github.pnavais.ex3.LoadGeneratorApp;
 import com.github.pnavais.ex3.TfIdfServerApp;
 import picocli.CommandLine;
 import picocli.CommandLine.Command;
@@ -41,13 +42,14 @@ import java.util.concurrent.Callable;
         parameterListHeading = "%nParameters:%n",
         optionListHeading = "%nOptions:%n",
         header = "Launch the exercises.",
-        description = "Launch one of the three exercises [ex1, ex2, ex3].",
+        description = "Launch one of the three exercises [ex1, ex2, ex3] or the document load generator " +
+                "for the ex3 server [4].",
         footer = "Copyright(c) 2020")
 public class Launcher implements Callable<Integer> {
 
     private static String[] args;
 
-    @Option(names = { "-e", "--exercise" }, required = true, paramLabel = "number", description = "the number of the exercise to launch")
+    @Option(names = { "-e", "--exercise" }, required = true, paramLabel = "number", description = "the number of the exercise to launch (4 for the load generator)")
     private Integer exNumber;
 
     @Parameters(description = "This option can be used to separate command-line options for the selected exercise")
@@ -66,8 +68,11 @@ public class Launcher implements Callable<Integer> {
             case 3:
                 TfIdfServerApp.main(params);
                 break;
+            case 4:
+                LoadGeneratorApp.main(params);
+                break;
             default:
-                System.err.println(Colorize.fail("Invalid exercise number. Expected value in [1-3]"));
+                System.err.println(Colorize.fail("Invalid exercise number. Expected value in [1-4]"));
                 exitCode = 1;
                 break;
         }
@@ -80,7 +85,7 @@ public class Launcher implements Callable<Integer> {
      * The program is expected to be executed with the following program arguments :
      *  -e [EX_NUMBER] -- [EX_OPTIONS]
      *  where :
-     *  - EX_NUMBER: The number of the exercise from the range [1-3]
+     *  - EX_NUMBER: The number of the exercise from the range [1-3] (4 for the ex3 load generator)
      *  - EX_OPTIONS: The rest of options of the given exercise. Put --help to list the available options.
      *
      *  Example: